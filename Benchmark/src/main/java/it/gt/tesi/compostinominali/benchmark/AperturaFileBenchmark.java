@@ -0,0 +1,77 @@
+package it.gt.tesi.compostinominali.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import it.gt.tesi.compostinominali.FileExcel;
+import it.gt.tesi.compostinominali.RigaFoglio;
+
+/**
+ * Il costo di apertura dei file Excel, caricati in memoria con POI oppure letti in 
+ * streaming: apertura del file dei composti e di un file opera e lettura di tutte 
+ * le righe del primo foglio.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AperturaFileBenchmark {
+	
+	@Param({"../Dataset"})
+	public String dirDataset;
+	
+	@Param({"false", "true"})
+	public boolean streaming;
+	
+	private File fileComposti;
+	private File fileOpera;
+	
+	@Setup
+	public void setup() throws IOException {
+		fileComposti = Dataset.getFileComposti(dirDataset);
+		//il file opera più grande, per misurare la lettura e non solo l'apertura
+		List<File> fileOpere = Dataset.getFileOpere(dirDataset);
+		fileOpera = fileOpere.get(0);
+		for (File file : fileOpere) {
+			if (file.length() > fileOpera.length()) {
+				fileOpera = file;
+			}
+		}
+	}
+	
+	@Benchmark
+	public void apriFileComposti(Blackhole blackhole) throws IOException {
+		leggi(fileComposti, blackhole);
+	}
+	
+	@Benchmark
+	public void apriFileOpera(Blackhole blackhole) throws IOException {
+		leggi(fileOpera, blackhole);
+	}
+	
+	private void leggi(File file, Blackhole blackhole) throws IOException {
+		try (FileExcel fileExcel = FileExcel.apri(file, streaming)) {
+			for (RigaFoglio riga : fileExcel.getFoglio(0)) {
+				blackhole.consume(riga);
+			}
+		}
+	}
+
+}
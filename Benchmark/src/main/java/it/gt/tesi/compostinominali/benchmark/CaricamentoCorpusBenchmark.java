@@ -0,0 +1,81 @@
+package it.gt.tesi.compostinominali.benchmark;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.gt.tesi.compostinominali.Corpus;
+import it.gt.tesi.compostinominali.DizionarioValori;
+import it.gt.tesi.compostinominali.IstantaneaCorpus;
+import it.gt.tesi.compostinominali.LettoreCorpus;
+
+/**
+ * Il tempo in millisecondi per avere in memoria il corpus di Dataset: lettura dei file 
+ * Excel con LettoreCorpus, caricamento dell'istantanea binaria già controllata e calcolo
+ * degli hash dei file con cui si controlla se l'istantanea è ancora valida.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CaricamentoCorpusBenchmark {
+	
+	@Param({"../Dataset"})
+	public String dirDataset;
+	
+	private final PrintStream nullo = new PrintStream(OutputStream.nullOutputStream());
+	private File fileComposti;
+	private List<File> fileOpere;
+	private List<String> sorgenti;
+	private File fileIstantanea;
+	
+	@Setup
+	public void setup() throws Exception {
+		fileComposti = Dataset.getFileComposti(dirDataset);
+		fileOpere = Dataset.getFileOpere(dirDataset);
+		fileIstantanea = File.createTempFile("corpus", ".istantanea");
+		LettoreCorpus lettore = new LettoreCorpus(true, nullo);
+		Corpus corpus = lettore.leggi(fileComposti, fileOpere);
+		sorgenti = IstantaneaCorpus.getSorgenti(fileComposti, fileOpere);
+		new IstantaneaCorpus(corpus, lettore.getErroriPerFile(), lettore.getLemmiMancanti())
+				.scrivi(fileIstantanea, sorgenti);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		fileIstantanea.delete();
+	}
+	
+	@Benchmark
+	public Corpus leggiFileExcel() throws Exception {
+		return new LettoreCorpus(true, nullo).leggi(fileComposti, fileOpere);
+	}
+	
+	@Benchmark
+	public IstantaneaCorpus caricaIstantanea() throws Exception {
+		return IstantaneaCorpus.carica(fileIstantanea, sorgenti, new DizionarioValori());
+	}
+	
+	@Benchmark
+	public List<String> calcolaSorgenti() throws Exception {
+		return IstantaneaCorpus.getSorgenti(fileComposti, fileOpere);
+	}
+
+}
@@ -0,0 +1,75 @@
+package it.gt.tesi.compostinominali.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import it.gt.tesi.compostinominali.FileExcel;
+import it.gt.tesi.compostinominali.RigaFoglio;
+
+/**
+ * I file di Dataset usati dai benchmark: Compounds.xlsx e i file delle opere in Authors.
+ */
+final class Dataset {
+	
+	private Dataset() {
+	}
+	
+	/**
+	 * Restituisce il file dei composti della directory data.
+	 * 
+	 * @param dirDataset la directory Dataset
+	 * @return il file Compounds.xlsx
+	 * @throws IOException se il file non esiste
+	 */
+	static File getFileComposti(String dirDataset) throws IOException {
+		File file = new File(dirDataset, "Compounds.xlsx");
+		if (!file.isFile()) {
+			throw new IOException("Non esiste il file " + file.getAbsolutePath() 
+				+ ", indicare la directory Dataset con -p dirDataset=<directory>");
+		}
+		return file;
+	}
+	
+	/**
+	 * Restituisce i file delle opere della directory Authors ordinati per nome.
+	 * 
+	 * @param dirDataset la directory Dataset
+	 * @return i file delle opere
+	 * @throws IOException se la directory Authors non esiste
+	 */
+	static List<File> getFileOpere(String dirDataset) throws IOException {
+		File[] files = new File(dirDataset, "Authors").listFiles((dir, name) -> name.endsWith(".xlsx"));
+		if (files == null) {
+			throw new IOException("Non esiste la directory " + new File(dirDataset, "Authors").getAbsolutePath());
+		}
+		Arrays.sort(files, Comparator.comparing(File::getName));
+		return Arrays.asList(files);
+	}
+	
+	/**
+	 * Legge in memoria le righe del foglio dato a partire dalla riga con l'indice dato.
+	 * 
+	 * @param file il file Excel
+	 * @param foglio l'indice del foglio
+	 * @param primaRiga l'indice della prima riga da leggere
+	 * @return le righe lette
+	 * @throws IOException se il file non si può leggere
+	 */
+	static List<RigaFoglio> leggiRighe(File file, int foglio, int primaRiga) throws IOException {
+		List<RigaFoglio> righe = new ArrayList<>();
+		try (FileExcel fileExcel = FileExcel.apri(file, true)) {
+			int indice = 0;
+			for (RigaFoglio riga : fileExcel.getFoglio(foglio)) {
+				if (indice++ >= primaRiga) {
+					righe.add(riga);
+				}
+			}
+		}
+		return righe;
+	}
+
+}
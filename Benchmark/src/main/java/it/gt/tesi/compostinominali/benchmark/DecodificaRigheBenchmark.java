@@ -0,0 +1,130 @@
+package it.gt.tesi.compostinominali.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import it.gt.tesi.compostinominali.Composto;
+import it.gt.tesi.compostinominali.DecodificatoreRighe;
+import it.gt.tesi.compostinominali.RigaFoglio;
+
+/**
+ * Le righe decodificate al secondo, con le righe già lette in memoria: ogni operazione 
+ * decodifica una riga, scorrendo ciclicamente tutte le righe del foglio dei composti 
+ * o di tutti i file opera. Con il profiler gc (-prof gc) il valore gc.alloc.rate.norm 
+ * è il numero di byte allocati per riga, cioè il costo della costruzione di Composto
+ * e Membro.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodificaRigheBenchmark {
+	
+	@Param({"../Dataset"})
+	public String dirDataset;
+	
+	private RigaFoglio[] righeComposti;
+	private RigaFoglio[] righeOpere;
+	private String[] lemmiGrecismi;
+	private int indiceComposti;
+	private int indiceOpere;
+	private int indiceGrecismi;
+	
+	@Setup
+	public void setup() throws IOException {
+		//i composti iniziano dalla seconda riga, le occorrenze delle opere dalla sesta
+		List<RigaFoglio> composti = Dataset.leggiRighe(Dataset.getFileComposti(dirDataset), 0, 1);
+		List<RigaFoglio> opere = new ArrayList<>();
+		for (File fileOpera : Dataset.getFileOpere(dirDataset)) {
+			opere.addAll(Dataset.leggiRighe(fileOpera, 0, 5));
+		}
+		List<String> grecismi = new ArrayList<>();
+		for (RigaFoglio riga : composti) {
+			Composto composto = DecodificatoreRighe.getComposto(riga);
+			if (!composto.isEmpty() && composto.getLemma().contains(" (")) {
+				grecismi.add(composto.getLemma());
+			}
+		}
+		righeComposti = composti.toArray(new RigaFoglio[0]);
+		righeOpere = opere.toArray(new RigaFoglio[0]);
+		lemmiGrecismi = grecismi.toArray(new String[0]);
+	}
+	
+	/**
+	 * La decodifica completa di una riga del foglio dei composti, come negli elaboratori.
+	 */
+	@Benchmark
+	public Composto decodificaComposto() {
+		RigaFoglio riga = prossimaRigaComposti();
+		Composto composto = DecodificatoreRighe.getComposto(riga);
+		if (!composto.isEmpty()) {
+			composto = DecodificatoreRighe.gestisciGrecismo(composto)
+					.conMembri(DecodificatoreRighe.getMembri(riga));
+		}
+		return composto;
+	}
+	
+	@Benchmark
+	public Composto getComposto() {
+		return DecodificatoreRighe.getComposto(prossimaRigaComposti());
+	}
+	
+	@Benchmark
+	public void getMembro(Blackhole blackhole) {
+		RigaFoglio riga = prossimaRigaComposti();
+		for (int i = 1; i <= DecodificatoreRighe.NUMERO_MAX_MEMBRI; i++) {
+			blackhole.consume(DecodificatoreRighe.getMembro(riga, 2 + i * 2));
+		}
+	}
+	
+	@Benchmark
+	public Composto separaLemmaGrecismo() {
+		Composto composto = new Composto(lemmiGrecismi[indiceGrecismi], 0);
+		indiceGrecismi = (indiceGrecismi + 1) % lemmiGrecismi.length;
+		return DecodificatoreRighe.separaLemmaGrecismo(composto);
+	}
+	
+	/**
+	 * La decodifica di una riga delle occorrenze di un file opera.
+	 */
+	@Benchmark
+	public Composto decodificaOccorrenza() {
+		return DecodificatoreRighe.getCompostoOpera(prossimaRigaOpere());
+	}
+	
+	@Benchmark
+	public int getIntCellValue() {
+		return DecodificatoreRighe.getIntCellValue(prossimaRigaOpere().getCell(1));
+	}
+	
+	private RigaFoglio prossimaRigaComposti() {
+		RigaFoglio riga = righeComposti[indiceComposti];
+		indiceComposti = (indiceComposti + 1) % righeComposti.length;
+		return riga;
+	}
+	
+	private RigaFoglio prossimaRigaOpere() {
+		RigaFoglio riga = righeOpere[indiceOpere];
+		indiceOpere = (indiceOpere + 1) % righeOpere.length;
+		return riga;
+	}
+
+}
@@ -0,0 +1,101 @@
+package it.gt.tesi.compostinominali.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.gt.tesi.compostinominali.Ambito;
+import it.gt.tesi.compostinominali.CompostoConMembri;
+import it.gt.tesi.compostinominali.ConfrontoSottotipi;
+import it.gt.tesi.compostinominali.ConteggioSottotipo;
+import it.gt.tesi.compostinominali.Corpus;
+import it.gt.tesi.compostinominali.GrafoCompatto;
+import it.gt.tesi.compostinominali.LettoreCorpus;
+import it.gt.tesi.compostinominali.OccorrenzaComposto;
+
+/**
+ * Il tempo di risposta in microsecondi del grafo compatto in memoria alle famiglie di query
+ * di Cypher_queries.md, con il grafo costruito una volta sola dai file di Dataset.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GrafoCompattoBenchmark {
+	
+	@Param({"../Dataset"})
+	public String dirDataset;
+	
+	private GrafoCompatto grafo;
+	
+	@Setup
+	public void setup() throws Exception {
+		Corpus corpus = new LettoreCorpus(true, new PrintStream(OutputStream.nullOutputStream()))
+				.leggi(Dataset.getFileComposti(dirDataset), Dataset.getFileOpere(dirDataset));
+		grafo = GrafoCompatto.costruisci(corpus);
+	}
+	
+	/**
+	 * "Occurences of a specific compound": le occorrenze di aliger in tutte le opere.
+	 */
+	@Benchmark
+	public List<OccorrenzaComposto> occorrenzeComposto() {
+		return grafo.getOccorrenze("aliger");
+	}
+	
+	/**
+	 * "All compounds sharing the first member": i composti con primo membro aequus.
+	 */
+	@Benchmark
+	public List<CompostoConMembri> compostiConPrimoMembro() {
+		return grafo.getCompostiConMembro(1, "aequus");
+	}
+	
+	/**
+	 * "All compounds ending in the same way": i composti che finiscono in fex.
+	 */
+	@Benchmark
+	public List<CompostoConMembri> compostiCheFiniscono() {
+		return grafo.getCompostiCheFiniscono("fex");
+	}
+	
+	/**
+	 * "All nominal compounds in a specific author": i composti di Apuleio.
+	 */
+	@Benchmark
+	public List<OccorrenzaComposto> compostiAutore() {
+		return grafo.getComposti(Ambito.AUTORE, "Apuleius Madaurensis Afer");
+	}
+	
+	/**
+	 * "Types of compounds recurring in a literary genre", con percentuale: la poesia.
+	 */
+	@Benchmark
+	public List<ConteggioSottotipo> distribuzioneGenere() {
+		return grafo.getDistribuzioneSottotipi(Ambito.GENERE, "Poetry");
+	}
+	
+	/**
+	 * "Cross queries", Work/Author (A/B).
+	 */
+	@Benchmark
+	public ConfrontoSottotipi confrontoOperaAutore() {
+		return grafo.confronta(Ambito.OPERA, "STAT. Theb.", Ambito.AUTORE, "P. Vergilius Maro");
+	}
+
+}
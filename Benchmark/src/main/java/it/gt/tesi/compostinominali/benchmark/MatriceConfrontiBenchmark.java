@@ -0,0 +1,63 @@
+package it.gt.tesi.compostinominali.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.gt.tesi.compostinominali.Ambito;
+import it.gt.tesi.compostinominali.Corpus;
+import it.gt.tesi.compostinominali.GrafoCompatto;
+import it.gt.tesi.compostinominali.LettoreCorpus;
+import it.gt.tesi.compostinominali.MatriceConfronti;
+
+/**
+ * Il tempo in millisecondi per calcolare la matrice dei confronti di tutte le opere, gli autori,
+ * i sottogeneri e i generi del grafo compatto costruito dai file di Dataset, con un numero
+ * crescente di thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatriceConfrontiBenchmark {
+	
+	@Param({"../Dataset"})
+	public String dirDataset;
+	
+	@Param({"1", "2", "4"})
+	public int parallelismo;
+	
+	private GrafoCompatto grafo;
+	
+	@Setup
+	public void setup() throws Exception {
+		Corpus corpus = new LettoreCorpus(true, new PrintStream(OutputStream.nullOutputStream()))
+				.leggi(Dataset.getFileComposti(dirDataset), Dataset.getFileOpere(dirDataset));
+		grafo = GrafoCompatto.costruisci(corpus);
+	}
+	
+	/**
+	 * Tutte le coppie di opere, autori, sottogeneri e generi: vettori dei conteggi, coseno
+	 * e chi quadro.
+	 */
+	@Benchmark
+	public MatriceConfronti matriceCompleta() {
+		return MatriceConfronti.calcola(grafo, EnumSet.allOf(Ambito.class), parallelismo);
+	}
+
+}
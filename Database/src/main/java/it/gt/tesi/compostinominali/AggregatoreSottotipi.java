@@ -0,0 +1,208 @@
+package it.gt.tesi.compostinominali;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Value;
+
+/**
+ * La classe che tiene aggiornate in DB le distribuzioni dei tipi di composti, così le query
+ * "Types of compounds recurring in..." e "All types of compounds with zero values" di
+ * Cypher_queries.md leggono un solo nodo invece di contare le relazioni CONTAINS.
+ * Ogni distribuzione è un nodo (:SubtypeDistribution {scope, name}) con le proprietà di
+ * DistribuzioneSottotipi.getProprieta(), dove scope è work (name è l'acronimo dell'opera),
+ * author (il nome dell'autore), subgenre oppure genre.
+ * La distribuzione di un'opera viene scritta da ElaboratoreCartellaOpera con scriviOpera(),
+ * insieme alle relazioni CONTAINS dell'opera; quelle degli autori, dei sottogeneri e dei
+ * generi vengono ricalcolate in memoria da aggiorna() alla fine dell'importazione, a partire
+ * da quelle di tutte le opere in DB.
+ */
+public class AggregatoreSottotipi {
+
+	public static final String OPERA = "work";
+	public static final String AUTORE = "author";
+	public static final String SOTTOGENERE = "subgenre";
+	public static final String GENERE = "genre";
+
+	private final EsecutoreQuery esecutore;
+
+	private int opereCalcolateDalDB;
+
+	/**
+	 * Costruisce un oggetto AggregatoreSottotipi a partire dal driver del DB e
+	 * dal nome del database.
+	 *
+	 * @param dbDriver il driver del DB
+	 * @param dbName il nome del DB
+	 *
+	 * @throws IllegalArgumentException se dbDriver è null oppure se dbName è vuoto
+	 */
+	public AggregatoreSottotipi(Driver dbDriver, String dbName) {
+		if (dbDriver == null)
+			throw new IllegalArgumentException("Il driver DB non può essere null");
+		if (StringUtils.isEmpty(dbName))
+			throw new IllegalArgumentException("Il nome del database non può essere vuoto");
+		this.esecutore = new EsecutoreQuery(dbDriver, dbName);
+	}
+
+	/**
+	 * Restituisce il numero di opere della cui distribuzione non c'era il nodo in DB e
+	 * che l'ultima chiamata ad aggiorna() ha calcolato dalle relazioni CONTAINS.
+	 *
+	 * @return il numero di opere calcolate dal DB
+	 */
+	public int getOpereCalcolateDalDB() {
+		return opereCalcolateDalDB;
+	}
+
+	/**
+	 * Scrive in DB la distribuzione dell'opera con l'acronimo dato, sostituendo quella
+	 * scritta da un'importazione precedente. Va chiamato con l'esecutore dell'opera,
+	 * nella sua transazione se c'è.
+	 *
+	 * @param esecutore l'esecutore con cui scrivere
+	 * @param acronimo l'acronimo dell'opera
+	 * @param distribuzione la distribuzione delle relazioni CONTAINS dell'opera
+	 */
+	public static void scriviOpera(EsecutoreQuery esecutore, String acronimo,
+			DistribuzioneSottotipi distribuzione) {
+		esecutore.esegui("MERGE SubtypeDistribution",
+				"MERGE (d:SubtypeDistribution {scope: $scope, name: $name}) "
+				+ "SET d.types = $types, d.subtypes = $subtypes, d.compounds = $compounds, "
+				+ "d.occurrences = $occurrences, d.totalCompounds = $totalCompounds, "
+				+ "d.totalOccurrences = $totalOccurrences",
+				getParametri(OPERA, acronimo, distribuzione));
+	}
+
+	/**
+	 * Calcola in memoria le distribuzioni degli autori, dei sottogeneri e dei generi
+	 * sommando quelle delle loro opere e le scrive in DB in un'unica transazione,
+	 * cancellando quelle che non hanno più opere e quelle delle opere che non sono più
+	 * in DB. Le opere senza distribuzione, importate prima che esistessero le
+	 * distribuzioni oppure con neo4j-admin, vengono prima calcolate dalle loro
+	 * relazioni CONTAINS e scritte anch'esse.
+	 *
+	 * @return il numero di distribuzioni scritte, comprese quelle delle opere calcolate dal DB
+	 */
+	public int aggiorna() {
+		return esecutore.inTransazione(() -> {
+			List<Map<String, Object>> distribuzioni = new ArrayList<>();
+			Map<String, DistribuzioneSottotipi> opereMancanti = calcolaOpereMancanti();
+			opereCalcolateDalDB = opereMancanti.size();
+			for (Map.Entry<String, DistribuzioneSottotipi> opera : opereMancanti.entrySet()) {
+				distribuzioni.add(getParametri(OPERA, opera.getKey(), opera.getValue()));
+			}
+
+			Map<String, Map<String, DistribuzioneSottotipi>> perAmbito = Map.of(
+					AUTORE, new TreeMap<>(), SOTTOGENERE, new TreeMap<>(), GENERE, new TreeMap<>());
+			var result = esecutore.esegui("MATCH SubtypeDistribution opere",
+					"MATCH (w:Work) "
+					+ "OPTIONAL MATCH (w)-[:WRITTEN_BY]->(a:Author) "
+					+ "WITH w, collect(a.name) AS autori "
+					+ "OPTIONAL MATCH (d:SubtypeDistribution {scope: $scope, name: w.acronym}) "
+					+ "RETURN w.acronym AS acronimo, w.subgenre AS sottogenere, w.genre AS genere, "
+					+ "autori, d.types AS tipologie, d.subtypes AS sottotipologie, "
+					+ "d.compounds AS composti, d.occurrences AS occorrenze",
+					Map.of("scope", OPERA));
+			for (Record record : result) {
+				DistribuzioneSottotipi opera = opereMancanti.get(record.get("acronimo").asString());
+				if (opera == null && record.get("sottotipologie").isNull()) {
+					continue;
+				} else if (opera == null) {
+					opera = leggi(record);
+				}
+				for (Value autore : record.get("autori").values()) {
+					aggiungi(perAmbito.get(AUTORE), autore, opera);
+				}
+				aggiungi(perAmbito.get(SOTTOGENERE), record.get("sottogenere"), opera);
+				aggiungi(perAmbito.get(GENERE), record.get("genere"), opera);
+			}
+			List<List<String>> chiavi = new ArrayList<>();
+			for (Map.Entry<String, Map<String, DistribuzioneSottotipi>> ambito : perAmbito.entrySet()) {
+				for (Map.Entry<String, DistribuzioneSottotipi> valore : ambito.getValue().entrySet()) {
+					distribuzioni.add(getParametri(ambito.getKey(), valore.getKey(), valore.getValue()));
+					chiavi.add(List.of(ambito.getKey(), valore.getKey()));
+				}
+			}
+
+			esecutore.esegui("MERGE SubtypeDistribution",
+					"UNWIND $distribuzioni AS row "
+					+ "MERGE (d:SubtypeDistribution {scope: row.scope, name: row.name}) "
+					+ "SET d.types = row.types, d.subtypes = row.subtypes, d.compounds = row.compounds, "
+					+ "d.occurrences = row.occurrences, d.totalCompounds = row.totalCompounds, "
+					+ "d.totalOccurrences = row.totalOccurrences",
+					Map.of("distribuzioni", distribuzioni));
+			esecutore.esegui("DELETE SubtypeDistribution",
+					"MATCH (d:SubtypeDistribution) "
+					+ "WHERE (d.scope = $scope AND NOT EXISTS { MATCH (w:Work {acronym: d.name}) }) "
+					+ "OR (d.scope <> $scope AND NOT [d.scope, d.name] IN $chiavi) "
+					+ "DETACH DELETE d",
+					Map.of("scope", OPERA, "chiavi", chiavi));
+			return distribuzioni.size();
+		});
+	}
+
+	/**
+	 * Calcola dalle relazioni CONTAINS le distribuzioni delle opere che non hanno il nodo
+	 * SubtypeDistribution, comprese quelle senza composti.
+	 *
+	 * @return le distribuzioni per acronimo dell'opera
+	 */
+	private Map<String, DistribuzioneSottotipi> calcolaOpereMancanti() {
+		var result = esecutore.esegui("MATCH CONTAINS opere senza distribuzione",
+				"MATCH (w:Work) "
+				+ "WHERE NOT EXISTS { MATCH (:SubtypeDistribution {scope: $scope, name: w.acronym}) } "
+				+ "OPTIONAL MATCH (w)-[r:CONTAINS]->(n:NominalCompound) "
+				+ "RETURN w.acronym AS acronimo, n.type AS tipologia, n.subtype AS sottotipologia, "
+				+ "count(r) AS composti, coalesce(sum(r.occurrences), 0) AS occorrenze",
+				Map.of("scope", OPERA));
+		Map<String, DistribuzioneSottotipi> opere = new HashMap<>();
+		for (Record record : result) {
+			DistribuzioneSottotipi opera = opere.computeIfAbsent(record.get("acronimo").asString(),
+					acronimo -> new DistribuzioneSottotipi());
+			if (!record.get("tipologia").isNull() && !record.get("sottotipologia").isNull()) {
+				opera.aggiungi(record.get("tipologia").asString(), record.get("sottotipologia").asString(),
+						record.get("composti").asLong(), record.get("occorrenze").asLong());
+			}
+		}
+		return opere;
+	}
+
+	/**
+	 * Legge la distribuzione di un'opera dalle liste parallele del suo nodo.
+	 *
+	 * @param record il record con le liste tipologie, sottotipologie, composti e occorrenze
+	 * @return la distribuzione dell'opera
+	 */
+	private static DistribuzioneSottotipi leggi(Record record) {
+		DistribuzioneSottotipi distribuzione = new DistribuzioneSottotipi();
+		List<String> tipologie = record.get("tipologie").asList(Value::asString);
+		List<String> sottotipologie = record.get("sottotipologie").asList(Value::asString);
+		List<Long> composti = record.get("composti").asList(Value::asLong);
+		List<Long> occorrenze = record.get("occorrenze").asList(Value::asLong);
+		for (int i = 0; i < sottotipologie.size(); i++) {
+			distribuzione.aggiungi(tipologie.get(i), sottotipologie.get(i), composti.get(i), occorrenze.get(i));
+		}
+		return distribuzione;
+	}
+
+	private static void aggiungi(Map<String, DistribuzioneSottotipi> distribuzioni, Value valore,
+			DistribuzioneSottotipi opera) {
+		distribuzioni.computeIfAbsent(valore.asString(), v -> new DistribuzioneSottotipi()).aggiungi(opera);
+	}
+
+	private static Map<String, Object> getParametri(String scope, String name,
+			DistribuzioneSottotipi distribuzione) {
+		Map<String, Object> parametri = new HashMap<>(distribuzione.getProprieta());
+		parametri.put("scope", scope);
+		parametri.put("name", name);
+		return parametri;
+	}
+
+}
@@ -0,0 +1,29 @@
+package it.gt.tesi.compostinominali;
+
+/**
+ * L'ambito di un'interrogazione sul corpus: l'insieme delle opere di cui si contano i 
+ * composti. Corrisponde alle colonne A, B, C e D delle query incrociate di Cypher_queries.md.
+ */
+public enum Ambito {
+	
+	/**
+	 * Un'opera, individuata dall'acronimo (la proprietà acronym di Work).
+	 */
+	OPERA,
+	
+	/**
+	 * Tutte le opere di un autore, individuato dal nome (la proprietà name di Author).
+	 */
+	AUTORE,
+	
+	/**
+	 * Tutte le opere di un sottogenere letterario (la proprietà subgenre di Work).
+	 */
+	SOTTOGENERE,
+	
+	/**
+	 * Tutte le opere di un genere letterario (la proprietà genre di Work).
+	 */
+	GENERE
+
+}
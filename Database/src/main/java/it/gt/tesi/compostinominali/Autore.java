@@ -1,38 +1,62 @@
 package it.gt.tesi.compostinominali;
 
+import java.util.Objects;
+
 /**
- * La classe che contiene le informazioni su un dato autore, ovvero nome,
- * secolo di nascita e secolo di morte. 
- * Contiene getter/setter per le proprietà dell'autore.
+ * La classe immutabile che contiene le informazioni su un dato autore, ovvero nome,
+ * secolo di nascita e secolo di morte. Due autori con le stesse informazioni sono
+ * uguali, così l'autore di più opere può essere condiviso con un {@link DizionarioValori}.
  */
-public class Autore {
-	
-	private String nome;
-	private int secoloNascita;
-	private int secoloMorte;
-	
+public final class Autore {
+
+	private final String nome;
+	private final int secoloNascita;
+	private final int secoloMorte;
+
+	public Autore(String nome, int secoloNascita, int secoloMorte) {
+		this.nome = nome;
+		this.secoloNascita = secoloNascita;
+		this.secoloMorte = secoloMorte;
+	}
+
 	public String getNome() {
 		return nome;
 	}
-	
-	public void setNome(String nome) {
-		this.nome = nome;
-	}
-	
+
 	public int getSecoloNascita() {
 		return secoloNascita;
 	}
-	
-	public void setSecoloNascita(int secoloNascita) {
-		this.secoloNascita = secoloNascita;
-	}
-	
+
 	public int getSecoloMorte() {
 		return secoloMorte;
 	}
-	
-	public void setSecoloMorte(int secoloMorte) {
-		this.secoloMorte = secoloMorte;
+
+	/**
+	 * Restituisce l'autore con il nome canonico del dizionario.
+	 *
+	 * @param dizionario il dizionario dei valori
+	 * @return l'autore canonico uguale a questo
+	 */
+	public Autore conValoriCanonici(DizionarioValori dizionario) {
+		return dizionario.canonico(new Autore(dizionario.canonico(nome), secoloNascita, secoloMorte));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Autore)) {
+			return false;
+		}
+		Autore altro = (Autore) obj;
+		return Objects.equals(nome, altro.nome) && secoloNascita == altro.secoloNascita
+				&& secoloMorte == altro.secoloMorte;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(nome, secoloNascita, secoloMorte);
 	}
 
 }
@@ -0,0 +1,75 @@
+package it.gt.tesi.compostinominali;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+
+/**
+ * La classe che tiene in memoria l'elementId dei NominalCompound presenti in DB
+ * indicizzati per lemma. Viene caricata con un'unica query dopo l'elaborazione della
+ * cartella dei composti, così le verifiche di esistenza dei composti non richiedono
+ * accessi al DB e le relazioni possono essere create a partire dall'elementId dei nodi.
+ * Dopo il caricamento la cache non viene più modificata e può essere condivisa tra thread.
+ */
+public class CacheComposti {
+	
+	private final Map<String, List<String>> idPerLemma;
+	
+	private CacheComposti(Map<String, List<String>> idPerLemma) {
+		this.idPerLemma = idPerLemma;
+	}
+	
+	/**
+	 * Carica dal DB il lemma e l'elementId di tutti i NominalCompound.
+	 * 
+	 * @param dbDriver il driver del DB
+	 * @param dbName il nome del DB
+	 * @return la cache con i composti presenti in DB
+	 */
+	public static CacheComposti carica(Driver dbDriver, String dbName) {
+		var result = new EsecutoreQuery(dbDriver, dbName).esegui("MATCH NominalCompound cache",
+				"MATCH (c:NominalCompound) RETURN c.lemma AS lemma, elementId(c) AS id", Map.of());
+		Map<String, List<String>> idPerLemma = new HashMap<>();
+		for (Record record : result) {
+			idPerLemma.computeIfAbsent(record.get("lemma").asString(), l -> new ArrayList<>(1))
+				.add(record.get("id").asString());
+		}
+		return new CacheComposti(Collections.unmodifiableMap(idPerLemma));
+	}
+	
+	/**
+	 * Restituisce true se in DB c'è almeno un composto con il lemma dato.
+	 * 
+	 * @param lemma il lemma da cercare
+	 * @return true se il composto esiste in DB, false altrimenti
+	 */
+	public boolean contiene(String lemma) {
+		return idPerLemma.containsKey(lemma);
+	}
+	
+	/**
+	 * Restituisce gli elementId dei composti con il lemma dato. Di norma il lemma 
+	 * identifica un solo composto.
+	 * 
+	 * @param lemma il lemma da cercare
+	 * @return gli elementId dei composti con quel lemma, la lista vuota se non ce ne sono
+	 */
+	public List<String> getId(String lemma) {
+		return idPerLemma.getOrDefault(lemma, List.of());
+	}
+	
+	/**
+	 * Restituisce il numero di lemmi distinti presenti nella cache.
+	 * 
+	 * @return il numero di lemmi nella cache
+	 */
+	public int size() {
+		return idPerLemma.size();
+	}
+
+}
@@ -0,0 +1,100 @@
+package it.gt.tesi.compostinominali;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+
+/**
+ * La classe che contiene il valore e il tipo di una cella di un foglio di calcolo.
+ * I metodi si comportano come quelli omonimi di {@link Cell}, così gli elaboratori
+ * possono leggere allo stesso modo le celle caricate con POI e quelle lette in streaming.
+ */
+public class CellaFoglio {
+	
+	private final CellType tipo;
+	private final CellType tipoRisultatoFormula;
+	private final String valoreStringa;
+	private final double valoreNumerico;
+	
+	/**
+	 * Costruisce una cella del tipo dato. Per le celle FORMULA il valore è quello
+	 * dell'ultimo risultato calcolato, del tipo tipoRisultatoFormula.
+	 * 
+	 * @param tipo il tipo della cella
+	 * @param tipoRisultatoFormula il tipo del risultato se la cella è una formula, null altrimenti
+	 * @param valoreStringa il valore della cella se è di tipo stringa
+	 * @param valoreNumerico il valore della cella se è di tipo numerico
+	 */
+	CellaFoglio(CellType tipo, CellType tipoRisultatoFormula, String valoreStringa, double valoreNumerico) {
+		this.tipo = tipo;
+		this.tipoRisultatoFormula = tipoRisultatoFormula;
+		this.valoreStringa = valoreStringa;
+		this.valoreNumerico = valoreNumerico;
+	}
+	
+	/**
+	 * Crea la cella a partire da una cella caricata con POI.
+	 * 
+	 * @param cell la cella di POI
+	 * @return la cella con lo stesso tipo e lo stesso valore di cell
+	 */
+	static CellaFoglio da(Cell cell) {
+		CellType tipo = cell.getCellType();
+		CellType tipoValore = tipo == CellType.FORMULA ? cell.getCachedFormulaResultType() : tipo;
+		switch (tipoValore) {
+			case STRING:
+				return new CellaFoglio(tipo, tipo == CellType.FORMULA ? tipoValore : null, 
+						cell.getStringCellValue(), 0);
+			case NUMERIC:
+				return new CellaFoglio(tipo, tipo == CellType.FORMULA ? tipoValore : null, 
+						null, cell.getNumericCellValue());
+			default:
+				return new CellaFoglio(tipo, tipo == CellType.FORMULA ? tipoValore : null, null, 0);
+		}
+	}
+	
+	public CellType getCellType() {
+		return tipo;
+	}
+	
+	/**
+	 * Restituisce il valore stringa della cella, la stringa vuota se la cella è vuota.
+	 * 
+	 * @return il valore stringa della cella
+	 * @throws IllegalStateException se la cella non contiene una stringa
+	 */
+	public String getStringCellValue() {
+		CellType tipoValore = tipo == CellType.FORMULA ? tipoRisultatoFormula : tipo;
+		if (tipoValore == CellType.BLANK) {
+			return "";
+		}
+		if (tipoValore != CellType.STRING) {
+			throw new IllegalStateException("Cannot get a STRING value from a " + tipoValore 
+					+ (tipo == CellType.FORMULA ? " formula" : "") + " cell");
+		}
+		return valoreStringa;
+	}
+	
+	/**
+	 * Restituisce il valore numerico della cella, 0 se la cella è vuota.
+	 * 
+	 * @return il valore numerico della cella
+	 * @throws IllegalStateException se la cella non contiene un numero
+	 */
+	public double getNumericCellValue() {
+		CellType tipoValore = tipo == CellType.FORMULA ? tipoRisultatoFormula : tipo;
+		if (tipoValore == CellType.BLANK) {
+			return 0;
+		}
+		if (tipoValore != CellType.NUMERIC) {
+			throw new IllegalStateException("Cannot get a NUMERIC value from a " + tipoValore 
+					+ (tipo == CellType.FORMULA ? " formula" : "") + " cell");
+		}
+		return valoreNumerico;
+	}
+
+	@Override
+	public String toString() {
+		return tipo == CellType.NUMERIC ? String.valueOf(valoreNumerico) : String.valueOf(valoreStringa);
+	}
+
+}
@@ -0,0 +1,47 @@
+package it.gt.tesi.compostinominali;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Le chiavi normalizzate con cui vengono cercati i lemmi dei composti senza distinguere
+ * maiuscole, minuscole e segni diacritici (per esempio le quantità vocaliche).
+ * Vengono salvate nei NominalCompound come proprietà lemmaNormalized e lemmaReversed,
+ * indicizzate da InizializzatoreSchema: la ricerca dei lemmi che iniziano con un prefisso
+ * diventa STARTS WITH su lemmaNormalized e quella dei lemmi che finiscono con un suffisso
+ * STARTS WITH su lemmaReversed, entrambe risolte con l'indice invece che scorrendo tutti
+ * i composti.
+ */
+public final class ChiaviLemma {
+
+	private static final Pattern SEGNI_DIACRITICI = Pattern.compile("\\p{M}+");
+
+	private ChiaviLemma() {
+	}
+
+	/**
+	 * Restituisce il lemma in minuscolo e senza segni diacritici.
+	 *
+	 * @param lemma il lemma o la parte di lemma da normalizzare
+	 * @return il lemma normalizzato, null se lemma è null
+	 */
+	public static String normalizza(String lemma) {
+		if (lemma == null) return null;
+		String scomposto = Normalizer.normalize(lemma, Normalizer.Form.NFD);
+		return SEGNI_DIACRITICI.matcher(scomposto).replaceAll("").toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Restituisce il lemma normalizzato letto dalla fine all'inizio, così i lemmi che
+	 * finiscono con un suffisso sono quelli la cui chiave inizia con il suffisso rovesciato.
+	 *
+	 * @param lemma il lemma o la parte di lemma da normalizzare
+	 * @return il lemma normalizzato e rovesciato, null se lemma è null
+	 */
+	public static String rovescia(String lemma) {
+		if (lemma == null) return null;
+		return new StringBuilder(normalizza(lemma)).reverse().toString();
+	}
+
+}
@@ -0,0 +1,130 @@
+package it.gt.tesi.compostinominali;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * La coda limitata tra il thread che legge e decodifica le righe di un foglio e il thread
+ * che le scrive in DB, così la lettura della riga successiva si sovrappone all'attesa della
+ * risposta del DB. Quando la coda è piena invia() blocca il thread di lettura finché il
+ * thread di scrittura non libera un posto, quindi in memoria non restano mai più di
+ * capacità elementi in attesa di scrittura.
+ * Il thread di scrittura elabora gli elementi uno alla volta nell'ordine di invio.
+ *
+ * @param <T> il tipo degli elementi da scrivere
+ */
+public class CodaScrittura<T> {
+
+	//l'elemento che segnala al thread di scrittura che non ci sono altri elementi
+	private static final Object FINE = new Object();
+
+	private final BlockingQueue<Object> coda;
+	private final Consumer<T> scrittura;
+	private final Thread scrittore;
+
+	//la prima eccezione non gestita dalla scrittura, rilanciata da chiudi()
+	private volatile RuntimeException errore;
+	private int volteCodaPiena;
+
+	/**
+	 * Costruisce la coda e avvia il thread di scrittura.
+	 *
+	 * @param nome il nome del thread di scrittura
+	 * @param capacita il numero massimo di elementi in attesa di scrittura
+	 * @param scrittura la scrittura di un elemento, eseguita nel thread di scrittura:
+	 * deve gestire da sé gli errori di ogni elemento
+	 *
+	 * @throws IllegalArgumentException se capacita è minore di 1 oppure se scrittura è null
+	 */
+	public CodaScrittura(String nome, int capacita, Consumer<T> scrittura) {
+		if (capacita < 1)
+			throw new IllegalArgumentException("La capacità della coda deve essere almeno 1");
+		if (scrittura == null)
+			throw new IllegalArgumentException("La scrittura non può essere null");
+		this.coda = new ArrayBlockingQueue<>(capacita);
+		this.scrittura = scrittura;
+		this.scrittore = new Thread(this::scrivi, "scrittura-" + nome);
+		this.scrittore.start();
+	}
+
+	/**
+	 * Restituisce quante volte invia() ha trovato la coda piena e ha dovuto aspettare
+	 * il thread di scrittura. Va letto dopo chiudi().
+	 *
+	 * @return il numero di attese del thread di lettura
+	 */
+	public int getVolteCodaPiena() {
+		return volteCodaPiena;
+	}
+
+	/**
+	 * Accoda l'elemento da scrivere, aspettando se la coda è piena.
+	 *
+	 * @param elemento l'elemento da scrivere
+	 *
+	 * @throws IllegalStateException se il thread viene interrotto durante l'attesa
+	 */
+	public void invia(T elemento) {
+		try {
+			if (!coda.offer(elemento)) {
+				volteCodaPiena++;
+				coda.put(elemento);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrotta l'attesa della coda di scrittura", e);
+		}
+	}
+
+	/**
+	 * Segnala che non ci sono altri elementi e aspetta che il thread di scrittura
+	 * abbia scritto tutti quelli in coda. Dopo chiudi() i campi modificati dalla
+	 * scrittura sono visibili al thread che l'ha chiamato.
+	 *
+	 * @throws IllegalStateException se il thread viene interrotto durante l'attesa
+	 * @throws RuntimeException la prima eccezione non gestita dalla scrittura
+	 */
+	public void chiudi() {
+		try {
+			coda.put(FINE);
+			scrittore.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrotta l'attesa del thread di scrittura", e);
+		}
+		if (errore != null) {
+			throw errore;
+		}
+	}
+
+	/**
+	 * Il ciclo del thread di scrittura: prende gli elementi dalla coda e li scrive
+	 * finché non trova FINE. Se la scrittura di un elemento lancia un'eccezione la
+	 * registra e continua con i successivi, così il thread di lettura non resta
+	 * bloccato sulla coda piena.
+	 */
+	@SuppressWarnings("unchecked")
+	private void scrivi() {
+		while (true) {
+			Object elemento;
+			try {
+				elemento = coda.take();
+			} catch (InterruptedException e) {
+				errore = new IllegalStateException("Interrotto il thread di scrittura", e);
+				return;
+			}
+			if (elemento == FINE) {
+				return;
+			}
+			try {
+				scrittura.accept((T) elemento);
+			} catch (RuntimeException e) {
+				if (errore == null) {
+					errore = e;
+				}
+			}
+		}
+	}
+
+}
@@ -1,40 +1,87 @@
 package it.gt.tesi.compostinominali;
 
+import java.util.Arrays;
+import java.util.Objects;
+
 import org.apache.commons.lang3.StringUtils;
 
 /**
- * La classe che contiene le proprietà di un composto nominale, ovvero lemma,
- * tipologia, sottotipologia, l'originale greco e occorrenze del composto nominale nell'opera data.
- * Contiene getter/setter delle proprietà su elencate.
+ * La classe immutabile che contiene le proprietà di un composto nominale, ovvero lemma,
+ * tipologia, sottotipologia, l'originale greco, i membri e occorrenze del composto
+ * nominale nell'opera data.
+ * I metodi con... restituiscono un nuovo composto con le proprietà cambiate. Due composti
+ * con le stesse proprietà sono uguali, così lo stesso composto di più opere può essere
+ * condiviso con un {@link DizionarioValori}.
  */
-public class Composto {
-	
-	private String lemma;
-	private String categoriaMorfologica;
-	private String tipologia;
-	private String sottotipologia;
-	private String originaleGreco;
-	private int occorrenze;
-	
+public final class Composto {
+
+	private final String lemma;
+	private final String categoriaMorfologica;
+	private final String tipologia;
+	private final String sottotipologia;
+	private final String originaleGreco;
+	private final int occorrenze;
+	private final Membro[] membri;
+
+	/**
+	 * Costruisce il composto di una riga di un foglio opera o del foglio dei doppioni.
+	 *
+	 * @param lemma il lemma del composto
+	 * @param occorrenze le occorrenze del composto nell'opera, 0 se non ci sono
+	 */
+	public Composto(String lemma, int occorrenze) {
+		this(lemma, null, null, null, null, occorrenze, null);
+	}
+
+	/**
+	 * Costruisce il composto di una riga del foglio dei composti, senza membri.
+	 *
+	 * @param lemma il lemma del composto
+	 * @param categoriaMorfologica la categoria morfologica del composto
+	 * @param tipologia la tipologia del composto
+	 * @param sottotipologia la sottotipologia del composto
+	 */
+	public Composto(String lemma, String categoriaMorfologica, String tipologia, String sottotipologia) {
+		this(lemma, categoriaMorfologica, tipologia, sottotipologia, null, 0, null);
+	}
+
+	/**
+	 * Costruisce il composto con tutte le sue proprietà. L'array dei membri viene copiato.
+	 *
+	 * @param lemma il lemma del composto
+	 * @param categoriaMorfologica la categoria morfologica del composto
+	 * @param tipologia la tipologia del composto
+	 * @param sottotipologia la sottotipologia del composto
+	 * @param originaleGreco l'originale greco se il composto è un grecismo
+	 * @param occorrenze le occorrenze del composto nell'opera
+	 * @param membri i membri del composto o null se non sono stati letti
+	 */
+	public Composto(String lemma, String categoriaMorfologica, String tipologia, String sottotipologia,
+			String originaleGreco, int occorrenze, Membro[] membri) {
+		this.lemma = lemma;
+		this.categoriaMorfologica = categoriaMorfologica;
+		this.tipologia = tipologia;
+		this.sottotipologia = sottotipologia;
+		this.originaleGreco = originaleGreco;
+		this.occorrenze = occorrenze;
+		this.membri = membri != null ? membri.clone() : null;
+	}
+
 	/**
 	 * Restituisce true se mancano il lemma, la categoria morfologica, la tipologia e la sottotipologia;
 	 * false se ci sono tutte e quattro.
-	 * 
+	 *
 	 * @return true se manca il lemma, la catergoria morfologica, la tipologia e la sottotipologia; false altrimenti
 	 */
 	public boolean isEmpty() {
-		return StringUtils.isEmpty(lemma) && StringUtils.isEmpty(categoriaMorfologica) && 
+		return StringUtils.isEmpty(lemma) && StringUtils.isEmpty(categoriaMorfologica) &&
 				StringUtils.isEmpty(tipologia) && StringUtils.isEmpty(sottotipologia);
 	}
-	
+
 	public String getOriginaleGreco() {
 		return originaleGreco;
 	}
 
-	public void setOriginaleGreco(String originaleGreco) {
-		this.originaleGreco = originaleGreco;
-	}
-
 	@Override
 	public String toString() {
 		return "Composto [lemma=" + lemma + ", tipologia=" + tipologia + ", sottotipologia=" + sottotipologia
@@ -45,51 +92,138 @@ public class Composto {
 		return occorrenze;
 	}
 
-	public void setOccorrenze(int occorrenze) {
-		this.occorrenze = occorrenze;
-	}
-
 	public String getLemma() {
 		return lemma;
 	}
-	
-	public void setLemma(String lemma) {
-		this.lemma = lemma;
+
+	/**
+	 * Restituisce il lemma in minuscolo e senza segni diacritici, la chiave con cui
+	 * il composto viene cercato senza distinguere maiuscole e minuscole.
+	 *
+	 * @return il lemma normalizzato
+	 */
+	public String getLemmaNormalizzato() {
+		return ChiaviLemma.normalizza(lemma);
 	}
-	
+
+	/**
+	 * Restituisce il lemma normalizzato e rovesciato, la chiave con cui il composto
+	 * viene cercato per la fine del lemma.
+	 *
+	 * @return il lemma normalizzato e rovesciato
+	 */
+	public String getLemmaRovesciato() {
+		return ChiaviLemma.rovescia(lemma);
+	}
+
 	public String getTipologia() {
 		return tipologia;
 	}
-	
-	public void setTipologia(String tipologia) {
-		this.tipologia = tipologia;
-	}
-	
+
 	public String getSottotipologia() {
 		return sottotipologia;
 	}
-	
-	public void setSottotipologia(String sottotipologia) {
-		this.sottotipologia = sottotipologia;
-	}
 
 	/**
-	 * Restituisce true se il composto nominale ha tipologica "Grecism" e 
+	 * Restituisce true se il composto nominale ha tipologica "Grecism" e
 	 * sottotipologia "Gr", false altrimenti. I controlli sono case insensitive.
-	 *  
+	 *
 	 * @return true se il Composto è un grecismo, false altrimenti
 	 */
 	public boolean isGrecismo() {
-		return "Grecism".equalsIgnoreCase(tipologia) 
+		return "Grecism".equalsIgnoreCase(tipologia)
 				&& "Gr".equalsIgnoreCase(sottotipologia);
 	}
 
+	/**
+	 * Restituisce una copia dei membri del composto letti dal foglio dei composti:
+	 * l'elemento i-esimo è il membro in posizione i + 1 e può essere vuoto.
+	 *
+	 * @return i membri del composto o null se non sono stati letti
+	 */
+	public Membro[] getMembri() {
+		return membri != null ? membri.clone() : null;
+	}
+
 	public String getCategoriaMorfologica() {
 		return categoriaMorfologica;
 	}
 
-	public void setCategoriaMorfologica(String categoriaMorfologica) {
-		this.categoriaMorfologica = categoriaMorfologica;
+	/**
+	 * Restituisce questo composto con il lemma latino e l'originale greco dati.
+	 *
+	 * @param lemma il lemma latino del composto
+	 * @param originaleGreco l'originale greco del composto
+	 * @return il nuovo composto
+	 */
+	public Composto conLemmaEOriginaleGreco(String lemma, String originaleGreco) {
+		return new Composto(lemma, categoriaMorfologica, tipologia, sottotipologia,
+				originaleGreco, occorrenze, membri);
+	}
+
+	/**
+	 * Restituisce questo composto con i membri dati.
+	 *
+	 * @param membri i membri del composto
+	 * @return il nuovo composto
+	 */
+	public Composto conMembri(Membro[] membri) {
+		return new Composto(lemma, categoriaMorfologica, tipologia, sottotipologia,
+				originaleGreco, occorrenze, membri);
+	}
+
+	/**
+	 * Restituisce questo composto con le occorrenze date.
+	 *
+	 * @param occorrenze le occorrenze del composto nell'opera
+	 * @return il nuovo composto
+	 */
+	public Composto conOccorrenze(int occorrenze) {
+		return new Composto(lemma, categoriaMorfologica, tipologia, sottotipologia,
+				originaleGreco, occorrenze, membri);
+	}
+
+	/**
+	 * Restituisce il composto con i valori e i membri canonici del dizionario.
+	 *
+	 * @param dizionario il dizionario dei valori
+	 * @return il composto canonico uguale a questo
+	 */
+	public Composto conValoriCanonici(DizionarioValori dizionario) {
+		Membro[] membriCanonici = null;
+		if (membri != null) {
+			membriCanonici = new Membro[membri.length];
+			for (int i = 0; i < membri.length; i++) {
+				membriCanonici[i] = membri[i] != null ? membri[i].conValoriCanonici(dizionario) : null;
+			}
+		}
+		return dizionario.canonico(new Composto(dizionario.canonico(lemma),
+				dizionario.canonico(categoriaMorfologica), dizionario.canonico(tipologia),
+				dizionario.canonico(sottotipologia), dizionario.canonico(originaleGreco),
+				occorrenze, membriCanonici));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Composto)) {
+			return false;
+		}
+		Composto altro = (Composto) obj;
+		return occorrenze == altro.occorrenze && Objects.equals(lemma, altro.lemma)
+				&& Objects.equals(categoriaMorfologica, altro.categoriaMorfologica)
+				&& Objects.equals(tipologia, altro.tipologia)
+				&& Objects.equals(sottotipologia, altro.sottotipologia)
+				&& Objects.equals(originaleGreco, altro.originaleGreco)
+				&& Arrays.equals(membri, altro.membri);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(lemma, categoriaMorfologica, tipologia, sottotipologia,
+				originaleGreco, occorrenze) * 31 + Arrays.hashCode(membri);
 	}
 
 }
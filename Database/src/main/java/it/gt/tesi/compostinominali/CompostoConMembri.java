@@ -0,0 +1,49 @@
+package it.gt.tesi.compostinominali;
+
+/**
+ * Un composto nominale con il primo e il secondo membro, come lo restituiscono le query
+ * sui membri e sull'inizio e la fine dei composti di Cypher_queries.md. È immutabile.
+ */
+public class CompostoConMembri {
+	
+	private final String lemma;
+	private final String primoMembro;
+	private final String secondoMembro;
+	private final String tipologia;
+	private final String sottotipologia;
+	
+	public CompostoConMembri(String lemma, String primoMembro, String secondoMembro,
+			String tipologia, String sottotipologia) {
+		this.lemma = lemma;
+		this.primoMembro = primoMembro;
+		this.secondoMembro = secondoMembro;
+		this.tipologia = tipologia;
+		this.sottotipologia = sottotipologia;
+	}
+
+	public String getLemma() {
+		return lemma;
+	}
+
+	public String getPrimoMembro() {
+		return primoMembro;
+	}
+
+	public String getSecondoMembro() {
+		return secondoMembro;
+	}
+
+	public String getTipologia() {
+		return tipologia;
+	}
+
+	public String getSottotipologia() {
+		return sottotipologia;
+	}
+	
+	@Override
+	public String toString() {
+		return lemma + " | " + primoMembro + " | " + secondoMembro + " | " + tipologia + " | " + sottotipologia;
+	}
+
+}
@@ -0,0 +1,74 @@
+package it.gt.tesi.compostinominali;
+
+import java.util.List;
+
+/**
+ * La tabella delle query incrociate di Cypher_queries.md: per ogni sottotipologia, 
+ * nell'ordine fisso delle query con i valori zero, il numero di relazioni CONTAINS in 
+ * ciascuno degli ambiti confrontati. È immutabile.
+ */
+public class ConfrontoSottotipi {
+	
+	private final List<String> sottotipologie;
+	private final List<String> colonne;
+	private final int[][] conteggi;
+	
+	/**
+	 * Costruisce la tabella.
+	 * 
+	 * @param sottotipologie le sottotipologie, una per riga
+	 * @param colonne i nomi degli ambiti confrontati, uno per colonna
+	 * @param conteggi i conteggi per riga e per colonna, che non vengono copiati
+	 */
+	public ConfrontoSottotipi(List<String> sottotipologie, List<String> colonne, int[][] conteggi) {
+		this.sottotipologie = List.copyOf(sottotipologie);
+		this.colonne = List.copyOf(colonne);
+		this.conteggi = conteggi;
+	}
+
+	public List<String> getSottotipologie() {
+		return sottotipologie;
+	}
+
+	public List<String> getColonne() {
+		return colonne;
+	}
+	
+	/**
+	 * Restituisce il numero di relazioni CONTAINS della sottotipologia nell'ambito dato.
+	 * 
+	 * @param riga l'indice della sottotipologia
+	 * @param colonna l'indice dell'ambito
+	 * @return il conteggio
+	 */
+	public int getConteggio(int riga, int colonna) {
+		return conteggi[riga][colonna];
+	}
+	
+	/**
+	 * Restituisce i conteggi di una sottotipologia in tutti gli ambiti.
+	 * 
+	 * @param sottotipologia la sottotipologia
+	 * @return una copia dei conteggi nell'ordine delle colonne, null se la 
+	 * sottotipologia non è tra le righe
+	 */
+	public int[] getConteggi(String sottotipologia) {
+		int riga = sottotipologie.indexOf(sottotipologia);
+		return riga < 0 ? null : conteggi[riga].clone();
+	}
+	
+	/**
+	 * Restituisce il totale di una colonna.
+	 * 
+	 * @param colonna l'indice dell'ambito
+	 * @return la somma dei conteggi della colonna
+	 */
+	public int getTotale(int colonna) {
+		int totale = 0;
+		for (int[] riga : conteggi) {
+			totale += riga[colonna];
+		}
+		return totale;
+	}
+
+}
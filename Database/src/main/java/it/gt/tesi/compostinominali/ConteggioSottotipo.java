@@ -0,0 +1,43 @@
+package it.gt.tesi.compostinominali;
+
+/**
+ * Il numero di relazioni CONTAINS verso i composti di una sottotipologia in un ambito,
+ * con la percentuale sul totale dell'ambito arrotondata a due decimali, come lo 
+ * restituiscono le query dei tipi di composti di Cypher_queries.md. È immutabile.
+ */
+public class ConteggioSottotipo {
+	
+	private final String tipologia;
+	private final String sottotipologia;
+	private final int occorrenze;
+	private final double percentuale;
+	
+	public ConteggioSottotipo(String tipologia, String sottotipologia, int occorrenze, double percentuale) {
+		this.tipologia = tipologia;
+		this.sottotipologia = sottotipologia;
+		this.occorrenze = occorrenze;
+		this.percentuale = percentuale;
+	}
+
+	public String getTipologia() {
+		return tipologia;
+	}
+
+	public String getSottotipologia() {
+		return sottotipologia;
+	}
+
+	public int getOccorrenze() {
+		return occorrenze;
+	}
+
+	public double getPercentuale() {
+		return percentuale;
+	}
+	
+	@Override
+	public String toString() {
+		return tipologia + " | " + sottotipologia + " | " + occorrenze + " | " + percentuale;
+	}
+
+}
@@ -0,0 +1,60 @@
+package it.gt.tesi.compostinominali;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * La classe che contiene in memoria tutti i dati letti dai fogli di calcolo: i composti
+ * nominali con i loro membri, le righe dei doppioni e le opere con autore e occorrenze
+ * dei composti. Si costruisce con {@link LettoreCorpus} senza usare il DB.
+ */
+public class Corpus {
+	
+	private final List<Composto> composti = new ArrayList<>();
+	private final List<List<String>> doppioni = new ArrayList<>();
+	private final List<Opera> opere = new ArrayList<>();
+	
+	/**
+	 * Restituisce i composti del foglio dei composti nell'ordine delle righe.
+	 * 
+	 * @return la lista modificabile dei composti
+	 */
+	public List<Composto> getComposti() {
+		return composti;
+	}
+	
+	/**
+	 * Restituisce le righe del foglio dei doppioni: ogni elemento contiene i lemmi 
+	 * di una riga, il primo è il composto e gli altri sono i suoi doppioni.
+	 * 
+	 * @return la lista modificabile delle righe dei doppioni
+	 */
+	public List<List<String>> getDoppioni() {
+		return doppioni;
+	}
+	
+	/**
+	 * Restituisce le opere nell'ordine dei file.
+	 * 
+	 * @return la lista modificabile delle opere
+	 */
+	public List<Opera> getOpere() {
+		return opere;
+	}
+	
+	/**
+	 * Restituisce l'insieme dei lemmi dei composti.
+	 * 
+	 * @return i lemmi dei composti
+	 */
+	public Set<String> getLemmi() {
+		Set<String> lemmi = new HashSet<>();
+		for (Composto composto : composti) {
+			lemmi.add(composto.getLemma());
+		}
+		return lemmi;
+	}
+
+}
@@ -0,0 +1,256 @@
+package it.gt.tesi.compostinominali;
+
+import java.util.Iterator;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.ss.usermodel.CellType;
+
+/**
+ * La classe che decodifica le righe dei fogli di calcolo nei composti nominali, nei membri,
+ * nelle opere e negli autori, con i controlli sui dati presenti nelle celle. È usata sia
+ * dagli elaboratori che scrivono in DB sia dalle elaborazioni che non usano il DB.
+ */
+public final class DecodificatoreRighe {
+	
+	/**
+	 * Il numero massimo di membri di un composto nominale nel foglio dei composti.
+	 */
+	public static final int NUMERO_MAX_MEMBRI = 4;
+	
+	private DecodificatoreRighe() {
+	}
+	
+	/**
+	 * Recupera il Composto (oggetto che contiene lemma, categoria morfologica, tipologia e 
+	 * sottotipologia) che si trova nella riga row del foglio dei composti.
+	 * 
+	 * @param row la riga contenente lemma, categoria morfologica, tipologia e sottotipologia
+	 * @return l'oggetto Composto della riga row 
+	 */
+	public static Composto getComposto(RigaFoglio row) {
+		  String lemma = row.getCell(0) != null ? row.getCell(0).getStringCellValue() : null;
+		  String catLemma = row.getCell(1) != null ? row.getCell(1).getStringCellValue() : null;
+		  String tipologia = row.getCell(2) != null ? row.getCell(2).getStringCellValue() : null;
+		  String sottotipologia = null;
+		  if (row.getCell(3) != null && row.getCell(3).getCellType() == CellType.STRING) {
+				sottotipologia = row.getCell(3).getStringCellValue();
+		  } else if (row.getCell(3) != null && row.getCell(3).getCellType() == CellType.NUMERIC) {
+				sottotipologia = String.valueOf(Double.valueOf(row.getCell(3).getNumericCellValue()).intValue());
+		  }
+		  if (lemma == null && (catLemma != null || tipologia != null || sottotipologia != null)) {
+			  throw new IllegalArgumentException("Manca il lemma");
+		  }
+		  if (catLemma == null && (lemma != null || tipologia != null || sottotipologia != null)) {
+			  throw new IllegalArgumentException("Manca la catergoria morforlogica");
+		  }
+		  Composto composto = new Composto(lemma, catLemma, tipologia, sottotipologia);
+		  if (tipologia == null && !composto.isEmpty()) {
+			  throw new IllegalArgumentException("Manca la tipologia");
+		  }
+		  if (sottotipologia == null && !composto.isEmpty()) {
+			  throw new IllegalArgumentException("Manca la sottotipologia");
+		  }
+		  return composto;
+	}
+	
+	/**
+	 * Controlla che il lemma del composto sia del tipo "latino (greco)" se e solo se il 
+	 * composto è un grecismo e, in questo caso, separa le due componenti del lemma.
+	 * 
+	 * @param composto il composto letto dal foglio dei composti
+	 * @return il composto con il lemma separato se è un grecismo, composto altrimenti
+	 * @throws IllegalStateException se il lemma non è coerente con la tipologia del composto
+	 */
+	public static Composto gestisciGrecismo(Composto composto) {
+		if (composto.getLemma().contains(" (")) {
+			if (!composto.isGrecismo()) {
+				throw new IllegalStateException("Il composto dovrebbe essere un grecismo");
+			}
+			//i lemmi dei grecismi sono del tipo "latino (greco)" e vanno separati
+			return separaLemmaGrecismo(composto);
+		} else if (composto.isGrecismo()) {
+			throw new IllegalStateException("Grecismo a cui manca l'originale greco");
+		}
+		return composto;
+	}
+
+	/**
+	 * Separa il lemma del grecismo nelle sue due componenti, latino e greco
+	 * e le assegna al lemma e all'orignaleGreco rispettivamente.
+	 * 
+	 * @param composto il composto in cui separare il lemma
+	 * @return il composto con il lemma latino e l'originale greco
+	 */
+	public static Composto separaLemmaGrecismo(Composto composto) {
+		String lemma = composto.getLemma();
+		int posLeftParentesi = lemma.indexOf(" (", 0);
+		int posRightParentesi = lemma.indexOf(')', posLeftParentesi);
+		return composto.conLemmaEOriginaleGreco(lemma.substring(0, posLeftParentesi),
+				lemma.substring(posLeftParentesi + 2, posRightParentesi));
+	}
+	
+	/**
+	 * Recupera tutti i membri della riga row del foglio dei composti. 
+	 * L'elemento i-esimo è il membro in posizione i + 1 e può essere vuoto.
+	 * 
+	 * @param row la riga del foglio dei composti
+	 * @return i membri della riga
+	 */
+	public static Membro[] getMembri(RigaFoglio row) {
+		Membro[] membri = new Membro[NUMERO_MAX_MEMBRI];
+		for (int i = 1; i <= NUMERO_MAX_MEMBRI; i++) {
+			membri[i - 1] = getMembro(row, 2 + i * 2);
+		}
+		return membri;
+	}
+
+	/**
+	 * Recupera il Membro (oggetto che contiene lemma e categoria morfologica) che si 
+	 * trova alla colonna posCompostoMembro. Nota: il Membro può essere vuoto se manca
+	 * il lemma e la categoria morfologica.
+	 * 
+	 * @param row la riga contenente lemma e categoria morfologica
+	 * @param posMembro la posizione della colonna in cui si trovano i dati
+	 * @return l'oggetto Membro della riga row alla poszione posMembro
+	 * e posMembro + 1
+	 */
+	public static Membro getMembro(RigaFoglio row, int posMembro) {
+		  String lemma = row.getCell(posMembro) != null ?
+				  row.getCell(posMembro).getStringCellValue() : null;
+		  String catLemma = row.getCell(posMembro + 1) != null ?
+				  row.getCell(posMembro + 1).getStringCellValue() : null;
+		  if (lemma == null && catLemma != null) {
+			  throw new IllegalArgumentException("Mamca il lemma del membro");
+		  }
+		  if (lemma != null && catLemma == null) {
+			  throw new IllegalArgumentException("Mamca la catergoria morfologica del membro");
+		  }
+		  return new Membro(lemma, catLemma);
+	}
+	
+	/**
+	 * Recupera il composto che si trova alla colonna i-esima della riga row
+	 * del foglio dei doppioni.
+	 * 
+	 * @param row la riga do recuperare il composto
+	 * @param i l'indice della colonna dove recuperare il composto
+	 * @return il composto alla riga row e alla i-esima colonna
+	 */
+	public static Composto getCompostoDoppione(RigaFoglio row, int i) {
+		return new Composto(getStringCellValue(row.getCell(i)), 0);
+	}
+
+	/**
+	 * Recupera l'indice su base zero della prima colonna vuota della riga
+	 * row dei doppioni.
+	 * 
+	 * @param row la riga su cui ci sono i composti
+	 * @return l'indice su base zero della prima colonna che è vuota
+	 */
+	public static int getEmptyColIndex(RigaFoglio row) {
+		return row.getLastCellNum();
+	}
+	
+	/**
+	 * Recupera il Composto di un foglio opera che ha il dato lemma e il dato numero 
+	 * di occorrenze.
+	 * 
+	 * @param row la riga dove si trova il composto
+	 * @return il composto alla riga row
+	 */
+	public static Composto getCompostoOpera(RigaFoglio row) {
+		Composto composto = new Composto(getStringCellValue(row.getCell(0)), 
+				getIntCellValue(row.getCell(1)));
+		if (composto.getOccorrenze() <= 0 && !composto.isEmpty()) {
+			throw new IllegalArgumentException("Mancano le occorrenze");
+		}
+		return composto;
+	}
+
+	/**
+	 * Recupera l'autore dal foglio di calcolo dell'opera prendendo nome, secolo di 
+	 * nascita e secolo di morte. Manda avanti rowIterator di 1.
+	 * 
+	 * @param rowIterator l'iterator che contiene la riga dove si trovano i dati dell'autore
+	 * @return l'autore del foglio di calcolo
+	 */
+	public static Autore getAutore(Iterator<RigaFoglio> rowIterator) {
+		RigaFoglio row = rowIterator.next();
+		Autore autore = new Autore(getStringCellValue(row.getCell(0)), 
+				getIntCellValue(row.getCell(1)), getIntCellValue(row.getCell(2)));
+		if (StringUtils.isEmpty(autore.getNome())) {
+			throw new IllegalArgumentException("Manca il nome dell'autore");
+		}
+		if (autore.getSecoloNascita() == 0) {
+			throw new IllegalArgumentException("Secolo nascita autore errato");
+		}
+		if (autore.getSecoloMorte() == 0) {
+			throw new IllegalArgumentException("Secolo morte autore errato");
+		}
+		return autore;
+	}
+
+	/**
+	 * Recupera l'oggetto Opera del foglio di calcolo leggendo titolo, genere e sottogenere.
+	 * Incrementa di due rowIterator
+	 * 
+	 * @param rowIterator l'iterator che contiene le righe coi dati dell'opera
+	 * @return l'opera recuperata
+	 */
+	public static Opera getOpera(Iterator<RigaFoglio> rowIterator) {
+		RigaFoglio row = rowIterator.next();
+		String titolo = getStringCellValue(row.getCell(0));
+		String abbreviazione = getStringCellValue(row.getCell(1));
+		row = rowIterator.next();
+		Opera opera = new Opera(titolo, abbreviazione, 
+				getStringCellValue(row.getCell(0)), getStringCellValue(row.getCell(1)));
+		if (StringUtils.isEmpty(opera.getTitolo())) {
+			throw new IllegalArgumentException("Manca il titolo dell'opera");
+		}
+		if (StringUtils.isEmpty(opera.getAbbreviazione())) {
+			throw new IllegalArgumentException("Manca l'abbreviazione dell'autore");
+		}
+		if (StringUtils.isEmpty(opera.getGenere())) {
+			throw new IllegalArgumentException("Manca il genere dell'opera");
+		}
+		if (StringUtils.isEmpty(opera.getSottogenere())) {
+			throw new IllegalArgumentException("Manca il sottogenere dell'opera");
+		}
+		return opera;
+	}
+	
+	/**
+	 * Restituisce il valore di cell come stringa o null se cell è null.
+	 * 
+	 * @param cell la cella da cui prendere il valore stringa
+	 * @return il valore di cell come stringa o null se cell è null
+	 */
+	public static String getStringCellValue(CellaFoglio cell) {
+		return cell != null ? cell.getStringCellValue() : null;
+	}
+	
+	/**
+	 * Restituisce il valore della cella cell come intero. Se cell è null
+	 * o ha CellType.BLANK restituisce 0. Solleva un'eccezione se CellType
+	 * non è NUMERIC, STRING o BLANK.
+	 * 
+	 * @param cell la cella da cui recuperare i valore
+	 * @return il valore della cella come intero
+	 */
+	public static int getIntCellValue(CellaFoglio cell) {
+		if (cell == null) {
+			return 0;
+		}
+		if (cell.getCellType() == CellType.NUMERIC) {
+			return Double.valueOf(cell.getNumericCellValue()).intValue();
+		}
+		if (cell.getCellType() == CellType.STRING) {
+			return Integer.valueOf(cell.getStringCellValue());
+		}
+		if (cell.getCellType() == CellType.BLANK) {
+			return 0;
+		}
+		throw new IllegalArgumentException("Tipo di cella non riconosciuta " + cell.getCellType());
+	}
+
+}
@@ -0,0 +1,109 @@
+package it.gt.tesi.compostinominali;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * La distribuzione per tipologia e sottotipologia dei composti di un ambito (un'opera,
+ * un autore, un sottogenere o un genere): per ogni coppia (tipologia, sottotipologia) il
+ * numero di relazioni CONTAINS verso i composti della coppia e la somma delle loro occorrenze.
+ * Viene calcolata in memoria durante l'importazione e scritta in DB da AggregatoreSottotipi.
+ * Non è thread-safe.
+ */
+public class DistribuzioneSottotipi {
+
+	//per sottotipologia e poi per tipologia: relazioni CONTAINS e somma delle occorrenze
+	private final Map<String, Map<String, long[]>> conteggi = new HashMap<>();
+	private long totaleComposti;
+	private long totaleOccorrenze;
+
+	/**
+	 * Aggiunge alla distribuzione relazioni CONTAINS verso i composti della coppia data.
+	 *
+	 * @param tipologia la tipologia dei composti
+	 * @param sottotipologia la sottotipologia dei composti
+	 * @param composti il numero di relazioni CONTAINS
+	 * @param occorrenze la somma delle occorrenze delle relazioni
+	 *
+	 * @throws IllegalArgumentException se tipologia o sottotipologia sono null
+	 */
+	public void aggiungi(String tipologia, String sottotipologia, long composti, long occorrenze) {
+		if (tipologia == null || sottotipologia == null)
+			throw new IllegalArgumentException("Tipologia e sottotipologia non possono essere null");
+		if (composti == 0) {
+			return;
+		}
+		long[] conteggio = conteggi.computeIfAbsent(sottotipologia, s -> new TreeMap<>())
+				.computeIfAbsent(tipologia, t -> new long[2]);
+		conteggio[0] += composti;
+		conteggio[1] += occorrenze;
+		totaleComposti += composti;
+		totaleOccorrenze += occorrenze;
+	}
+
+	/**
+	 * Aggiunge alla distribuzione tutti i conteggi di un'altra distribuzione.
+	 *
+	 * @param altra la distribuzione da sommare a questa
+	 */
+	public void aggiungi(DistribuzioneSottotipi altra) {
+		for (Map.Entry<String, Map<String, long[]>> sottotipologia : altra.conteggi.entrySet()) {
+			for (Map.Entry<String, long[]> tipologia : sottotipologia.getValue().entrySet()) {
+				aggiungi(tipologia.getKey(), sottotipologia.getKey(),
+						tipologia.getValue()[0], tipologia.getValue()[1]);
+			}
+		}
+	}
+
+	public long getTotaleComposti() {
+		return totaleComposti;
+	}
+
+	public long getTotaleOccorrenze() {
+		return totaleOccorrenze;
+	}
+
+	/**
+	 * Restituisce le proprietà del nodo SubtypeDistribution: le liste parallele types,
+	 * subtypes, compounds e occurrences e i totali totalCompounds e totalOccurrences.
+	 * Le liste iniziano con le sottotipologie di GrafoCompatto.SOTTOTIPOLOGIE nel loro
+	 * ordine fisso, presenti anche quando non ci sono composti (con tipologia vuota e
+	 * conteggi 0), e proseguono con le altre sottotipologie in ordine alfabetico; le
+	 * tipologie della stessa sottotipologia sono in ordine alfabetico.
+	 *
+	 * @return le proprietà per nome
+	 */
+	public Map<String, Object> getProprieta() {
+		List<String> tipologie = new ArrayList<>();
+		List<String> sottotipologie = new ArrayList<>();
+		List<Long> composti = new ArrayList<>();
+		List<Long> occorrenze = new ArrayList<>();
+		List<String> ordine = new ArrayList<>(GrafoCompatto.SOTTOTIPOLOGIE);
+		conteggi.keySet().stream()
+			.filter(sottotipologia -> !GrafoCompatto.SOTTOTIPOLOGIE.contains(sottotipologia))
+			.sorted()
+			.forEach(ordine::add);
+		for (String sottotipologia : ordine) {
+			Map<String, long[]> perTipologia = conteggi.get(sottotipologia);
+			if (perTipologia == null) {
+				perTipologia = Map.of("", new long[2]);
+			}
+			for (Map.Entry<String, long[]> tipologia : perTipologia.entrySet()) {
+				tipologie.add(tipologia.getKey());
+				sottotipologie.add(sottotipologia);
+				composti.add(tipologia.getValue()[0]);
+				occorrenze.add(tipologia.getValue()[1]);
+			}
+		}
+		return Map.of("types", tipologie,
+				"subtypes", sottotipologie,
+				"compounds", composti,
+				"occurrences", occorrenze,
+				"totalCompounds", totaleComposti,
+				"totalOccurrences", totaleOccorrenze);
+	}
+
+}
@@ -0,0 +1,46 @@
+package it.gt.tesi.compostinominali;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Il dizionario che restituisce, per ogni valore, l'istanza canonica dei valori uguali.
+ * Nel corpus gli stessi lemmi, categorie morfologiche, tipologie, generi, membri e
+ * autori si ripetono in migliaia di righe: ogni lettura di una cella crea però una
+ * nuova stringa, e tenerle tutte in memoria fa crescere l'heap con il numero delle
+ * righe anziché con quello dei valori distinti. Passando i valori letti per il
+ * dizionario ne resta in memoria una sola istanza, condivisa da tutti gli oggetti
+ * del modello, che sono immutabili e si possono quindi condividere senza copie.
+ * Il dizionario può essere usato da più thread insieme.
+ */
+public class DizionarioValori {
+
+	private final Map<Object, Object> canonici = new ConcurrentHashMap<>();
+
+	/**
+	 * Restituisce l'istanza canonica dei valori uguali a valore: la prima istanza
+	 * passata al dizionario. Il valore deve essere immutabile e avere equals e hashCode.
+	 *
+	 * @param <T> il tipo del valore
+	 * @param valore il valore da rendere canonico, anche null
+	 * @return l'istanza canonica uguale a valore o null se valore è null
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T canonico(T valore) {
+		if (valore == null) {
+			return null;
+		}
+		Object canonico = canonici.putIfAbsent(valore, valore);
+		return canonico != null ? (T) canonico : valore;
+	}
+
+	/**
+	 * Restituisce il numero di valori distinti presenti nel dizionario.
+	 *
+	 * @return il numero di valori canonici
+	 */
+	public int size() {
+		return canonici.size();
+	}
+
+}
@@ -1,15 +1,24 @@
 package it.gt.tesi.compostinominali;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.neo4j.driver.AuthTokens;
 import org.neo4j.driver.Driver;
 import org.neo4j.driver.GraphDatabase;
@@ -19,6 +28,11 @@ import org.neo4j.driver.GraphDatabase;
  * delle opere aggiungendo i dati in DB.
  */
 public class ElaboraFileExcelComposti {
+	
+	//i nomi delle fasi registrate nel giornale dell'importazione, oltre ai fogli del file dei composti
+	private static final String FASE_POTATURA = "potatura";
+	private static final String FASE_DOPPIONI = "doppioni";
+	private static final String FASE_DISTRIBUZIONI = "distribuzioni";
 
 	/**
 	 * Il metodo che esegue l'elaborazione dei fogli di calcolo che si trovano nella
@@ -26,9 +40,10 @@ public class ElaboraFileExcelComposti {
 	 * 
 	 * @param args gli argomenti a riga di comando, se si passano i parametri per fare
 	 * funzionare l'applicazione a riga di comando occore passare tutti e 6 i parametri
+	 * obbligatori ed eventualmente i parametri opzionali
 	 */
 	public static void main(String[] args) {
-		if (args.length != 0 && args.length != 6) {
+		if (args.length != 0 && args.length < 6 && !isSenzaDB(creaPropertiesDaArgument(args))) {
 			stampaUsoApplicazione();
 		}
 		
@@ -44,15 +59,70 @@ public class ElaboraFileExcelComposti {
 		
 		long start = System.currentTimeMillis();
 		
+		if (isValidazione(prop)) {
+			int errori = valida(prop);
+			long end = System.currentTimeMillis();
+			System.out.println("\nFine validazione");
+			System.out.println("Tempo di validazione in millisecondi: " + (end - start));
+			System.exit(errori == 0 ? 0 : 1);
+		}
+		
+		if (isEsportazioneCsv(prop)) {
+			esportaCsv(prop);
+			long end = System.currentTimeMillis();
+			System.out.println("\nFine esportazione");
+			System.out.println("Tempo di esportazione in secondi: " + Math.round(((double)(end-start)) / 1000));
+			return;
+		}
+		
 		Driver dbDriver = getDatabaseDriver(prop.getProperty("dbURI"), 
 					prop.getProperty("dbUser"), prop.getProperty("dbPassword"));
 			
-		elaboraFileComposti(dbDriver, prop);
+		ReportImportazione report = new ReportImportazione(prop);
+		
+		GiornaleImportazione giornale = apriGiornale(prop);
+		
+		inizializzaSchema(dbDriver, prop, report);
+		
+		if (isSincronizzazione(prop) && !isFaseCompletata(giornale, FASE_POTATURA)) {
+			potaGrafo(dbDriver, prop, report, giornale);
+		}
+		
+		ManifestoImportazione manifesto = isImportazioneIncrementale(prop) ? caricaManifesto(prop) : null;
+		//se l'importazione ripresa ha già importato i composti il manifesto può essere già aggiornato,
+		//ma le opere vanno rielaborate tutte lo stesso
+		boolean compostiCambiati = manifesto == null 
+				|| isCambiato(manifesto, new File(prop.getProperty("file.composti.nominali")))
+				|| isFaseCompletata(giornale, ElaboratoreCartellaComposti.FOGLIO);
+		
+		CacheComposti cacheComposti = null;
+		if (compostiCambiati) {
+			cacheComposti = elaboraFileComposti(dbDriver, prop, manifesto, report, giornale);
+		} else {
+			System.out.println("\nIl file dei composti non è cambiato dall'ultima importazione");
+			completaChiaviLemmi(dbDriver, prop);
+		}
+		if (cacheComposti == null && isCacheComposti(prop)) {
+			cacheComposti = caricaCacheComposti(dbDriver, prop, report);
+		}
+		
+		//se sono cambiati i composti vanno rielaborate tutte le opere che li contengono
+		elaboraFileOpere(dbDriver, prop, cacheComposti, compostiCambiati ? null : manifesto, manifesto, 
+				report, giornale);
 		
-		elaboraFileOpere(dbDriver, prop);
+		if (!isFaseCompletata(giornale, FASE_DISTRIBUZIONI)) {
+			aggiornaDistribuzioniSottotipi(dbDriver, prop, report, giornale);
+		}
+		
+		incrementaGenerazione(dbDriver, prop);
 		
 		dbDriver.close();	
 		
+		chiudiGiornale(giornale);
+		
+		report.stampaRiepilogo();
+		scriviReport(prop, report);
+		
 		long end = System.currentTimeMillis();
 		
 		System.out.println("\nFine elaborazione");
@@ -60,15 +130,258 @@ public class ElaboraFileExcelComposti {
 	}
 	
 	/**
-	 * Elabora tutte le opere che si trovano nella directory di input.
+	 * Legge il file dei composti e i file delle opere senza collegarsi al DB e scrive
+	 * i file CSV per neo4j-admin nella directory indicata dalla proprietà esporta.csv.
+	 * Alla fine stampa il comando neo4j-admin che crea il DB a partire dai file.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 */
+	private static void esportaCsv(Properties prop) {
+		try {
+			Corpus corpus = leggiCorpus(new LettoreCorpus(isLetturaStreaming(prop), System.out, 
+					getNumeroThread(prop)), prop);
+			
+			EsportatoreCsvNeo4jAdmin esportatore = new EsportatoreCsvNeo4jAdmin(
+					new File(prop.getProperty("esporta.csv")));
+			System.out.println("\nScrivo i file CSV nella directory " + prop.getProperty("esporta.csv"));
+			esportatore.esporta(corpus);
+			
+			System.out.println("\nPer creare il DB, con neo4j fermo, eseguire:");
+			System.out.println(esportatore.getComandoImportazione(prop.getProperty("dbName", "neo4j")));
+		} catch (Exception e) {
+			System.err.println("Qualcosa è andato storto nell'esportazione dei file CSV");
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Valida il file dei composti e i file delle opere senza collegarsi al DB, con gli 
+	 * stessi controlli dell'importazione: i lemmi dei composti vengono caricati in memoria
+	 * e i file delle opere vengono letti in parallelo con numero.thread thread. Alla fine
+	 * stampa il riepilogo degli errori per file e dei lemmi che mancano tra i composti.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 * @return il numero di errori trovati, -1 se il file dei composti non si può leggere
+	 */
+	private static int valida(Properties prop) {
+		try {
+			LettoreCorpus lettore = new LettoreCorpus(isLetturaStreaming(prop), System.out, getNumeroThread(prop));
+			Corpus corpus = leggiCorpus(lettore, prop);
+			
+			System.out.println("\nRiepilogo della validazione (file con errori / errori)");
+			int fileConErrori = 0;
+			for (var errori : lettore.getErroriPerFile().entrySet()) {
+				if (errori.getValue() > 0) {
+					System.out.println(errori.getKey() + ": " + errori.getValue());
+					fileConErrori++;
+				}
+			}
+			System.out.println("File letti: " + lettore.getErroriPerFile().size() 
+					+ ", file con errori: " + fileConErrori);
+			
+			System.out.println("\nLemmi delle opere che mancano tra i composti nominali: " 
+					+ lettore.getLemmiMancanti().size());
+			lettore.getLemmiMancanti().forEach((lemma, file) -> 
+					System.out.println(lemma + ": " + String.join(", ", file)));
+			
+			int occorrenze = 0;
+			for (Opera opera : corpus.getOpere()) {
+				occorrenze += opera.getComposti().size();
+			}
+			System.out.println("\nComposti: " + corpus.getComposti().size() 
+					+ ", opere: " + corpus.getOpere().size() 
+					+ ", righe delle occorrenze valide: " + occorrenze);
+			System.out.println(lettore.getErrori() == 0 ? "VALIDAZIONE RIUSCITA" 
+					: "VALIDAZIONE FALLITA: errori trovati " + lettore.getErrori());
+			return lettore.getErrori();
+		} catch (Exception e) {
+			System.err.println("Qualcosa è andato storto nella validazione");
+			e.printStackTrace();
+			return -1;
+		}
+	}
+	
+	/**
+	 * Legge il corpus con il lettore dato. Se è presente la proprietà opzionale 
+	 * file.istantanea il corpus viene caricato dall'istantanea quando i file non sono
+	 * cambiati, altrimenti i file vengono letti e l'istantanea viene riscritta.
+	 * 
+	 * @param lettore il lettore del corpus
+	 * @param prop le proprietà dell'applicazione
+	 * @return il corpus letto
+	 * @throws Exception se il file dei composti non si può leggere
+	 */
+	private static Corpus leggiCorpus(LettoreCorpus lettore, Properties prop) throws Exception {
+		File fileComposti = new File(prop.getProperty("file.composti.nominali"));
+		if (StringUtils.isEmpty(prop.getProperty("file.istantanea"))) {
+			return lettore.leggi(fileComposti, getFileOpere(prop));
+		}
+		return lettore.leggi(fileComposti, getFileOpere(prop), new File(prop.getProperty("file.istantanea")));
+	}
+	
+	/**
+	 * Elabora tutte le opere che si trovano nella directory di input. Se la proprietà
+	 * numero.thread è maggiore di 1 i file vengono elaborati in parallelo e i messaggi
+	 * di ogni file vengono stampati tutti insieme, nell'ordine dei file.
+	 * Alla fine stampa il riepilogo delle statistiche di ogni file.
 	 * 
 	 * @param dbDriver il driver del DB neo4j
 	 * @param prop le proprietà dell'applicazione
+	 * @param cacheComposti la cache dei composti presenti in DB, null per cercare 
+	 * i composti in DB riga per riga
+	 * @param filtro se non è null vengono elaborati solo i file cambiati rispetto a questo manifesto
+	 * @param manifesto se non è null vi vengono registrati i file elaborati correttamente
+	 * @param report il report a cui aggiungere la fase di tutte le opere e una fase per ogni file opera
+	 * @param giornale il giornale in cui registrare i file importati, può essere null; se riprende
+	 * un'importazione interrotta i file già importati non vengono elaborati di nuovo
 	 */
-	private static void elaboraFileOpere(Driver dbDriver, Properties prop) {
+	private static void elaboraFileOpere(Driver dbDriver, Properties prop, CacheComposti cacheComposti,
+			ManifestoImportazione filtro, ManifestoImportazione manifesto, ReportImportazione report,
+			GiornaleImportazione giornale) {
+		List<File> fileOpere = getFileOpere(prop);
+		if (filtro != null) {
+			int fileTotali = fileOpere.size();
+			fileOpere.removeIf(fileOpera -> !isCambiato(filtro, fileOpera));
+			System.out.println("\nFile opera cambiati dall'ultima importazione: " 
+					+ fileOpere.size() + " su " + fileTotali);
+		}
+		if (giornale != null && giornale.isRipreso()) {
+			List<File> fileImportati = new ArrayList<>();
+			for (File fileOpera : fileOpere) {
+				if (isFileCompletato(giornale, fileOpera)) {
+					fileImportati.add(fileOpera);
+				}
+			}
+			fileOpere.removeAll(fileImportati);
+			//i file importati prima dell'interruzione non erano ancora nel manifesto
+			if (manifesto != null) {
+				for (File fileOpera : fileImportati) {
+					registra(manifesto, fileOpera);
+				}
+			}
+			System.out.println("\nFile opera già importati dall'importazione ripresa: " + fileImportati.size());
+		}
+		int numeroThread = getNumeroThread(prop);
+		List<EsitoFileOpera> esiti = new ArrayList<>();
+		ReportImportazione.Fase fase = report.iniziaFase("opere", "opere");
+		
+		if (numeroThread <= 1) {
+			for (File fileOpera : fileOpere) {
+				esiti.add(elaboraFileOpera(dbDriver, prop, cacheComposti, fileOpera, 
+						System.out, System.err, report, giornale));
+			}
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(numeroThread);
+			List<Future<EsitoFileOpera>> futures = new ArrayList<>();
+			for (File fileOpera : fileOpere) {
+				futures.add(executor.submit(() -> {
+					//i messaggi di ogni file vengono raccolti per non mescolarli con quelli degli altri file
+					ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+					PrintStream out = new PrintStream(buffer, true, StandardCharsets.UTF_8);
+					EsitoFileOpera esito = elaboraFileOpera(dbDriver, prop, cacheComposti, fileOpera, 
+							out, out, report, giornale);
+					esito.messaggi = buffer.toString(StandardCharsets.UTF_8);
+					return esito;
+				}));
+			}
+			for (Future<EsitoFileOpera> future : futures) {
+				try {
+					EsitoFileOpera esito = future.get();
+					System.out.print(esito.messaggi);
+					esiti.add(esito);
+				} catch (InterruptedException | ExecutionException e) {
+					System.err.println("Qualcosa è andato storto nell'elaborazione parallela delle opere");
+					e.printStackTrace();
+				}
+			}
+			executor.shutdown();
+		}
+		
+		int righe = 0;
+		int compostiTrovati = 0;
+		int errori = 0;
+		for (EsitoFileOpera esito : esiti) {
+			righe += esito.compostiTrovati + esito.compostiVuoti + esito.errori;
+			compostiTrovati += esito.compostiTrovati;
+			errori += esito.errori;
+		}
+		fase.conContatore("fileElaborati", esiti.size())
+			.conContatore("compostiTrovati", compostiTrovati)
+			.conContatore("errori", errori)
+			.termina(righe);
+		
+		if (manifesto != null) {
+			for (EsitoFileOpera esito : esiti) {
+				if (esito.completato) {
+					registra(manifesto, esito.fileOpera);
+				}
+			}
+			salva(manifesto);
+		}
+		
+		stampaRiepilogoOpere(esiti);
+		System.out.println("\nNumero file opera elaborati: " + esiti.size());
+	}
+	
+	/**
+	 * Elabora il file di un'opera stampando i messaggi sugli stream dati.
+	 * 
+	 * @param dbDriver il driver del DB neo4j
+	 * @param prop le proprietà dell'applicazione
+	 * @param cacheComposti la cache dei composti presenti in DB, può essere null
+	 * @param fileOpera il file dell'opera da elaborare
+	 * @param out lo stream su cui stampare i messaggi dell'elaborazione
+	 * @param err lo stream su cui stampare gli errori
+	 * @param report il report a cui aggiungere la fase del file
+	 * @param giornale il giornale in cui registrare il file se è stato elaborato senza scritture
+	 * 			fallite, può essere null
+	 * @return l'esito dell'elaborazione del file
+	 */
+	private static EsitoFileOpera elaboraFileOpera(Driver dbDriver, Properties prop, 
+			CacheComposti cacheComposti, File fileOpera, PrintStream out, PrintStream err,
+			ReportImportazione report, GiornaleImportazione giornale) {
+		EsitoFileOpera esito = new EsitoFileOpera(fileOpera);
+		ReportImportazione.Fase fase = report.iniziaFase("opera", fileOpera.getName());
+		try {
+			out.println("\nElaboro il file " + fileOpera.getName());
+			
+			try (FileExcel fileExcelOpera = FileExcel.apri(fileOpera, isLetturaStreaming(prop))) {
+				ElaboratoreCartellaOpera elaboratore = new ElaboratoreCartellaOpera(dbDriver, 
+						fileExcelOpera.getFoglio(0), prop.getProperty("dbName"), out, cacheComposti, 
+						getOpzioni(prop));
+				elaboratore.elabora();
+				esito.compostiTrovati = elaboratore.getCompostiTrovati();
+				esito.compostiVuoti = elaboratore.getCompostiVuoti();
+				esito.errori = elaboratore.getErrori();
+				esito.erroriScrittura = elaboratore.getErroriScrittura();
+				//con scritture fallite il file non è completo e va rielaborato
+				esito.completato = esito.erroriScrittura == 0;
+			}
+			if (giornale != null && esito.completato) {
+				giornale.registraFile(fileOpera);
+			}
+		} catch (Exception e) {
+			err.println("Qualcosa è andato storto nell'elaborazione del file " + fileOpera.getName());
+			e.printStackTrace(err);
+		}
+		fase.conContatore("compostiTrovati", esito.compostiTrovati)
+			.conContatore("compostiVuoti", esito.compostiVuoti)
+			.conContatore("errori", esito.errori)
+			.conContatore("completato", esito.completato ? 1 : 0)
+			.termina(esito.compostiTrovati + esito.compostiVuoti + esito.errori);
+		return esito;
+	}
+	
+	/**
+	 * Restituisce i file delle opere che si trovano nella directory di input, cioè
+	 * tutti i file Excel tranne il file dei composti, ordinati per nome.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 * @return i file delle opere ordinati per nome
+	 */
+	private static List<File> getFileOpere(Properties prop) {
 		File dirInput = new File(prop.getProperty("dir.input"));
 		File fileComposti = new File(prop.getProperty("file.composti.nominali"));
-		int numFileElaborati = 0;
 		
 		File[] files = dirInput.listFiles(new FilenameFilter() {
 		    public boolean accept(File dir, String name) {
@@ -76,29 +389,36 @@ public class ElaboraFileExcelComposti {
 		        		name.toLowerCase().endsWith(".xls");
 		    }
 		});
-	
-		//per ogni file elabora l'opera
+		
+		List<File> fileOpere = new ArrayList<>();
 		for (File fileOpera : files) {
 			if (fileOpera.isFile() && !fileOpera.isHidden() && !fileOpera.equals(fileComposti)) {
-				try {
-					System.out.println("\nElaboro il file " + fileOpera.getName());
-					numFileElaborati++;
-					
-					FileInputStream streamOpera = new FileInputStream(fileOpera);
-					XSSFWorkbook workbookOpera = new XSSFWorkbook(streamOpera); 
-					
-					new ElaboratoreCartellaOpera(dbDriver, 
-							workbookOpera.getSheetAt(0), prop.getProperty("dbName")).elabora();
-					
-					workbookOpera.close();
-					streamOpera.close();
-				} catch (Exception e) {
-					System.err.println("Qualcosa è andato storto nell'elaborazione del file " + fileOpera.getName());
-					e.printStackTrace();
-				}
+				fileOpere.add(fileOpera);
+			}
+		}
+		fileOpere.sort(Comparator.comparing(File::getName));
+		return fileOpere;
+	}
+	
+	/**
+	 * Stampa una riga per ogni file opera con composti trovati, composti vuoti ed errori.
+	 * 
+	 * @param esiti gli esiti dei file opera nell'ordine in cui stamparli
+	 */
+	private static void stampaRiepilogoOpere(List<EsitoFileOpera> esiti) {
+		System.out.println("\nRiepilogo file opera (composti trovati / composti vuoti / errori)");
+		for (EsitoFileOpera esito : esiti) {
+			if (esito.completato) {
+				System.out.println(esito.nomeFile + ": " + esito.compostiTrovati + " / " 
+						+ esito.compostiVuoti + " / " + esito.errori);
+			} else if (esito.erroriScrittura > 0) {
+				System.out.println(esito.nomeFile + ": " + esito.compostiTrovati + " / " 
+						+ esito.compostiVuoti + " / " + esito.errori + " (" + esito.erroriScrittura
+						+ " SCRITTURE FALLITE, DA RIELABORARE)");
+			} else {
+				System.out.println(esito.nomeFile + ": NON ELABORATO");
 			}
 		}
-		System.out.println("\nNumero file opera elaborati: " + numFileElaborati);
 	}
 
 	/**
@@ -130,37 +450,441 @@ public class ElaboraFileExcelComposti {
 
 	/**
 	 * Elabora il file dei composti, cioè la cartella dei composti e la cartella
-	 * dei doppioni.
+	 * dei doppioni. Se la proprietà cache.composti è true, dopo la cartella dei composti
+	 * carica la cache dei composti presenti in DB e la usa per la cartella dei doppioni.
 	 * 
 	 * @param dbDriver il driver del DB neo4j
 	 * @param prop le proprietà dell'applicazione
+	 * @param manifesto se non è null vi viene registrato il file dei composti quando 
+	 * è stato elaborato correttamente
+	 * @param report il report a cui aggiungere le fasi dei composti, della cache e dei doppioni
+	 * @param giornale il giornale in cui registrare le cartelle elaborate, può essere null; se
+	 * riprende un'importazione interrotta le cartelle già elaborate vengono saltate e quella dei
+	 * composti riprende dopo l'ultima riga confermata
+	 * @return la cache dei composti presenti in DB o null se non è stata caricata
 	 */
-	private static void elaboraFileComposti(Driver dbDriver, Properties prop) {
+	private static CacheComposti elaboraFileComposti(Driver dbDriver, Properties prop, 
+			ManifestoImportazione manifesto, ReportImportazione report, GiornaleImportazione giornale) {
+		CacheComposti cacheComposti = null;
+		//il file dei composti va nel manifesto solo se tutte le scritture in DB sono riuscite
+		int erroriScrittura = 0;
 		try {
 			File fileComposti = new File(prop.getProperty("file.composti.nominali"));
-			System.out.println("Elaboro il file dei composti " + fileComposti.getName());
-			
-			FileInputStream streamComposti = new FileInputStream(fileComposti);	
-			XSSFWorkbook workbookComposti = new XSSFWorkbook(streamComposti);
+			System.out.println("\nElaboro il file dei composti " + fileComposti.getName());
 			
-			//inserisci i composti
-			System.out.println("\nElaboro la cartella dei composti");
-			new ElaboratoreCartellaComposti(dbDriver, 
-					workbookComposti.getSheetAt(0), 
-					prop.getProperty("dbName")).elabora();
-			
-			//inserisce le relazioni dei doppioni
-			System.out.println("\nElaboro la cartella dei doppioni");
-			new ElaboratoreCartellaDoppioni(dbDriver,
-					workbookComposti.getSheetAt(1),
-					prop.getProperty("dbName")).elabora();
+			try (FileExcel fileExcelComposti = FileExcel.apri(fileComposti, isLetturaStreaming(prop))) {
+				//inserisci i composti
+				if (isFaseCompletata(giornale, ElaboratoreCartellaComposti.FOGLIO)) {
+					System.out.println("\nLa cartella dei composti è già stata importata dall'importazione ripresa");
+				} else {
+					System.out.println("\nElaboro la cartella dei composti");
+					ReportImportazione.Fase faseComposti = report.iniziaFase("composti", "composti");
+					ElaboratoreCartellaComposti elaboratoreComposti = new ElaboratoreCartellaComposti(dbDriver, 
+							fileExcelComposti.getFoglio(0), 
+							prop.getProperty("dbName"),
+							getOpzioni(prop),
+							giornale);
+					elaboratoreComposti.elabora();
+					faseComposti.conContatore("compostiCreati", elaboratoreComposti.getCompostiCreati())
+						.conContatore("membriElaborati", elaboratoreComposti.getMembriElaborati())
+						.conContatore("relazioniCreate", elaboratoreComposti.getRelazioniCreate())
+						.conContatore("grecismiTrovati", elaboratoreComposti.getGrecismiTrovati())
+						.conContatore("compostiVuoti", elaboratoreComposti.getCompostiVuoti())
+						.conContatore("righeGiaImportate", elaboratoreComposti.getRigheGiaImportate())
+						.conContatore("errori", elaboratoreComposti.getErrori())
+						.termina(elaboratoreComposti.getCompostiCreati() + elaboratoreComposti.getCompostiVuoti() 
+								+ elaboratoreComposti.getErrori());
+					erroriScrittura += elaboratoreComposti.getErroriScrittura();
+					//con scritture fallite l'importazione ripresa riparte dall'ultima riga confermata
+					if (elaboratoreComposti.getErroriScrittura() == 0) {
+						registraFase(giornale, ElaboratoreCartellaComposti.FOGLIO);
+					}
+				}
+				
+				if (isCacheComposti(prop)) {
+					cacheComposti = caricaCacheComposti(dbDriver, prop, report);
+				}
+				
+				//inserisce le relazioni dei doppioni
+				if (isFaseCompletata(giornale, FASE_DOPPIONI)) {
+					System.out.println("\nLa cartella dei doppioni è già stata importata dall'importazione ripresa");
+				} else {
+					System.out.println("\nElaboro la cartella dei doppioni");
+					ReportImportazione.Fase faseDoppioni = report.iniziaFase("doppioni", "doppioni");
+					ElaboratoreCartellaDoppioni elaboratoreDoppioni = new ElaboratoreCartellaDoppioni(dbDriver,
+							fileExcelComposti.getFoglio(1),
+							prop.getProperty("dbName"), cacheComposti, getRighePerTransazione(prop));
+					elaboratoreDoppioni.elabora();
+					faseDoppioni.conContatore("righeElaborate", elaboratoreDoppioni.getRigheElaborate())
+						.conContatore("relazioniCreate", elaboratoreDoppioni.getRelazioniCreate())
+						.conContatore("errori", elaboratoreDoppioni.getErrori())
+						.termina(elaboratoreDoppioni.getRigheElaborate());
+					erroriScrittura += elaboratoreDoppioni.getErroriScrittura();
+					if (elaboratoreDoppioni.getErroriScrittura() == 0) {
+						registraFase(giornale, FASE_DOPPIONI);
+					}
+				}
+			}
 			
-			workbookComposti.close();
-			streamComposti.close();			
+			if (manifesto != null && erroriScrittura > 0) {
+				System.out.println("\nIl file dei composti non viene registrato nel manifesto per "
+						+ erroriScrittura + " scritture fallite: sarà rielaborato alla prossima importazione");
+			} else if (manifesto != null) {
+				registra(manifesto, fileComposti);
+				salva(manifesto);
+			}
 		} catch (Exception e) {
 			System.err.println("Qualcosa è andato storto nell'elaborazione del file dei composti");
 			e.printStackTrace();
 		}
+		return cacheComposti;
+	}
+	
+	/**
+	 * Imposta le chiavi dei lemmi dei composti importati prima che esistessero, perché
+	 * il file dei composti non viene rielaborato. Stampa gli errori senza interrompere
+	 * l'importazione.
+	 * 
+	 * @param dbDriver il driver del DB neo4j
+	 * @param prop le proprietà dell'applicazione
+	 */
+	private static void completaChiaviLemmi(Driver dbDriver, Properties prop) {
+		try {
+			int lemmi = ElaboratoreCartellaComposti.completaChiaviLemmi(dbDriver, prop.getProperty("dbName"));
+			if (lemmi > 0) {
+				System.out.println("Chiavi dei lemmi completate: " + lemmi);
+			}
+		} catch (Exception e) {
+			System.err.println("Errore nel completamento delle chiavi dei lemmi: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Scrive il report dell'importazione nel file indicato dalla proprietà opzionale
+	 * file.report. Se la proprietà manca non fa nulla.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 * @param report il report da scrivere
+	 */
+	private static void scriviReport(Properties prop, ReportImportazione report) {
+		if (StringUtils.isEmpty(prop.getProperty("file.report"))) {
+			return;
+		}
+		File fileReport = new File(prop.getProperty("file.report"));
+		try {
+			report.scrivi(fileReport);
+			System.out.println("\nReport dell'importazione scritto in " + fileReport.getPath());
+		} catch (IOException e) {
+			System.err.println("Non riesco a scrivere il report " + fileReport.getPath() + ": " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Apre il giornale dell'importazione nel file indicato nella proprietà opzionale 
+	 * file.giornale o, se manca, nel file .giornale-importazione.log nella directory di input.
+	 * Con l'argomento --resume riprende l'importazione interrotta registrata nel giornale, se
+	 * c'è. Se il giornale non si può aprire l'importazione prosegue senza giornale, ma se va
+	 * ripresa l'applicazione termina.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 * @return il giornale dell'importazione o null se non si può aprire
+	 */
+	private static GiornaleImportazione apriGiornale(Properties prop) {
+		File fileGiornale = new File(prop.getProperty("file.giornale", 
+				new File(prop.getProperty("dir.input"), ".giornale-importazione.log").getPath()));
+		try {
+			GiornaleImportazione giornale = GiornaleImportazione.apri(fileGiornale, 
+					prop.getProperty("dbURI"), prop.getProperty("dbName"), isRipresa(prop));
+			if (giornale.isRipreso()) {
+				System.out.println("\nRiprendo l'importazione interrotta registrata in " + fileGiornale.getPath());
+			} else if (isRipresa(prop)) {
+				System.out.println("\nNon c'è un'importazione interrotta da riprendere: ricomincio da capo");
+			}
+			return giornale;
+		} catch (IOException e) {
+			System.err.println("Non riesco ad aprire il giornale dell'importazione " + fileGiornale.getPath() 
+					+ ": " + e.getMessage());
+			if (isRipresa(prop)) {
+				System.exit(-1);
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * Restituisce true se la fase è stata completata dall'importazione ripresa.
+	 * 
+	 * @param giornale il giornale dell'importazione, può essere null
+	 * @param fase il nome della fase
+	 * @return true se la fase è già stata completata, false altrimenti o se non c'è il giornale
+	 */
+	private static boolean isFaseCompletata(GiornaleImportazione giornale, String fase) {
+		return giornale != null && giornale.isFaseCompletata(fase);
+	}
+	
+	/**
+	 * Registra nel giornale, se c'è, una fase completata segnalando l'eventuale errore.
+	 * 
+	 * @param giornale il giornale dell'importazione, può essere null
+	 * @param fase il nome della fase
+	 */
+	private static void registraFase(GiornaleImportazione giornale, String fase) {
+		if (giornale == null) {
+			return;
+		}
+		try {
+			giornale.registraFase(fase);
+		} catch (IOException e) {
+			System.err.println("Non riesco a scrivere il giornale dell'importazione: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Restituisce true se il file è stato importato dall'importazione ripresa e non è cambiato.
+	 * Se il file non si può leggere lo considera da importare, così l'errore viene segnalato
+	 * durante l'elaborazione.
+	 * 
+	 * @param giornale il giornale dell'importazione ripresa
+	 * @param file il file da controllare
+	 * @return true se il file è già stato importato, false altrimenti
+	 */
+	private static boolean isFileCompletato(GiornaleImportazione giornale, File file) {
+		try {
+			return giornale.isFileCompletato(file);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Registra la fine dell'importazione nel giornale, se c'è, e lo chiude.
+	 * 
+	 * @param giornale il giornale dell'importazione, può essere null
+	 */
+	private static void chiudiGiornale(GiornaleImportazione giornale) {
+		if (giornale == null) {
+			return;
+		}
+		try {
+			giornale.termina();
+			giornale.close();
+		} catch (IOException e) {
+			System.err.println("Non riesco a chiudere il giornale dell'importazione: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Carica il manifesto dei file già importati dal file indicato nella proprietà 
+	 * opzionale file.manifesto o, se manca, dal file .manifesto-importazione.properties
+	 * nella directory di input. Termina l'applicazione se il manifesto non si può leggere.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 * @return il manifesto dei file già importati
+	 */
+	private static ManifestoImportazione caricaManifesto(Properties prop) {
+		File fileManifesto = new File(prop.getProperty("file.manifesto", 
+				new File(prop.getProperty("dir.input"), ".manifesto-importazione.properties").getPath()));
+		try {
+			return new ManifestoImportazione(fileManifesto, 
+					prop.getProperty("dbURI"), prop.getProperty("dbName"));
+		} catch (IOException e) {
+			System.err.println("Non riesco a leggere il manifesto " + fileManifesto.getPath());
+			System.exit(-1);
+			return null;
+		}
+	}
+	
+	/**
+	 * Restituisce true se il file è cambiato dall'ultima importazione registrata nel 
+	 * manifesto. Se il file non si può leggere lo considera cambiato, così l'errore
+	 * viene segnalato durante l'elaborazione.
+	 * 
+	 * @param manifesto il manifesto dei file già importati
+	 * @param file il file da controllare
+	 * @return true se il file va elaborato, false altrimenti
+	 */
+	private static boolean isCambiato(ManifestoImportazione manifesto, File file) {
+		try {
+			return manifesto.isCambiato(file);
+		} catch (IOException e) {
+			return true;
+		}
+	}
+	
+	/**
+	 * Registra nel manifesto un file importato correttamente. Se il file non si può 
+	 * leggere segnala l'errore: il file verrà rielaborato alla prossima importazione.
+	 * 
+	 * @param manifesto il manifesto dei file già importati
+	 * @param file il file importato
+	 */
+	private static void registra(ManifestoImportazione manifesto, File file) {
+		try {
+			manifesto.registra(file);
+		} catch (IOException e) {
+			System.err.println("Non riesco a registrare nel manifesto il file " + file.getName());
+		}
+	}
+	
+	/**
+	 * Salva il manifesto segnalando l'eventuale errore.
+	 * 
+	 * @param manifesto il manifesto da salvare
+	 */
+	private static void salva(ManifestoImportazione manifesto) {
+		try {
+			manifesto.salva();
+		} catch (IOException e) {
+			System.err.println("Non riesco a salvare il manifesto: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Crea in DB gli indici usati dall'importazione se non esistono già. Se gli indici
+	 * non si possono creare, per esempio perché l'utente non ha i permessi, segnala 
+	 * l'errore e prosegue con l'importazione.
+	 * 
+	 * @param dbDriver il driver del DB neo4j
+	 * @param prop le proprietà dell'applicazione
+	 * @param report il report a cui aggiungere la fase degli indici
+	 */
+	private static void inizializzaSchema(Driver dbDriver, Properties prop, ReportImportazione report) {
+		try {
+			System.out.println("Verifico gli indici del DB");
+			ReportImportazione.Fase fase = report.iniziaFase("schema", "indici");
+			new InizializzatoreSchema(dbDriver, prop.getProperty("dbName")).inizializza();
+			fase.termina(0);
+		} catch (Exception e) {
+			System.err.println("Non è stato possibile creare gli indici del DB: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Elimina dal DB i dati che non sono più nei file, prima di importarli con la
+	 * sincronizzazione. Il corpus viene letto per intero, dall'istantanea se c'è la proprietà
+	 * file.istantanea; se il file dei composti o un file opera non si può leggere la potatura
+	 * non viene eseguita, perché i dati del file verrebbero eliminati. Stampa gli errori
+	 * senza interrompere l'importazione.
+	 * 
+	 * @param dbDriver il driver del DB neo4j
+	 * @param prop le proprietà dell'applicazione
+	 * @param report il report a cui aggiungere la fase della potatura
+	 * @param giornale il giornale in cui registrare la potatura, può essere null
+	 */
+	private static void potaGrafo(Driver dbDriver, Properties prop, ReportImportazione report,
+			GiornaleImportazione giornale) {
+		try {
+			System.out.println("\nCerco in DB i dati che non sono più nei file");
+			ReportImportazione.Fase fase = report.iniziaFase("potatura", "potatura");
+			//i messaggi delle righe errate vengono stampati dall'importazione
+			LettoreCorpus lettore = new LettoreCorpus(isLetturaStreaming(prop), 
+					new PrintStream(OutputStream.nullOutputStream()), getNumeroThread(prop));
+			Corpus corpus = leggiCorpus(lettore, prop);
+			if (corpus.getOpere().size() < getFileOpere(prop).size()) {
+				System.out.println("Potatura non eseguita: non è stato possibile leggere tutti i file opera");
+				fase.termina(0);
+				return;
+			}
+			//una riga errata manca dal corpus ma non dal DB: la potatura la eliminerebbe
+			//e l'importazione non potrebbe ricrearla
+			if (lettore.getErrori() > 0) {
+				System.out.println("Potatura non eseguita: nei file ci sono " + lettore.getErrori() 
+						+ " errori, eseguire la validazione con --validate");
+				fase.conContatore("errori", lettore.getErrori()).termina(0);
+				return;
+			}
+			PotaturaGrafo potatura = new PotaturaGrafo(dbDriver, prop.getProperty("dbName"));
+			potatura.pota(corpus);
+			fase.conContatore("relazioniContainsEliminate", potatura.getRelazioniContainsEliminate())
+				.conContatore("relazioniContainsAggiornate", potatura.getRelazioniContainsAggiornate())
+				.conContatore("compostiEliminati", potatura.getCompostiEliminati())
+				.conContatore("relazioniFormedByEliminate", potatura.getRelazioniFormedByEliminate())
+				.conContatore("relazioniDuplicateOfEliminate", potatura.getRelazioniDuplicateOfEliminate())
+				.conContatore("membriEliminati", potatura.getMembriEliminati())
+				.conContatore("relazioniWrittenByEliminate", potatura.getRelazioniWrittenByEliminate())
+				.conContatore("opereEliminate", potatura.getOpereEliminate())
+				.conContatore("autoriEliminati", potatura.getAutoriEliminati())
+				.termina(potatura.getTotaleEliminati() + potatura.getRelazioniContainsAggiornate());
+			System.out.println("Relazioni CONTAINS eliminate: " + potatura.getRelazioniContainsEliminate()
+					+ ", aggiornate: " + potatura.getRelazioniContainsAggiornate());
+			System.out.println("Composti eliminati: " + potatura.getCompostiEliminati()
+					+ ", relazioni FORMED_BY eliminate: " + potatura.getRelazioniFormedByEliminate()
+					+ ", relazioni DUPLICATE_OF eliminate: " + potatura.getRelazioniDuplicateOfEliminate()
+					+ ", membri eliminati: " + potatura.getMembriEliminati());
+			System.out.println("Opere eliminate: " + potatura.getOpereEliminate()
+					+ ", relazioni WRITTEN_BY eliminate: " + potatura.getRelazioniWrittenByEliminate()
+					+ ", autori eliminati: " + potatura.getAutoriEliminati());
+			if (potatura.getDistribuzioniEliminate() > 0) {
+				System.out.println("Distribuzioni delle opere da ricalcolare: " + potatura.getDistribuzioniEliminate());
+			}
+			registraFase(giornale, FASE_POTATURA);
+		} catch (Exception e) {
+			System.err.println("Non è stato possibile eliminare i dati che non sono più nei file: " 
+					+ e.getMessage());
+		}
+	}
+	
+	/**
+	 * Ricalcola le distribuzioni dei sottotipi degli autori, dei sottogeneri e dei generi
+	 * a partire da quelle delle opere scritte durante l'importazione e da quelle già in DB.
+	 * 
+	 * @param dbDriver il driver del DB neo4j
+	 * @param prop le proprietà dell'applicazione
+	 * @param report il report a cui aggiungere la fase delle distribuzioni
+	 * @param giornale il giornale in cui registrare la fase, può essere null
+	 */
+	private static void aggiornaDistribuzioniSottotipi(Driver dbDriver, Properties prop, 
+			ReportImportazione report, GiornaleImportazione giornale) {
+		try {
+			ReportImportazione.Fase fase = report.iniziaFase("distribuzioni", "distribuzioni");
+			AggregatoreSottotipi aggregatore = new AggregatoreSottotipi(dbDriver, prop.getProperty("dbName"));
+			int distribuzioni = aggregatore.aggiorna();
+			fase.conContatore("opereCalcolateDalDB", aggregatore.getOpereCalcolateDalDB())
+				.termina(distribuzioni);
+			System.out.println("\nDistribuzioni dei sottotipi aggiornate: " + distribuzioni);
+			if (aggregatore.getOpereCalcolateDalDB() > 0) {
+				System.out.println("Opere senza distribuzione calcolate dalle relazioni CONTAINS: " 
+						+ aggregatore.getOpereCalcolateDalDB());
+			}
+			registraFase(giornale, FASE_DISTRIBUZIONI);
+		} catch (Exception e) {
+			System.err.println("Non è stato possibile aggiornare le distribuzioni dei sottotipi: " 
+					+ e.getMessage());
+		}
+	}
+	
+	/**
+	 * Incrementa la generazione dell'importazione, così i QueryService collegati al DB
+	 * svuotano la cache dei risultati.
+	 * 
+	 * @param dbDriver il driver del DB neo4j
+	 * @param prop le proprietà dell'applicazione
+	 */
+	private static void incrementaGenerazione(Driver dbDriver, Properties prop) {
+		try {
+			long generazione = QueryService.incrementaGenerazione(dbDriver, prop.getProperty("dbName"));
+			System.out.println("Generazione dell'importazione: " + generazione);
+		} catch (Exception e) {
+			System.err.println("Non è stato possibile incrementare la generazione dell'importazione: " 
+					+ e.getMessage());
+		}
+	}
+	
+	/**
+	 * Carica dal DB la cache dei composti nominali.
+	 * 
+	 * @param dbDriver il driver del DB neo4j
+	 * @param prop le proprietà dell'applicazione
+	 * @param report il report a cui aggiungere la fase della cache
+	 * @return la cache dei composti presenti in DB
+	 */
+	private static CacheComposti caricaCacheComposti(Driver dbDriver, Properties prop, 
+			ReportImportazione report) {
+		ReportImportazione.Fase fase = report.iniziaFase("cache", "cache");
+		CacheComposti cacheComposti = CacheComposti.carica(dbDriver, prop.getProperty("dbName"));
+		fase.termina(cacheComposti.size());
+		System.out.println("\nComposti caricati nella cache: " + cacheComposti.size());
+		return cacheComposti;
 	}
 	
 	/**
@@ -179,26 +903,234 @@ public class ElaboraFileExcelComposti {
 			System.err.println("Manca la proprietà dir.input");
 			errors = true;
 		}
-		if (StringUtils.isEmpty(prop.getProperty("dbURI"))) {
+		//le proprietà del DB non servono se si esportano i file CSV o se si valida
+		boolean senzaDB = isSenzaDB(prop);
+		if (!senzaDB && StringUtils.isEmpty(prop.getProperty("dbURI"))) {
 			System.err.println("Manca la proprietà dbURI");
 			errors = true;
 		}
-		if (StringUtils.isEmpty(prop.getProperty("dbUser"))) {
+		if (!senzaDB && StringUtils.isEmpty(prop.getProperty("dbUser"))) {
 			System.err.println("Manca la proprietà dbUser");
 			errors = true;
 		}
-		if (StringUtils.isEmpty(prop.getProperty("dbPassword"))) {
+		if (!senzaDB && StringUtils.isEmpty(prop.getProperty("dbPassword"))) {
 			System.err.println("Manca la proprietà dbPassword");
 			errors = true;
 		}
-		if (StringUtils.isEmpty(prop.getProperty("dbName"))) {
+		if (!senzaDB && StringUtils.isEmpty(prop.getProperty("dbName"))) {
 			System.err.println("Manca la proprietà dbName");
 			errors = true;
 		}
+		if (!isInteroPositivo(prop.getProperty("dimensione.batch", "1"))) {
+			System.err.println("La proprietà dimensione.batch deve essere un intero positivo");
+			errors = true;
+		}
+		if (!isInteroPositivo(prop.getProperty("numero.thread", "1"))) {
+			System.err.println("La proprietà numero.thread deve essere un intero positivo");
+			errors = true;
+		}
+		if (!isInteroPositivo(prop.getProperty("righe.per.transazione", "1"))) {
+			System.err.println("La proprietà righe.per.transazione deve essere un intero positivo");
+			errors = true;
+		}
+		if (!isInteroPositivo(prop.getProperty("dimensione.coda", "1"))) {
+			System.err.println("La proprietà dimensione.coda deve essere un intero positivo");
+			errors = true;
+		}
+		if (!isInteroPositivo(prop.getProperty("scritture.in.volo", "1"))) {
+			System.err.println("La proprietà scritture.in.volo deve essere un intero positivo");
+			errors = true;
+		}
 		if (errors) {
 			System.exit(-1);
 		}
 	}
+	
+	/**
+	 * Restituisce true se valore è la rappresentazione di un intero maggiore di zero.
+	 * 
+	 * @param valore il valore da controllare
+	 * @return true se valore è un intero positivo, false altrimenti
+	 */
+	private static boolean isInteroPositivo(String valore) {
+		try {
+			return Integer.parseInt(valore) > 0;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Restituisce le opzioni di scrittura in DB degli elaboratori dei composti e delle opere,
+	 * lette dalle proprietà opzionali dimensione.batch, righe.per.transazione, dimensione.coda,
+	 * scritture.in.volo e sincronizzazione.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 * @return le opzioni di importazione
+	 * 
+	 * @throw IllegaArgumentException se una delle proprietà ha un valore non valido
+	 */
+	private static OpzioniImportazione getOpzioni(Properties prop) {
+		return OpzioniImportazione.PREDEFINITE
+				.conDimensioneBatch(getDimensioneBatch(prop))
+				.conRighePerTransazione(getRighePerTransazione(prop))
+				.conDimensioneCoda(getDimensioneCoda(prop))
+				.conScrittureInVolo(getScrittureInVolo(prop))
+				.conSincronizzazione(isSincronizzazione(prop));
+	}
+
+	/**
+	 * Restituisce il numero di righe dei composti da scrivere in DB con una sola query,
+	 * letto dalla proprietà opzionale dimensione.batch. Se la proprietà manca restituisce 1,
+	 * cioè i composti vengono scritti una riga alla volta.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 * @return il numero di righe da scrivere in DB con una sola query
+	 */
+	private static int getDimensioneBatch(Properties prop) {
+		return Integer.parseInt(prop.getProperty("dimensione.batch", "1"));
+	}
+
+	/**
+	 * Restituisce il numero di righe da confermare con ogni transazione esplicita, letto
+	 * dalla proprietà opzionale righe.per.transazione. Se la proprietà manca restituisce 0,
+	 * cioè ogni query viene confermata da sola e le opere non vengono importate in
+	 * un'unica transazione.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 * @return il numero di righe per transazione, 0 per non usare transazioni esplicite
+	 */
+	private static int getRighePerTransazione(Properties prop) {
+		return Integer.parseInt(prop.getProperty("righe.per.transazione", "0"));
+	}
+
+	/**
+	 * Restituisce il numero massimo di elementi in attesa tra il thread che legge un foglio 
+	 * e il thread che scrive in DB, letto dalla proprietà opzionale dimensione.coda: blocchi
+	 * di righe per il foglio dei composti e righe per i fogli delle opere. Se la proprietà 
+	 * manca restituisce 0, cioè ogni foglio viene letto e scritto nello stesso thread.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 * @return la dimensione della coda di scrittura, 0 per non usare la coda
+	 */
+	private static int getDimensioneCoda(Properties prop) {
+		return Integer.parseInt(prop.getProperty("dimensione.coda", "0"));
+	}
+
+	/**
+	 * Restituisce il numero massimo di relazioni CONTAINS di un'opera inviate al DB con 
+	 * l'API asincrona del driver e in attesa di risposta, letto dalla proprietà opzionale
+	 * scritture.in.volo. Se la proprietà manca restituisce 0, cioè le relazioni vengono 
+	 * scritte in modo sincrono.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 * @return il numero di scritture in volo, 0 per le scritture sincrone
+	 */
+	private static int getScrittureInVolo(Properties prop) {
+		return Integer.parseInt(prop.getProperty("scritture.in.volo", "0"));
+	}
+
+	/**
+	 * Restituisce il numero di file opera da elaborare in parallelo, letto dalla
+	 * proprietà opzionale numero.thread. Se la proprietà manca restituisce 1.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 * @return il numero di file opera da elaborare in parallelo
+	 */
+	private static int getNumeroThread(Properties prop) {
+		return Integer.parseInt(prop.getProperty("numero.thread", "1"));
+	}
+	
+	/**
+	 * Restituisce true se è presente la proprietà opzionale esporta.csv, cioè se invece
+	 * di importare i dati in DB vanno scritti i file CSV per neo4j-admin.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 * @return true se vanno esportati i file CSV, false altrimenti
+	 */
+	private static boolean isEsportazioneCsv(Properties prop) {
+		return StringUtils.isNotEmpty(prop.getProperty("esporta.csv"));
+	}
+	
+	/**
+	 * Restituisce true se è presente l'argomento --validate o se la proprietà opzionale
+	 * valida vale true, cioè se i file vanno solo validati senza collegarsi al DB.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 * @return true se i file vanno solo validati, false altrimenti
+	 */
+	private static boolean isValidazione(Properties prop) {
+		return prop.containsKey("--validate") || Boolean.parseBoolean(prop.getProperty("valida", "false"));
+	}
+	
+	/**
+	 * Restituisce true se l'applicazione non usa il DB, cioè se esporta i file CSV 
+	 * o se valida i file.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 * @return true se le proprietà del DB non servono, false altrimenti
+	 */
+	private static boolean isSenzaDB(Properties prop) {
+		return isEsportazioneCsv(prop) || isValidazione(prop);
+	}
+	
+	/**
+	 * Restituisce true se la proprietà opzionale importazione.incrementale vale true, 
+	 * cioè se vanno elaborati solo i file cambiati dall'ultima importazione.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 * @return true se l'importazione è incrementale, false altrimenti
+	 */
+	private static boolean isImportazioneIncrementale(Properties prop) {
+		return Boolean.parseBoolean(prop.getProperty("importazione.incrementale", "false"));
+	}
+	
+	/**
+	 * Restituisce true se è presente l'argomento --resume o se la proprietà opzionale
+	 * riprendi vale true, cioè se va ripresa l'importazione interrotta registrata nel giornale.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 * @return true se l'importazione va ripresa, false altrimenti
+	 */
+	private static boolean isRipresa(Properties prop) {
+		return prop.containsKey("--resume") || Boolean.parseBoolean(prop.getProperty("riprendi", "false"));
+	}
+	
+	/**
+	 * Restituisce true se la proprietà opzionale sincronizzazione vale true, cioè se prima
+	 * dell'importazione vanno eliminati dal DB i dati che non sono più nei file e le 
+	 * relazioni CONTAINS vanno aggiornate con le occorrenze dei file.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 * @return true se il DB va sincronizzato con i file, false altrimenti
+	 */
+	private static boolean isSincronizzazione(Properties prop) {
+		return Boolean.parseBoolean(prop.getProperty("sincronizzazione", "false"));
+	}
+	
+	/**
+	 * Restituisce true se la proprietà opzionale cache.composti vale true, cioè se
+	 * i composti presenti in DB vanno caricati in memoria con un'unica query invece 
+	 * di essere cercati in DB riga per riga.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 * @return true se va usata la cache dei composti, false altrimenti
+	 */
+	private static boolean isCacheComposti(Properties prop) {
+		return Boolean.parseBoolean(prop.getProperty("cache.composti", "false"));
+	}
+	
+	/**
+	 * Restituisce true se la proprietà opzionale lettura.streaming vale true, cioè se
+	 * i file Excel vanno letti in streaming una riga alla volta invece di essere 
+	 * caricati interamente in memoria.
+	 * 
+	 * @param prop le proprietà dell'applicazione
+	 * @return true se i file Excel vanno letti in streaming, false altrimenti
+	 */
+	private static boolean isLetturaStreaming(Properties prop) {
+		return Boolean.parseBoolean(prop.getProperty("lettura.streaming", "false"));
+	}
 
 	/**
 	 * Crea l'oggetto Properties a partire dagli argomenti a riga di comando in args.
@@ -232,6 +1164,29 @@ public class ElaboraFileExcelComposti {
 		System.out.println("\n\tdbUser=<utente col quale collegarsi al DB>");
 		System.out.println("\n\tdbPassword=<password dell'utente col quale ci si collega al DB>");
 		System.out.println("\n\tdbName=<nome del DB nel quale importare i composti nominali>");
+		System.out.println("\nAgli argomenti obbligatori si possono aggiungere quelli opzionali:");
+		System.out.println("\n\tdimensione.batch=<numero di righe dei composti da scrivere in DB con una sola query>");
+		System.out.println("\n\tlettura.streaming=<true per leggere i file Excel in streaming una riga alla volta>");
+		System.out.println("\n\tnumero.thread=<numero di file opera da elaborare in parallelo>");
+		System.out.println("\n\trighe.per.transazione=<numero di righe confermate con ogni transazione, ogni opera in un'unica transazione>");
+		System.out.println("\n\tdimensione.coda=<numero di blocchi di righe in attesa tra la lettura di un foglio e la scrittura in DB in un altro thread>");
+		System.out.println("\n\tscritture.in.volo=<numero di relazioni CONTAINS di un'opera inviate al DB in modo asincrono senza aspettare la risposta>");
+		System.out.println("\n\tcache.composti=<true per caricare in memoria i composti presenti in DB>");
+		System.out.println("\n\timportazione.incrementale=<true per elaborare solo i file cambiati dall'ultima importazione>");
+		System.out.println("\n\tsincronizzazione=<true per eliminare dal DB i dati che non sono più nei file"
+				+ " e aggiornare le occorrenze delle relazioni CONTAINS>");
+		System.out.println("\n\tfile.manifesto=<file in cui registrare i file importati, con eventuale percorso>");
+		System.out.println("\n\tfile.giornale=<file del giornale in cui registrare i passi confermati dell'importazione,"
+				+ " con eventuale percorso>");
+		System.out.println("\n\t--resume (oppure riprendi=true) per riprendere l'importazione interrotta dal punto"
+				+ " registrato nel giornale");
+		System.out.println("\n\tfile.report=<file JSON in cui scrivere durata delle fasi, contatori e latenze delle query>");
+		System.out.println("\n\t--validate (oppure valida=true) per validare i file con gli stessi controlli dell'importazione"
+				+ " senza collegarsi al DB, in questo caso le proprietà del DB non sono obbligatorie");
+		System.out.println("\n\tesporta.csv=<directory in cui scrivere i file CSV per neo4j-admin invece di importare in DB,"
+				+ " in questo caso le proprietà del DB non sono obbligatorie>");
+		System.out.println("\n\tfile.istantanea=<file dell'istantanea binaria del corpus usata dalla validazione,"
+				+ " dall'esportazione dei file CSV e dalla sincronizzazione finché i file Excel non cambiano>");
 		System.out.println("\nEsempio: file.composti.nominali=src/main/resources/file-da-elaborare/Compounds.xlsx "
 				+ "dir.input=src/main/resources/file-da-elaborare dbURI=bolt://localhost:7687/ "
 				+ "dbUser=neo4j dbPassword=password dbName=compostinominali");
@@ -246,7 +1201,7 @@ public class ElaboraFileExcelComposti {
 	 * @param dbPassword la password per accedere al DB
 	 * @return l'oggetto Driver corrispondente al database
 	 */
-	private static Driver getDatabaseDriver(String dbURI, String dbUser, String dbPassword) {
+	static Driver getDatabaseDriver(String dbURI, String dbUser, String dbPassword) {
 		var driver = GraphDatabase.driver(dbURI, AuthTokens.basic(dbUser, dbPassword));
 	    driver.verifyConnectivity();
 	    return driver;	
@@ -277,4 +1232,25 @@ public class ElaboraFileExcelComposti {
         }
 	}
 
+	/**
+	 * L'esito dell'elaborazione di un file opera con le statistiche da stampare nel riepilogo.
+	 */
+	private static class EsitoFileOpera {
+		
+		private final File fileOpera;
+		private final String nomeFile;
+		private boolean completato;
+		private int compostiTrovati;
+		private int compostiVuoti;
+		private int errori;
+		private int erroriScrittura;
+		private String messaggi = "";
+		
+		private EsitoFileOpera(File fileOpera) {
+			this.fileOpera = fileOpera;
+			this.nomeFile = fileOpera.getName();
+		}
+		
+	}
+
 }
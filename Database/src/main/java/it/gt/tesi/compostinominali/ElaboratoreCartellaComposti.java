@@ -1,14 +1,16 @@
 package it.gt.tesi.compostinominali;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.ss.usermodel.CellType;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.neo4j.driver.Driver;
-import org.neo4j.driver.QueryConfig;
+import org.neo4j.driver.exceptions.RetryableException;
 
 /**
  * La classe che permette di creare in DB i composti nominali e i membri del 
@@ -16,15 +18,37 @@ import org.neo4j.driver.QueryConfig;
  */
 public class ElaboratoreCartellaComposti {
 	
-	private static final int NUMERO_MAX_MEMBRI = 4;
-	private final Driver dbDriver;
-	private final XSSFSheet sheetComposti;
-	private final String dbName;
+	/**
+	 * Il nome del foglio dei composti nel giornale dell'importazione.
+	 */
+	public static final String FOGLIO = "composti";
 	
+	private static final int NUMERO_MAX_MEMBRI = DecodificatoreRighe.NUMERO_MAX_MEMBRI;
+	private final EsecutoreQuery esecutore;
+	private final Iterable<RigaFoglio> sheetComposti;
+	private final int dimensioneBatch;
+	private final int righePerTransazione;
+	private final int dimensioneCoda;
+	private final GiornaleImportazione giornale;
+	
+	//la coda verso il thread di scrittura, null se si legge e si scrive nello stesso thread
+	private CodaScrittura<List<RigaComposto>> coda;
+	//le righe già validate in attesa di essere scritte in DB con la modalità batch o transazionale
+	private final List<RigaComposto> righeInAttesa = new ArrayList<>();
+	private int compostiCreati;
+	private int relazioniCreate;
+	private int membriElaborati;
+	private int errors;
+	//gli errori di scrittura, contati dal thread di scrittura se c'è la coda
+	private int erroriScrittura;
+	private int compostiVuoti;
+	private int grecismiTrovati;
+	private int righeGiaImportate;
 	
 	/**
 	 * Costruisce un oggetto ElaboratoreCartellaComposti a partire dal driver del DB, il foglio di
-	 * calcolo dei composti nominali e il mome del database.
+	 * calcolo dei composti nominali e il mome del database. I composti vengono scritti in DB
+	 * una riga alla volta.
 	 * 
 	 * @param dbDriver il driver del DB
 	 * @param sheetOpera il foglio di calcolo dei composti nominali
@@ -34,16 +58,120 @@ public class ElaboratoreCartellaComposti {
 	 * 			oppure se dbName è vuoto
 	 */
 	public ElaboratoreCartellaComposti(Driver dbDriver, 
-			XSSFSheet sheetComposti, String dbName) {
+			Iterable<RigaFoglio> sheetComposti, String dbName) {
+		this(dbDriver, sheetComposti, dbName, OpzioniImportazione.PREDEFINITE, null);
+	}
+	
+	/**
+	 * Costruisce un oggetto ElaboratoreCartellaComposti a partire dal driver del DB, il foglio di
+	 * calcolo dei composti nominali, il mome del database, le opzioni di scrittura e il giornale
+	 * dell'importazione. Delle opzioni vengono usate la dimensione dei blocchi di righe scritti
+	 * con un'unica query UNWIND, il numero di righe da confermare con ogni transazione e la 
+	 * dimensione della coda di scrittura, a cui le righe vengono passate a blocchi (di 
+	 * righePerTransazione righe, oppure di dimensioneBatch righe).
+	 * Se il giornale non è null le righe fino all'ultima confermata dall'importazione ripresa 
+	 * vengono saltate e, dopo ogni blocco di righe confermato (ogni 100 righe se si scrive una
+	 * riga alla volta), l'ultima riga del blocco viene registrata nel giornale.
+	 * 
+	 * @param dbDriver il driver del DB
+	 * @param sheetOpera il foglio di calcolo dei composti nominali
+	 * @param dbName il nome del DB
+	 * @param opzioni le opzioni di scrittura in DB
+	 * @param giornale il giornale dell'importazione, può essere null
+	 * 
+	 * @throw IllegaArgumentException se dbDriver è null, oppure se sheetComposti è null,
+	 * 			oppure se dbName è vuoto, oppure se opzioni è null
+	 */
+	public ElaboratoreCartellaComposti(Driver dbDriver, Iterable<RigaFoglio> sheetComposti, 
+			String dbName, OpzioniImportazione opzioni, GiornaleImportazione giornale) {
 		if (dbDriver == null) 
 			throw new IllegalArgumentException("Il driver DB non può essere null");
 		if (sheetComposti == null) 
 			throw new IllegalArgumentException("Il foglio dei composti non può essere null");
 		if (StringUtils.isEmpty(dbName)) 
 			throw new IllegalArgumentException("Il nome del database non può essere vuoto");
-		this.dbDriver = dbDriver;
+		if (opzioni == null) 
+			throw new IllegalArgumentException("Le opzioni di importazione non possono essere null");
+		this.esecutore = new EsecutoreQuery(dbDriver, dbName);
 		this.sheetComposti = sheetComposti;
-		this.dbName = dbName;
+		this.dimensioneBatch = opzioni.getDimensioneBatch();
+		this.righePerTransazione = opzioni.getRighePerTransazione();
+		this.dimensioneCoda = opzioni.getDimensioneCoda();
+		this.giornale = giornale;
+	}
+	
+	public int getCompostiCreati() {
+		return compostiCreati;
+	}
+
+	public int getMembriElaborati() {
+		return membriElaborati;
+	}
+
+	public int getRelazioniCreate() {
+		return relazioniCreate;
+	}
+
+	public int getGrecismiTrovati() {
+		return grecismiTrovati;
+	}
+
+	public int getCompostiVuoti() {
+		return compostiVuoti;
+	}
+
+	public int getErrori() {
+		return errors + erroriScrittura;
+	}
+
+	/**
+	 * Restituisce il numero di righe la cui scrittura in DB è fallita, per esempio per la
+	 * caduta della connessione: a differenza degli errori nei dati, rielaborando il foglio
+	 * possono riuscire.
+	 * 
+	 * @return il numero di righe non scritte
+	 */
+	public int getErroriScrittura() {
+		return erroriScrittura;
+	}
+	
+	/**
+	 * Restituisce il numero di righe saltate perché confermate dall'importazione ripresa.
+	 * 
+	 * @return il numero di righe già importate
+	 */
+	public int getRigheGiaImportate() {
+		return righeGiaImportate;
+	}
+	
+	/**
+	 * Imposta le chiavi lemmaNormalized e lemmaReversed dei NominalCompound che non le
+	 * hanno, cioè di quelli importati prima che esistessero le chiavi quando il file dei
+	 * composti non viene rielaborato perché non è cambiato.
+	 * 
+	 * @param dbDriver il driver del DB
+	 * @param dbName il nome del DB
+	 * @return il numero di lemmi aggiornati
+	 */
+	public static int completaChiaviLemmi(Driver dbDriver, String dbName) {
+		EsecutoreQuery esecutore = new EsecutoreQuery(dbDriver, dbName);
+		var result = esecutore.esegui("MATCH NominalCompound senza chiavi",
+				"MATCH (c:NominalCompound) WHERE c.lemmaNormalized IS NULL OR c.lemmaReversed IS NULL "
+				+ "RETURN DISTINCT c.lemma AS lemma", Map.of());
+		List<Map<String, Object>> lemmi = new ArrayList<>();
+		for (var record : result) {
+			String lemma = record.get("lemma").asString();
+			lemmi.add(Map.of("lemma", lemma,
+					"lemmaNormalizzato", ChiaviLemma.normalizza(lemma),
+					"lemmaRovesciato", ChiaviLemma.rovescia(lemma)));
+		}
+		if (!lemmi.isEmpty()) {
+			esecutore.esegui("UNWIND SET NominalCompound chiavi",
+					"UNWIND $rows AS row MATCH (c:NominalCompound {lemma: row.lemma}) "
+					+ "SET c.lemmaNormalized = row.lemmaNormalizzato, c.lemmaReversed = row.lemmaRovesciato",
+					Map.of("rows", lemmi));
+		}
+		return lemmi.size();
 	}
 	
 	/**
@@ -51,74 +179,324 @@ public class ElaboratoreCartellaComposti {
 	 * a partire dal foglio di calcolo dei composti nominali.
 	 */
 	public void elabora() {
-		int compostiCreati = 0;
-		int relazioniCreate = 0;
-		int membriElaborati = 0;
-		int compostiVuoti = 0;
-		int grecismiTrovati = 0;
+		compostiCreati = 0;
+		relazioniCreate = 0;
+		membriElaborati = 0;
+		errors = 0;
+		erroriScrittura = 0;
+		compostiVuoti = 0;
+		grecismiTrovati = 0;
+		righeGiaImportate = 0;
 		int rowNum = 0;
-		int errors = 0;
-		Iterator<Row> rowIterator = sheetComposti.iterator();
+		int ultimaRigaConfermata = giornale != null ? giornale.getUltimaRiga(FOGLIO) : 0;
+		Iterator<RigaFoglio> rowIterator = sheetComposti.iterator();
 		
 		//salta la prima riga: i composti nominali partono dalla seconda
 		rowIterator.next();
 		rowNum++;
 		
-		while (rowIterator.hasNext()) {
-		  Row row = rowIterator.next();
-		  rowNum++;
-		  try {
-			  Composto composto = getComposto(row);
-			  if (composto.isEmpty()) {
-				  compostiVuoti++;
+		if (dimensioneCoda > 0) {
+			coda = new CodaScrittura<>("composti", dimensioneCoda, this::scriviBlocco);
+		}
+		try {
+			while (rowIterator.hasNext()) {
+			  RigaFoglio row = rowIterator.next();
+			  rowNum++;
+			  if (rowNum <= ultimaRigaConfermata) {
+				  righeGiaImportate++;
 				  continue;
 			  }
-			  if (composto.getLemma().contains(" (")) {
-				  if (!composto.isGrecismo()) {
-					  throw new IllegalStateException("Il composto dovrebbe essere un grecismo");
+			  try {
+				  Composto composto = DecodificatoreRighe.getComposto(row);
+				  if (composto.isEmpty()) {
+					  compostiVuoti++;
+					  continue;
+				  }
+				  composto = DecodificatoreRighe.gestisciGrecismo(composto);
+				  if (composto.isGrecismo()) {
+					  grecismiTrovati++;
+				  }
+				  if (dimensioneBatch > 1 || righePerTransazione > 0 || coda != null) {
+					  //i membri vanno letti subito per segnalare gli errori sulla riga corretta
+					  Membro[] membri = DecodificatoreRighe.getMembri(row);
+					  righeInAttesa.add(new RigaComposto(rowNum, composto, membri));
+					  if (righeInAttesa.size() >= (righePerTransazione > 0 ? righePerTransazione : dimensioneBatch)) {
+						  scriviRigheInAttesa();
+					  }
+					  continue;
+				  }
+				  RigaComposto riga = new RigaComposto(rowNum, composto, DecodificatoreRighe.getMembri(row));
+				  try {
+					  scriviRigaInDB(riga);
+					  contaRigaScritta(riga);
+				  } catch (Exception e) {
+					  System.out.println("Errore alla riga " + rowNum + ": " + e.getMessage());
+					  erroriScrittura++;
+					  continue;
 				  }
-				  //i lemmi dei grecismi sono del tipo "latino (greco)" e vanno separati
-				  separaLemmaGrecismo(composto);
-				  grecismiTrovati++;
-			  } else if (composto.isGrecismo()) {
-				  throw new IllegalStateException("Grecismo a cui manca l'originale greco");
-			  }
-			  creaCompostoInDB(composto);
-			  compostiCreati++;
 			  
-			  for (int i = 1; i <= NUMERO_MAX_MEMBRI; i++) {
-				  Membro membro = getMembro(row, 2 + i * 2);
-				  membriElaborati += creaMembroInDB(membro);		  
-				  relazioniCreate += creaRelazioneCompostoMembroInDB(composto, membro, i);
+				  if (compostiCreati % 100 == 0) {
+					  System.out.println("Righe elaborate: " + compostiCreati);
+					  registraBlocco(rowNum);
+				  }
+			  } catch (Exception e) {
+				  System.out.println("Errore alla riga " + rowNum + ": " + e.getMessage());
+				  errors++;
 			  }
-			  
-			  if (compostiCreati % 100 == 0) System.out.println("Righe elaborate: " + compostiCreati);
-		  } catch (Exception e) {
-			  System.out.println("Errore alla riga " + rowNum + ": " + e.getMessage());
-			  errors++;
-		  }
+			}
+			if (!righeInAttesa.isEmpty()) {
+				scriviRigheInAttesa();
+			}
+		} finally {
+			//anche se la lettura del foglio fallisce: il thread di scrittura della coda
+			//non è un daemon e senza chiudi() la JVM non termina
+			righeInAttesa.clear();
+			if (coda != null) {
+				CodaScrittura<List<RigaComposto>> codaAperta = coda;
+				coda = null;
+				codaAperta.chiudi();
+				System.out.println("Attese della lettura sulla coda di scrittura piena: " + codaAperta.getVolteCodaPiena());
+			}
 		}
 		
+		if (righeGiaImportate > 0) {
+			System.out.println("\nRighe già importate dall'importazione ripresa: " + righeGiaImportate);
+		}
 		System.out.println("\nComposti creati: " + compostiCreati);
 		System.out.println("Membri elaborati: " + membriElaborati);
 		System.out.println("Relazioni create: " + relazioniCreate);
 		System.out.println("Grecismi trovati: " + grecismiTrovati);
 		System.out.println("Composti vuoti: " + compostiVuoti);
-		System.out.println("Errorti trovati: " + errors);
+		System.out.println("Errorti trovati: " + getErrori());
+	}
+
+	/**
+	 * Scrive in DB le righe in attesa, oppure le passa al thread di scrittura se c'è 
+	 * la coda, e svuota le righe in attesa.
+	 */
+	private void scriviRigheInAttesa() {
+		if (coda != null) {
+			coda.invia(new ArrayList<>(righeInAttesa));
+		} else {
+			scriviBlocco(righeInAttesa);
+		}
+		righeInAttesa.clear();
+	}
+	
+	/**
+	 * Scrive in DB un blocco di righe. Con la modalità transazionale le righe vengono
+	 * scritte in un'unica transazione, che il driver ripete per intero se fallisce per
+	 * un errore temporaneo; altrimenti ogni query ha la propria transazione. Se la 
+	 * scrittura del blocco fallisce le righe vengono riscritte una alla volta, così 
+	 * vengono contate come errori solo quelle che non si possono scrivere.
+	 * 
+	 * @param righe le righe da scrivere
+	 */
+	private void scriviBlocco(List<RigaComposto> righe) {
+		try {
+			if (righePerTransazione > 0) {
+				esecutore.inTransazione(() -> {
+					scriviRighe(righe);
+					return null;
+				});
+			} else {
+				scriviRighe(righe);
+			}
+			for (RigaComposto riga : righe) {
+				contaRigaScritta(riga);
+			}
+		} catch (Exception e) {
+			if (righe.size() == 1 || e instanceof RetryableException) {
+				//il DB non è raggiungibile e il driver ha già ripetuto la scrittura:
+				//riga per riga fallirebbero tutte, ognuna dopo la stessa attesa
+				for (RigaComposto riga : righe) {
+					System.out.println("Errore alla riga " + riga.rowNum + ": " + e.getMessage());
+					erroriScrittura++;
+				}
+				return;
+			}
+			System.out.println("Errore nel blocco dalla riga " + righe.get(0).rowNum + " alla riga " 
+					+ righe.get(righe.size() - 1).rowNum + ", lo riscrivo una riga alla volta: " + e.getMessage());
+			scriviUnaRigaAllaVolta(righe);
+		}
+		//con la coda e una riga per blocco si stampa ogni 100 righe come senza coda
+		if (righe.size() > 1 || compostiCreati % 100 == 0) {
+			System.out.println("Righe elaborate: " + compostiCreati);
+			registraBlocco(righe.get(righe.size() - 1).rowNum);
+		}
+	}
+	
+	/**
+	 * Scrive in DB le righe di un blocco fallito una alla volta, ognuna nella propria
+	 * transazione con la modalità transazionale, contando come errore ogni riga che 
+	 * fallisce.
+	 * 
+	 * @param righe le righe da scrivere
+	 */
+	private void scriviUnaRigaAllaVolta(List<RigaComposto> righe) {
+		for (RigaComposto riga : righe) {
+			try {
+				if (righePerTransazione > 0) {
+					esecutore.inTransazione(() -> {
+						scriviRigaInDB(riga);
+						return null;
+					});
+				} else {
+					scriviRigaInDB(riga);
+				}
+				contaRigaScritta(riga);
+			} catch (Exception e) {
+				System.out.println("Errore alla riga " + riga.rowNum + ": " + e.getMessage());
+				erroriScrittura++;
+			}
+		}
+	}
+	
+	/**
+	 * Aggiunge ai conteggi il composto, i membri e le relazioni FORMED_BY di una riga 
+	 * scritta in DB.
+	 * 
+	 * @param riga la riga scritta
+	 */
+	private void contaRigaScritta(RigaComposto riga) {
+		int membriScritti = 0;
+		for (Membro membro : riga.membri) {
+			if (!membro.isEmpty()) membriScritti++;
+		}
+		compostiCreati++;
+		membriElaborati += membriScritti;
+		relazioniCreate += membriScritti;
+	}
+	
+	/**
+	 * Registra nel giornale, se c'è, l'ultima riga confermata in DB. Dopo la prima scrittura
+	 * fallita il giornale non avanza più: le righe confermate dopo non sono di seguito a 
+	 * quelle già registrate e l'importazione ripresa deve ripartire dalla riga fallita.
+	 * Viene chiamato dallo stesso thread che conta gli errori di scrittura: quello di 
+	 * scrittura se c'è la coda, quello di lettura altrimenti.
+	 * Se il giornale non si può scrivere segnala l'errore senza interrompere l'elaborazione.
+	 * 
+	 * @param rowNum il numero dell'ultima riga confermata
+	 */
+	private void registraBlocco(int rowNum) {
+		if (giornale == null || erroriScrittura > 0) {
+			return;
+		}
+		try {
+			giornale.registraBlocco(FOGLIO, rowNum);
+		} catch (IOException e) {
+			System.err.println("Non riesco a scrivere il giornale dell'importazione: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Scrive in DB le righe date a blocchi di dimensioneBatch righe, oppure una riga
+	 * alla volta se dimensioneBatch è 1.
+	 * 
+	 * @param righe le righe da scrivere
+	 */
+	private void scriviRighe(List<RigaComposto> righe) {
+		for (int da = 0; da < righe.size(); da += dimensioneBatch) {
+			List<RigaComposto> blocco = righe.subList(da, Math.min(da + dimensioneBatch, righe.size()));
+			if (dimensioneBatch > 1) {
+				scriviBatchInDB(blocco);
+				continue;
+			}
+			for (RigaComposto riga : blocco) {
+				scriviRigaInDB(riga);
+			}
+		}
+	}
+	
+	/**
+	 * Scrive in DB il composto, i membri e le relazioni FORMED_BY di una riga con una
+	 * query ciascuno.
+	 * 
+	 * @param riga la riga da scrivere
+	 */
+	private void scriviRigaInDB(RigaComposto riga) {
+		creaCompostoInDB(riga.composto);
+		for (int i = 1; i <= NUMERO_MAX_MEMBRI; i++) {
+			creaMembroInDB(riga.membri[i - 1]);
+			creaRelazioneCompostoMembroInDB(riga.composto, riga.membri[i - 1], i);
+		}
 	}
 
 	/**
-	 * Separa il lemma del grecismo nelle sue due componenti, latino e greco
-	 * e le assegna al lemma e all'orignaleGreco rispettivamente.
+	 * Scrive in DB le righe date con tre query UNWIND (più una per i grecismi): una per
+	 * i composti, una per i membri e una per le relazioni FORMED_BY.
+	 * 
+	 * @param righe le righe da scrivere
+	 */
+	private void scriviBatchInDB(List<RigaComposto> righe) {
+		List<Map<String, Object>> composti = new ArrayList<>();
+		List<Map<String, Object>> grecismi = new ArrayList<>();
+		Map<List<String>, Map<String, Object>> membri = new LinkedHashMap<>();
+		List<Map<String, Object>> relazioni = new ArrayList<>();
+		
+		for (RigaComposto riga : righe) {
+			Composto composto = riga.composto;
+			Map<String, Object> paramComposto = new HashMap<>();
+			paramComposto.put("lemma", composto.getLemma());
+			paramComposto.put("tipologia", composto.getTipologia());
+			paramComposto.put("sottotipologia", composto.getSottotipologia());
+			paramComposto.put("catMorf", composto.getCategoriaMorfologica());
+			paramComposto.put("lemmaNormalizzato", composto.getLemmaNormalizzato());
+			paramComposto.put("lemmaRovesciato", composto.getLemmaRovesciato());
+			if (composto.isGrecismo()) {
+				paramComposto.put("originaleGreco", composto.getOriginaleGreco());
+				grecismi.add(paramComposto);
+			} else {
+				composti.add(paramComposto);
+			}
+			for (int i = 1; i <= NUMERO_MAX_MEMBRI; i++) {
+				Membro membro = riga.membri[i - 1];
+				if (membro.isEmpty()) continue;
+				//i membri ripetuti nel blocco vengono inviati una volta sola
+				membri.putIfAbsent(List.of(membro.getLemma(), membro.getCategoriaMorfologica()), 
+						Map.of("lemma", membro.getLemma(), 
+								"catMorf", membro.getCategoriaMorfologica()));
+				relazioni.add(Map.of("lemmaComp", composto.getLemma(), 
+						"catMorfComp", composto.getCategoriaMorfologica(),
+						"tipologia", composto.getTipologia(),
+						"sottotipologia", composto.getSottotipologia(), 
+						"lemmaMembro", membro.getLemma(), 
+						"catMorfMembro", membro.getCategoriaMorfologica(), 
+						"posizione", i));
+			}
+		}
+		
+		eseguiUnwind("UNWIND MERGE NominalCompound", composti, 
+				"MERGE (cm:NominalCompound {lemma : row.lemma, "
+				+ "type: row.tipologia, subtype: row.sottotipologia, "
+				+ "lexicalCatergory : row.catMorf}) "
+				+ "SET cm.lemmaNormalized = row.lemmaNormalizzato, cm.lemmaReversed = row.lemmaRovesciato");
+		eseguiUnwind("UNWIND MERGE NominalCompound greekForm", grecismi, 
+				"MERGE (cm:NominalCompound {lemma : row.lemma, "
+				+ "type: row.tipologia, subtype: row.sottotipologia, "
+				+ "lexicalCatergory : row.catMorf, greekForm: row.originaleGreco}) "
+				+ "SET cm.lemmaNormalized = row.lemmaNormalizzato, cm.lemmaReversed = row.lemmaRovesciato");
+		eseguiUnwind("UNWIND MERGE Member", new ArrayList<>(membri.values()), 
+				"MERGE (m:Member {lemma : row.lemma, lexicalCatergory : row.catMorf})");
+		eseguiUnwind("UNWIND MERGE FORMED_BY", relazioni, 
+				"MATCH (cm:NominalCompound {lemma : row.lemmaComp, lexicalCatergory : row.catMorfComp, "
+				+ "type: row.tipologia, subtype: row.sottotipologia}), " + 
+				"(m:Member {lemma : row.lemmaMembro, lexicalCatergory : row.catMorfMembro}) " + 
+				"MERGE (cm)-[r:FORMED_BY {position : row.posizione}]->(m)");
+	}
+	
+	/**
+	 * Esegue la query data una volta sola per tutte le righe, che sono disponibili
+	 * nella query con la variabile row. Non fa nulla se non ci sono righe.
 	 * 
-	 * @param composto il composto in cui separare il lemma
+	 * @param tipo il tipo di query per le statistiche delle latenze
+	 * @param righe i parametri di ciascuna riga
+	 * @param query la query da eseguire per ogni riga
 	 */
-	private void separaLemmaGrecismo(Composto composto) {
-		String lemma = composto.getLemma();
-		int posLeftParentesi = lemma.indexOf(" (", 0);
-		composto.setLemma(lemma.substring(0, posLeftParentesi));
-		int posRightParentesi = lemma.indexOf(')', posLeftParentesi);
-		composto.setOriginaleGreco(lemma.substring(posLeftParentesi + 2, posRightParentesi));
+	private void eseguiUnwind(String tipo, List<Map<String, Object>> righe, String query) {
+		if (righe.isEmpty()) return;
+		esecutore.esegui(tipo, "UNWIND $rows AS row " + query,
+				Map.of("rows", righe));
 	}
 
 	/**
@@ -131,54 +509,55 @@ public class ElaboratoreCartellaComposti {
 	 */
 	private int creaRelazioneCompostoMembroInDB(Composto composto, Membro membro, int posizione) {
 		if (membro.isEmpty()) return 0;
-		dbDriver.executableQuery(
+		esecutore.esegui("MERGE FORMED_BY",
 				"MATCH (cm:NominalCompound {lemma : $lemmaComp, lexicalCatergory : $catMorfComp, "
 				+ "type: $tipologia, subtype: $sottotipologia}), " + 
 				"(m:Member {lemma : $lemmaMembro, lexicalCatergory : $catMorfMembro}) " + 
-				"MERGE (cm)-[r:FORMED_BY {position : $posizione}]->(m) RETURN cm")
-				.withParameters(Map.of("lemmaComp", composto.getLemma(), 
+				"MERGE (cm)-[r:FORMED_BY {position : $posizione}]->(m) RETURN cm",
+				Map.of("lemmaComp", composto.getLemma(), 
 						"catMorfComp", composto.getCategoriaMorfologica(),
 						"tipologia", composto.getTipologia(),
 						"sottotipologia", composto.getSottotipologia(), 
 						"lemmaMembro", membro.getLemma(), 
 						"catMorfMembro", membro.getCategoriaMorfologica(), 
-						"posizione", posizione))
-			    .withConfig(QueryConfig.builder().withDatabase(dbName).build())
-				.execute();
+						"posizione", posizione));
 		return 1;
 	}
 
 	/**
 	 * Crea in DB, se non esiste già, il NominalCompound con lemma dato, la
 	 * lexicalCategory data, type e subtye. Se si tratta di un grecismo aggiunge
-	 * anche la proprietà greekForm.
+	 * anche la proprietà greekForm. Imposta le chiavi lemmaNormalized e lemmaReversed
+	 * anche sui composti già presenti.
 	 * 
 	 * @param composto l'oggetto contenente i dati da inserire
 	 */
 	private void creaCompostoInDB(Composto composto) {
 		if (composto.isGrecismo()) {
-			dbDriver.executableQuery(
+			esecutore.esegui("MERGE NominalCompound greekForm",
 					"MERGE (cm:NominalCompound {lemma : $lemma, "
 					+ "type: $tipologia, subtype: $sottotipologia, "
-					+ "lexicalCatergory : $catMorf, greekForm: $originaleGreco}) RETURN cm")
-					.withParameters(Map.of("lemma", composto.getLemma(),
+					+ "lexicalCatergory : $catMorf, greekForm: $originaleGreco}) "
+					+ "SET cm.lemmaNormalized = $lemmaNormalizzato, cm.lemmaReversed = $lemmaRovesciato RETURN cm",
+				Map.of("lemma", composto.getLemma(),
 							"tipologia", composto.getTipologia(),
 							"sottotipologia", composto.getSottotipologia(), 
 							"catMorf", composto.getCategoriaMorfologica(), 
-							"originaleGreco", composto.getOriginaleGreco()))
-				    .withConfig(QueryConfig.builder().withDatabase(dbName).build())
-					.execute();
+							"originaleGreco", composto.getOriginaleGreco(),
+							"lemmaNormalizzato", composto.getLemmaNormalizzato(),
+							"lemmaRovesciato", composto.getLemmaRovesciato()));
 		} else {
-			dbDriver.executableQuery(
+			esecutore.esegui("MERGE NominalCompound",
 					"MERGE (cm:NominalCompound {lemma : $lemma, "
 					+ "type: $tipologia, subtype: $sottotipologia, "
-					+ "lexicalCatergory : $catMorf}) RETURN cm")
-					.withParameters(Map.of("lemma", composto.getLemma(), 
+					+ "lexicalCatergory : $catMorf}) "
+					+ "SET cm.lemmaNormalized = $lemmaNormalizzato, cm.lemmaReversed = $lemmaRovesciato RETURN cm",
+				Map.of("lemma", composto.getLemma(), 
 							"tipologia", composto.getTipologia(),
 							"sottotipologia", composto.getSottotipologia(), 
-							"catMorf", composto.getCategoriaMorfologica()))
-				    .withConfig(QueryConfig.builder().withDatabase(dbName).build())
-					.execute();
+							"catMorf", composto.getCategoriaMorfologica(),
+							"lemmaNormalizzato", composto.getLemmaNormalizzato(),
+							"lemmaRovesciato", composto.getLemmaRovesciato()));
 		}
 	}
 
@@ -191,78 +570,28 @@ public class ElaboratoreCartellaComposti {
 	 */
 	private int creaMembroInDB(Membro membro) {
 		if (membro.isEmpty()) return 0;
-		dbDriver.executableQuery(
-			"MERGE (m:Member {lemma : $lemma, lexicalCatergory : $catMorf}) RETURN m")
-			.withParameters(Map.of("lemma", membro.getLemma(), 
-					"catMorf", membro.getCategoriaMorfologica()))
-		    .withConfig(QueryConfig.builder().withDatabase(dbName).build())
-			.execute();
+		esecutore.esegui("MERGE Member",
+			"MERGE (m:Member {lemma : $lemma, lexicalCatergory : $catMorf}) RETURN m",
+				Map.of("lemma", membro.getLemma(), 
+					"catMorf", membro.getCategoriaMorfologica()));
 		return 1;
 	}
 
 	/**
-	 * Recupera il Composto (oggetto che contiene lemma, categoria morfologica, tipologia e 
-	 * sottotipologia) che si trova nella riga row.
-	 * 
-	 * @param row la riga contenente lemma, categoria morfologica, tipologia e sottotipologia
-	 * @return l'oggetto Composto della riga row 
+	 * Una riga del foglio dei composti già validata e in attesa di essere scritta in DB.
 	 */
-	private Composto getComposto(Row row) {
-		  String lemma = row.getCell(0) != null ? row.getCell(0).getStringCellValue() : null;
-		  String catLemma = row.getCell(1) != null ? row.getCell(1).getStringCellValue() : null;
-		  String tipologia = row.getCell(2) != null ? row.getCell(2).getStringCellValue() : null;
-		  String sottotipologia = null;
-		  if (row.getCell(3) != null && row.getCell(3).getCellType() == CellType.STRING) {
-				sottotipologia = row.getCell(3).getStringCellValue();
-		  } else if (row.getCell(3) != null && row.getCell(3).getCellType() == CellType.NUMERIC) {
-				sottotipologia = String.valueOf(Double.valueOf(row.getCell(3).getNumericCellValue()).intValue());
-		  }
-		  if (lemma == null && (catLemma != null || tipologia != null || sottotipologia != null)) {
-			  throw new IllegalArgumentException("Manca il lemma");
-		  }
-		  if (catLemma == null && (lemma != null || tipologia != null || sottotipologia != null)) {
-			  throw new IllegalArgumentException("Manca la catergoria morforlogica");
-		  }
-		  Composto composto = new Composto();
-		  composto.setLemma(lemma);
-		  composto.setCategoriaMorfologica(catLemma);
-		  if (tipologia == null) {
-			  if (!composto.isEmpty()) {
-				  throw new IllegalArgumentException("Manca la tipologia");
-			  }
-		  }
-		  composto.setTipologia(tipologia);
-		  if (sottotipologia == null) {
-			  if (!composto.isEmpty()) {
-				  throw new IllegalArgumentException("Manca la sottotipologia");
-			  }
-		  }
-		  composto.setSottotipologia(sottotipologia);
-		  return composto;
-	}
-
-	/**
-	 * Recupera il Membro (oggetto che contiene lemma e categoria morfologica) che si 
-	 * trova alla colonna posCompostoMembro. Nota: il Membro può essere vuoto se manca
-	 * il lemma e la categoria morfologica.
-	 * 
-	 * @param row la riga contenente lemma e categoria morfologica
-	 * @param posMembro la posizione della colonna in cui si trovano i dati
-	 * @return l'oggetto Membro della riga row alla poszione posMembro
-	 * e posMembro + 1
-	 */
-	private Membro getMembro(Row row, int posMembro) {
-		  String lemma = row.getCell(posMembro) != null ?
-				  row.getCell(posMembro).getStringCellValue() : null;
-		  String catLemma = row.getCell(posMembro + 1) != null ?
-				  row.getCell(posMembro + 1).getStringCellValue() : null;
-		  if (lemma == null && catLemma != null) {
-			  throw new IllegalArgumentException("Mamca il lemma del membro");
-		  }
-		  if (lemma != null && catLemma == null) {
-			  throw new IllegalArgumentException("Mamca la catergoria morfologica del membro");
-		  }
-		  return new Membro(lemma, catLemma);
+	private static class RigaComposto {
+		
+		private final int rowNum;
+		private final Composto composto;
+		private final Membro[] membri;
+		
+		private RigaComposto(int rowNum, Composto composto, Membro[] membri) {
+			this.rowNum = rowNum;
+			this.composto = composto;
+			this.membri = membri;
+		}
+		
 	}
 
 }
@@ -1,14 +1,16 @@
 package it.gt.tesi.compostinominali;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.neo4j.driver.Driver;
-import org.neo4j.driver.QueryConfig;
+import org.neo4j.driver.Record;
 
 /**
  * La classe che permette di creare in DB le relazioni DUPLICATE_OF.
@@ -16,9 +18,18 @@ import org.neo4j.driver.QueryConfig;
  */
 public class ElaboratoreCartellaDoppioni {
 	
-	private final Driver dbDriver;
-	private final XSSFSheet sheetDoppioni;
-	private final String dbName;
+	//numero massimo di coppie (doppione, composto) scritte in DB con una sola query
+	private static final int DIMENSIONE_BATCH = 1000;
+	
+	private final EsecutoreQuery esecutore;
+	private final Iterable<RigaFoglio> sheetDoppioni;
+	private final CacheComposti cacheComposti;
+	private final int righePerTransazione;
+	
+	private int righeElaborate;
+	private int relazioniCreate;
+	private int errors;
+	private int erroriScrittura;
 	
 	/**
 	 * Costruisce un oggetto ElaboratoreCartellaDoppioni a partire dal driver 
@@ -32,120 +43,229 @@ public class ElaboratoreCartellaDoppioni {
 	 * oppure se il nome del database è vuoto
 	 */
 	public ElaboratoreCartellaDoppioni(Driver dbDriver, 
-			XSSFSheet sheetDoppioni, String dbName) {
+			Iterable<RigaFoglio> sheetDoppioni, String dbName) {
+		this(dbDriver, sheetDoppioni, dbName, null);
+	}
+	
+	/**
+	 * Costruisce un oggetto ElaboratoreCartellaDoppioni a partire dal driver 
+	 * del database, dal foglio dei doppioni, dal nome del database e dalla cache
+	 * dei composti presenti in DB. Se la cache non è null l'esistenza dei composti 
+	 * viene verificata in memoria e le relazioni DUPLICATE_OF vengono create a 
+	 * partire dall'elementId dei nodi.
+	 * 
+	 * @param dbDriver il driver del database
+	 * @param sheetDoppioni il foglio dei doppioni
+	 * @param dbName il nome del database
+	 * @param cacheComposti la cache dei composti presenti in DB, può essere null
+	 * 
+	 * @throws IllegalArgumentException se il driver è null, se il foglio è null
+	 * oppure se il nome del database è vuoto
+	 */
+	public ElaboratoreCartellaDoppioni(Driver dbDriver, 
+			Iterable<RigaFoglio> sheetDoppioni, String dbName, CacheComposti cacheComposti) {
+		this(dbDriver, sheetDoppioni, dbName, cacheComposti, 0);
+	}
+	
+	/**
+	 * Costruisce un oggetto ElaboratoreCartellaDoppioni a partire dal driver 
+	 * del database, dal foglio dei doppioni, dal nome del database, dalla cache
+	 * dei composti presenti in DB e dal numero di relazioni da confermare con ogni
+	 * transazione. Se righePerTransazione è maggiore di 0 le relazioni DUPLICATE_OF 
+	 * vengono scritte in transazioni esplicite di righePerTransazione coppie ciascuna.
+	 * 
+	 * @param dbDriver il driver del database
+	 * @param sheetDoppioni il foglio dei doppioni
+	 * @param dbName il nome del database
+	 * @param cacheComposti la cache dei composti presenti in DB, può essere null
+	 * @param righePerTransazione il numero di coppie da confermare con ogni transazione,
+	 * 0 per non usare transazioni esplicite
+	 * 
+	 * @throws IllegalArgumentException se il driver è null, se il foglio è null,
+	 * se il nome del database è vuoto oppure se righePerTransazione è negativo
+	 */
+	public ElaboratoreCartellaDoppioni(Driver dbDriver, Iterable<RigaFoglio> sheetDoppioni, 
+			String dbName, CacheComposti cacheComposti, int righePerTransazione) {
 		if (dbDriver == null) 
 			throw new IllegalArgumentException("Il driver DB non può essere null");
 		if (sheetDoppioni == null) 
 			throw new IllegalArgumentException("Il foglio dei doppioni non può essere null");
 		if (StringUtils.isEmpty(dbName)) 
 			throw new IllegalArgumentException("Il nome del database non può essere vuoto");
-		this.dbDriver = dbDriver;
+		if (righePerTransazione < 0)
+			throw new IllegalArgumentException("Il numero di righe per transazione non può essere negativo");
+		this.esecutore = new EsecutoreQuery(dbDriver, dbName);
 		this.sheetDoppioni = sheetDoppioni;
-		this.dbName = dbName;
+		this.cacheComposti = cacheComposti;
+		this.righePerTransazione = righePerTransazione;
+	}
+	
+	public int getRigheElaborate() {
+		return righeElaborate;
+	}
+
+	public int getRelazioniCreate() {
+		return relazioniCreate;
+	}
+
+	public int getErrori() {
+		return errors + erroriScrittura;
+	}
+
+	/**
+	 * Restituisce il numero di relazioni DUPLICATE_OF la cui scrittura in DB è fallita.
+	 * 
+	 * @return il numero di relazioni non scritte
+	 */
+	public int getErroriScrittura() {
+		return erroriScrittura;
 	}
 	
 	/**
 	 * Crea le relazioni DUPLICATE_OF per i composti che sono presenti nella
-	 * cartella passata nel costruttore.
+	 * cartella passata nel costruttore. L'elaborazione avviene in due passi: prima
+	 * si leggono tutte le righe e si verifica con un'unica ricerca l'esistenza in DB
+	 * di tutti i lemmi, segnalando una sola volta ogni lemma mancante; poi si creano 
+	 * le relazioni tra le coppie distinte di composti esistenti con query UNWIND
+	 * di al massimo DIMENSIONE_BATCH coppie ciascuna, confermate insieme a blocchi di
+	 * righePerTransazione coppie con la modalità transazionale.
 	 */
 	public void elabora() {
-		Iterator<Row> rowIterator = sheetDoppioni.iterator();
-		int errors = 0;
+		Iterator<RigaFoglio> rowIterator = sheetDoppioni.iterator();
+		errors = 0;
+		erroriScrittura = 0;
+		List<List<String>> righe = new ArrayList<>();
+		Set<String> lemmi = new LinkedHashSet<>();
 		
 		//i composti iniziano dalla seconda riga
 		rowIterator.next();
 		int rowNum = 1;
 		
 		while (rowIterator.hasNext()) {
-			Row row = rowIterator.next();
+			RigaFoglio row = rowIterator.next();
 			rowNum++;
-			int emptyColIdx = getEmptyColIndex(row);
+			int emptyColIdx = DecodificatoreRighe.getEmptyColIndex(row);
 			if (emptyColIdx < 2) {
 				System.out.println("ATTENZIONE riga " + rowNum + " errata");
 				errors++;
 				continue;
 			}
-			for (int i = 0; i < emptyColIdx - 1; i++) {
-				Composto composto = getComposto(row, i);
-				if (!esisteCompostoInDB(composto)) {
-					System.out.println("ATTENZIONE: manca il composto " + composto.getLemma() + " in DB");
-					errors++;
-					continue;
+			List<String> riga = new ArrayList<>();
+			for (int i = 0; i < emptyColIdx; i++) {
+				riga.add(DecodificatoreRighe.getCompostoDoppione(row, i).getLemma());
+			}
+			righe.add(riga);
+			lemmi.addAll(riga);
+		}
+		
+		Set<String> lemmiEsistenti = getLemmiEsistentiInDB(lemmi);
+		for (String lemma : lemmi) {
+			if (!lemmiEsistenti.contains(lemma)) {
+				System.out.println("ATTENZIONE: manca il composto " + lemma + " in DB");
+				errors++;
+			}
+		}
+		
+		//la coppia (doppione, composto) compare una sola volta anche se è ripetuta nel foglio
+		Set<List<String>> coppie = new LinkedHashSet<>();
+		for (List<String> riga : righe) {
+			for (int i = 0; i < riga.size() - 1; i++) {
+				if (!lemmiEsistenti.contains(riga.get(i))) continue;
+				for (int j = i + 1; j < riga.size(); j++) {
+					if (!lemmiEsistenti.contains(riga.get(j))) continue;
+					coppie.add(List.of(riga.get(j), riga.get(i)));
 				}
-				for (int j = i + 1; j < emptyColIdx; j++) {
-					Composto doppione = getComposto(row, j);
-					if (!esisteCompostoInDB(doppione)) {
-						System.out.println("ATTENZIONE: manca il composto " + doppione.getLemma() + " in DB");
-						errors++;
-						continue;
-					}
-					creaRelazioneDoppioneInDB(doppione, composto);
+			}
+		}
+		
+		List<List<String>> listaCoppie = new ArrayList<>(coppie);
+		relazioniCreate = 0;
+		int dimensioneBlocco = righePerTransazione > 0 ? righePerTransazione : DIMENSIONE_BATCH;
+		for (int da = 0; da < listaCoppie.size(); da += dimensioneBlocco) {
+			List<List<String>> batch = listaCoppie.subList(da, 
+					Math.min(da + dimensioneBlocco, listaCoppie.size()));
+			try {
+				if (righePerTransazione > 0) {
+					esecutore.inTransazione(() -> {
+						for (int i = 0; i < batch.size(); i += DIMENSIONE_BATCH) {
+							creaRelazioniDoppioniInDB(batch.subList(i, 
+									Math.min(i + DIMENSIONE_BATCH, batch.size())));
+						}
+						return null;
+					});
+				} else {
+					creaRelazioniDoppioniInDB(batch);
 				}
+				relazioniCreate += batch.size();
+			} catch (Exception e) {
+				System.out.println("Errore nella creazione di " + batch.size() 
+					+ " relazioni DUPLICATE_OF: " + e.getMessage());
+				erroriScrittura += batch.size();
 			}
 		}
+		righeElaborate = rowNum;
 		System.out.println("Righe elaborate: " + rowNum);
-		System.out.println("Errori trovati: " + errors);
+		System.out.println("Relazioni elaborate: " + relazioniCreate);
+		System.out.println("Errori trovati: " + getErrori());
 	}
 
 	/**
-	 * Crea la relazione DUPLICATE_OF tra il doppione e il composto.
+	 * Crea con un'unica query UNWIND le relazioni DUPLICATE_OF tra le coppie date. 
+	 * Se c'è la cache dei composti i nodi vengono individuati con il loro elementId.
 	 * 
-	 * @param doppione il composto doppione
-	 * @param composto il composto di cui l'altro è doppione
+	 * @param coppie le coppie di lemmi (doppione, composto) di cui creare la relazione
 	 */
-	private void creaRelazioneDoppioneInDB(Composto doppione, Composto composto) {
-		dbDriver.executableQuery(
-				"MATCH (c:NominalCompound {lemma : $lemmaComp}), " + 
-				"(d:NominalCompound {lemma : $lemmaDopp}) " + 
-				"MERGE (d)-[r:DUPLICATE_OF]->(c) RETURN r")
-				.withParameters(Map.of("lemmaComp", composto.getLemma(), 
-						"lemmaDopp", doppione.getLemma()))
-			    .withConfig(QueryConfig.builder().withDatabase(dbName).build())
-				.execute();
-	}
-
-	/**
-	 * Restituisce true se il composto col dato lemma è già presente in DB,
-	 * false altrimenti.
-	 * 
-	 * @param composto con il lemma da verificare se è già presente nel DB
-	 * @return true se il composto con lemma uguale a composto.getLemma() esiste in DB,
-	 * false altrimenti
-	 */
-	private boolean esisteCompostoInDB(Composto composto) {
-		var result = dbDriver.executableQuery(
-				"MATCH (c:NominalCompound {lemma: $lemma}) RETURN c")
-				.withParameters(Map.of("lemma", composto.getLemma()))
-			    .withConfig(QueryConfig.builder().withDatabase(dbName).build())
-				.execute();
-		return !result.records().isEmpty();
-	}
-	
-	/**
-	 * Recupera il composto che si trova alla colonna i-esima della riga row.
-	 * 
-	 * @param row la riga do recuperare il composto
-	 * @param i l'indice della colonna dove recuperare il composto
-	 * @return il composto alla riga row e alla i-esima colonna
-	 */
-	private Composto getComposto(Row row, int i) {
-		Composto composto = new Composto();
-		Cell cell = row.getCell(i);
-		if (cell != null) {
-			composto.setLemma(cell.getStringCellValue());
+	private void creaRelazioniDoppioniInDB(List<List<String>> coppie) {
+		List<Map<String, Object>> rows = new ArrayList<>(coppie.size());
+		if (cacheComposti != null) {
+			for (List<String> coppia : coppie) {
+				rows.add(Map.of("idDopp", cacheComposti.getId(coppia.get(0)), 
+						"idComp", cacheComposti.getId(coppia.get(1))));
+			}
+			esecutore.esegui("UNWIND MERGE DUPLICATE_OF",
+					"UNWIND $rows AS row " + 
+					"MATCH (c:NominalCompound), (d:NominalCompound) " + 
+					"WHERE elementId(c) IN row.idComp AND elementId(d) IN row.idDopp " + 
+					"MERGE (d)-[r:DUPLICATE_OF]->(c)",
+				Map.of("rows", rows));
+			return;
 		}
-		return composto;
+		for (List<String> coppia : coppie) {
+			rows.add(Map.of("lemmaDopp", coppia.get(0), "lemmaComp", coppia.get(1)));
+		}
+		esecutore.esegui("UNWIND MERGE DUPLICATE_OF",
+				"UNWIND $rows AS row " + 
+				"MATCH (c:NominalCompound {lemma : row.lemmaComp}), " + 
+				"(d:NominalCompound {lemma : row.lemmaDopp}) " + 
+				"MERGE (d)-[r:DUPLICATE_OF]->(c)",
+				Map.of("rows", rows));
 	}
 
 	/**
-	 * Recupera l'indice su base zero della prima colonna vuota della riga
-	 * row dei composti.
+	 * Restituisce i lemmi dati per cui esiste almeno un composto in DB. Se c'è la cache 
+	 * dei composti la verifica viene fatta in memoria, altrimenti con un'unica query.
 	 * 
-	 * @param row la riga su cui ci sono i composti
-	 * @return l'indice su base zero della prima colonna che è vuota
+	 * @param lemmi i lemmi da verificare
+	 * @return i lemmi presenti in DB
 	 */
-	private int getEmptyColIndex(Row row) {
-		return row.getLastCellNum();
+	private Set<String> getLemmiEsistentiInDB(Set<String> lemmi) {
+		Set<String> lemmiEsistenti = new HashSet<>();
+		if (cacheComposti != null) {
+			for (String lemma : lemmi) {
+				if (cacheComposti.contiene(lemma)) {
+					lemmiEsistenti.add(lemma);
+				}
+			}
+			return lemmiEsistenti;
+		}
+		var result = esecutore.esegui("UNWIND MATCH NominalCompound",
+				"UNWIND $lemmi AS lemma " + 
+				"MATCH (c:NominalCompound {lemma: lemma}) RETURN DISTINCT lemma",
+				Map.of("lemmi", new ArrayList<>(lemmi)));
+		for (Record record : result) {
+			lemmiEsistenti.add(record.get("lemma").asString());
+		}
+		return lemmiEsistenti;
 	}
 	
 }
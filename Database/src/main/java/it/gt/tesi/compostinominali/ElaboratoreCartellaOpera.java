@@ -1,29 +1,79 @@
 package it.gt.tesi.compostinominali;
 
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellType;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.neo4j.driver.Driver;
-import org.neo4j.driver.QueryConfig;
+import org.neo4j.driver.Record;
 
 /**
  * La classe che permette di creare in DB l'opera di un dato foglio di calcolo.
+ * Mentre crea le relazioni CONTAINS ne conta in memoria la distribuzione per sottotipologia,
+ * che alla fine scrive in DB con AggregatoreSottotipi.scriviOpera().
  * Chiamare il metodo elabora().
  */
 public class ElaboratoreCartellaOpera {
 	
-	private final Driver dbDriver;
-	private final XSSFSheet sheetOpera;
-	private final String dbName;
+	//un lock per ogni autore: le MERGE dello stesso autore da file elaborati in parallelo
+	//creerebbero nodi Author doppi perché non c'è un vincolo di unicità che le serializzi
+	private static final Map<String, Object> LOCK_AUTORI = new ConcurrentHashMap<>();
+	
+	//la relazione CONTAINS con l'opera cercata per proprietà e il composto per lemma
+	private static final String QUERY_CONTAINS = "MATCH (op:Work {title: $titolo, genre: $genere, "
+			+ "subgenre: $sottogenere, acronym: $abbreviazione}), "
+			+ "(cn:NominalCompound {lemma: $lemma}) "
+			+ "MERGE (op)-[r:CONTAINS {occurrences: $occorrenze}]->(cn) "
+			+ "RETURN elementId(r) AS id, cn.type AS tipologia, cn.subtype AS sottotipologia";
+	//la relazione CONTAINS con l'opera e i composti cercati per elementId
+	private static final String QUERY_CONTAINS_ID = "MATCH (op:Work), (cn:NominalCompound) "
+			+ "WHERE elementId(op) = $idOpera AND elementId(cn) IN $idComposti "
+			+ "MERGE (op)-[r:CONTAINS {occurrences: $occorrenze}]->(cn) "
+			+ "RETURN elementId(r) AS id, cn.type AS tipologia, cn.subtype AS sottotipologia";
+	//con la sincronizzazione la relazione CONTAINS è unica per opera e composto e le occorrenze
+	//vengono aggiornate; le relazioni doppie lasciate dalle importazioni precedenti vengono eliminate
+	private static final String MERGE_CONTAINS_SINCRONIZZATA = "MERGE (op)-[r:CONTAINS]->(cn) "
+			+ "SET r.occurrences = $occorrenze "
+			+ "WITH op, cn, collect(r) AS relazioni "
+			+ "FOREACH (doppia IN tail(relazioni) | DELETE doppia) "
+			+ "WITH cn, head(relazioni) AS r "
+			+ "RETURN elementId(r) AS id, cn.type AS tipologia, cn.subtype AS sottotipologia";
+	private static final String QUERY_CONTAINS_SINCRONIZZATA = "MATCH (op:Work {title: $titolo, genre: $genere, "
+			+ "subgenre: $sottogenere, acronym: $abbreviazione}), "
+			+ "(cn:NominalCompound {lemma: $lemma}) "
+			+ MERGE_CONTAINS_SINCRONIZZATA;
+	private static final String QUERY_CONTAINS_ID_SINCRONIZZATA = "MATCH (op:Work), (cn:NominalCompound) "
+			+ "WHERE elementId(op) = $idOpera AND elementId(cn) IN $idComposti "
+			+ MERGE_CONTAINS_SINCRONIZZATA;
+	
+	private final EsecutoreQuery esecutore;
+	private final Iterable<RigaFoglio> sheetOpera;
+	private final PrintStream out;
+	private final CacheComposti cacheComposti;
+	private final boolean transazionale;
+	private final int dimensioneCoda;
+	private final int scrittureInVolo;
+	private final boolean sincronizzazione;
+	private final String queryContains;
+	private final String queryContainsId;
+	
+	private int compostiTrovati;
+	private int compostiVuoti;
+	private int errors;
+	//i composti mancanti e gli errori di scrittura delle relazioni CONTAINS, contati dal thread
+	//di scrittura se c'è la coda e dai thread del driver, sincronizzati sul conteggio dell'opera,
+	//con le scritture asincrone
+	private int compostiMancanti;
+	private int erroriScrittura;
 	
 	/**
 	 * Costruisce un oggetto ElaboratoreCartellaOpera a partire dal driver del DB, il foglio di
-	 * calcolo dell'opera e il mome del database.
+	 * calcolo dell'opera e il mome del database. I messaggi vengono stampati su System.out.
 	 * 
 	 * @param dbDriver il driver del DB
 	 * @param sheetOpera il foglio di calcolo dell'opera
@@ -32,69 +82,359 @@ public class ElaboratoreCartellaOpera {
 	 * @throw IllegaArgumentException se dbDriver è null, oppure se sheetOpera è null,
 	 * 			oppure se dbName è vuoto
 	 */
-	public ElaboratoreCartellaOpera(Driver dbDriver, XSSFSheet sheetOpera, String dbName) {
+	public ElaboratoreCartellaOpera(Driver dbDriver, Iterable<RigaFoglio> sheetOpera, String dbName) {
+		this(dbDriver, sheetOpera, dbName, System.out, null, OpzioniImportazione.PREDEFINITE);
+	}
+	
+	/**
+	 * Costruisce un oggetto ElaboratoreCartellaOpera a partire dal driver del DB, il foglio di
+	 * calcolo dell'opera, il mome del database, lo stream su cui stampare i messaggi, la
+	 * cache dei composti presenti in DB e le opzioni di scrittura. 
+	 * Se la cache non è null l'esistenza dei composti viene verificata in memoria e le relazioni
+	 * CONTAINS vengono create a partire dall'elementId dei nodi.
+	 * Delle opzioni vengono usate:
+	 * <ul>
+	 * <li>la modalità transazionale: autore, opera e relazioni dell'opera vengono scritti in
+	 * un'unica transazione, l'opera viene importata per intero oppure per niente;</li>
+	 * <li>la dimensione della coda: se non c'è la modalità transazionale, dopo autore e opera
+	 * le relazioni CONTAINS vengono scritte da un thread di scrittura, a cui le righe vengono
+	 * passate attraverso una coda di al massimo dimensioneCoda righe;</li>
+	 * <li>le scritture in volo: se non c'è la modalità transazionale, le relazioni CONTAINS
+	 * vengono inviate con l'API asincrona del driver dal thread che legge il foglio (vedi 
+	 * ScrittoreAsincrono) e la coda non viene usata; le righe con lo stesso composto vengono
+	 * scritte una dopo l'altra, come con le scritture sincrone;</li>
+	 * <li>la sincronizzazione: la relazione CONTAINS tra l'opera e un composto è una sola e le
+	 * sue occorrenze vengono aggiornate con quelle del foglio, invece di aggiungere una nuova
+	 * relazione quando le occorrenze cambiano. Se nel foglio il composto compare più volte, 
+	 * le occorrenze delle sue righe vengono sommate.</li>
+	 * </ul>
+	 * 
+	 * @param dbDriver il driver del DB
+	 * @param sheetOpera il foglio di calcolo dell'opera
+	 * @param dbName il nome del DB
+	 * @param out lo stream su cui stampare i messaggi dell'elaborazione
+	 * @param cacheComposti la cache dei composti presenti in DB, può essere null
+	 * @param opzioni le opzioni di scrittura in DB
+	 * 
+	 * @throw IllegaArgumentException se dbDriver è null, oppure se sheetOpera è null,
+	 * 			oppure se dbName è vuoto, oppure se out è null, oppure se opzioni è null
+	 */
+	public ElaboratoreCartellaOpera(Driver dbDriver, Iterable<RigaFoglio> sheetOpera, String dbName, 
+			PrintStream out, CacheComposti cacheComposti, OpzioniImportazione opzioni) {
 		if (dbDriver == null) 
 			throw new IllegalArgumentException("Il driver DB non può essere null");
 		if (sheetOpera == null) 
 			throw new IllegalArgumentException("Il foglio dell'opera non può essere null");
 		if (StringUtils.isEmpty(dbName)) 
 			throw new IllegalArgumentException("Il nome del database non può essere vuoto");
-		this.dbDriver = dbDriver;
+		if (out == null) 
+			throw new IllegalArgumentException("Lo stream dei messaggi non può essere null");
+		if (opzioni == null) 
+			throw new IllegalArgumentException("Le opzioni di importazione non possono essere null");
+		this.esecutore = new EsecutoreQuery(dbDriver, dbName);
 		this.sheetOpera = sheetOpera;
-		this.dbName = dbName;
+		this.out = out;
+		this.cacheComposti = cacheComposti;
+		this.transazionale = opzioni.isTransazionale();
+		this.dimensioneCoda = opzioni.getDimensioneCoda();
+		this.scrittureInVolo = opzioni.getScrittureInVolo();
+		this.sincronizzazione = opzioni.isSincronizzazione();
+		this.queryContains = sincronizzazione ? QUERY_CONTAINS_SINCRONIZZATA : QUERY_CONTAINS;
+		this.queryContainsId = sincronizzazione ? QUERY_CONTAINS_ID_SINCRONIZZATA : QUERY_CONTAINS_ID;
+	}
+	
+	public int getCompostiTrovati() {
+		return compostiTrovati;
+	}
+
+	public int getCompostiVuoti() {
+		return compostiVuoti;
+	}
+
+	public int getErrori() {
+		return errors + compostiMancanti + erroriScrittura;
+	}
+
+	/**
+	 * Restituisce il numero di scritture in DB fallite, per esempio per la caduta della
+	 * connessione: a differenza degli errori nei dati, rielaborando il file possono riuscire.
+	 * 
+	 * @return il numero di scritture fallite
+	 */
+	public int getErroriScrittura() {
+		return erroriScrittura;
 	}
 	
 	/**
 	 * Costruisce la data opera in DB aggiungendo autore, opera e le occorrenze dei composti
-	 * nominali presenti nel foglio di calcolo.
+	 * nominali presenti nel foglio di calcolo. Con la modalità transazionale, se la 
+	 * transazione fallisce viene lanciata l'eccezione e in DB non viene scritto nulla.
 	 */
 	public void elabora() {
-		Iterator<Row> rowIterator = sheetOpera.iterator();
+		Iterator<RigaFoglio> rowIterator = sheetOpera.iterator();
 		
-		Autore autore = getAutore(rowIterator);
-		creaAutoreInDB(autore);
+		Autore autore = DecodificatoreRighe.getAutore(rowIterator);
+		Opera opera = DecodificatoreRighe.getOpera(rowIterator);
+		if (transazionale) {
+			elaboraInTransazione(rowIterator, autore, opera);
+			return;
+		}
+		String idOpera;
 		
-		Opera opera = getOpera(rowIterator);
-		creaOperaInDB(opera);
+		synchronized (LOCK_AUTORI.computeIfAbsent(autore.getNome(), nome -> new Object())) {
+			creaAutoreInDB(autore);
+			idOpera = creaOperaInDB(opera);
+			creaRelazioneOperaAutoreInDB(opera, autore);
+		}
+		
+		compostiTrovati = 0;
+		compostiVuoti = 0;
+		errors = 0;
+		compostiMancanti = 0;
+		erroriScrittura = 0;
+		int rowNum = 5;
+		ConteggioOpera conteggio = new ConteggioOpera();
+		Map<String, Integer> occorrenzePerLemma = new HashMap<>();
+		
+		//i composti nominali iniziano due righe sotto l'opera
+		rowIterator.next();
+		rowIterator.next();
 		
-		creaRelazioneOperaAutoreInDB(opera, autore);
+		ScrittoreAsincrono scrittore = scrittureInVolo > 0 
+				? new ScrittoreAsincrono(esecutore, scrittureInVolo) 
+				: null;
+		CodaScrittura<RigaOpera> coda = scrittore == null && dimensioneCoda > 0 
+				? new CodaScrittura<>("opera", dimensioneCoda, riga -> scriviRiga(idOpera, opera, riga, conteggio)) 
+				: null;
+		try {
+			while (rowIterator.hasNext()) {
+				RigaFoglio row = rowIterator.next();
+				rowNum++;
+				try {
+					Composto composto = DecodificatoreRighe.getCompostoOpera(row);
+					if (composto.isEmpty()) {
+						out.println("Composto vuoto: " + composto.getLemma() + " alla riga " + rowNum);
+						compostiVuoti++;
+						continue;
+					} 
+					compostiTrovati++;
+					composto = sommaOccorrenze(occorrenzePerLemma, composto, rowNum);
+					if (scrittore != null) {
+						inviaRiga(scrittore, idOpera, opera, new RigaOpera(rowNum, composto), conteggio);
+					} else if (coda != null) {
+						coda.invia(new RigaOpera(rowNum, composto));
+					} else {
+						scriviRiga(idOpera, opera, new RigaOpera(rowNum, composto), conteggio);
+					}
+				} catch (Exception e) {
+					out.println("Errore alla riga " + rowNum + ": " + e.getMessage());
+					errors++;
+				}
+			}
+		} finally {
+			//anche se la lettura del foglio fallisce: il thread di scrittura della coda
+			//non è un daemon e senza chiudi() la JVM non termina
+			if (scrittore != null) {
+				scrittore.chiudi();
+			} else if (coda != null) {
+				coda.chiudi();
+			}
+		}
+		if (scrittore != null) {
+			out.println("Attese delle scritture in volo: " + scrittore.getVolteInAttesa());
+		}
+		try {
+			AggregatoreSottotipi.scriviOpera(esecutore, opera.getAbbreviazione(), conteggio.getDistribuzione());
+		} catch (Exception e) {
+			out.println("Errore nella scrittura della distribuzione dei sottotipi: " + e.getMessage());
+			erroriScrittura++;
+		}
 		
-		int compostiTrovati = 0;
-		int compostiVuoti = 0;
+		out.println("Composti trovati: " + compostiTrovati);
+		out.println("Composti vuoti: " + compostiVuoti);
+		out.println("Errori trovati: " + getErrori());
+	}
+	
+	/**
+	 * Crea in DB la relazione CONTAINS della riga data, se il composto esiste, e 
+	 * segnala l'errore se il composto non esiste oppure se la scrittura fallisce.
+	 * 
+	 * @param idOpera l'elementId dell'opera
+	 * @param opera l'opera a cui aggiungere la relazione CONTAINS
+	 * @param riga la riga del composto già validata
+	 * @param conteggio il conteggio delle relazioni CONTAINS dell'opera
+	 */
+	private void scriviRiga(String idOpera, Opera opera, RigaOpera riga, ConteggioOpera conteggio) {
+		try {
+			if (!creaRelazioneSeEsisteComposto(idOpera, opera, riga.composto, conteggio)) {
+				out.println("IL COMPOSTO " + riga.composto.getLemma() 
+					+ " NON È STATO TROVATO TRA LA LISTA DEI COMPOSTI NOMINALI");
+				compostiMancanti++;
+			}
+		} catch (Exception e) {
+			out.println("Errore alla riga " + riga.rowNum + ": " + e.getMessage());
+			erroriScrittura++;
+		}
+	}
+
+	/**
+	 * Invia la relazione CONTAINS della riga data con lo scrittore asincrono, se il composto
+	 * esiste, e quando arriva la risposta la aggiunge al conteggio dell'opera oppure segnala
+	 * l'errore, come scriviRiga(). Senza la cache l'esistenza del composto non viene verificata 
+	 * prima: la MERGE non restituisce relazioni se il composto non esiste.
+	 * 
+	 * @param scrittore lo scrittore con cui inviare la relazione
+	 * @param idOpera l'elementId dell'opera
+	 * @param opera l'opera a cui aggiungere la relazione CONTAINS
+	 * @param riga la riga del composto già validata
+	 * @param conteggio il conteggio delle relazioni CONTAINS dell'opera
+	 */
+	private void inviaRiga(ScrittoreAsincrono scrittore, String idOpera, Opera opera, RigaOpera riga,
+			ConteggioOpera conteggio) {
+		Composto composto = riga.composto;
+		if (cacheComposti != null && !cacheComposti.contiene(composto.getLemma())) {
+			synchronized (conteggio) {
+				out.println("IL COMPOSTO " + composto.getLemma() 
+					+ " NON È STATO TROVATO TRA LA LISTA DEI COMPOSTI NOMINALI");
+				compostiMancanti++;
+			}
+			return;
+		}
+		scrittore.invia(composto.getLemma(), "MERGE CONTAINS",
+				cacheComposti != null ? queryContainsId : queryContains,
+				cacheComposti != null ? getParametriContains(idOpera, composto) : getParametriContains(opera, composto),
+				(relazioni, errore) -> {
+					synchronized (conteggio) {
+						if (errore != null) {
+							out.println("Errore alla riga " + riga.rowNum + ": " + errore.getMessage());
+							erroriScrittura++;
+						} else if (relazioni.isEmpty()) {
+							out.println("IL COMPOSTO " + composto.getLemma() 
+								+ " NON È STATO TROVATO TRA LA LISTA DEI COMPOSTI NOMINALI");
+							compostiMancanti++;
+						} else {
+							conteggio.conta(relazioni, composto);
+						}
+					}
+				});
+	}
+
+	/**
+	 * Legge tutte le righe dei composti e poi scrive autore, opera, relazioni CONTAINS e
+	 * distribuzione dei sottotipi in un'unica transazione. Il lock dell'autore resta acquisito fino alla conferma 
+	 * della transazione, perché prima le altre transazioni non vedono il nodo Author.
+	 * 
+	 * @param rowIterator le righe del foglio dopo quelle dell'autore e dell'opera
+	 * @param autore l'autore dell'opera
+	 * @param opera l'opera da scrivere in DB
+	 */
+	private void elaboraInTransazione(Iterator<RigaFoglio> rowIterator, Autore autore, Opera opera) {
+		compostiTrovati = 0;
+		compostiVuoti = 0;
+		errors = 0;
+		compostiMancanti = 0;
+		erroriScrittura = 0;
 		int rowNum = 5;
-		int errors = 0;
+		List<Composto> composti = new ArrayList<>();
+		Map<String, Integer> occorrenzePerLemma = new HashMap<>();
 		
 		//i composti nominali iniziano due righe sotto l'opera
 		rowIterator.next();
 		rowIterator.next();
 		
 		while (rowIterator.hasNext()) {
-			Row row = rowIterator.next();
+			RigaFoglio row = rowIterator.next();
 			rowNum++;
 			try {
-				Composto composto = getComposto(row);
+				Composto composto = DecodificatoreRighe.getCompostoOpera(row);
 				if (composto.isEmpty()) {
-					System.out.println("Composto vuoto: " + composto.getLemma() + " alla riga " + rowNum);
+					out.println("Composto vuoto: " + composto.getLemma() + " alla riga " + rowNum);
 					compostiVuoti++;
 					continue;
 				} 
 				compostiTrovati++;
-				if (esisteComposto(composto)) {
-					creaRelazioneOperaCompostoInDB(opera, composto);
-				} else {
-					System.out.println("IL COMPOSTO " + composto.getLemma() 
-						+ " NON È STATO TROVATO TRA LA LISTA DEI COMPOSTI NOMINALI");
-					errors++;
-				}
+				composti.add(sommaOccorrenze(occorrenzePerLemma, composto, rowNum));
 			} catch (Exception e) {
-				System.out.println("Errore alla riga " + rowNum + ": " + e.getMessage());
+				out.println("Errore alla riga " + rowNum + ": " + e.getMessage());
 				errors++;
 			}
 		}
 		
-		System.out.println("Composti trovati: " + compostiTrovati);
-		System.out.println("Composti vuoti: " + compostiVuoti);
-		System.out.println("Errori trovati: " + errors);
+		List<String> lemmiMancanti;
+		synchronized (LOCK_AUTORI.computeIfAbsent(autore.getNome(), nome -> new Object())) {
+			//la transazione può essere ripetuta: i lemmi mancanti si stampano dopo la conferma
+			lemmiMancanti = esecutore.inTransazione(() -> {
+				List<String> mancanti = new ArrayList<>();
+				ConteggioOpera conteggio = new ConteggioOpera();
+				creaAutoreInDB(autore);
+				String idOpera = creaOperaInDB(opera);
+				creaRelazioneOperaAutoreInDB(opera, autore);
+				for (Composto composto : composti) {
+					if (!creaRelazioneSeEsisteComposto(idOpera, opera, composto, conteggio)) {
+						mancanti.add(composto.getLemma());
+					}
+				}
+				AggregatoreSottotipi.scriviOpera(esecutore, opera.getAbbreviazione(), conteggio.getDistribuzione());
+				return mancanti;
+			});
+		}
+		for (String lemma : lemmiMancanti) {
+			out.println("IL COMPOSTO " + lemma 
+				+ " NON È STATO TROVATO TRA LA LISTA DEI COMPOSTI NOMINALI");
+			errors++;
+		}
+		
+		out.println("Composti trovati: " + compostiTrovati);
+		out.println("Composti vuoti: " + compostiVuoti);
+		out.println("Errori trovati: " + errors);
+	}
+	
+	/**
+	 * Con la sincronizzazione la relazione CONTAINS tra l'opera e un composto è una sola:
+	 * se il composto compare in più righe, ogni riga viene scritta con la somma delle 
+	 * occorrenze delle righe lette finora con lo stesso lemma, così dopo l'ultima la 
+	 * relazione ha le occorrenze di tutte. Le scritture dello stesso lemma avvengono 
+	 * nell'ordine delle righe in ogni modalità di scrittura.
+	 * Senza sincronizzazione restituisce il composto così com'è.
+	 * 
+	 * @param occorrenzePerLemma le occorrenze sommate per lemma delle righe già lette dell'opera
+	 * @param composto il composto della riga
+	 * @param rowNum il numero della riga
+	 * @return il composto con le occorrenze da scrivere
+	 */
+	private Composto sommaOccorrenze(Map<String, Integer> occorrenzePerLemma, Composto composto, int rowNum) {
+		if (!sincronizzazione) {
+			return composto;
+		}
+		int occorrenze = occorrenzePerLemma.merge(composto.getLemma(), composto.getOccorrenze(), Integer::sum);
+		if (occorrenze == composto.getOccorrenze()) {
+			return composto;
+		}
+		out.println("Il composto " + composto.getLemma() + " è ripetuto alla riga " + rowNum 
+				+ ": le occorrenze vengono sommate (" + occorrenze + ")");
+		return composto.conOccorrenze(occorrenze);
+	}
+	
+	/**
+	 * Crea la relazione CONTAINS tra l'opera e il composto se il composto esiste in DB,
+	 * verificandolo nella cache dei composti se c'è, e la aggiunge al conteggio dell'opera.
+	 * 
+	 * @param idOpera l'elementId dell'opera
+	 * @param opera l'opera a cui aggiungere la relazione CONTAINS
+	 * @param composto il composto a cui aggiungere la relazione CONTAINS
+	 * @param conteggio il conteggio delle relazioni CONTAINS dell'opera
+	 * @return true se la relazione è stata creata, false se il composto non esiste
+	 */
+	private boolean creaRelazioneSeEsisteComposto(String idOpera, Opera opera, Composto composto,
+			ConteggioOpera conteggio) {
+		if (cacheComposti != null && cacheComposti.contiene(composto.getLemma())) {
+			conteggio.conta(creaRelazioneOperaCompostoInDB(idOpera, composto), composto);
+			return true;
+		} else if (cacheComposti == null && esisteComposto(composto)) {
+			conteggio.conta(creaRelazioneOperaCompostoInDB(opera, composto), composto);
+			return true;
+		}
+		return false;
 	}
 
 	/**
@@ -103,21 +443,40 @@ public class ElaboratoreCartellaOpera {
 	 * 
 	 * @param opera a cui aggiungere la relazione CONTAINS
 	 * @param composto a cui aggiungere la relazione CONTAINS
+	 * @return un record per ogni relazione, con il suo elementId e la tipologia e la
+	 * sottotipologia del composto
 	 */
-	private void creaRelazioneOperaCompostoInDB(Opera opera, Composto composto) {
-		dbDriver.executableQuery(
-				"MATCH (op:Work {title: $titolo, genre: $genere, "
-				+ "subgenre: $sottogenere, acronym: $abbreviazione}), "
-				+ "(cn:NominalCompound {lemma: $lemma}) "
-				+ "MERGE (op)-[r:CONTAINS {occurrences: $occorrenze}]->(cn) RETURN r")
-				.withParameters(Map.of("titolo", opera.getTitolo(), 
-						"genere", opera.getGenere(), 
-						"sottogenere", opera.getSottogenere(),
-						"abbreviazione", opera.getAbbreviazione(),
-						"lemma", composto.getLemma(),
-						"occorrenze", composto.getOccorrenze()))
-			    .withConfig(QueryConfig.builder().withDatabase(dbName).build())
-				.execute();
+	private List<Record> creaRelazioneOperaCompostoInDB(Opera opera, Composto composto) {
+		return esecutore.esegui("MERGE CONTAINS", queryContains, getParametriContains(opera, composto));
+	}
+
+	private static Map<String, Object> getParametriContains(Opera opera, Composto composto) {
+		return Map.of("titolo", opera.getTitolo(), 
+				"genere", opera.getGenere(), 
+				"sottogenere", opera.getSottogenere(),
+				"abbreviazione", opera.getAbbreviazione(),
+				"lemma", composto.getLemma(),
+				"occorrenze", composto.getOccorrenze());
+	}
+
+	/**
+	 * Aggiunge al DB, se non è già presente, la relazione 
+	 * (Work)-[CONTAINS [occurences}]->(NominalCompound) individuando i nodi con il loro
+	 * elementId: quello dell'opera e quelli del composto presi dalla cache.
+	 * 
+	 * @param idOpera l'elementId dell'opera a cui aggiungere la relazione CONTAINS
+	 * @param composto a cui aggiungere la relazione CONTAINS
+	 * @return un record per ogni relazione, con il suo elementId e la tipologia e la
+	 * sottotipologia del composto
+	 */
+	private List<Record> creaRelazioneOperaCompostoInDB(String idOpera, Composto composto) {
+		return esecutore.esegui("MERGE CONTAINS", queryContainsId, getParametriContains(idOpera, composto));
+	}
+
+	private Map<String, Object> getParametriContains(String idOpera, Composto composto) {
+		return Map.of("idOpera", idOpera, 
+				"idComposti", cacheComposti.getId(composto.getLemma()),
+				"occorrenze", composto.getOccorrenze());
 	}
 
 	/**
@@ -129,30 +488,12 @@ public class ElaboratoreCartellaOpera {
 	 * false altrimenti
 	 */
 	private boolean esisteComposto(Composto composto) {
-		var result = dbDriver.executableQuery(
-				"MATCH (c:NominalCompound {lemma: $lemma}) RETURN c")
-				.withParameters(Map.of("lemma", composto.getLemma()))
-			    .withConfig(QueryConfig.builder().withDatabase(dbName).build())
-				.execute();
-		return !result.records().isEmpty();
+		var result = esecutore.esegui("MATCH NominalCompound",
+				"MATCH (c:NominalCompound {lemma: $lemma}) RETURN c",
+				Map.of("lemma", composto.getLemma()));
+		return !result.isEmpty();
 	}
 	
-	/**
-	 * Recupera il Composto che ha il dato lemma e il dato numero di occorrenze.
-	 * 
-	 * @param row la riga dove si trova il composto
-	 * @return il composto alla riga row
-	 */
-	private Composto getComposto(Row row) {
-		Composto composto = new Composto();
-		composto.setLemma(getStringCellValue(row.getCell(0)));
-		composto.setOccorrenze(getIntCellValue(row.getCell(1)));
-		if (composto.getOccorrenze() <= 0 && !composto.isEmpty()) {
-			throw new IllegalArgumentException("Mancano le occorrenze");
-		}
-		return composto;
-	}
-
 	/**
 	 * Crea, se non esiste già, la relazione (Work)-[WRITTEN_BY]->(Author)
 	 * 
@@ -160,77 +501,35 @@ public class ElaboratoreCartellaOpera {
 	 * @param autore l'autore per cui creare la relazione WRITTEN_BY
 	 */
 	private void creaRelazioneOperaAutoreInDB(Opera opera, Autore autore) {
-		dbDriver.executableQuery(
+		esecutore.esegui("MERGE WRITTEN_BY",
 				"MATCH (op:Work {title: $titolo, genre: $genere, "
 				+ "subgenre: $sottogenere, acronym: $abbreviazione}), "
 				+ "(au:Author {name: $nome, centuryOfBirth: $secoloNascita, centuryOfDeath: $secoloMorte}) "
-				+ "MERGE (op)-[r:WRITTEN_BY]->(au) RETURN r")
-				.withParameters(Map.of("titolo", opera.getTitolo(), 
+				+ "MERGE (op)-[r:WRITTEN_BY]->(au) RETURN r",
+				Map.of("titolo", opera.getTitolo(), 
 						"genere", opera.getGenere(), 
 						"sottogenere", opera.getSottogenere(),
 						"abbreviazione", opera.getAbbreviazione(),
 						"nome", autore.getNome(),
 						"secoloNascita", autore.getSecoloNascita(),
-						"secoloMorte", autore.getSecoloMorte()))
-			    .withConfig(QueryConfig.builder().withDatabase(dbName).build())
-				.execute();
+						"secoloMorte", autore.getSecoloMorte()));
 	}
 
 	/**
 	 * Crea in DB, se non esiste già, l'opera col dato titolo, il dato genere e il dato sottogenere
 	 * 
 	 * @param opera l'oggetto Opera da creare in DB
+	 * @return l'elementId dell'opera in DB
 	 */
-	private void creaOperaInDB(Opera opera) {
-		dbDriver.executableQuery(
+	private String creaOperaInDB(Opera opera) {
+		var result = esecutore.esegui("MERGE Work",
 				"MERGE (o:Work {title: $titolo, genre: $genere, "
-				+ "subgenre: $sottogenere, acronym: $abbreviazione}) RETURN o")
-				.withParameters(Map.of("titolo", opera.getTitolo(), 
+				+ "subgenre: $sottogenere, acronym: $abbreviazione}) RETURN elementId(o) AS id",
+				Map.of("titolo", opera.getTitolo(), 
 						"genere", opera.getGenere(), 
 						"sottogenere", opera.getSottogenere(),
-						"abbreviazione", opera.getAbbreviazione()))
-			    .withConfig(QueryConfig.builder().withDatabase(dbName).build())
-				.execute();
-	}
-
-	/**
-	 * Recupera l'oggetto Opera di questo foglio leggendo titolo, genere e sottogenere.
-	 * Incrementa di due rowIterator
-	 * 
-	 * @param rowIterator l'iterator che contiene le righe coi dati dell'opera
-	 * @return l'opera recuperata
-	 */
-	private Opera getOpera(Iterator<Row> rowIterator) {
-		Opera opera = new Opera();
-		Row row = rowIterator.next();
-		opera.setTitolo(getStringCellValue(row.getCell(0)));
-		opera.setAbbreviazione(getStringCellValue(row.getCell(1)));
-		row = rowIterator.next();
-		opera.setGenere(getStringCellValue(row.getCell(0)));
-		opera.setSottogenere(getStringCellValue(row.getCell(1)));
-		if (StringUtils.isEmpty(opera.getTitolo())) {
-			throw new IllegalArgumentException("Manca il titolo dell'opera");
-		}
-		if (StringUtils.isEmpty(opera.getAbbreviazione())) {
-			throw new IllegalArgumentException("Manca l'abbreviazione dell'autore");
-		}
-		if (StringUtils.isEmpty(opera.getGenere())) {
-			throw new IllegalArgumentException("Manca il genere dell'opera");
-		}
-		if (StringUtils.isEmpty(opera.getSottogenere())) {
-			throw new IllegalArgumentException("Manca il sottogenere dell'opera");
-		}
-		return opera;
-	}
-	
-	/**
-	 * Restituisce il valore di cell come stringa o null se cell è null.
-	 * 
-	 * @param cell la Cell da cui prendere il valore stringa
-	 * @return il valore di cell come stringa o null se cell è null
-	 */
-	private String getStringCellValue(Cell cell) {
-		return cell != null ? cell.getStringCellValue() : null;
+						"abbreviazione", opera.getAbbreviazione()));
+		return result.get(0).get("id").asString();
 	}
 
 	/**
@@ -240,62 +539,72 @@ public class ElaboratoreCartellaOpera {
 	 * @param autore da inserire in DB
 	 */
 	private void creaAutoreInDB(Autore autore) {
-		dbDriver.executableQuery(
-				"MERGE (a:Author {name: $nome, centuryOfBirth: $secoloNascita, centuryOfDeath: $secoloMorte}) RETURN a")
-				.withParameters(Map.of("nome", autore.getNome(), 
+		esecutore.esegui("MERGE Author",
+				"MERGE (a:Author {name: $nome, centuryOfBirth: $secoloNascita, centuryOfDeath: $secoloMorte}) RETURN a",
+				Map.of("nome", autore.getNome(), 
 						"secoloNascita", autore.getSecoloNascita(), 
-						"secoloMorte", autore.getSecoloMorte()))
-			    .withConfig(QueryConfig.builder().withDatabase(dbName).build())
-				.execute();
+						"secoloMorte", autore.getSecoloMorte()));
 	}
 
 	/**
-	 * Recupera l'autore dal foglio di calcolo prendendo nome, secolo di nascita e secolo di morte.
-	 * Manda avanti rowIterator di 1.
-	 * 
-	 * @param rowIterator l'iterator che contiene la riga dove si trovano i dati dell'autore
-	 * @return l'autore del foglio di calcolo
+	 * Il conteggio per sottotipologia delle relazioni CONTAINS create o trovate dalle MERGE
+	 * dell'opera. Due righe con lo stesso composto corrispondono alla stessa relazione se
+	 * hanno le stesse occorrenze oppure con la sincronizzazione: la relazione viene contata
+	 * una volta sola, con le occorrenze dell'ultima riga scritta, che con la sincronizzazione
+	 * sono la somma di quelle di tutte le righe.
 	 */
-	private Autore getAutore(Iterator<Row> rowIterator) {
-		Row row = rowIterator.next();
-		Autore autore = new Autore();
-		autore.setNome(getStringCellValue(row.getCell(0)));
-		autore.setSecoloNascita(getIntCellValue(row.getCell(1)));
-		autore.setSecoloMorte(getIntCellValue(row.getCell(2)));
-		if (StringUtils.isEmpty(autore.getNome())) {
-			throw new IllegalArgumentException("Manca il nome dell'autore");
-		}
-		if (autore.getSecoloNascita() == 0) {
-			throw new IllegalArgumentException("Secolo nascita autore errato");
+	private static class ConteggioOpera {
+		
+		private final Map<String, RelazioneContata> relazioni = new HashMap<>();
+		
+		private void conta(List<Record> risultato, Composto composto) {
+			for (Record relazione : risultato) {
+				relazioni.put(relazione.get("id").asString(), new RelazioneContata(
+						relazione.get("tipologia").asString(), relazione.get("sottotipologia").asString(),
+						composto.getOccorrenze()));
+			}
 		}
-		if (autore.getSecoloMorte() == 0) {
-			throw new IllegalArgumentException("Secolo morte autore errato");
+		
+		private DistribuzioneSottotipi getDistribuzione() {
+			DistribuzioneSottotipi distribuzione = new DistribuzioneSottotipi();
+			for (RelazioneContata relazione : relazioni.values()) {
+				distribuzione.aggiungi(relazione.tipologia, relazione.sottotipologia, 1, relazione.occorrenze);
+			}
+			return distribuzione;
 		}
-		return autore;
+		
 	}
 	
 	/**
-	 * Restituisce il valore della cella cell come intero. Se cell è null
-	 * o ha CellType.BLANK restituisce 0. Solleva un'eccezione se CellType
-	 * non è NUMERIC, STRING o BLANK.
-	 * 
-	 * @param cell la cella da cui recuperare i valore
-	 * @return il valore della cella come intero
+	 * La tipologia e la sottotipologia del composto e le occorrenze di una relazione CONTAINS contata.
 	 */
-	private int getIntCellValue(Cell cell) {
-		if (cell == null) {
-			return 0;
-		}
-		if (cell.getCellType() == CellType.NUMERIC) {
-			return Double.valueOf(cell.getNumericCellValue()).intValue();
-		}
-		if (cell.getCellType() == CellType.STRING) {
-			return Integer.valueOf(cell.getStringCellValue());
+	private static class RelazioneContata {
+		
+		private final String tipologia;
+		private final String sottotipologia;
+		private final int occorrenze;
+		
+		private RelazioneContata(String tipologia, String sottotipologia, int occorrenze) {
+			this.tipologia = tipologia;
+			this.sottotipologia = sottotipologia;
+			this.occorrenze = occorrenze;
 		}
-		if (cell.getCellType() == CellType.BLANK) {
-			return 0;
+		
+	}
+	
+	/**
+	 * Una riga dei composti del foglio dell'opera già validata e in attesa di essere scritta in DB.
+	 */
+	private static class RigaOpera {
+		
+		private final int rowNum;
+		private final Composto composto;
+		
+		private RigaOpera(int rowNum, Composto composto) {
+			this.rowNum = rowNum;
+			this.composto = composto;
 		}
-		throw new IllegalArgumentException("Tipo di cella non riconosciuta " + cell.getCellType());
+		
 	}
 
 }
@@ -0,0 +1,194 @@
+package it.gt.tesi.compostinominali;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.StringUtils;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.QueryConfig;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.TransactionContext;
+import org.neo4j.driver.async.AsyncSession;
+import org.neo4j.driver.async.ResultCursor;
+import org.neo4j.driver.exceptions.RetryableException;
+
+/**
+ * La classe che esegue le query degli elaboratori. Fuori da una transazione ogni query 
+ * viene eseguita in una propria transazione con commit automatico; dentro il metodo 
+ * inTransazione() tutte le query vengono eseguite nella stessa transazione gestita dal 
+ * driver, che la ripete per intero se fallisce per un errore temporaneo (per esempio un
+ * deadlock o la perdita del leader del cluster).
+ * Con eseguiAsincrona() la query viene inviata con l'API asincrona del driver in una
+ * transazione con commit automatico e il thread chiamante non aspetta la risposta, così più
+ * query possono essere in corso insieme.
+ * Ogni elaboratore usa un proprio oggetto EsecutoreQuery, che non va condiviso tra thread.
+ */
+public class EsecutoreQuery {
+	
+	//quante volte al massimo viene inviata una query asincrona che fallisce per un errore temporaneo
+	public static final int TENTATIVI_ASINCRONI = 3;
+	
+	private final Driver dbDriver;
+	private final String dbName;
+	
+	//la transazione in corso, null fuori da inTransazione()
+	private TransactionContext transazione;
+	
+	/**
+	 * Costruisce un oggetto EsecutoreQuery sul DB dato.
+	 * 
+	 * @param dbDriver il driver del DB
+	 * @param dbName il nome del DB
+	 * 
+	 * @throws IllegalArgumentException se dbDriver è null oppure se dbName è vuoto
+	 */
+	public EsecutoreQuery(Driver dbDriver, String dbName) {
+		if (dbDriver == null) 
+			throw new IllegalArgumentException("Il driver DB non può essere null");
+		if (StringUtils.isEmpty(dbName)) 
+			throw new IllegalArgumentException("Il nome del database non può essere vuoto");
+		this.dbDriver = dbDriver;
+		this.dbName = dbName;
+	}
+	
+	/**
+	 * Esegue la query con i parametri dati, nella transazione in corso se c'è.
+	 * La latenza viene registrata nell'istogramma del tipo di query in MetricheQuery
+	 * e ogni esecuzione produce un evento JFR EventoQuery.
+	 * 
+	 * @param tipo il tipo di query, con cui raggruppare le latenze
+	 * @param query la query da eseguire
+	 * @param parametri i parametri della query
+	 * @return i record restituiti dalla query
+	 */
+	public List<Record> esegui(String tipo, String query, Map<String, Object> parametri) {
+		EventoQuery evento = new EventoQuery();
+		evento.begin();
+		long inizio = System.nanoTime();
+		List<Record> records = null;
+		try {
+			if (transazione != null) {
+				records = transazione.run(query, parametri).list();
+			} else {
+				records = dbDriver.executableQuery(query)
+						.withParameters(parametri)
+					    .withConfig(QueryConfig.builder().withDatabase(dbName).build())
+						.execute()
+						.records();
+			}
+			return records;
+		} finally {
+			MetricheQuery.registra(tipo, System.nanoTime() - inizio);
+			evento.end();
+			if (evento.shouldCommit()) {
+				evento.tipo = tipo;
+				evento.database = dbName;
+				evento.inTransazione = transazione != null;
+				evento.record = records == null ? 0 : records.size();
+				evento.riuscita = records != null;
+				evento.commit();
+			}
+		}
+	}
+	
+	/**
+	 * Invia la query con i parametri dati in una propria transazione con commit automatico,
+	 * aperta con una sessione asincrona del driver, e restituisce subito senza aspettare la
+	 * risposta. Con il commit automatico la query e la richiesta dei risultati partono insieme
+	 * e il DB conferma la transazione appena la esegue, così i lock restano acquisiti solo per 
+	 * l'esecuzione e non per il viaggio di ritorno della risposta. Se fallisce per un errore 
+	 * temporaneo la query viene inviata di nuovo, al massimo TENTATIVI_ASINCRONI volte in 
+	 * tutto, quindi deve poter essere ripetuta (per esempio una MERGE). La latenza, dall'invio
+	 * alla risposta, viene registrata come per esegui().
+	 * I risultati arrivano in un thread del driver, che non va bloccato a lungo.
+	 * 
+	 * @param tipo il tipo di query, con cui raggruppare le latenze
+	 * @param query la query da eseguire
+	 * @param parametri i parametri della query
+	 * @return i record restituiti dalla query, quando la transazione è confermata
+	 * 
+	 * @throws IllegalStateException se c'è una transazione in corso
+	 */
+	public CompletionStage<List<Record>> eseguiAsincrona(String tipo, String query, Map<String, Object> parametri) {
+		if (transazione != null)
+			throw new IllegalStateException("Le query asincrone non possono far parte della transazione in corso");
+		EventoQuery evento = new EventoQuery();
+		evento.begin();
+		long inizio = System.nanoTime();
+		CompletableFuture<List<Record>> risultato = new CompletableFuture<>();
+		inviaAsincrona(query, parametri, TENTATIVI_ASINCRONI, risultato);
+		return risultato.whenComplete((records, errore) -> {
+			MetricheQuery.registra(tipo, System.nanoTime() - inizio);
+			evento.end();
+			if (evento.shouldCommit()) {
+				evento.tipo = tipo;
+				evento.database = dbName;
+				evento.inTransazione = false;
+				evento.record = records == null ? 0 : records.size();
+				evento.riuscita = errore == null;
+				evento.commit();
+			}
+		});
+	}
+	
+	/**
+	 * Invia la query in una nuova sessione asincrona e completa risultato con i record o
+	 * con l'errore, dopo aver chiuso la sessione. Gli errori temporanei vengono ritentati 
+	 * finché restano tentativi.
+	 * 
+	 * @param query la query da eseguire
+	 * @param parametri i parametri della query
+	 * @param tentativi i tentativi rimasti, compreso questo
+	 * @param risultato il risultato da completare
+	 */
+	private void inviaAsincrona(String query, Map<String, Object> parametri, int tentativi,
+			CompletableFuture<List<Record>> risultato) {
+		AsyncSession session = dbDriver.session(AsyncSession.class, SessionConfig.forDatabase(dbName));
+		session.runAsync(query, parametri)
+			.thenCompose(ResultCursor::listAsync)
+			.whenComplete((records, errore) -> session.closeAsync().whenComplete((chiusa, erroreChiusura) -> {
+				Throwable causa = errore instanceof CompletionException ? errore.getCause() : errore;
+				if (causa instanceof RetryableException && tentativi > 1) {
+					inviaAsincrona(query, parametri, tentativi - 1, risultato);
+				} else if (causa != null) {
+					risultato.completeExceptionally(causa);
+				} else {
+					risultato.complete(records);
+				}
+			}));
+	}
+	
+	/**
+	 * Esegue il lavoro dato in un'unica transazione di scrittura: tutte le query eseguite 
+	 * con esegui() durante il lavoro vengono confermate insieme alla fine, oppure nessuna.
+	 * Se la transazione fallisce per un errore temporaneo il driver ripete tutto il 
+	 * lavoro, che quindi non deve avere effetti fuori dal DB.
+	 * 
+	 * @param <T> il tipo del risultato del lavoro
+	 * @param lavoro il lavoro da eseguire nella transazione
+	 * @return il risultato del lavoro
+	 * 
+	 * @throws IllegalStateException se c'è già una transazione in corso
+	 */
+	public <T> T inTransazione(Supplier<T> lavoro) {
+		if (transazione != null)
+			throw new IllegalStateException("C'è già una transazione in corso");
+		try (Session session = dbDriver.session(SessionConfig.forDatabase(dbName))) {
+			return session.executeWrite(tx -> {
+				transazione = tx;
+				try {
+					return lavoro.get();
+				} finally {
+					transazione = null;
+				}
+			});
+		}
+	}
+
+}
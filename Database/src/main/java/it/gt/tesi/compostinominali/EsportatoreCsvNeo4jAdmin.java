@@ -0,0 +1,252 @@
+package it.gt.tesi.compostinominali;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * La classe che scrive il corpus nei file CSV di nodi e relazioni nel formato richiesto 
+ * da "neo4j-admin database import", per costruire il DB da zero senza un server attivo.
+ * I nodi e le relazioni sono gli stessi che creerebbe l'importazione in DB: due righe
+ * con le stesse proprietà producono un solo nodo o una sola relazione, come con MERGE.
+ * Gli ID dei nodi sono numeri progressivi per ogni label, assegnati nell'ordine delle 
+ * righe, quindi gli stessi file di input producono sempre gli stessi CSV.
+ */
+public class EsportatoreCsvNeo4jAdmin {
+	
+	private final File dirOutput;
+	
+	//per ogni label, la chiave del nodo (le proprietà usate nella MERGE) e il suo ID
+	private final Map<List<Object>, Integer> composti = new LinkedHashMap<>();
+	private final Map<List<Object>, Integer> membri = new LinkedHashMap<>();
+	private final Map<List<Object>, Integer> opere = new LinkedHashMap<>();
+	private final Map<List<Object>, Integer> autori = new LinkedHashMap<>();
+	
+	private final Set<List<Object>> formedBy = new LinkedHashSet<>();
+	private final Set<List<Object>> duplicateOf = new LinkedHashSet<>();
+	private final Set<List<Object>> contains = new LinkedHashSet<>();
+	private final Set<List<Object>> writtenBy = new LinkedHashSet<>();
+	
+	/**
+	 * Costruisce un oggetto EsportatoreCsvNeo4jAdmin che scrive i file nella directory data.
+	 * 
+	 * @param dirOutput la directory in cui scrivere i file CSV, viene creata se non esiste
+	 * 
+	 * @throws IllegalArgumentException se dirOutput è null
+	 */
+	public EsportatoreCsvNeo4jAdmin(File dirOutput) {
+		if (dirOutput == null) 
+			throw new IllegalArgumentException("La directory di output non può essere null");
+		this.dirOutput = dirOutput;
+	}
+	
+	/**
+	 * Scrive i file CSV dei nodi NominalCompound, Member, Work e Author e delle 
+	 * relazioni FORMED_BY, DUPLICATE_OF, CONTAINS e WRITTEN_BY del corpus.
+	 * 
+	 * @param corpus il corpus da esportare
+	 * @throws IOException se i file non si possono scrivere
+	 */
+	public void esporta(Corpus corpus) throws IOException {
+		//i composti si cercano per lemma per DUPLICATE_OF e CONTAINS, per lemma, categoria, 
+		//tipologia e sottotipologia per FORMED_BY; le chiavi normalizzate dipendono solo dal lemma
+		Map<String, List<Integer>> compostiPerLemma = new HashMap<>();
+		Map<List<Object>, List<Integer>> compostiPerChiaveMembri = new HashMap<>();
+		for (Composto composto : corpus.getComposti()) {
+			List<Object> chiave = Arrays.asList(composto.getLemma(), composto.getCategoriaMorfologica(),
+					composto.getTipologia(), composto.getSottotipologia(), 
+					composto.isGrecismo() ? composto.getOriginaleGreco() : null,
+					composto.getLemmaNormalizzato(), composto.getLemmaRovesciato());
+			if (!composti.containsKey(chiave)) {
+				int id = getId(composti, chiave);
+				compostiPerLemma.computeIfAbsent(composto.getLemma(), l -> new ArrayList<>()).add(id);
+				compostiPerChiaveMembri.computeIfAbsent(chiave.subList(0, 4), l -> new ArrayList<>()).add(id);
+			}
+		}
+		
+		for (Composto composto : corpus.getComposti()) {
+			List<Object> chiaveMembri = Arrays.asList(composto.getLemma(), composto.getCategoriaMorfologica(),
+					composto.getTipologia(), composto.getSottotipologia());
+			Membro[] membriComposto = composto.getMembri();
+			for (int i = 0; i < membriComposto.length; i++) {
+				Membro membro = membriComposto[i];
+				if (membro.isEmpty()) continue;
+				int idMembro = getId(membri, List.of(membro.getLemma(), membro.getCategoriaMorfologica()));
+				for (int idComposto : compostiPerChiaveMembri.get(chiaveMembri)) {
+					formedBy.add(List.of(idComposto, idMembro, i + 1));
+				}
+			}
+		}
+		
+		for (List<String> riga : corpus.getDoppioni()) {
+			for (int i = 0; i < riga.size() - 1; i++) {
+				for (int j = i + 1; j < riga.size(); j++) {
+					for (int idComposto : compostiPerLemma.getOrDefault(riga.get(i), List.of())) {
+						for (int idDoppione : compostiPerLemma.getOrDefault(riga.get(j), List.of())) {
+							duplicateOf.add(List.of(idDoppione, idComposto));
+						}
+					}
+				}
+			}
+		}
+		
+		for (Opera opera : corpus.getOpere()) {
+			Autore autore = opera.getAutore();
+			int idAutore = getId(autori, List.of(autore.getNome(), 
+					autore.getSecoloNascita(), autore.getSecoloMorte()));
+			int idOpera = getId(opere, List.of(opera.getTitolo(), opera.getAbbreviazione(), 
+					opera.getGenere(), opera.getSottogenere()));
+			writtenBy.add(List.of(idOpera, idAutore));
+			for (Composto composto : opera.getComposti()) {
+				for (int idComposto : compostiPerLemma.getOrDefault(composto.getLemma(), List.of())) {
+					contains.add(List.of(idOpera, idComposto, composto.getOccorrenze()));
+				}
+			}
+		}
+		
+		Files.createDirectories(dirOutput.toPath());
+		scriviNodi("nominal_compounds.csv", 
+				":ID(NominalCompound),lemma,lexicalCatergory,type,subtype,greekForm,"
+				+ "lemmaNormalized,lemmaReversed", composti);
+		scriviNodi("members.csv", ":ID(Member),lemma,lexicalCatergory", membri);
+		scriviNodi("works.csv", ":ID(Work),title,acronym,genre,subgenre", opere);
+		scriviNodi("authors.csv", ":ID(Author),name,centuryOfBirth:long,centuryOfDeath:long", autori);
+		scriviRelazioni("formed_by.csv", 
+				":START_ID(NominalCompound),:END_ID(Member),position:long", formedBy);
+		scriviRelazioni("duplicate_of.csv", 
+				":START_ID(NominalCompound),:END_ID(NominalCompound)", duplicateOf);
+		scriviRelazioni("contains.csv", 
+				":START_ID(Work),:END_ID(NominalCompound),occurrences:long", contains);
+		scriviRelazioni("written_by.csv", ":START_ID(Work),:END_ID(Author)", writtenBy);
+		
+		System.out.println("\nNodi NominalCompound: " + composti.size());
+		System.out.println("Nodi Member: " + membri.size());
+		System.out.println("Nodi Work: " + opere.size());
+		System.out.println("Nodi Author: " + autori.size());
+		System.out.println("Relazioni FORMED_BY: " + formedBy.size());
+		System.out.println("Relazioni DUPLICATE_OF: " + duplicateOf.size());
+		System.out.println("Relazioni CONTAINS: " + contains.size());
+		System.out.println("Relazioni WRITTEN_BY: " + writtenBy.size());
+	}
+	
+	/**
+	 * Restituisce il comando neo4j-admin che importa i file CSV scritti nel DB dato.
+	 * 
+	 * @param dbName il nome del DB da creare
+	 * @return il comando di importazione
+	 */
+	public String getComandoImportazione(String dbName) {
+		String dir = dirOutput.getPath() + File.separator;
+		return "neo4j-admin database import full"
+				+ " --nodes=NominalCompound=" + dir + "nominal_compounds.csv"
+				+ " --nodes=Member=" + dir + "members.csv"
+				+ " --nodes=Work=" + dir + "works.csv"
+				+ " --nodes=Author=" + dir + "authors.csv"
+				+ " --relationships=FORMED_BY=" + dir + "formed_by.csv"
+				+ " --relationships=DUPLICATE_OF=" + dir + "duplicate_of.csv"
+				+ " --relationships=CONTAINS=" + dir + "contains.csv"
+				+ " --relationships=WRITTEN_BY=" + dir + "written_by.csv"
+				+ " " + dbName;
+	}
+	
+	/**
+	 * Restituisce l'ID del nodo con la chiave data, assegnandogli il prossimo ID
+	 * libero se il nodo non c'è ancora.
+	 * 
+	 * @param nodi i nodi di una label con il loro ID
+	 * @param chiave le proprietà del nodo
+	 * @return l'ID del nodo
+	 */
+	private int getId(Map<List<Object>, Integer> nodi, List<Object> chiave) {
+		return nodi.computeIfAbsent(chiave, k -> nodi.size() + 1);
+	}
+	
+	/**
+	 * Scrive il file CSV di una label con l'ID e le proprietà di ogni nodo.
+	 * 
+	 * @param nomeFile il nome del file da scrivere
+	 * @param intestazione la riga di intestazione del file
+	 * @param nodi i nodi della label con il loro ID
+	 * @throws IOException se il file non si può scrivere
+	 */
+	private void scriviNodi(String nomeFile, String intestazione, 
+			Map<List<Object>, Integer> nodi) throws IOException {
+		try (Writer writer = apri(nomeFile, intestazione)) {
+			for (Map.Entry<List<Object>, Integer> nodo : nodi.entrySet()) {
+				writer.write(String.valueOf(nodo.getValue()));
+				for (Object valore : nodo.getKey()) {
+					writer.write(',');
+					writer.write(getValoreCsv(valore));
+				}
+				writer.write('\n');
+			}
+		}
+	}
+	
+	/**
+	 * Scrive il file CSV di un tipo di relazione: ID iniziale, ID finale ed eventuali proprietà.
+	 * 
+	 * @param nomeFile il nome del file da scrivere
+	 * @param intestazione la riga di intestazione del file
+	 * @param relazioni le relazioni da scrivere
+	 * @throws IOException se il file non si può scrivere
+	 */
+	private void scriviRelazioni(String nomeFile, String intestazione, 
+			Set<List<Object>> relazioni) throws IOException {
+		try (Writer writer = apri(nomeFile, intestazione)) {
+			for (List<Object> relazione : relazioni) {
+				for (int i = 0; i < relazione.size(); i++) {
+					if (i > 0) writer.write(',');
+					writer.write(getValoreCsv(relazione.get(i)));
+				}
+				writer.write('\n');
+			}
+		}
+	}
+	
+	/**
+	 * Crea il file dato nella directory di output e vi scrive l'intestazione.
+	 * 
+	 * @param nomeFile il nome del file
+	 * @param intestazione la riga di intestazione
+	 * @return il writer del file
+	 * @throws IOException se il file non si può scrivere
+	 */
+	private Writer apri(String nomeFile, String intestazione) throws IOException {
+		BufferedWriter writer = Files.newBufferedWriter(
+				new File(dirOutput, nomeFile).toPath(), StandardCharsets.UTF_8);
+		writer.write(intestazione);
+		writer.write('\n');
+		return writer;
+	}
+	
+	/**
+	 * Restituisce il valore da scrivere nel CSV: le stringhe tra virgolette doppie (con le 
+	 * virgolette interne raddoppiate), i numeri così come sono e null come campo vuoto,
+	 * che neo4j-admin non trasforma in proprietà.
+	 * 
+	 * @param valore il valore da scrivere
+	 * @return il valore nel formato CSV
+	 */
+	private static String getValoreCsv(Object valore) {
+		if (valore == null) {
+			return "";
+		}
+		if (valore instanceof String) {
+			return "\"" + ((String) valore).replace("\"", "\"\"") + "\"";
+		}
+		return valore.toString();
+	}
+
+}
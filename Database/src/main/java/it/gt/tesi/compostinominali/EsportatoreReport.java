@@ -0,0 +1,296 @@
+package it.gt.tesi.compostinominali;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.Value;
+
+/**
+ * La classe che esegue una query del catalogo e scrive i risultati in un file Excel (.xlsx)
+ * o CSV, una riga per record e una colonna per chiave del RETURN, con le chiavi come
+ * intestazione. I record vengono letti dal driver uno alla volta, a gruppi di dimensioneFetch
+ * richiesti al server man mano che servono, e scritti subito: il file Excel è un SXSSFWorkbook
+ * che tiene in memoria solo le ultime finestraRighe righe e scrive le precedenti in un file
+ * temporaneo compresso. La memoria usata quindi non dipende dal numero di righe del report.
+ * Quando un foglio arriva al numero massimo di righe di Excel le righe continuano in un
+ * nuovo foglio con la stessa intestazione.
+ * Ogni esportazione usa una propria sessione e un proprio file, quindi un oggetto
+ * EsportatoreReport può scrivere più report insieme da più thread.
+ */
+public class EsportatoreReport {
+
+	public static final int FINESTRA_RIGHE_PREDEFINITA = 100;
+	public static final int DIMENSIONE_FETCH_PREDEFINITA = 1000;
+
+	/**
+	 * Le distribuzioni dei sottotipi di tutte le opere, gli autori, i sottogeneri e i generi,
+	 * lette dai nodi SubtypeDistribution: una riga per ambito, valore e sottotipologia.
+	 * Con il parametro scope (work, author, subgenre o genre) solo quelle di un ambito,
+	 * con null tutte.
+	 */
+	public static final String QUERY_DISTRIBUZIONI_SOTTOTIPI = "MATCH (d:SubtypeDistribution) "
+			+ "WHERE $scope IS NULL OR d.scope = $scope "
+			+ "UNWIND range(0, size(d.subtypes) - 1) AS i "
+			+ "RETURN d.scope AS Scope, d.name AS Name, d.types[i] AS Type, d.subtypes[i] AS Subtype, "
+			+ "d.compounds[i] AS Compounds "
+			+ "ORDER BY Scope, Name, Subtype";
+
+	/**
+	 * La matrice autore × opera × sottotipologia: per ogni opera di ogni autore, il numero di
+	 * relazioni CONTAINS e la somma delle occorrenze dei composti di ogni sottotipologia.
+	 */
+	public static final String QUERY_MATRICE_AUTORI_OPERE_SOTTOTIPI = "MATCH (a:Author)<-[:WRITTEN_BY]-(w:Work)"
+			+ "-[r:CONTAINS]->(c:NominalCompound) "
+			+ "RETURN a.name AS Author, w.acronym AS Work, c.type AS Type, c.subtype AS Subtype, "
+			+ "count(r) AS Compounds, sum(r.occurrences) AS Occurrences "
+			+ "ORDER BY toLower(Author), toLower(Work), Subtype";
+
+	private final Driver dbDriver;
+	private final String dbName;
+	private final int finestraRighe;
+	private final int dimensioneFetch;
+
+	/**
+	 * Costruisce un oggetto EsportatoreReport sul DB dato, con la finestra di righe e la
+	 * dimensione dei gruppi di record predefinite.
+	 *
+	 * @param dbDriver il driver del DB
+	 * @param dbName il nome del DB
+	 *
+	 * @throws IllegalArgumentException se dbDriver è null oppure se dbName è vuoto
+	 */
+	public EsportatoreReport(Driver dbDriver, String dbName) {
+		this(dbDriver, dbName, FINESTRA_RIGHE_PREDEFINITA, DIMENSIONE_FETCH_PREDEFINITA);
+	}
+
+	/**
+	 * Costruisce un oggetto EsportatoreReport sul DB dato.
+	 *
+	 * @param dbDriver il driver del DB
+	 * @param dbName il nome del DB
+	 * @param finestraRighe il numero di righe di un file Excel tenute in memoria
+	 * @param dimensioneFetch il numero di record richiesti al server ogni volta
+	 *
+	 * @throws IllegalArgumentException se dbDriver è null, oppure se dbName è vuoto,
+	 * 			oppure se finestraRighe o dimensioneFetch non sono positivi
+	 */
+	public EsportatoreReport(Driver dbDriver, String dbName, int finestraRighe, int dimensioneFetch) {
+		if (dbDriver == null)
+			throw new IllegalArgumentException("Il driver DB non può essere null");
+		if (StringUtils.isEmpty(dbName))
+			throw new IllegalArgumentException("Il nome del database non può essere vuoto");
+		if (finestraRighe <= 0)
+			throw new IllegalArgumentException("La finestra di righe deve essere positiva");
+		if (dimensioneFetch <= 0)
+			throw new IllegalArgumentException("La dimensione dei gruppi di record deve essere positiva");
+		this.dbDriver = dbDriver;
+		this.dbName = dbName;
+		this.finestraRighe = finestraRighe;
+		this.dimensioneFetch = dimensioneFetch;
+	}
+
+	/**
+	 * Esegue la query e scrive i risultati nel file dato, in formato CSV se il nome del file
+	 * finisce con .csv e in formato Excel altrimenti.
+	 *
+	 * @param query la query da eseguire
+	 * @param parametri i parametri della query
+	 * @param file il file da scrivere
+	 * @return il numero di righe scritte, esclusa l'intestazione
+	 * @throws IOException se il file non si può scrivere
+	 */
+	public long esporta(String query, Map<String, Object> parametri, File file) throws IOException {
+		if (file.getName().toLowerCase().endsWith(".csv")) {
+			return esportaCsv(query, parametri, file);
+		}
+		return esportaExcel(query, parametri, file);
+	}
+
+	/**
+	 * Esegue la query e scrive i risultati in un file Excel. I numeri e i booleani diventano
+	 * celle numeriche e booleane, le liste il testo dei loro elementi separati da "; " e
+	 * null una cella vuota. L'intestazione è in grassetto.
+	 *
+	 * @param query la query da eseguire
+	 * @param parametri i parametri della query
+	 * @param file il file Excel da scrivere
+	 * @return il numero di righe scritte, esclusa l'intestazione
+	 * @throws IOException se il file non si può scrivere
+	 */
+	public long esportaExcel(String query, Map<String, Object> parametri, File file) throws IOException {
+		long inizio = System.nanoTime();
+		int righePerFoglio = SpreadsheetVersion.EXCEL2007.getMaxRows() - 1;
+		long righe = 0;
+		SXSSFWorkbook workbook = new SXSSFWorkbook(finestraRighe);
+		workbook.setCompressTempFiles(true);
+		try (Session session = apriSessione()) {
+			Result result = session.run(query, parametri);
+			List<String> chiavi = result.keys();
+			CellStyle stileIntestazione = workbook.createCellStyle();
+			Font grassetto = workbook.createFont();
+			grassetto.setBold(true);
+			stileIntestazione.setFont(grassetto);
+
+			SXSSFSheet foglio = null;
+			int riga = 0;
+			while (result.hasNext()) {
+				Record record = result.next();
+				if (foglio == null || riga > righePerFoglio) {
+					foglio = workbook.createSheet("Report " + (workbook.getNumberOfSheets() + 1));
+					scriviIntestazione(foglio, chiavi, stileIntestazione);
+					riga = 1;
+				}
+				Row row = foglio.createRow(riga++);
+				for (int i = 0; i < chiavi.size(); i++) {
+					scriviCella(row.createCell(i), record.get(i));
+				}
+				righe++;
+			}
+			if (foglio == null) {
+				scriviIntestazione(workbook.createSheet("Report 1"), chiavi, stileIntestazione);
+			}
+			try (OutputStream output = Files.newOutputStream(file.toPath())) {
+				workbook.write(output);
+			}
+		} finally {
+			workbook.dispose();
+			workbook.close();
+			MetricheQuery.registra("EsportatoreReport excel", System.nanoTime() - inizio);
+		}
+		return righe;
+	}
+
+	/**
+	 * Esegue la query e scrive i risultati in un file CSV in UTF-8 separato da virgole:
+	 * le stringhe e le liste tra virgolette doppie (con le virgolette interne raddoppiate),
+	 * i numeri e i booleani così come sono e null come campo vuoto.
+	 *
+	 * @param query la query da eseguire
+	 * @param parametri i parametri della query
+	 * @param file il file CSV da scrivere
+	 * @return il numero di righe scritte, esclusa l'intestazione
+	 * @throws IOException se il file non si può scrivere
+	 */
+	public long esportaCsv(String query, Map<String, Object> parametri, File file) throws IOException {
+		long inizio = System.nanoTime();
+		long righe = 0;
+		try (Session session = apriSessione();
+				Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			Result result = session.run(query, parametri);
+			List<String> chiavi = result.keys();
+			writer.write(chiavi.stream().map(EsportatoreReport::getTestoCsv).collect(Collectors.joining(",")));
+			writer.write('\n');
+			while (result.hasNext()) {
+				Record record = result.next();
+				for (int i = 0; i < chiavi.size(); i++) {
+					if (i > 0) writer.write(',');
+					writer.write(getValoreCsv(record.get(i)));
+				}
+				writer.write('\n');
+				righe++;
+			}
+		} finally {
+			MetricheQuery.registra("EsportatoreReport csv", System.nanoTime() - inizio);
+		}
+		return righe;
+	}
+
+	/**
+	 * Apre una sessione di lettura sul DB che riceve i record a gruppi di dimensioneFetch.
+	 * Le query vengono eseguite con commit automatico e non vengono ripetute se falliscono,
+	 * perché le righe già scritte nel file non si possono ritirare.
+	 *
+	 * @return la sessione
+	 */
+	private Session apriSessione() {
+		return dbDriver.session(SessionConfig.builder()
+				.withDatabase(dbName)
+				.withDefaultAccessMode(AccessMode.READ)
+				.withFetchSize(dimensioneFetch)
+				.build());
+	}
+
+	private static void scriviIntestazione(SXSSFSheet foglio, List<String> chiavi, CellStyle stile) {
+		Row row = foglio.createRow(0);
+		for (int i = 0; i < chiavi.size(); i++) {
+			Cell cell = row.createCell(i);
+			cell.setCellValue(chiavi.get(i));
+			cell.setCellStyle(stile);
+		}
+	}
+
+	/**
+	 * Scrive un valore restituito dalla query in una cella del file Excel.
+	 *
+	 * @param cell la cella
+	 * @param valore il valore
+	 */
+	private static void scriviCella(Cell cell, Value valore) {
+		Object oggetto = valore.asObject();
+		if (oggetto == null) {
+			cell.setBlank();
+		} else if (oggetto instanceof Number) {
+			cell.setCellValue(((Number) oggetto).doubleValue());
+		} else if (oggetto instanceof Boolean) {
+			cell.setCellValue((Boolean) oggetto);
+		} else {
+			cell.setCellValue(getTesto(oggetto));
+		}
+	}
+
+	/**
+	 * Restituisce il valore da scrivere nel CSV.
+	 *
+	 * @param valore il valore restituito dalla query
+	 * @return il valore nel formato CSV
+	 */
+	private static String getValoreCsv(Value valore) {
+		Object oggetto = valore.asObject();
+		if (oggetto == null) {
+			return "";
+		}
+		if (oggetto instanceof Number || oggetto instanceof Boolean) {
+			return oggetto.toString();
+		}
+		return getTestoCsv(getTesto(oggetto));
+	}
+
+	private static String getTestoCsv(String testo) {
+		return "\"" + testo.replace("\"", "\"\"") + "\"";
+	}
+
+	/**
+	 * Restituisce il testo di un valore: le liste con gli elementi separati da "; ".
+	 *
+	 * @param oggetto il valore restituito dalla query, non null
+	 * @return il testo del valore
+	 */
+	private static String getTesto(Object oggetto) {
+		if (oggetto instanceof List) {
+			return ((List<?>) oggetto).stream().map(String::valueOf).collect(Collectors.joining("; "));
+		}
+		return oggetto.toString();
+	}
+
+}
@@ -0,0 +1,33 @@
+package it.gt.tesi.compostinominali;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * L'evento JFR registrato intorno a ogni fase dell'importazione: gli indici, il foglio 
+ * dei composti, il foglio dei doppioni, la cache, tutte le opere e ogni file opera.
+ */
+@Name("it.gt.tesi.compostinominali.Fase")
+@Label("Fase dell'importazione")
+@Category({"Composti nominali", "Importazione"})
+@Description("Una fase dell'importazione dei fogli di calcolo in DB")
+@StackTrace(false)
+public class EventoFase extends Event {
+	
+	@Label("Tipo")
+	@Description("Il tipo di fase: schema, composti, doppioni, cache, opere oppure opera")
+	String tipo;
+	
+	@Label("Nome")
+	@Description("Il nome della fase, per le opere il nome del file")
+	String nome;
+	
+	@Label("Righe")
+	@Description("Il numero di righe elaborate nella fase")
+	long righe;
+
+}
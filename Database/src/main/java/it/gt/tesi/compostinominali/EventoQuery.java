@@ -0,0 +1,40 @@
+package it.gt.tesi.compostinominali;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * L'evento JFR registrato intorno a ogni query eseguita da EsecutoreQuery. Si registra 
+ * avviando la JVM con -XX:StartFlightRecording e si legge con "jfr print --events 
+ * it.gt.tesi.compostinominali.Query" o con JDK Mission Control.
+ */
+@Name("it.gt.tesi.compostinominali.Query")
+@Label("Query Neo4j")
+@Category({"Composti nominali", "Importazione"})
+@Description("Una query Cypher eseguita durante l'importazione")
+@StackTrace(false)
+public class EventoQuery extends Event {
+	
+	@Label("Tipo")
+	@Description("Il tipo di query, lo stesso usato per l'istogramma delle latenze")
+	String tipo;
+	
+	@Label("Database")
+	String database;
+	
+	@Label("In transazione")
+	@Description("true se la query è stata eseguita in una transazione esplicita")
+	boolean inTransazione;
+	
+	@Label("Record")
+	@Description("Il numero di record restituiti dalla query")
+	int record;
+	
+	@Label("Riuscita")
+	boolean riuscita;
+
+}
@@ -0,0 +1,38 @@
+package it.gt.tesi.compostinominali;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Un file Excel aperto da cui leggere le righe dei fogli di calcolo. Il file può essere 
+ * caricato interamente in memoria con POI oppure letto in streaming una riga alla volta.
+ * Va chiuso con close() al termine della lettura.
+ */
+public interface FileExcel extends AutoCloseable {
+	
+	/**
+	 * Apre il file Excel dato.
+	 * 
+	 * @param file il file xlsx da aprire
+	 * @param streaming true per leggere le righe in streaming, false per caricare tutto
+	 * il file in memoria
+	 * @return il file Excel aperto
+	 * @throws IOException se il file non si può aprire
+	 */
+	static FileExcel apri(File file, boolean streaming) throws IOException {
+		return streaming ? new FileExcelStreaming(file) : new FileExcelDom(file);
+	}
+	
+	/**
+	 * Restituisce le righe del foglio di calcolo con l'indice su base zero dato.
+	 * 
+	 * @param indice l'indice del foglio di calcolo
+	 * @return le righe del foglio di calcolo
+	 * @throws IOException se il foglio non si può leggere
+	 */
+	Iterable<RigaFoglio> getFoglio(int indice) throws IOException;
+	
+	@Override
+	void close() throws IOException;
+
+}
@@ -0,0 +1,61 @@
+package it.gt.tesi.compostinominali;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * Il file Excel caricato interamente in memoria con XSSFWorkbook.
+ */
+class FileExcelDom implements FileExcel {
+	
+	private final FileInputStream stream;
+	private final XSSFWorkbook workbook;
+	
+	/**
+	 * Carica in memoria il file Excel dato.
+	 * 
+	 * @param file il file da caricare
+	 * @throws IOException se il file non si può leggere
+	 */
+	FileExcelDom(File file) throws IOException {
+		stream = new FileInputStream(file);
+		try {
+			workbook = new XSSFWorkbook(stream);
+		} catch (IOException | RuntimeException e) {
+			stream.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public Iterable<RigaFoglio> getFoglio(int indice) {
+		XSSFSheet sheet = workbook.getSheetAt(indice);
+		return () -> new Iterator<RigaFoglio>() {
+			
+			private final Iterator<Row> rowIterator = sheet.iterator();
+
+			@Override
+			public boolean hasNext() {
+				return rowIterator.hasNext();
+			}
+
+			@Override
+			public RigaFoglio next() {
+				return RigaFoglio.da(rowIterator.next());
+			}
+		};
+	}
+
+	@Override
+	public void close() throws IOException {
+		workbook.close();
+		stream.close();
+	}
+
+}
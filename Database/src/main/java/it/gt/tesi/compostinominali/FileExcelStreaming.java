@@ -0,0 +1,230 @@
+package it.gt.tesi.compostinominali;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.SAXException;
+
+/**
+ * Il file Excel letto in streaming con XSSFReader: le righe di un foglio vengono 
+ * decodificate dall'XML una alla volta mentre si scorrono, quindi la memoria usata 
+ * non dipende dal numero di righe del foglio.
+ * Non si usa SheetContentsHandler perché restituisce solo valori formattati e salta le 
+ * celle vuote, mentre gli elaboratori hanno bisogno del tipo di ogni cella.
+ */
+class FileExcelStreaming implements FileExcel {
+	
+	private final OPCPackage pacchetto;
+	private final XSSFReader reader;
+	private final ReadOnlySharedStringsTable stringheCondivise;
+	private final List<InputStream> streamAperti = new ArrayList<>();
+	
+	/**
+	 * Apre in sola lettura il file Excel dato.
+	 * 
+	 * @param file il file da aprire
+	 * @throws IOException se il file non si può aprire
+	 */
+	FileExcelStreaming(File file) throws IOException {
+		try {
+			pacchetto = OPCPackage.open(file, PackageAccess.READ);
+		} catch (OpenXML4JException | RuntimeException e) {
+			throw new IOException("Non riesco ad aprire il file " + file.getName(), e);
+		}
+		try {
+			reader = new XSSFReader(pacchetto);
+			stringheCondivise = new ReadOnlySharedStringsTable(pacchetto, false);
+		} catch (OpenXML4JException | SAXException | RuntimeException e) {
+			pacchetto.revert();
+			throw new IOException("Non riesco a leggere il file " + file.getName(), e);
+		}
+	}
+
+	@Override
+	public Iterable<RigaFoglio> getFoglio(int indice) throws IOException {
+		Iterator<InputStream> fogli;
+		try {
+			fogli = reader.getSheetsData();
+		} catch (OpenXML4JException e) {
+			throw new IOException("Non riesco a leggere i fogli di calcolo", e);
+		}
+		for (int i = 0; i < indice && fogli.hasNext(); i++) {
+			fogli.next().close();
+		}
+		if (!fogli.hasNext()) {
+			throw new IllegalArgumentException("Il foglio " + indice + " non esiste");
+		}
+		InputStream stream = fogli.next();
+		streamAperti.add(stream);
+		try {
+			XMLStreamReader xml = XMLHelper.newXMLInputFactory().createXMLStreamReader(stream);
+			return () -> new IteratoreRighe(xml);
+		} catch (XMLStreamException e) {
+			throw new IOException("Non riesco a leggere il foglio " + indice, e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (InputStream stream : streamAperti) {
+			stream.close();
+		}
+		pacchetto.revert();
+	}
+	
+	/**
+	 * L'iteratore che decodifica gli elementi row dell'XML del foglio man mano che 
+	 * vengono richiesti.
+	 */
+	private class IteratoreRighe implements Iterator<RigaFoglio> {
+		
+		private final XMLStreamReader xml;
+		private RigaFoglio prossima;
+		private int ultimaRiga = -1;
+		
+		private IteratoreRighe(XMLStreamReader xml) {
+			this.xml = xml;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (prossima == null) {
+				prossima = leggiRiga();
+			}
+			return prossima != null;
+		}
+
+		@Override
+		public RigaFoglio next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			RigaFoglio riga = prossima;
+			prossima = null;
+			return riga;
+		}
+		
+		/**
+		 * Avanza fino al prossimo elemento row e ne decodifica le celle.
+		 * 
+		 * @return la riga letta o null se il foglio è finito
+		 */
+		private RigaFoglio leggiRiga() {
+			try {
+				while (xml.hasNext()) {
+					if (xml.next() == XMLStreamConstants.START_ELEMENT && "row".equals(xml.getLocalName())) {
+						String r = xml.getAttributeValue(null, "r");
+						ultimaRiga = r != null ? Integer.parseInt(r) - 1 : ultimaRiga + 1;
+						return new RigaFoglio(ultimaRiga, leggiCelle());
+					}
+				}
+				return null;
+			} catch (XMLStreamException e) {
+				throw new IllegalStateException("Errore nella lettura del foglio di calcolo", e);
+			}
+		}
+		
+		/**
+		 * Legge le celle della riga corrente fino alla chiusura dell'elemento row.
+		 * 
+		 * @return le celle della riga, null per le colonne senza cella
+		 * @throws XMLStreamException se l'XML non è valido
+		 */
+		private CellaFoglio[] leggiCelle() throws XMLStreamException {
+			List<CellaFoglio> celle = new ArrayList<>();
+			int colonna = -1;
+			while (xml.hasNext()) {
+				int evento = xml.next();
+				if (evento == XMLStreamConstants.END_ELEMENT && "row".equals(xml.getLocalName())) {
+					break;
+				}
+				if (evento == XMLStreamConstants.START_ELEMENT && "c".equals(xml.getLocalName())) {
+					String ref = xml.getAttributeValue(null, "r");
+					colonna = ref != null ? new CellReference(ref).getCol() : colonna + 1;
+					while (celle.size() <= colonna) {
+						celle.add(null);
+					}
+					celle.set(colonna, leggiCella(xml.getAttributeValue(null, "t")));
+				}
+			}
+			return celle.toArray(new CellaFoglio[0]);
+		}
+		
+		/**
+		 * Legge la cella corrente fino alla chiusura dell'elemento c, con le stesse 
+		 * regole che usa XSSFCell per stabilirne il tipo.
+		 * 
+		 * @param t l'attributo t della cella con il tipo del valore
+		 * @return la cella letta
+		 * @throws XMLStreamException se l'XML non è valido
+		 */
+		private CellaFoglio leggiCella(String t) throws XMLStreamException {
+			boolean formula = false;
+			String valore = null;
+			StringBuilder testoInline = null;
+			while (xml.hasNext()) {
+				int evento = xml.next();
+				if (evento == XMLStreamConstants.END_ELEMENT && "c".equals(xml.getLocalName())) {
+					break;
+				}
+				if (evento != XMLStreamConstants.START_ELEMENT) {
+					continue;
+				}
+				String nome = xml.getLocalName();
+				if ("f".equals(nome)) {
+					formula = true;
+				} else if ("v".equals(nome)) {
+					valore = xml.getElementText();
+				} else if ("t".equals(nome)) {
+					if (testoInline == null) testoInline = new StringBuilder();
+					testoInline.append(xml.getElementText());
+				}
+			}
+			
+			CellType tipoValore;
+			String stringa = null;
+			double numero = 0;
+			if ("inlineStr".equals(t)) {
+				tipoValore = CellType.STRING;
+				stringa = testoInline != null ? testoInline.toString() : "";
+			} else if (valore == null) {
+				tipoValore = formula ? CellType.NUMERIC : CellType.BLANK;
+			} else if ("s".equals(t)) {
+				tipoValore = CellType.STRING;
+				stringa = stringheCondivise.getItemAt(Integer.parseInt(valore)).getString();
+			} else if ("str".equals(t)) {
+				tipoValore = CellType.STRING;
+				stringa = valore;
+			} else if ("b".equals(t)) {
+				tipoValore = CellType.BOOLEAN;
+			} else if ("e".equals(t)) {
+				tipoValore = CellType.ERROR;
+			} else {
+				tipoValore = CellType.NUMERIC;
+				numero = Double.parseDouble(valore);
+			}
+			if (formula) {
+				return new CellaFoglio(CellType.FORMULA, tipoValore, stringa, numero);
+			}
+			return new CellaFoglio(tipoValore, null, stringa, numero);
+		}
+	}
+
+}
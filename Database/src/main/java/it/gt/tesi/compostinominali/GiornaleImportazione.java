@@ -0,0 +1,215 @@
+package it.gt.tesi.compostinominali;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Il giornale di un'importazione, con cui un'importazione interrotta (per esempio dalla
+ * caduta della JVM o della connessione al DB) può essere ripresa dal punto in cui si è
+ * fermata. È un file di testo in cui si aggiunge una riga per ogni passo confermato in DB:
+ * le fasi completate, i file opera importati con dimensione e hash SHA-256 e l'ultima riga
+ * del blocco confermato di un foglio. Ogni riga viene forzata sul disco prima di proseguire,
+ * quindi dopo un'interruzione il giornale contiene tutti i passi confermati; un'ultima riga
+ * scritta a metà viene ignorata. Alla fine dell'importazione viene aggiunta la riga FINE.
+ * I campi sono separati da tabulazioni e la prima riga contiene l'URI e il nome del DB.
+ * I metodi si possono chiamare da più thread.
+ */
+public class GiornaleImportazione implements Closeable {
+
+	private static final String INIZIO = "INIZIO";
+	private static final String FASE = "FASE";
+	private static final String FILE = "FILE";
+	private static final String BLOCCO = "BLOCCO";
+	private static final String FINE = "FINE";
+	private static final String SEPARATORE = "\t";
+
+	private final FileOutputStream output;
+	private final boolean ripreso;
+	private final Set<String> fasiCompletate = new HashSet<>();
+	//nome del file -> "dimensione;hash"
+	private final Map<String, String> fileCompletati = new HashMap<>();
+	private final Map<String, Integer> ultimeRighe = new HashMap<>();
+
+	private GiornaleImportazione(File fileGiornale, boolean ripreso) throws IOException {
+		this.ripreso = ripreso;
+		this.output = new FileOutputStream(fileGiornale, ripreso);
+	}
+
+	/**
+	 * Apre il giornale dell'importazione nel file dato. Se riprendi è true e il file contiene
+	 * il giornale di un'importazione nello stesso DB che non è terminata, i passi registrati
+	 * vengono caricati e quelli nuovi vengono aggiunti in coda; altrimenti il giornale viene
+	 * ricominciato da capo.
+	 *
+	 * @param fileGiornale il file del giornale
+	 * @param dbURI l'URI del DB in cui si importano i file
+	 * @param dbName il nome del DB in cui si importano i file
+	 * @param riprendi true per riprendere l'importazione interrotta
+	 * @return il giornale aperto
+	 * @throws IOException se il giornale non si può leggere o scrivere
+	 */
+	public static GiornaleImportazione apri(File fileGiornale, String dbURI, String dbName,
+			boolean riprendi) throws IOException {
+		String db = dbURI + SEPARATORE + dbName;
+		if (riprendi && fileGiornale.isFile()) {
+			byte[] contenuto = Files.readAllBytes(fileGiornale.toPath());
+			GiornaleImportazione giornale = new GiornaleImportazione(fileGiornale, true);
+			if (giornale.carica(contenuto, db)) {
+				//la riga scritta a metà viene tolta, così la prossima riga comincia su una riga nuova
+				int lunghezza = contenuto.length;
+				while (lunghezza > 0 && contenuto[lunghezza - 1] != '\n') {
+					lunghezza--;
+				}
+				giornale.output.getChannel().truncate(lunghezza);
+				return giornale;
+			}
+			giornale.close();
+		}
+		GiornaleImportazione giornale = new GiornaleImportazione(fileGiornale, false);
+		giornale.scrivi(INIZIO + SEPARATORE + db + SEPARATORE + LocalDateTime.now());
+		return giornale;
+	}
+
+	/**
+	 * Carica i passi registrati nel giornale.
+	 *
+	 * @param contenuto il contenuto del file del giornale
+	 * @param db l'URI e il nome del DB separati da una tabulazione
+	 * @return true se il giornale è di un'importazione in db non terminata, false altrimenti
+	 */
+	private boolean carica(byte[] contenuto, String db) {
+		String[] righe = new String(contenuto, StandardCharsets.UTF_8).split("\n", -1);
+		if (!righe[0].startsWith(INIZIO + SEPARATORE + db + SEPARATORE)) {
+			return false;
+		}
+		//l'ultimo elemento segue l'ultimo a capo: è vuoto oppure è una riga scritta a metà
+		for (int i = 1; i < righe.length - 1; i++) {
+			String[] campi = righe[i].split(SEPARATORE);
+			if (campi[0].equals(FINE)) {
+				return false;
+			} else if (campi[0].equals(FASE) && campi.length == 2) {
+				fasiCompletate.add(campi[1]);
+			} else if (campi[0].equals(FILE) && campi.length == 4) {
+				fileCompletati.put(campi[1], campi[2] + ";" + campi[3]);
+			} else if (campi[0].equals(BLOCCO) && campi.length == 3) {
+				ultimeRighe.put(campi[1], Integer.valueOf(campi[2]));
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Restituisce true se il giornale riprende un'importazione interrotta, false se
+	 * l'importazione comincia da capo.
+	 *
+	 * @return true se l'importazione viene ripresa
+	 */
+	public boolean isRipreso() {
+		return ripreso;
+	}
+
+	/**
+	 * Restituisce true se la fase data è stata completata dall'importazione ripresa.
+	 *
+	 * @param fase il nome della fase
+	 * @return true se la fase è completata
+	 */
+	public synchronized boolean isFaseCompletata(String fase) {
+		return fasiCompletate.contains(fase);
+	}
+
+	/**
+	 * Registra nel giornale che la fase data è stata completata.
+	 *
+	 * @param fase il nome della fase
+	 * @throws IOException se il giornale non si può scrivere
+	 */
+	public synchronized void registraFase(String fase) throws IOException {
+		fasiCompletate.add(fase);
+		scrivi(FASE + SEPARATORE + fase);
+	}
+
+	/**
+	 * Restituisce true se il file è stato importato dall'importazione ripresa e da allora
+	 * non è cambiato.
+	 *
+	 * @param file il file opera da controllare
+	 * @return true se il file è già stato importato così com'è
+	 * @throws IOException se il file non si può leggere
+	 */
+	public synchronized boolean isFileCompletato(File file) throws IOException {
+		String voce = fileCompletati.get(file.getName());
+		return voce != null && voce.equals(file.length() + ";" + ManifestoImportazione.calcolaHash(file));
+	}
+
+	/**
+	 * Registra nel giornale che il file è stato importato, con la sua dimensione e il suo hash.
+	 *
+	 * @param file il file opera importato
+	 * @throws IOException se il file non si può leggere o il giornale non si può scrivere
+	 */
+	public synchronized void registraFile(File file) throws IOException {
+		long dimensione = file.length();
+		String hash = ManifestoImportazione.calcolaHash(file);
+		fileCompletati.put(file.getName(), dimensione + ";" + hash);
+		scrivi(FILE + SEPARATORE + file.getName() + SEPARATORE + dimensione + SEPARATORE + hash);
+	}
+
+	/**
+	 * Restituisce l'ultima riga del foglio dato confermata in DB dall'importazione ripresa.
+	 *
+	 * @param foglio il nome del foglio
+	 * @return il numero dell'ultima riga confermata, 0 se non ce ne sono
+	 */
+	public synchronized int getUltimaRiga(String foglio) {
+		return ultimeRighe.getOrDefault(foglio, 0);
+	}
+
+	/**
+	 * Registra nel giornale che le righe del foglio dato fino a riga compresa sono
+	 * state confermate in DB.
+	 *
+	 * @param foglio il nome del foglio
+	 * @param riga il numero dell'ultima riga del blocco confermato
+	 * @throws IOException se il giornale non si può scrivere
+	 */
+	public synchronized void registraBlocco(String foglio, int riga) throws IOException {
+		ultimeRighe.put(foglio, riga);
+		scrivi(BLOCCO + SEPARATORE + foglio + SEPARATORE + riga);
+	}
+
+	/**
+	 * Registra nel giornale la fine dell'importazione: il giornale non si potrà più riprendere.
+	 *
+	 * @throws IOException se il giornale non si può scrivere
+	 */
+	public synchronized void termina() throws IOException {
+		scrivi(FINE);
+	}
+
+	/**
+	 * Aggiunge una riga al giornale e aspetta che sia scritta sul disco.
+	 *
+	 * @param riga la riga da aggiungere, senza a capo
+	 * @throws IOException se il giornale non si può scrivere
+	 */
+	private void scrivi(String riga) throws IOException {
+		output.write((riga + "\n").getBytes(StandardCharsets.UTF_8));
+		output.getChannel().force(false);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		output.close();
+	}
+
+}
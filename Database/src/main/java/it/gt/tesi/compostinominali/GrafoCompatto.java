@@ -0,0 +1,814 @@
+package it.gt.tesi.compostinominali;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Il grafo dei composti nominali in memoria, di sola lettura, costruito dal corpus letto
+ * dai fogli di calcolo senza usare il DB. Nodi e relazioni sono gli stessi che creerebbe
+ * l'importazione (due righe con le stesse proprietà producono un solo nodo o una sola
+ * relazione, come con MERGE), ma ogni nodo è un intero e le relazioni sono array di
+ * adiacenza compressi (CSR): le relazioni CONTAINS dell'opera w sono le posizioni da
+ * inizioContains[w] a inizioContains[w + 1] - 1 di compostoContains e occorrenzeContains.
+ * Lemmi, tipologie, sottotipologie, generi e sottogeneri sono indici nei rispettivi
+ * dizionari e i conteggi delle sottotipologie di ogni opera sono calcolati una volta sola.
+ * <p>
+ * I metodi rispondono alle famiglie di query di Cypher_queries.md con gli stessi risultati
+ * e lo stesso ordinamento, senza un server neo4j. L'oggetto è immutabile e si può usare
+ * da più thread. Si costruisce con il metodo costruisci().
+ */
+public final class GrafoCompatto {
+
+	/**
+	 * Le sottotipologie nell'ordine fisso delle query con i valori zero e delle query
+	 * incrociate di Cypher_queries.md.
+	 */
+	public static final List<String> SOTTOTIPOLOGIE = List.of(
+			"1A", "1B", "1C", "1D", "1E", "1F", "1G", "1H", "1Z",
+			"2A", "2B", "2C",
+			"3A", "3B", "3C",
+			"4A", "4B", "4C", "4D", "5",
+			"6A", "6B", "6C",
+			"7", "Ju", "Gr");
+
+	private static final int[] VUOTO = new int[0];
+
+	//i composti: lemma e coppia (tipologia, sottotipologia) come indici nei dizionari
+	private final String[] lemmi;
+	private final int[] lemmaComposto;
+	private final String[] tipologieCoppia;
+	private final String[] sottotipologieCoppia;
+	private final int[] coppiaComposto;
+	//per ogni coppia l'indice della sottotipologia in SOTTOTIPOLOGIE, -1 se non c'è
+	private final int[] sottotipologiaCoppia;
+	private final Map<String, int[]> compostiPerLemma;
+	//i composti ordinati per lemma e per lemma rovesciato, per le query sull'inizio e sulla fine
+	private final int[] compostiOrdinati;
+	private final String[] lemmiOrdinati;
+	private final int[] compostiOrdinatiAlContrario;
+	private final String[] lemmiRovesciatiOrdinati;
+	//gli stessi ordini sulle chiavi di ChiaviLemma, per le query senza maiuscole e segni diacritici
+	private final int[] compostiOrdinatiPerChiave;
+	private final String[] chiaviOrdinate;
+	private final int[] compostiOrdinatiPerChiaveRovesciata;
+	private final String[] chiaviRovesciateOrdinate;
+	//la posizione di ogni composto e di ogni opera nell'ordine per lemma e per acronimo 
+	//senza distinguere maiuscole e minuscole, per ordinare i risultati confrontando interi
+	private final int[] rangoLemma;
+	private final int[] rangoAcronimo;
+
+	//i membri e le relazioni FORMED_BY, da composto a membro e da membro a composto
+	private final String[] lemmiMembri;
+	private final Map<String, int[]> membriPerLemma;
+	private final int[] inizioFormedBy;
+	private final int[] membroFormedBy;
+	private final int[] posizioneFormedBy;
+	private final int[] inizioMembro;
+	private final int[] compostoMembro;
+	private final int[] posizioneMembro;
+
+	//le opere e i loro autori
+	private final String[] titoli;
+	private final String[] acronimi;
+	private final String[] nomiAutori;
+	private final int[] autoreOpera;
+	private final Map<Ambito, Map<String, int[]>> operePerAmbito = new EnumMap<>(Ambito.class);
+
+	//le relazioni CONTAINS, da opera a composto e da composto a opera
+	private final int[] inizioContains;
+	private final int[] compostoContains;
+	private final int[] occorrenzeContains;
+	private final int[] inizioContenuto;
+	private final int[] operaContenuto;
+	private final int[] occorrenzeContenuto;
+
+	//per ogni opera il numero di relazioni CONTAINS di ogni coppia (tipologia, sottotipologia)
+	private final int[] conteggiCoppie;
+
+	/**
+	 * Costruisce il grafo compatto a partire dal corpus.
+	 *
+	 * @param corpus il corpus letto dai fogli di calcolo
+	 * @return il grafo compatto
+	 *
+	 * @throws IllegalArgumentException se corpus è null
+	 */
+	public static GrafoCompatto costruisci(Corpus corpus) {
+		if (corpus == null)
+			throw new IllegalArgumentException("Il corpus non può essere null");
+		return new GrafoCompatto(corpus);
+	}
+
+	private GrafoCompatto(Corpus corpus) {
+		//i composti, con le stesse proprietà della MERGE dell'importazione
+		Map<List<Object>, Integer> chiaviComposti = new LinkedHashMap<>();
+		Map<String, Integer> dizionarioLemmi = new LinkedHashMap<>();
+		Map<List<String>, Integer> dizionarioCoppie = new LinkedHashMap<>();
+		List<Integer> lemmaPerComposto = new ArrayList<>();
+		List<Integer> coppiaPerComposto = new ArrayList<>();
+		Map<String, List<Integer>> compostiLemma = new HashMap<>();
+		Map<List<Object>, List<Integer>> compostiPerChiaveMembri = new HashMap<>();
+		for (Composto composto : corpus.getComposti()) {
+			List<Object> chiave = Arrays.asList(composto.getLemma(), composto.getCategoriaMorfologica(),
+					composto.getTipologia(), composto.getSottotipologia(),
+					composto.isGrecismo() ? composto.getOriginaleGreco() : null);
+			if (chiaviComposti.containsKey(chiave)) continue;
+			int id = chiaviComposti.size();
+			chiaviComposti.put(chiave, id);
+			lemmaPerComposto.add(getIndice(dizionarioLemmi, composto.getLemma()));
+			coppiaPerComposto.add(getIndice(dizionarioCoppie,
+					Arrays.asList(composto.getTipologia(), composto.getSottotipologia())));
+			compostiLemma.computeIfAbsent(composto.getLemma(), l -> new ArrayList<>()).add(id);
+			compostiPerChiaveMembri.computeIfAbsent(chiave.subList(0, 4), l -> new ArrayList<>()).add(id);
+		}
+		int numeroComposti = chiaviComposti.size();
+		lemmi = dizionarioLemmi.keySet().toArray(new String[0]);
+		lemmaComposto = toArray(lemmaPerComposto);
+		coppiaComposto = toArray(coppiaPerComposto);
+		tipologieCoppia = new String[dizionarioCoppie.size()];
+		sottotipologieCoppia = new String[dizionarioCoppie.size()];
+		sottotipologiaCoppia = new int[dizionarioCoppie.size()];
+		dizionarioCoppie.forEach((coppia, indice) -> {
+			tipologieCoppia[indice] = coppia.get(0);
+			sottotipologieCoppia[indice] = coppia.get(1);
+			sottotipologiaCoppia[indice] = SOTTOTIPOLOGIE.indexOf(coppia.get(1));
+		});
+		compostiPerLemma = toMappaArray(compostiLemma);
+
+		compostiOrdinati = ordina(numeroComposti, c -> lemmi[lemmaComposto[c]]);
+		lemmiOrdinati = new String[numeroComposti];
+		compostiOrdinatiAlContrario = ordina(numeroComposti, c -> rovescia(lemmi[lemmaComposto[c]]));
+		lemmiRovesciatiOrdinati = new String[numeroComposti];
+		for (int i = 0; i < numeroComposti; i++) {
+			lemmiOrdinati[i] = lemmi[lemmaComposto[compostiOrdinati[i]]];
+			lemmiRovesciatiOrdinati[i] = rovescia(lemmi[lemmaComposto[compostiOrdinatiAlContrario[i]]]);
+		}
+		compostiOrdinatiPerChiave = ordina(numeroComposti, c -> ChiaviLemma.normalizza(lemmi[lemmaComposto[c]]));
+		chiaviOrdinate = new String[numeroComposti];
+		compostiOrdinatiPerChiaveRovesciata = ordina(numeroComposti,
+				c -> ChiaviLemma.rovescia(lemmi[lemmaComposto[c]]));
+		chiaviRovesciateOrdinate = new String[numeroComposti];
+		for (int i = 0; i < numeroComposti; i++) {
+			chiaviOrdinate[i] = ChiaviLemma.normalizza(lemmi[lemmaComposto[compostiOrdinatiPerChiave[i]]]);
+			chiaviRovesciateOrdinate[i] = ChiaviLemma.rovescia(
+					lemmi[lemmaComposto[compostiOrdinatiPerChiaveRovesciata[i]]]);
+		}
+		rangoLemma = getRanghi(ordina(numeroComposti, c -> lemmi[lemmaComposto[c]].toLowerCase()));
+
+		//i membri e le relazioni FORMED_BY
+		Map<List<String>, Integer> chiaviMembri = new LinkedHashMap<>();
+		Set<List<Integer>> formedBy = new LinkedHashSet<>();
+		for (Composto composto : corpus.getComposti()) {
+			Membro[] membri = composto.getMembri();
+			if (membri == null) continue;
+			List<Object> chiaveMembri = Arrays.asList(composto.getLemma(), composto.getCategoriaMorfologica(),
+					composto.getTipologia(), composto.getSottotipologia());
+			for (int i = 0; i < membri.length; i++) {
+				if (membri[i].isEmpty()) continue;
+				int idMembro = getIndice(chiaviMembri,
+						List.of(membri[i].getLemma(), membri[i].getCategoriaMorfologica()));
+				for (int idComposto : compostiPerChiaveMembri.get(chiaveMembri)) {
+					formedBy.add(List.of(idComposto, idMembro, i + 1));
+				}
+			}
+		}
+		lemmiMembri = new String[chiaviMembri.size()];
+		Map<String, List<Integer>> membriLemma = new HashMap<>();
+		chiaviMembri.forEach((chiave, indice) -> {
+			lemmiMembri[indice] = chiave.get(0);
+			membriLemma.computeIfAbsent(chiave.get(0), l -> new ArrayList<>()).add(indice);
+		});
+		membriPerLemma = toMappaArray(membriLemma);
+		int[][] relazioni = toColonne(formedBy, 3);
+		int[][] csr = costruisciCsr(numeroComposti, relazioni[0], relazioni[1], relazioni[2]);
+		inizioFormedBy = csr[0];
+		membroFormedBy = csr[1];
+		posizioneFormedBy = csr[2];
+		csr = costruisciCsr(lemmiMembri.length, relazioni[1], relazioni[0], relazioni[2]);
+		inizioMembro = csr[0];
+		compostoMembro = csr[1];
+		posizioneMembro = csr[2];
+
+		//le opere, gli autori e le relazioni CONTAINS
+		Map<List<Object>, Integer> chiaviOpere = new LinkedHashMap<>();
+		Map<List<Object>, Integer> chiaviAutori = new LinkedHashMap<>();
+		List<Opera> opere = new ArrayList<>();
+		List<Integer> autorePerOpera = new ArrayList<>();
+		Set<List<Integer>> contains = new LinkedHashSet<>();
+		Map<Ambito, Map<String, List<Integer>>> opereAmbito = new EnumMap<>(Ambito.class);
+		for (Ambito ambito : Ambito.values()) {
+			opereAmbito.put(ambito, new HashMap<>());
+		}
+		for (Opera opera : corpus.getOpere()) {
+			Autore autore = opera.getAutore();
+			List<Object> chiaveOpera = List.of(opera.getTitolo(), opera.getAbbreviazione(),
+					opera.getGenere(), opera.getSottogenere());
+			Integer idOpera = chiaviOpere.get(chiaveOpera);
+			if (idOpera == null) {
+				idOpera = chiaviOpere.size();
+				chiaviOpere.put(chiaveOpera, idOpera);
+				opere.add(opera);
+				autorePerOpera.add(getIndice(chiaviAutori, List.of(autore.getNome(),
+						autore.getSecoloNascita(), autore.getSecoloMorte())));
+				aggiungi(opereAmbito.get(Ambito.OPERA), opera.getAbbreviazione(), idOpera);
+				aggiungi(opereAmbito.get(Ambito.AUTORE), autore.getNome(), idOpera);
+				aggiungi(opereAmbito.get(Ambito.SOTTOGENERE), opera.getSottogenere(), idOpera);
+				aggiungi(opereAmbito.get(Ambito.GENERE), opera.getGenere(), idOpera);
+			}
+			for (Composto composto : opera.getComposti()) {
+				for (int idComposto : compostiPerLemma.getOrDefault(composto.getLemma(), VUOTO)) {
+					contains.add(List.of(idOpera, idComposto, composto.getOccorrenze()));
+				}
+			}
+		}
+		int numeroOpere = opere.size();
+		titoli = new String[numeroOpere];
+		acronimi = new String[numeroOpere];
+		for (int w = 0; w < numeroOpere; w++) {
+			titoli[w] = opere.get(w).getTitolo();
+			acronimi[w] = opere.get(w).getAbbreviazione();
+		}
+		autoreOpera = toArray(autorePerOpera);
+		rangoAcronimo = getRanghi(ordina(numeroOpere, w -> acronimi[w].toLowerCase()));
+		nomiAutori = new String[chiaviAutori.size()];
+		chiaviAutori.forEach((chiave, indice) -> nomiAutori[indice] = (String) chiave.get(0));
+		opereAmbito.forEach((ambito, mappa) -> operePerAmbito.put(ambito, toMappaArray(mappa)));
+
+		relazioni = toColonne(contains, 3);
+		csr = costruisciCsr(numeroOpere, relazioni[0], relazioni[1], relazioni[2]);
+		inizioContains = csr[0];
+		compostoContains = csr[1];
+		occorrenzeContains = csr[2];
+		csr = costruisciCsr(numeroComposti, relazioni[1], relazioni[0], relazioni[2]);
+		inizioContenuto = csr[0];
+		operaContenuto = csr[1];
+		occorrenzeContenuto = csr[2];
+
+		int numeroCoppie = tipologieCoppia.length;
+		conteggiCoppie = new int[numeroOpere * numeroCoppie];
+		for (int w = 0; w < numeroOpere; w++) {
+			for (int i = inizioContains[w]; i < inizioContains[w + 1]; i++) {
+				conteggiCoppie[w * numeroCoppie + coppiaComposto[compostoContains[i]]]++;
+			}
+		}
+	}
+
+	public int getNumeroComposti() {
+		return lemmaComposto.length;
+	}
+
+	public int getNumeroMembri() {
+		return lemmiMembri.length;
+	}
+
+	public int getNumeroOpere() {
+		return titoli.length;
+	}
+
+	public int getNumeroAutori() {
+		return nomiAutori.length;
+	}
+
+	public int getNumeroRelazioniContains() {
+		return compostoContains.length;
+	}
+
+	public int getNumeroRelazioniFormedBy() {
+		return membroFormedBy.length;
+	}
+
+	/**
+	 * Restituisce i valori possibili di un ambito, per esempio tutti gli acronimi delle
+	 * opere o tutti i generi, in ordine alfabetico.
+	 *
+	 * @param ambito l'ambito
+	 * @return i valori dell'ambito
+	 */
+	public List<String> getValori(Ambito ambito) {
+		List<String> valori = new ArrayList<>(operePerAmbito.get(ambito).keySet());
+		valori.sort(null);
+		return valori;
+	}
+
+	/**
+	 * Le occorrenze di un composto in tutte le opere: "Occurences of a specific compound",
+	 * "All authors and works", ordinate per acronimo senza distinguere maiuscole e minuscole.
+	 *
+	 * @param lemma il lemma del composto
+	 * @return le relazioni CONTAINS del composto
+	 */
+	public List<OccorrenzaComposto> getOccorrenze(String lemma) {
+		return getOccorrenze(lemma, null, null);
+	}
+
+	/**
+	 * Le occorrenze di un composto nelle opere di un ambito: "Specific author" con
+	 * Ambito.AUTORE e "Specific work" con Ambito.OPERA, ordinate per acronimo senza
+	 * distinguere maiuscole e minuscole.
+	 *
+	 * @param lemma il lemma del composto
+	 * @param ambito l'ambito delle opere, null per tutte le opere
+	 * @param valore il valore dell'ambito, per esempio il nome dell'autore
+	 * @return le relazioni CONTAINS del composto nelle opere dell'ambito
+	 */
+	public List<OccorrenzaComposto> getOccorrenze(String lemma, Ambito ambito, String valore) {
+		int[] opere = ambito == null ? null : getOpere(ambito, valore);
+		List<int[]> relazioni = new ArrayList<>();
+		for (int c : compostiPerLemma.getOrDefault(lemma, VUOTO)) {
+			for (int i = inizioContenuto[c]; i < inizioContenuto[c + 1]; i++) {
+				int w = operaContenuto[i];
+				if (opere == null || Arrays.binarySearch(opere, w) >= 0) {
+					relazioni.add(new int[] {w, c, occorrenzeContenuto[i]});
+				}
+			}
+		}
+		relazioni.sort(Comparator.comparingInt(relazione -> rangoAcronimo[relazione[0]]));
+		return creaOccorrenze(relazioni);
+	}
+
+	/**
+	 * Tutti i composti delle opere di un ambito: "All nominal compounds in a specific work"
+	 * con Ambito.OPERA e "All nominal compounds in a specific author" con Ambito.AUTORE,
+	 * ordinati per lemma e poi per acronimo senza distinguere maiuscole e minuscole.
+	 *
+	 * @param ambito l'ambito delle opere
+	 * @param valore il valore dell'ambito, per esempio l'acronimo dell'opera
+	 * @return le relazioni CONTAINS delle opere dell'ambito
+	 */
+	public List<OccorrenzaComposto> getComposti(Ambito ambito, String valore) {
+		List<int[]> relazioni = new ArrayList<>();
+		for (int w : getOpere(ambito, valore)) {
+			for (int i = inizioContains[w]; i < inizioContains[w + 1]; i++) {
+				relazioni.add(new int[] {w, compostoContains[i], occorrenzeContains[i]});
+			}
+		}
+		relazioni.sort(Comparator.comparingInt((int[] relazione) -> rangoLemma[relazione[1]])
+				.thenComparingInt(relazione -> rangoAcronimo[relazione[0]]));
+		return creaOccorrenze(relazioni);
+	}
+
+	/**
+	 * I composti che hanno il membro dato nella posizione data, con il primo e il secondo
+	 * membro: "All compounds sharing the first member" con posizione 1 e "All compounds
+	 * sharing the second member" con posizione 2, ordinati per lemma senza distinguere
+	 * maiuscole e minuscole.
+	 *
+	 * @param posizione la posizione del membro, 1 o 2
+	 * @param lemmaMembro il lemma del membro
+	 * @return i composti con il membro dato
+	 */
+	public List<CompostoConMembri> getCompostiConMembro(int posizione, String lemmaMembro) {
+		List<int[]> composti = new ArrayList<>();
+		for (int m : membriPerLemma.getOrDefault(lemmaMembro, VUOTO)) {
+			for (int i = inizioMembro[m]; i < inizioMembro[m + 1]; i++) {
+				if (posizioneMembro[i] == posizione) {
+					composti.add(new int[] {compostoMembro[i], posizione, m});
+				}
+			}
+		}
+		return creaCompostiConMembri(composti);
+	}
+
+	/**
+	 * I composti il cui lemma inizia con il prefisso dato, distinguendo maiuscole e
+	 * minuscole: "All compounds beginning in the same way". Per la variante "case-insensitive"
+	 * passare il prefisso in minuscolo. Ordinati per lemma senza distinguere maiuscole e minuscole.
+	 *
+	 * @param prefisso l'inizio del lemma
+	 * @return i composti che iniziano con prefisso, con il primo e il secondo membro
+	 */
+	public List<CompostoConMembri> getCompostiCheIniziano(String prefisso) {
+		List<int[]> composti = new ArrayList<>();
+		for (int i = cercaInizio(lemmiOrdinati, prefisso);
+				i < lemmiOrdinati.length && lemmiOrdinati[i].startsWith(prefisso); i++) {
+			composti.add(new int[] {compostiOrdinati[i], 0, -1});
+		}
+		return creaCompostiConMembri(composti);
+	}
+
+	/**
+	 * I composti il cui lemma finisce con il suffisso dato, distinguendo maiuscole e
+	 * minuscole: "All compounds ending in the same way". Per la variante "case-insensitive"
+	 * passare il suffisso in minuscolo. Ordinati per lemma senza distinguere maiuscole e minuscole.
+	 *
+	 * @param suffisso la fine del lemma
+	 * @return i composti che finiscono con suffisso, con il primo e il secondo membro
+	 */
+	public List<CompostoConMembri> getCompostiCheFiniscono(String suffisso) {
+		String suffissoRovesciato = rovescia(suffisso);
+		List<int[]> composti = new ArrayList<>();
+		for (int i = cercaInizio(lemmiRovesciatiOrdinati, suffissoRovesciato);
+				i < lemmiRovesciatiOrdinati.length
+				&& lemmiRovesciatiOrdinati[i].startsWith(suffissoRovesciato); i++) {
+			composti.add(new int[] {compostiOrdinatiAlContrario[i], 0, -1});
+		}
+		return creaCompostiConMembri(composti);
+	}
+
+	/**
+	 * I composti il cui lemma inizia con il prefisso dato senza distinguere maiuscole,
+	 * minuscole e segni diacritici, come la query sulla chiave lemmaNormalized.
+	 * Ordinati per lemma senza distinguere maiuscole e minuscole.
+	 *
+	 * @param prefisso l'inizio del lemma
+	 * @return i composti che iniziano con prefisso, con il primo e il secondo membro
+	 */
+	public List<CompostoConMembri> getCompostiCheInizianoNormalizzati(String prefisso) {
+		return getCompostiConChiave(chiaviOrdinate, compostiOrdinatiPerChiave, ChiaviLemma.normalizza(prefisso));
+	}
+
+	/**
+	 * I composti il cui lemma finisce con il suffisso dato senza distinguere maiuscole,
+	 * minuscole e segni diacritici, come la query sulla chiave lemmaReversed.
+	 * Ordinati per lemma senza distinguere maiuscole e minuscole.
+	 *
+	 * @param suffisso la fine del lemma
+	 * @return i composti che finiscono con suffisso, con il primo e il secondo membro
+	 */
+	public List<CompostoConMembri> getCompostiCheFinisconoNormalizzati(String suffisso) {
+		return getCompostiConChiave(chiaviRovesciateOrdinate, compostiOrdinatiPerChiaveRovesciata,
+				ChiaviLemma.rovescia(suffisso));
+	}
+
+	private List<CompostoConMembri> getCompostiConChiave(String[] chiavi, int[] compostiOrdinatiPerChiavi,
+			String inizio) {
+		List<int[]> composti = new ArrayList<>();
+		for (int i = cercaInizio(chiavi, inizio); i < chiavi.length && chiavi[i].startsWith(inizio); i++) {
+			composti.add(new int[] {compostiOrdinatiPerChiavi[i], 0, -1});
+		}
+		return creaCompostiConMembri(composti);
+	}
+
+	/**
+	 * I tipi di composti di un ambito con il numero di relazioni CONTAINS e la percentuale
+	 * sul totale: "Types of compounds recurring in a specific work/author/subgenre/genre",
+	 * con e senza percentuale. Sono ordinati dalla sottotipologia più frequente alla meno
+	 * frequente e, a parità, per sottotipologia; le sottotipologie assenti non ci sono.
+	 *
+	 * @param ambito l'ambito delle opere
+	 * @param valore il valore dell'ambito
+	 * @return i conteggi delle sottotipologie presenti nell'ambito
+	 */
+	public List<ConteggioSottotipo> getDistribuzioneSottotipi(Ambito ambito, String valore) {
+		int[] conteggi = contaCoppie(getOpere(ambito, valore));
+		int totale = somma(conteggi);
+		List<ConteggioSottotipo> righe = new ArrayList<>();
+		for (int coppia = 0; coppia < conteggi.length; coppia++) {
+			if (conteggi[coppia] > 0) {
+				righe.add(new ConteggioSottotipo(tipologieCoppia[coppia], sottotipologieCoppia[coppia],
+						conteggi[coppia], getPercentuale(conteggi[coppia], totale)));
+			}
+		}
+		righe.sort(Comparator.comparingInt(ConteggioSottotipo::getOccorrenze).reversed()
+				.thenComparing(ConteggioSottotipo::getSottotipologia));
+		return righe;
+	}
+
+	/**
+	 * I tipi di composti di un ambito con i valori zero: "All types of compounds with zero
+	 * values", nell'ordine fisso di SOTTOTIPOLOGIE. La percentuale è sul totale dell'ambito.
+	 *
+	 * @param ambito l'ambito delle opere
+	 * @param valore il valore dell'ambito
+	 * @return i conteggi di tutte le sottotipologie di SOTTOTIPOLOGIE
+	 */
+	public List<ConteggioSottotipo> getDistribuzioneSottotipiConZeri(Ambito ambito, String valore) {
+		int[] opere = getOpere(ambito, valore);
+		int[] conteggi = contaSottotipologie(opere);
+		int totale = somma(contaCoppie(opere));
+		List<ConteggioSottotipo> righe = new ArrayList<>();
+		for (int s = 0; s < SOTTOTIPOLOGIE.size(); s++) {
+			righe.add(new ConteggioSottotipo(getTipologia(SOTTOTIPOLOGIE.get(s)), SOTTOTIPOLOGIE.get(s),
+					conteggi[s], getPercentuale(conteggi[s], totale)));
+		}
+		return righe;
+	}
+
+	/**
+	 * Confronta le sottotipologie di due ambiti: le query incrociate "Cross queries",
+	 * per esempio Work/Author (A/B) con Ambito.OPERA e Ambito.AUTORE.
+	 *
+	 * @param ambito1 l'ambito della prima colonna
+	 * @param valore1 il valore del primo ambito
+	 * @param ambito2 l'ambito della seconda colonna
+	 * @param valore2 il valore del secondo ambito
+	 * @return la tabella con una riga per sottotipologia e una colonna per ambito
+	 */
+	public ConfrontoSottotipi confronta(Ambito ambito1, String valore1, Ambito ambito2, String valore2) {
+		return confronta(List.of(ambito1, ambito2), List.of(valore1, valore2));
+	}
+
+	/**
+	 * Confronta le sottotipologie di più valori dello stesso ambito: "Multiple cross queries",
+	 * già nella forma della tabella pivot.
+	 *
+	 * @param ambito l'ambito di tutte le colonne
+	 * @param valori i valori da confrontare, uno per colonna
+	 * @return la tabella con una riga per sottotipologia e una colonna per valore
+	 */
+	public ConfrontoSottotipi confronta(Ambito ambito, List<String> valori) {
+		List<Ambito> ambiti = new ArrayList<>();
+		for (int i = 0; i < valori.size(); i++) {
+			ambiti.add(ambito);
+		}
+		return confronta(ambiti, valori);
+	}
+
+	/**
+	 * Restituisce il numero di relazioni CONTAINS di ogni sottotipologia di SOTTOTIPOLOGIE
+	 * nelle opere di un ambito.
+	 *
+	 * @param ambito l'ambito delle opere
+	 * @param valore il valore dell'ambito
+	 * @return i conteggi nell'ordine di SOTTOTIPOLOGIE
+	 */
+	public int[] getConteggiSottotipologie(Ambito ambito, String valore) {
+		return contaSottotipologie(getOpere(ambito, valore));
+	}
+
+	/**
+	 * Confronta le sottotipologie degli ambiti dati, uno per colonna.
+	 *
+	 * @param ambiti gli ambiti delle colonne
+	 * @param valori i valori degli ambiti
+	 * @return la tabella con una riga per sottotipologia e una colonna per ambito
+	 */
+	private ConfrontoSottotipi confronta(List<Ambito> ambiti, List<String> valori) {
+		int[][] conteggi = new int[SOTTOTIPOLOGIE.size()][valori.size()];
+		for (int colonna = 0; colonna < valori.size(); colonna++) {
+			int[] conteggiColonna = contaSottotipologie(getOpere(ambiti.get(colonna), valori.get(colonna)));
+			for (int s = 0; s < conteggiColonna.length; s++) {
+				conteggi[s][colonna] = conteggiColonna[s];
+			}
+		}
+		return new ConfrontoSottotipi(SOTTOTIPOLOGIE, valori, conteggi);
+	}
+
+	/**
+	 * Restituisce le opere di un ambito in ordine crescente.
+	 *
+	 * @param ambito l'ambito
+	 * @param valore il valore dell'ambito
+	 * @return gli indici delle opere, vuoto se il valore non esiste
+	 */
+	private int[] getOpere(Ambito ambito, String valore) {
+		if (ambito == null)
+			throw new IllegalArgumentException("L'ambito non può essere null");
+		return operePerAmbito.get(ambito).getOrDefault(valore, VUOTO);
+	}
+
+	/**
+	 * Somma i conteggi delle coppie (tipologia, sottotipologia) delle opere date.
+	 *
+	 * @param opere gli indici delle opere
+	 * @return i conteggi per coppia
+	 */
+	private int[] contaCoppie(int[] opere) {
+		int numeroCoppie = tipologieCoppia.length;
+		int[] conteggi = new int[numeroCoppie];
+		for (int w : opere) {
+			for (int coppia = 0; coppia < numeroCoppie; coppia++) {
+				conteggi[coppia] += conteggiCoppie[w * numeroCoppie + coppia];
+			}
+		}
+		return conteggi;
+	}
+
+	/**
+	 * Somma i conteggi delle sottotipologie di SOTTOTIPOLOGIE delle opere date.
+	 *
+	 * @param opere gli indici delle opere
+	 * @return i conteggi nell'ordine di SOTTOTIPOLOGIE
+	 */
+	private int[] contaSottotipologie(int[] opere) {
+		int[] conteggiCoppia = contaCoppie(opere);
+		int[] conteggi = new int[SOTTOTIPOLOGIE.size()];
+		for (int coppia = 0; coppia < conteggiCoppia.length; coppia++) {
+			int s = sottotipologiaCoppia[coppia];
+			if (s >= 0) {
+				conteggi[s] += conteggiCoppia[coppia];
+			}
+		}
+		return conteggi;
+	}
+
+	/**
+	 * Restituisce la tipologia dei composti della sottotipologia data.
+	 *
+	 * @param sottotipologia la sottotipologia
+	 * @return la tipologia, null se nessun composto ha la sottotipologia
+	 */
+	private String getTipologia(String sottotipologia) {
+		for (int coppia = 0; coppia < sottotipologieCoppia.length; coppia++) {
+			if (sottotipologieCoppia[coppia].equals(sottotipologia)) {
+				return tipologieCoppia[coppia];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Aggiunge le righe di un composto con il primo e il secondo membro, una per ogni
+	 * coppia di membri in posizione 1 e 2. Se posizioneFissa è 1 o 2 il membro in quella
+	 * posizione è solo membroFisso.
+	 *
+	 * @param c il composto
+	 * @param posizioneFissa la posizione del membro cercato, 0 per nessuna
+	 * @param membroFisso il membro cercato
+	 * @param righe le righe a cui aggiungere quelle del composto
+	 */
+	private void aggiungiCompostoConMembri(int c, int posizioneFissa, int membroFisso,
+			List<CompostoConMembri> righe) {
+		for (int i = inizioFormedBy[c]; i < inizioFormedBy[c + 1]; i++) {
+			if (posizioneFormedBy[i] != 1 || (posizioneFissa == 1 && membroFormedBy[i] != membroFisso)) continue;
+			for (int j = inizioFormedBy[c]; j < inizioFormedBy[c + 1]; j++) {
+				if (posizioneFormedBy[j] != 2 || (posizioneFissa == 2 && membroFormedBy[j] != membroFisso)) continue;
+				int coppia = coppiaComposto[c];
+				righe.add(new CompostoConMembri(lemmi[lemmaComposto[c]], lemmiMembri[membroFormedBy[i]],
+						lemmiMembri[membroFormedBy[j]], tipologieCoppia[coppia], sottotipologieCoppia[coppia]));
+			}
+		}
+	}
+
+	/**
+	 * Crea le righe dei composti con i membri, ordinate per lemma senza distinguere 
+	 * maiuscole e minuscole.
+	 * 
+	 * @param composti per ogni composto l'indice, la posizione del membro cercato (0 per 
+	 * nessuna) e il membro cercato
+	 * @return le righe dei composti con il primo e il secondo membro
+	 */
+	private List<CompostoConMembri> creaCompostiConMembri(List<int[]> composti) {
+		composti.sort(Comparator.comparingInt(composto -> rangoLemma[composto[0]]));
+		List<CompostoConMembri> righe = new ArrayList<>();
+		for (int[] composto : composti) {
+			aggiungiCompostoConMembri(composto[0], composto[1], composto[2], righe);
+		}
+		return righe;
+	}
+	
+	/**
+	 * Crea le righe delle relazioni CONTAINS date, nello stesso ordine.
+	 * 
+	 * @param relazioni per ogni relazione l'opera, il composto e le occorrenze
+	 * @return le righe delle occorrenze
+	 */
+	private List<OccorrenzaComposto> creaOccorrenze(List<int[]> relazioni) {
+		List<OccorrenzaComposto> righe = new ArrayList<>(relazioni.size());
+		for (int[] relazione : relazioni) {
+			int w = relazione[0];
+			int c = relazione[1];
+			int coppia = coppiaComposto[c];
+			righe.add(new OccorrenzaComposto(lemmi[lemmaComposto[c]], nomiAutori[autoreOpera[w]], titoli[w],
+					acronimi[w], relazione[2], tipologieCoppia[coppia], sottotipologieCoppia[coppia]));
+		}
+		return righe;
+	}
+
+	/**
+	 * Restituisce la percentuale arrotondata a due decimali, come ROUND(100.0 * n / totale, 2).
+	 *
+	 * @param n il conteggio
+	 * @param totale il totale
+	 * @return la percentuale, 0 se il totale è 0
+	 */
+	static double getPercentuale(int n, int totale) {
+		return totale == 0 ? 0 : Math.round(10000.0 * n / totale) / 100.0;
+	}
+
+	private static int somma(int[] valori) {
+		int somma = 0;
+		for (int valore : valori) {
+			somma += valore;
+		}
+		return somma;
+	}
+
+	/**
+	 * Restituisce l'indice della prima stringa dell'array ordinato che non precede prefisso.
+	 *
+	 * @param ordinate le stringhe in ordine crescente
+	 * @param prefisso il prefisso da cercare
+	 * @return l'indice da cui iniziano le stringhe con il prefisso
+	 */
+	private static int cercaInizio(String[] ordinate, String prefisso) {
+		int i = Arrays.binarySearch(ordinate, prefisso);
+		if (i < 0) {
+			return -i - 1;
+		}
+		//con lemmi uguali binarySearch può trovarne uno qualsiasi
+		while (i > 0 && ordinate[i - 1].equals(prefisso)) {
+			i--;
+		}
+		return i;
+	}
+
+	/**
+	 * Restituisce la posizione di ogni indice nell'ordinamento dato.
+	 * 
+	 * @param ordinati gli indici ordinati
+	 * @return per ogni indice la sua posizione in ordinati
+	 */
+	private static int[] getRanghi(int[] ordinati) {
+		int[] ranghi = new int[ordinati.length];
+		for (int i = 0; i < ordinati.length; i++) {
+			ranghi[ordinati[i]] = i;
+		}
+		return ranghi;
+	}
+
+	private static String rovescia(String stringa) {
+		return new StringBuilder(stringa).reverse().toString();
+	}
+
+	/**
+	 * Restituisce gli indici da 0 a n - 1 ordinati per la chiave data.
+	 *
+	 * @param n il numero di indici
+	 * @param chiave la chiave di ogni indice
+	 * @return gli indici ordinati
+	 */
+	private static int[] ordina(int n, IntFunction<String> chiave) {
+		return IntStream.range(0, n).boxed()
+				.sorted(Comparator.comparing(chiave::apply))
+				.mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Costruisce gli array di adiacenza compressi delle relazioni date: inizio ha
+	 * numeroNodi + 1 elementi e le relazioni del nodo n sono le posizioni da inizio[n]
+	 * a inizio[n + 1] - 1 di destinazione e attributo, nell'ordine in cui sono date.
+	 *
+	 * @param numeroNodi il numero dei nodi di origine
+	 * @param origine il nodo di origine di ogni relazione
+	 * @param destinazione il nodo di destinazione di ogni relazione
+	 * @param attributo l'attributo di ogni relazione
+	 * @return gli array inizio, destinazione e attributo
+	 */
+	private static int[][] costruisciCsr(int numeroNodi, int[] origine, int[] destinazione, int[] attributo) {
+		int[] inizio = new int[numeroNodi + 1];
+		for (int n : origine) {
+			inizio[n + 1]++;
+		}
+		for (int n = 0; n < numeroNodi; n++) {
+			inizio[n + 1] += inizio[n];
+		}
+		int[] prossimo = Arrays.copyOf(inizio, numeroNodi);
+		int[] destinazioneCsr = new int[origine.length];
+		int[] attributoCsr = new int[origine.length];
+		for (int i = 0; i < origine.length; i++) {
+			int posizione = prossimo[origine[i]]++;
+			destinazioneCsr[posizione] = destinazione[i];
+			attributoCsr[posizione] = attributo[i];
+		}
+		return new int[][] {inizio, destinazioneCsr, attributoCsr};
+	}
+
+	/**
+	 * Restituisce le colonne delle relazioni date come array.
+	 *
+	 * @param relazioni le relazioni, ciascuna una lista di interi
+	 * @param numeroColonne il numero di elementi di ogni relazione
+	 * @return un array per colonna
+	 */
+	private static int[][] toColonne(Set<List<Integer>> relazioni, int numeroColonne) {
+		int[][] colonne = new int[numeroColonne][relazioni.size()];
+		int i = 0;
+		for (List<Integer> relazione : relazioni) {
+			for (int colonna = 0; colonna < numeroColonne; colonna++) {
+				colonne[colonna][i] = relazione.get(colonna);
+			}
+			i++;
+		}
+		return colonne;
+	}
+
+	private static <K> int getIndice(Map<K, Integer> dizionario, K chiave) {
+		return dizionario.computeIfAbsent(chiave, k -> dizionario.size());
+	}
+
+	private static <K> void aggiungi(Map<K, List<Integer>> mappa, K chiave, int valore) {
+		mappa.computeIfAbsent(chiave, k -> new ArrayList<>()).add(valore);
+	}
+
+	private static int[] toArray(List<Integer> valori) {
+		return valori.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	private static Map<String, int[]> toMappaArray(Map<String, List<Integer>> mappa) {
+		Map<String, int[]> risultato = new HashMap<>();
+		mappa.forEach((chiave, valori) -> risultato.put(chiave, toArray(valori)));
+		return risultato;
+	}
+
+}
@@ -0,0 +1,94 @@
+package it.gt.tesi.compostinominali;
+
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.QueryConfig;
+
+/**
+ * La classe che crea in DB, se non esistono già, gli indici sulle proprietà con cui
+ * gli elaboratori cercano i nodi nelle MERGE e nelle MATCH. Senza questi indici ogni
+ * ricerca scorre tutti i nodi con la stessa label. Chiamare il metodo inizializza()
+ * prima di importare i fogli di calcolo.
+ * Gli indici sulle chiavi lemmaNormalized e lemmaReversed (vedi ChiaviLemma) servono
+ * invece alle query sull'inizio e sulla fine dei lemmi, che li usano con STARTS WITH.
+ * Si usano indici range e non vincoli di unicità perché gli elaboratori cercano i nodi
+ * con più proprietà e i dati già presenti in DB potrebbero non rispettare il vincolo.
+ */
+public class InizializzatoreSchema {
+	
+	private static final int SECONDI_ATTESA_INDICI = 300;
+	
+	//nome dell'indice e query che lo crea se non esiste
+	private static final Map<String, String> INDICI = Map.of(
+			"nominal_compound_lemma", 
+			"CREATE INDEX nominal_compound_lemma IF NOT EXISTS "
+			+ "FOR (c:NominalCompound) ON (c.lemma)",
+			"nominal_compound_lemma_normalized", 
+			"CREATE INDEX nominal_compound_lemma_normalized IF NOT EXISTS "
+			+ "FOR (c:NominalCompound) ON (c.lemmaNormalized)",
+			"nominal_compound_lemma_reversed", 
+			"CREATE INDEX nominal_compound_lemma_reversed IF NOT EXISTS "
+			+ "FOR (c:NominalCompound) ON (c.lemmaReversed)",
+			"member_lemma_lexical_category", 
+			"CREATE INDEX member_lemma_lexical_category IF NOT EXISTS "
+			+ "FOR (m:Member) ON (m.lemma, m.lexicalCatergory)",
+			"work_acronym", 
+			"CREATE INDEX work_acronym IF NOT EXISTS "
+			+ "FOR (w:Work) ON (w.acronym)",
+			"author_name", 
+			"CREATE INDEX author_name IF NOT EXISTS "
+			+ "FOR (a:Author) ON (a.name)",
+			"subtype_distribution_scope_name", 
+			"CREATE INDEX subtype_distribution_scope_name IF NOT EXISTS "
+			+ "FOR (d:SubtypeDistribution) ON (d.scope, d.name)");
+	
+	private final Driver dbDriver;
+	private final String dbName;
+	
+	/**
+	 * Costruisce un oggetto InizializzatoreSchema a partire dal driver del DB e
+	 * dal nome del database.
+	 * 
+	 * @param dbDriver il driver del DB
+	 * @param dbName il nome del DB
+	 * 
+	 * @throws IllegalArgumentException se dbDriver è null oppure se dbName è vuoto
+	 */
+	public InizializzatoreSchema(Driver dbDriver, String dbName) {
+		if (dbDriver == null) 
+			throw new IllegalArgumentException("Il driver DB non può essere null");
+		if (StringUtils.isEmpty(dbName)) 
+			throw new IllegalArgumentException("Il nome del database non può essere vuoto");
+		this.dbDriver = dbDriver;
+		this.dbName = dbName;
+	}
+	
+	/**
+	 * Crea gli indici che non esistono ancora, stampa quali indici sono stati creati
+	 * e attende che tutti gli indici siano online.
+	 */
+	public void inizializza() {
+		int indiciCreati = 0;
+		for (Map.Entry<String, String> indice : INDICI.entrySet()) {
+			var result = dbDriver.executableQuery(indice.getValue())
+				    .withConfig(QueryConfig.builder().withDatabase(dbName).build())
+					.execute();
+			if (result.summary().counters().indexesAdded() > 0) {
+				System.out.println("Indice creato: " + indice.getKey());
+				indiciCreati++;
+			} else {
+				System.out.println("Indice già presente: " + indice.getKey());
+			}
+		}
+		
+		System.out.println("Attendo che gli indici siano online");
+		dbDriver.executableQuery("CALL db.awaitIndexes($secondi)")
+				.withParameters(Map.of("secondi", SECONDI_ATTESA_INDICI))
+			    .withConfig(QueryConfig.builder().withDatabase(dbName).build())
+				.execute();
+		System.out.println("Indici creati: " + indiciCreati);
+	}
+
+}
@@ -0,0 +1,424 @@
+package it.gt.tesi.compostinominali;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * L'istantanea binaria di un corpus letto da {@link LettoreCorpus}: i composti con i loro
+ * membri, le righe dei doppioni, le opere con autore e occorrenze dei composti, gli errori
+ * di ogni file e i lemmi delle opere che mancano tra i composti. Contiene anche nome,
+ * dimensione e hash SHA-256 dei file letti, così può sostituire la lettura dei fogli di
+ * calcolo finché i file non cambiano.
+ * Il file contiene, con gli interi big endian:
+ * <ul>
+ * <li>il numero magico, la versione del formato e i file letti come "nome;dimensione;sha256";</li>
+ * <li>il dizionario delle stringhe: il numero di stringhe, la posizione di inizio di ognuna
+ * seguita dalla fine dell'ultima e i byte UTF-8 di tutte le stringhe;</li>
+ * <li>le sezioni dei composti, dei doppioni, degli autori, delle opere, delle occorrenze,
+ * degli errori per file e dei lemmi mancanti. Ogni sezione inizia con il numero dei suoi
+ * elementi; i composti, gli autori, le opere, le occorrenze e gli errori sono record di
+ * interi a lunghezza fissa, le righe dei doppioni e i file dei lemmi mancanti sono liste
+ * precedute dalle posizioni di inizio di ogni lista.</li>
+ * </ul>
+ * Le stringhe sono rappresentate dal loro indice nel dizionario, -1 per null. Il file
+ * viene letto mappandolo in memoria, senza copiarlo in un buffer.
+ */
+public class IstantaneaCorpus {
+
+	private static final int NUMERO_MAGICO = 0x434E4953;
+	private static final int VERSIONE = 1;
+	private static final int NULLO = -1;
+	//titolo, abbreviazione, genere, sottogenere, autore, prima occorrenza e numero di occorrenze
+	private static final int INTERI_OPERA = 7;
+	//lemma di un elemento null dell'array dei membri, per distinguerlo dal membro vuoto
+	private static final int MEMBRO_ASSENTE = -2;
+
+	private final Corpus corpus;
+	private final Map<String, Integer> erroriPerFile;
+	private final Map<String, List<String>> lemmiMancanti;
+
+	/**
+	 * Costruisce l'istantanea del corpus dato.
+	 *
+	 * @param corpus il corpus letto
+	 * @param erroriPerFile gli errori di ogni file letto, nell'ordine dei file
+	 * @param lemmiMancanti per ogni lemma delle opere che manca tra i composti, i file in cui compare
+	 *
+	 * @throws IllegalArgumentException se uno dei parametri è null
+	 */
+	public IstantaneaCorpus(Corpus corpus, Map<String, Integer> erroriPerFile,
+			Map<String, List<String>> lemmiMancanti) {
+		if (corpus == null)
+			throw new IllegalArgumentException("Il corpus non può essere null");
+		if (erroriPerFile == null)
+			throw new IllegalArgumentException("Gli errori per file non possono essere null");
+		if (lemmiMancanti == null)
+			throw new IllegalArgumentException("I lemmi mancanti non possono essere null");
+		this.corpus = corpus;
+		this.erroriPerFile = Collections.unmodifiableMap(new LinkedHashMap<>(erroriPerFile));
+		this.lemmiMancanti = Collections.unmodifiableMap(new TreeMap<>(lemmiMancanti));
+	}
+
+	public Corpus getCorpus() {
+		return corpus;
+	}
+
+	/**
+	 * Restituisce il numero di errori di ogni file letto, nell'ordine dei file.
+	 *
+	 * @return gli errori per nome del file
+	 */
+	public Map<String, Integer> getErroriPerFile() {
+		return erroriPerFile;
+	}
+
+	/**
+	 * Restituisce, in ordine alfabetico, i lemmi delle opere che non sono tra i composti
+	 * nominali, ciascuno con i nomi dei file delle opere in cui compare.
+	 *
+	 * @return i file delle opere per lemma mancante
+	 */
+	public Map<String, List<String>> getLemmiMancanti() {
+		return lemmiMancanti;
+	}
+
+	/**
+	 * Restituisce nome, dimensione e hash SHA-256 del file dei composti e dei file delle
+	 * opere, nel formato "nome;dimensione;sha256" con cui sono salvati nell'istantanea.
+	 *
+	 * @param fileComposti il file dei composti
+	 * @param fileOpere i file delle opere
+	 * @return i file da leggere, nell'ordine dato
+	 * @throws IOException se un file non si può leggere
+	 */
+	public static List<String> getSorgenti(File fileComposti, List<File> fileOpere) throws IOException {
+		List<String> sorgenti = new ArrayList<>(fileOpere.size() + 1);
+		sorgenti.add(getSorgente(fileComposti));
+		for (File fileOpera : fileOpere) {
+			sorgenti.add(getSorgente(fileOpera));
+		}
+		return sorgenti;
+	}
+
+	private static String getSorgente(File file) throws IOException {
+		return file.getName() + ";" + file.length() + ";" + ManifestoImportazione.calcolaHash(file);
+	}
+
+	/**
+	 * Scrive l'istantanea nel file dato. Il file viene prima scritto in un file temporaneo
+	 * e poi rinominato, così un'interruzione non lascia un'istantanea incompleta.
+	 *
+	 * @param file il file dell'istantanea
+	 * @param sorgenti i file da cui è stato letto il corpus, vedi getSorgenti()
+	 * @throws IOException se il file non si può scrivere
+	 * @throws IllegalArgumentException se un composto ha più di NUMERO_MAX_MEMBRI membri
+	 */
+	public void scrivi(File file, List<String> sorgenti) throws IOException {
+		Map<String, Integer> stringhe = new LinkedHashMap<>();
+		ByteArrayOutputStream bufferSezioni = new ByteArrayOutputStream();
+		DataOutputStream sezioni = new DataOutputStream(bufferSezioni);
+
+		sezioni.writeInt(corpus.getComposti().size());
+		for (Composto composto : corpus.getComposti()) {
+			scriviComposto(sezioni, stringhe, composto);
+		}
+
+		sezioni.writeInt(corpus.getDoppioni().size());
+		scriviListe(sezioni, stringhe, corpus.getDoppioni());
+
+		Map<Autore, Integer> autori = new LinkedHashMap<>();
+		for (Opera opera : corpus.getOpere()) {
+			if (opera.getAutore() != null) {
+				autori.putIfAbsent(opera.getAutore(), autori.size());
+			}
+		}
+		sezioni.writeInt(autori.size());
+		for (Autore autore : autori.keySet()) {
+			sezioni.writeInt(getIndice(stringhe, autore.getNome()));
+			sezioni.writeInt(autore.getSecoloNascita());
+			sezioni.writeInt(autore.getSecoloMorte());
+		}
+
+		sezioni.writeInt(corpus.getOpere().size());
+		int primaOccorrenza = 0;
+		for (Opera opera : corpus.getOpere()) {
+			sezioni.writeInt(getIndice(stringhe, opera.getTitolo()));
+			sezioni.writeInt(getIndice(stringhe, opera.getAbbreviazione()));
+			sezioni.writeInt(getIndice(stringhe, opera.getGenere()));
+			sezioni.writeInt(getIndice(stringhe, opera.getSottogenere()));
+			sezioni.writeInt(opera.getAutore() != null ? autori.get(opera.getAutore()) : NULLO);
+			sezioni.writeInt(primaOccorrenza);
+			sezioni.writeInt(opera.getComposti().size());
+			primaOccorrenza += opera.getComposti().size();
+		}
+
+		//delle occorrenze si salvano lemma e occorrenze, le sole proprietà dei fogli opera
+		sezioni.writeInt(primaOccorrenza);
+		for (Opera opera : corpus.getOpere()) {
+			for (Composto composto : opera.getComposti()) {
+				sezioni.writeInt(getIndice(stringhe, composto.getLemma()));
+				sezioni.writeInt(composto.getOccorrenze());
+			}
+		}
+
+		sezioni.writeInt(erroriPerFile.size());
+		for (Map.Entry<String, Integer> errori : erroriPerFile.entrySet()) {
+			sezioni.writeInt(getIndice(stringhe, errori.getKey()));
+			sezioni.writeInt(errori.getValue());
+		}
+
+		sezioni.writeInt(lemmiMancanti.size());
+		for (String lemma : lemmiMancanti.keySet()) {
+			sezioni.writeInt(getIndice(stringhe, lemma));
+		}
+		scriviListe(sezioni, stringhe, lemmiMancanti.values());
+		sezioni.flush();
+
+		File temporaneo = new File(file.getPath() + ".tmp");
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(temporaneo.toPath())))) {
+			output.writeInt(NUMERO_MAGICO);
+			output.writeInt(VERSIONE);
+			output.writeInt(sorgenti.size());
+			for (String sorgente : sorgenti) {
+				byte[] utf8 = sorgente.getBytes(StandardCharsets.UTF_8);
+				output.writeInt(utf8.length);
+				output.write(utf8);
+			}
+
+			List<byte[]> utf8 = new ArrayList<>(stringhe.size());
+			output.writeInt(stringhe.size());
+			int inizio = 0;
+			for (String stringa : stringhe.keySet()) {
+				byte[] byteStringa = stringa.getBytes(StandardCharsets.UTF_8);
+				utf8.add(byteStringa);
+				output.writeInt(inizio);
+				inizio += byteStringa.length;
+			}
+			output.writeInt(inizio);
+			for (byte[] byteStringa : utf8) {
+				output.write(byteStringa);
+			}
+
+			bufferSezioni.writeTo(output);
+		}
+		Files.move(temporaneo.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Scrive il record a lunghezza fissa del composto: lemma, categoria, tipologia,
+	 * sottotipologia, originale greco, numero di membri (-1 se non sono stati letti)
+	 * e lemma e categoria di NUMERO_MAX_MEMBRI membri.
+	 */
+	private static void scriviComposto(DataOutputStream sezioni, Map<String, Integer> stringhe,
+			Composto composto) throws IOException {
+		sezioni.writeInt(getIndice(stringhe, composto.getLemma()));
+		sezioni.writeInt(getIndice(stringhe, composto.getCategoriaMorfologica()));
+		sezioni.writeInt(getIndice(stringhe, composto.getTipologia()));
+		sezioni.writeInt(getIndice(stringhe, composto.getSottotipologia()));
+		sezioni.writeInt(getIndice(stringhe, composto.getOriginaleGreco()));
+		Membro[] membri = composto.getMembri();
+		if (membri != null && membri.length > DecodificatoreRighe.NUMERO_MAX_MEMBRI) {
+			throw new IllegalArgumentException("Il composto " + composto.getLemma() + " ha più di "
+					+ DecodificatoreRighe.NUMERO_MAX_MEMBRI + " membri");
+		}
+		sezioni.writeInt(membri != null ? membri.length : NULLO);
+		for (int i = 0; i < DecodificatoreRighe.NUMERO_MAX_MEMBRI; i++) {
+			Membro membro = membri != null && i < membri.length ? membri[i] : null;
+			sezioni.writeInt(membro != null ? getIndice(stringhe, membro.getLemma()) : MEMBRO_ASSENTE);
+			sezioni.writeInt(membro != null ? getIndice(stringhe, membro.getCategoriaMorfologica()) : NULLO);
+		}
+	}
+
+	/**
+	 * Scrive le liste di stringhe: la posizione di inizio di ogni lista, seguita dalla
+	 * fine dell'ultima, e poi gli indici delle stringhe di tutte le liste.
+	 */
+	private static void scriviListe(DataOutputStream sezioni, Map<String, Integer> stringhe,
+			Iterable<List<String>> liste) throws IOException {
+		int inizio = 0;
+		for (List<String> lista : liste) {
+			sezioni.writeInt(inizio);
+			inizio += lista.size();
+		}
+		sezioni.writeInt(inizio);
+		for (List<String> lista : liste) {
+			for (String stringa : lista) {
+				sezioni.writeInt(getIndice(stringhe, stringa));
+			}
+		}
+	}
+
+	private static int getIndice(Map<String, Integer> stringhe, String stringa) {
+		if (stringa == null) {
+			return NULLO;
+		}
+		Integer indice = stringhe.get(stringa);
+		if (indice == null) {
+			indice = stringhe.size();
+			stringhe.put(stringa, indice);
+		}
+		return indice;
+	}
+
+	/**
+	 * Carica l'istantanea dal file dato, se esiste ed è stata scritta dagli stessi file
+	 * che si vogliono leggere. I valori letti passano per il dizionario dato.
+	 *
+	 * @param file il file dell'istantanea
+	 * @param sorgenti i file da leggere, vedi getSorgenti()
+	 * @param dizionario il dizionario dei valori
+	 * @return l'istantanea o null se il file non esiste, è di una versione diversa o
+	 * è stato scritto da file diversi
+	 * @throws IOException se il file non si può leggere o è danneggiato
+	 */
+	public static IstantaneaCorpus carica(File file, List<String> sorgenti, DizionarioValori dizionario)
+			throws IOException {
+		if (!file.isFile()) {
+			return null;
+		}
+		MappedByteBuffer buffer;
+		try (FileChannel canale = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			buffer = canale.map(FileChannel.MapMode.READ_ONLY, 0, canale.size());
+		}
+		try {
+			if (buffer.remaining() < 8 || buffer.getInt() != NUMERO_MAGICO || buffer.getInt() != VERSIONE) {
+				return null;
+			}
+			int numeroSorgenti = buffer.getInt();
+			if (numeroSorgenti != sorgenti.size()) {
+				return null;
+			}
+			for (String sorgente : sorgenti) {
+				byte[] utf8 = new byte[buffer.getInt()];
+				buffer.get(utf8);
+				if (!sorgente.equals(new String(utf8, StandardCharsets.UTF_8))) {
+					return null;
+				}
+			}
+			return leggi(buffer, dizionario);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+			throw new IOException("L'istantanea " + file.getName() + " è danneggiata", e);
+		}
+	}
+
+	private static IstantaneaCorpus leggi(ByteBuffer buffer, DizionarioValori dizionario) {
+		String[] stringhe = new String[buffer.getInt()];
+		int[] inizi = leggiInteri(buffer, stringhe.length + 1);
+		byte[] utf8 = new byte[inizi[stringhe.length]];
+		buffer.get(utf8);
+		for (int i = 0; i < stringhe.length; i++) {
+			stringhe[i] = dizionario.canonico(new String(utf8, inizi[i], inizi[i + 1] - inizi[i],
+					StandardCharsets.UTF_8));
+		}
+
+		Corpus corpus = new Corpus();
+		int numeroComposti = buffer.getInt();
+		for (int i = 0; i < numeroComposti; i++) {
+			corpus.getComposti().add(leggiComposto(buffer, stringhe, dizionario));
+		}
+
+		corpus.getDoppioni().addAll(leggiListe(buffer, stringhe, buffer.getInt()));
+
+		Autore[] autori = new Autore[buffer.getInt()];
+		for (int i = 0; i < autori.length; i++) {
+			autori[i] = dizionario.canonico(new Autore(getStringa(stringhe, buffer.getInt()),
+					buffer.getInt(), buffer.getInt()));
+		}
+
+		int numeroOpere = buffer.getInt();
+		int[] opere = leggiInteri(buffer, numeroOpere * INTERI_OPERA);
+		int numeroOccorrenze = buffer.getInt();
+		List<Composto> occorrenze = new ArrayList<>(numeroOccorrenze);
+		for (int i = 0; i < numeroOccorrenze; i++) {
+			occorrenze.add(dizionario.canonico(new Composto(getStringa(stringhe, buffer.getInt()),
+					buffer.getInt())));
+		}
+		for (int i = 0; i < numeroOpere; i++) {
+			int record = i * INTERI_OPERA;
+			int autore = opere[record + 4];
+			int inizio = opere[record + 5];
+			corpus.getOpere().add(new Opera(getStringa(stringhe, opere[record]),
+					getStringa(stringhe, opere[record + 1]), getStringa(stringhe, opere[record + 2]),
+					getStringa(stringhe, opere[record + 3]), autore != NULLO ? autori[autore] : null,
+					occorrenze.subList(inizio, inizio + opere[record + 6])));
+		}
+
+		Map<String, Integer> erroriPerFile = new LinkedHashMap<>();
+		int numeroFile = buffer.getInt();
+		for (int i = 0; i < numeroFile; i++) {
+			erroriPerFile.put(getStringa(stringhe, buffer.getInt()), buffer.getInt());
+		}
+
+		int[] lemmi = leggiInteri(buffer, buffer.getInt());
+		List<List<String>> file = leggiListe(buffer, stringhe, lemmi.length);
+		Map<String, List<String>> lemmiMancanti = new TreeMap<>();
+		for (int i = 0; i < lemmi.length; i++) {
+			lemmiMancanti.put(getStringa(stringhe, lemmi[i]), file.get(i));
+		}
+		return new IstantaneaCorpus(corpus, erroriPerFile, lemmiMancanti);
+	}
+
+	private static Composto leggiComposto(ByteBuffer buffer, String[] stringhe, DizionarioValori dizionario) {
+		String lemma = getStringa(stringhe, buffer.getInt());
+		String categoriaMorfologica = getStringa(stringhe, buffer.getInt());
+		String tipologia = getStringa(stringhe, buffer.getInt());
+		String sottotipologia = getStringa(stringhe, buffer.getInt());
+		String originaleGreco = getStringa(stringhe, buffer.getInt());
+		int numeroMembri = buffer.getInt();
+		Membro[] membri = numeroMembri != NULLO ? new Membro[numeroMembri] : null;
+		for (int i = 0; i < DecodificatoreRighe.NUMERO_MAX_MEMBRI; i++) {
+			int lemmaMembro = buffer.getInt();
+			int categoriaMembro = buffer.getInt();
+			if (membri != null && i < membri.length && lemmaMembro != MEMBRO_ASSENTE) {
+				membri[i] = dizionario.canonico(new Membro(getStringa(stringhe, lemmaMembro),
+						getStringa(stringhe, categoriaMembro)));
+			}
+		}
+		return dizionario.canonico(new Composto(lemma, categoriaMorfologica, tipologia, sottotipologia,
+				originaleGreco, 0, membri));
+	}
+
+	private static List<List<String>> leggiListe(ByteBuffer buffer, String[] stringhe, int numeroListe) {
+		int[] inizi = leggiInteri(buffer, numeroListe + 1);
+		int[] indici = leggiInteri(buffer, inizi[numeroListe]);
+		List<List<String>> liste = new ArrayList<>(numeroListe);
+		for (int i = 0; i < numeroListe; i++) {
+			List<String> lista = new ArrayList<>(inizi[i + 1] - inizi[i]);
+			for (int j = inizi[i]; j < inizi[i + 1]; j++) {
+				lista.add(getStringa(stringhe, indici[j]));
+			}
+			liste.add(lista);
+		}
+		return liste;
+	}
+
+	private static int[] leggiInteri(ByteBuffer buffer, int numero) {
+		int[] interi = new int[numero];
+		buffer.asIntBuffer().get(interi);
+		buffer.position(buffer.position() + numero * Integer.BYTES);
+		return interi;
+	}
+
+	private static String getStringa(String[] stringhe, int indice) {
+		return indice == NULLO ? null : stringhe[indice];
+	}
+
+}
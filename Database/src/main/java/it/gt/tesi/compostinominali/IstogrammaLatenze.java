@@ -0,0 +1,135 @@
+package it.gt.tesi.compostinominali;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * L'istogramma delle latenze di un tipo di query. Le latenze vengono contate in classi
+ * di ampiezza crescente per potenze di due di microsecondi: la classe i contiene le 
+ * latenze fino a 2^i microsecondi, quindi i percentili sono approssimati per eccesso
+ * al più del doppio. Può essere aggiornato da più thread contemporaneamente.
+ */
+public class IstogrammaLatenze {
+	
+	//2^40 microsecondi sono più di dodici giorni: le latenze maggiori finiscono nell'ultima classe
+	private static final int NUMERO_CLASSI = 41;
+	
+	private final AtomicLongArray classi = new AtomicLongArray(NUMERO_CLASSI);
+	private final LongAdder conteggio = new LongAdder();
+	private final LongAdder totaleNanosecondi = new LongAdder();
+	private final AtomicLong massimoNanosecondi = new AtomicLong();
+	
+	/**
+	 * Registra la latenza di un'esecuzione della query.
+	 * 
+	 * @param nanosecondi la latenza in nanosecondi
+	 */
+	public void registra(long nanosecondi) {
+		classi.incrementAndGet(getClasse(nanosecondi / 1000));
+		conteggio.increment();
+		totaleNanosecondi.add(nanosecondi);
+		massimoNanosecondi.accumulateAndGet(nanosecondi, Math::max);
+	}
+	
+	/**
+	 * Restituisce il numero di latenze registrate.
+	 * 
+	 * @return il numero di latenze registrate
+	 */
+	public long getConteggio() {
+		return conteggio.sum();
+	}
+	
+	/**
+	 * Restituisce la somma delle latenze registrate in microsecondi.
+	 * 
+	 * @return la somma delle latenze in microsecondi
+	 */
+	public long getTotaleMicrosecondi() {
+		return totaleNanosecondi.sum() / 1000;
+	}
+	
+	/**
+	 * Restituisce la latenza media in microsecondi, 0 se non ci sono latenze.
+	 * 
+	 * @return la latenza media in microsecondi
+	 */
+	public long getMediaMicrosecondi() {
+		long n = getConteggio();
+		return n == 0 ? 0 : totaleNanosecondi.sum() / n / 1000;
+	}
+	
+	/**
+	 * Restituisce la latenza massima registrata in microsecondi.
+	 * 
+	 * @return la latenza massima in microsecondi
+	 */
+	public long getMassimoMicrosecondi() {
+		return massimoNanosecondi.get() / 1000;
+	}
+	
+	/**
+	 * Restituisce il limite superiore, in microsecondi, della classe che contiene il
+	 * percentile dato, senza superare la latenza massima; 0 se non ci sono latenze.
+	 * 
+	 * @param percentile il percentile, tra 0 e 100
+	 * @return il limite superiore della classe del percentile in microsecondi
+	 */
+	public long getPercentileMicrosecondi(double percentile) {
+		long n = getConteggio();
+		if (n == 0) return 0;
+		long soglia = (long) Math.ceil(n * percentile / 100);
+		long cumulato = 0;
+		for (int i = 0; i < NUMERO_CLASSI; i++) {
+			cumulato += classi.get(i);
+			if (cumulato >= soglia) {
+				return Math.min(getLimiteClasse(i), getMassimoMicrosecondi());
+			}
+		}
+		return getMassimoMicrosecondi();
+	}
+	
+	/**
+	 * Restituisce il numero di classi dell'istogramma.
+	 * 
+	 * @return il numero di classi
+	 */
+	public int getNumeroClassi() {
+		return NUMERO_CLASSI;
+	}
+	
+	/**
+	 * Restituisce il numero di latenze nella classe i.
+	 * 
+	 * @param i l'indice della classe
+	 * @return il numero di latenze nella classe
+	 */
+	public long getConteggioClasse(int i) {
+		return classi.get(i);
+	}
+	
+	/**
+	 * Restituisce il limite superiore in microsecondi della classe i.
+	 * 
+	 * @param i l'indice della classe
+	 * @return 2^i microsecondi
+	 */
+	public static long getLimiteClasse(int i) {
+		return 1L << i;
+	}
+	
+	/**
+	 * Restituisce l'indice della classe che contiene la latenza data, cioè il più
+	 * piccolo i per cui la latenza è al massimo 2^i microsecondi.
+	 * 
+	 * @param microsecondi la latenza in microsecondi
+	 * @return l'indice della classe
+	 */
+	private static int getClasse(long microsecondi) {
+		if (microsecondi <= 1) return 0;
+		int classe = 64 - Long.numberOfLeadingZeros(microsecondi - 1);
+		return Math.min(classe, NUMERO_CLASSI - 1);
+	}
+
+}
@@ -0,0 +1,399 @@
+package it.gt.tesi.compostinominali;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * La classe che legge in memoria, senza usare il DB, il file dei composti e i file delle 
+ * opere con gli stessi controlli degli elaboratori che importano i dati in DB. Le righe 
+ * errate vengono segnalate con gli stessi messaggi e scartate. I file delle opere possono
+ * essere letti in parallelo, perché dipendono solo dai lemmi del file dei composti.
+ * I valori letti passano per un {@link DizionarioValori}, così nel corpus resta una sola
+ * istanza di ogni lemma, categoria, tipologia, genere, membro, autore e occorrenza ripetuti.
+ * Chiamare il metodo leggi().
+ */
+public class LettoreCorpus {
+	
+	private final boolean streaming;
+	private final PrintStream out;
+	private final int numeroThread;
+	private final DizionarioValori dizionario;
+	private int errors;
+	//gli errori di ogni file letto, nell'ordine dei file
+	private final Map<String, Integer> erroriPerFile = new LinkedHashMap<>();
+	//per ogni lemma delle opere che manca tra i composti, i file in cui compare
+	private final Map<String, List<String>> lemmiMancanti = new TreeMap<>();
+	
+	/**
+	 * Costruisce un oggetto LettoreCorpus.
+	 * 
+	 * @param streaming true per leggere i file Excel in streaming
+	 * @param out lo stream su cui stampare i messaggi della lettura
+	 * 
+	 * @throws IllegalArgumentException se out è null
+	 */
+	public LettoreCorpus(boolean streaming, PrintStream out) {
+		this(streaming, out, 1);
+	}
+	
+	/**
+	 * Costruisce un oggetto LettoreCorpus che legge in parallelo i file delle opere.
+	 * I messaggi di ogni file vengono stampati tutti insieme, nell'ordine dei file.
+	 * 
+	 * @param streaming true per leggere i file Excel in streaming
+	 * @param out lo stream su cui stampare i messaggi della lettura
+	 * @param numeroThread il numero di file delle opere da leggere in parallelo
+	 * 
+	 * @throws IllegalArgumentException se out è null oppure se numeroThread è minore di 1
+	 */
+	public LettoreCorpus(boolean streaming, PrintStream out, int numeroThread) {
+		this(streaming, out, numeroThread, new DizionarioValori());
+	}
+	
+	/**
+	 * Costruisce un oggetto LettoreCorpus che rende canonici i valori letti con il 
+	 * dizionario dato. Passando lo stesso dizionario a più letture, i corpus letti
+	 * condividono i valori uguali.
+	 * 
+	 * @param streaming true per leggere i file Excel in streaming
+	 * @param out lo stream su cui stampare i messaggi della lettura
+	 * @param numeroThread il numero di file delle opere da leggere in parallelo
+	 * @param dizionario il dizionario dei valori
+	 * 
+	 * @throws IllegalArgumentException se out o dizionario sono null oppure se numeroThread 
+	 * è minore di 1
+	 */
+	public LettoreCorpus(boolean streaming, PrintStream out, int numeroThread, DizionarioValori dizionario) {
+		if (out == null) 
+			throw new IllegalArgumentException("Lo stream dei messaggi non può essere null");
+		if (numeroThread < 1)
+			throw new IllegalArgumentException("Il numero di thread deve essere almeno 1");
+		if (dizionario == null)
+			throw new IllegalArgumentException("Il dizionario dei valori non può essere null");
+		this.streaming = streaming;
+		this.out = out;
+		this.numeroThread = numeroThread;
+		this.dizionario = dizionario;
+	}
+	
+	/**
+	 * Restituisce il numero di errori trovati dall'ultima chiamata a leggi().
+	 * 
+	 * @return il numero di errori trovati
+	 */
+	public int getErrori() {
+		return errors;
+	}
+	
+	/**
+	 * Restituisce il numero di errori di ogni file letto dall'ultima chiamata a leggi(),
+	 * nell'ordine dei file: il file dei composti e poi i file delle opere.
+	 * 
+	 * @return gli errori per nome del file
+	 */
+	public Map<String, Integer> getErroriPerFile() {
+		return Collections.unmodifiableMap(erroriPerFile);
+	}
+	
+	/**
+	 * Restituisce, in ordine alfabetico, i lemmi delle opere che non sono tra i composti
+	 * nominali, ciascuno con i nomi dei file delle opere in cui compare.
+	 * 
+	 * @return i file delle opere per lemma mancante
+	 */
+	public Map<String, List<String>> getLemmiMancanti() {
+		return Collections.unmodifiableMap(lemmiMancanti);
+	}
+	
+	/**
+	 * Legge il file dei composti e i file delle opere.
+	 * 
+	 * @param fileComposti il file con il foglio dei composti e il foglio dei doppioni
+	 * @param fileOpere i file delle opere
+	 * @return il corpus con i dati letti senza errori
+	 * @throws Exception se il file dei composti non si può leggere
+	 */
+	public Corpus leggi(File fileComposti, List<File> fileOpere) throws Exception {
+		errors = 0;
+		erroriPerFile.clear();
+		lemmiMancanti.clear();
+		Corpus corpus = new Corpus();
+		out.println("Leggo il file dei composti " + fileComposti.getName());
+		try (FileExcel fileExcel = FileExcel.apri(fileComposti, streaming)) {
+			leggiComposti(fileExcel.getFoglio(0), corpus);
+			leggiDoppioni(fileExcel.getFoglio(1), corpus);
+		}
+		erroriPerFile.put(fileComposti.getName(), errors);
+		
+		Set<String> lemmi = corpus.getLemmi();
+		for (LetturaOpera lettura : leggiOpere(fileOpere, lemmi)) {
+			out.print(lettura.messaggi);
+			errors += lettura.errori;
+			erroriPerFile.put(lettura.nomeFile, lettura.errori);
+			for (String lemma : lettura.lemmiMancanti) {
+				List<String> file = lemmiMancanti.computeIfAbsent(lemma, l -> new ArrayList<>());
+				if (!file.contains(lettura.nomeFile)) {
+					file.add(lettura.nomeFile);
+				}
+			}
+			if (lettura.opera != null) {
+				corpus.getOpere().add(lettura.opera);
+			}
+		}
+		out.println("\nComposti letti: " + corpus.getComposti().size());
+		out.println("Righe dei doppioni lette: " + corpus.getDoppioni().size());
+		out.println("Opere lette: " + corpus.getOpere().size());
+		out.println("Errori trovati: " + errors);
+		return corpus;
+	}
+	
+	/**
+	 * Carica il corpus dall'istantanea data se è stata scritta dagli stessi file, 
+	 * altrimenti legge i file e scrive l'istantanea. Con l'istantanea gli errori per file
+	 * e i lemmi mancanti sono quelli della lettura che l'ha scritta, ma i messaggi delle
+	 * singole righe errate non vengono stampati di nuovo.
+	 * 
+	 * @param fileComposti il file con il foglio dei composti e il foglio dei doppioni
+	 * @param fileOpere i file delle opere
+	 * @param fileIstantanea il file dell'istantanea del corpus
+	 * @return il corpus con i dati letti senza errori
+	 * @throws Exception se il file dei composti non si può leggere
+	 */
+	public Corpus leggi(File fileComposti, List<File> fileOpere, File fileIstantanea) throws Exception {
+		long inizio = System.currentTimeMillis();
+		List<String> sorgenti = IstantaneaCorpus.getSorgenti(fileComposti, fileOpere);
+		IstantaneaCorpus istantanea = null;
+		try {
+			istantanea = IstantaneaCorpus.carica(fileIstantanea, sorgenti, dizionario);
+		} catch (IOException e) {
+			out.println(e.getMessage() + ", leggo i file");
+		}
+		if (istantanea != null) {
+			errors = 0;
+			erroriPerFile.clear();
+			erroriPerFile.putAll(istantanea.getErroriPerFile());
+			for (int errori : erroriPerFile.values()) {
+				errors += errori;
+			}
+			lemmiMancanti.clear();
+			lemmiMancanti.putAll(istantanea.getLemmiMancanti());
+			Corpus corpus = istantanea.getCorpus();
+			out.println("Corpus caricato in " + (System.currentTimeMillis() - inizio) 
+					+ " ms dall'istantanea " + fileIstantanea.getName() + ", i file non sono cambiati");
+			out.println("\nComposti letti: " + corpus.getComposti().size());
+			out.println("Righe dei doppioni lette: " + corpus.getDoppioni().size());
+			out.println("Opere lette: " + corpus.getOpere().size());
+			out.println("Errori trovati: " + errors);
+			return corpus;
+		}
+		
+		Corpus corpus = leggi(fileComposti, fileOpere);
+		new IstantaneaCorpus(corpus, erroriPerFile, lemmiMancanti).scrivi(fileIstantanea, sorgenti);
+		out.println("Istantanea del corpus scritta in " + fileIstantanea.getPath());
+		return corpus;
+	}
+	
+	/**
+	 * Legge i composti, con i loro membri, dal foglio dei composti.
+	 * 
+	 * @param sheetComposti le righe del foglio dei composti
+	 * @param corpus il corpus a cui aggiungere i composti
+	 */
+	private void leggiComposti(Iterable<RigaFoglio> sheetComposti, Corpus corpus) {
+		Iterator<RigaFoglio> rowIterator = sheetComposti.iterator();
+		
+		//salta la prima riga: i composti nominali partono dalla seconda
+		rowIterator.next();
+		int rowNum = 1;
+		
+		while (rowIterator.hasNext()) {
+			RigaFoglio row = rowIterator.next();
+			rowNum++;
+			try {
+				Composto composto = DecodificatoreRighe.getComposto(row);
+				if (composto.isEmpty()) {
+					continue;
+				}
+				composto = DecodificatoreRighe.gestisciGrecismo(composto)
+						.conMembri(DecodificatoreRighe.getMembri(row));
+				corpus.getComposti().add(composto.conValoriCanonici(dizionario));
+			} catch (Exception e) {
+				out.println("Errore alla riga " + rowNum + " dei composti: " + e.getMessage());
+				errors++;
+			}
+		}
+	}
+	
+	/**
+	 * Legge le righe del foglio dei doppioni segnalando i lemmi che non sono tra i composti.
+	 * 
+	 * @param sheetDoppioni le righe del foglio dei doppioni
+	 * @param corpus il corpus a cui aggiungere le righe dei doppioni
+	 */
+	private void leggiDoppioni(Iterable<RigaFoglio> sheetDoppioni, Corpus corpus) {
+		Set<String> lemmi = corpus.getLemmi();
+		Iterator<RigaFoglio> rowIterator = sheetDoppioni.iterator();
+		
+		//i composti iniziano dalla seconda riga
+		rowIterator.next();
+		int rowNum = 1;
+		
+		while (rowIterator.hasNext()) {
+			RigaFoglio row = rowIterator.next();
+			rowNum++;
+			int emptyColIdx = DecodificatoreRighe.getEmptyColIndex(row);
+			if (emptyColIdx < 2) {
+				out.println("ATTENZIONE riga " + rowNum + " errata");
+				errors++;
+				continue;
+			}
+			List<String> riga = new ArrayList<>();
+			for (int i = 0; i < emptyColIdx; i++) {
+				String lemma = dizionario.canonico(DecodificatoreRighe.getCompostoDoppione(row, i).getLemma());
+				if (!lemmi.contains(lemma)) {
+					out.println("ATTENZIONE: manca il composto " + lemma + " alla riga " + rowNum + " dei doppioni");
+					errors++;
+				}
+				riga.add(lemma);
+			}
+			corpus.getDoppioni().add(riga);
+		}
+	}
+	
+	/**
+	 * Legge i file delle opere, in parallelo se numeroThread è maggiore di 1.
+	 * 
+	 * @param fileOpere i file delle opere
+	 * @param lemmi i lemmi dei composti del foglio dei composti
+	 * @return le letture dei file nell'ordine dei file
+	 * @throws Exception se la lettura parallela viene interrotta
+	 */
+	private List<LetturaOpera> leggiOpere(List<File> fileOpere, Set<String> lemmi) throws Exception {
+		List<LetturaOpera> letture = new ArrayList<>();
+		if (numeroThread <= 1) {
+			for (File fileOpera : fileOpere) {
+				letture.add(leggiOpera(fileOpera, lemmi));
+			}
+			return letture;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(numeroThread);
+		try {
+			List<Future<LetturaOpera>> futures = new ArrayList<>();
+			for (File fileOpera : fileOpere) {
+				futures.add(executor.submit(() -> leggiOpera(fileOpera, lemmi)));
+			}
+			for (Future<LetturaOpera> future : futures) {
+				try {
+					letture.add(future.get());
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("Errore nella lettura parallela delle opere", e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+		return letture;
+	}
+	
+	/**
+	 * Legge l'autore, l'opera e le occorrenze dei composti dal file di un'opera,
+	 * raccogliendo i messaggi, gli errori e i lemmi mancanti del file.
+	 * 
+	 * @param fileOpera il file dell'opera
+	 * @param lemmi i lemmi dei composti del foglio dei composti
+	 * @return la lettura del file, con l'opera null se il file non si può leggere
+	 */
+	private LetturaOpera leggiOpera(File fileOpera, Set<String> lemmi) {
+		LetturaOpera lettura = new LetturaOpera(fileOpera.getName());
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(buffer, true, StandardCharsets.UTF_8);
+		lettura.opera = leggiOpera(fileOpera, lemmi, out, lettura);
+		lettura.messaggi = buffer.toString(StandardCharsets.UTF_8);
+		return lettura;
+	}
+	
+	/**
+	 * Legge l'autore, l'opera e le occorrenze dei composti dal file di un'opera.
+	 * 
+	 * @param fileOpera il file dell'opera
+	 * @param lemmi i lemmi dei composti del foglio dei composti
+	 * @param out lo stream su cui stampare i messaggi del file
+	 * @param lettura la lettura a cui aggiungere gli errori e i lemmi mancanti
+	 * @return l'opera letta o null se il file non si può leggere
+	 */
+	private Opera leggiOpera(File fileOpera, Set<String> lemmi, PrintStream out, LetturaOpera lettura) {
+		try (FileExcel fileExcel = FileExcel.apri(fileOpera, streaming)) {
+			Iterator<RigaFoglio> rowIterator = fileExcel.getFoglio(0).iterator();
+			Autore autore = DecodificatoreRighe.getAutore(rowIterator);
+			Opera opera = DecodificatoreRighe.getOpera(rowIterator);
+			List<Composto> composti = new ArrayList<>();
+			int rowNum = 5;
+			
+			//i composti nominali iniziano due righe sotto l'opera
+			rowIterator.next();
+			rowIterator.next();
+			
+			while (rowIterator.hasNext()) {
+				RigaFoglio row = rowIterator.next();
+				rowNum++;
+				try {
+					Composto composto = DecodificatoreRighe.getCompostoOpera(row);
+					if (composto.isEmpty()) {
+						continue;
+					}
+					if (lemmi.contains(composto.getLemma())) {
+						composti.add(composto);
+					} else {
+						out.println(fileOpera.getName() + ": IL COMPOSTO " + composto.getLemma() 
+							+ " NON È STATO TROVATO TRA LA LISTA DEI COMPOSTI NOMINALI");
+						lettura.lemmiMancanti.add(composto.getLemma());
+						lettura.errori++;
+					}
+				} catch (Exception e) {
+					out.println(fileOpera.getName() + ": Errore alla riga " + rowNum + ": " + e.getMessage());
+					lettura.errori++;
+				}
+			}
+			return opera.conAutoreEComposti(autore, composti).conValoriCanonici(dizionario);
+		} catch (Exception e) {
+			out.println("Qualcosa è andato storto nella lettura del file " + fileOpera.getName() 
+				+ ": " + e.getMessage());
+			lettura.errori++;
+			return null;
+		}
+	}
+	
+	/**
+	 * La lettura di un file opera: l'opera, i messaggi da stampare, gli errori 
+	 * e i lemmi mancanti tra i composti.
+	 */
+	private static class LetturaOpera {
+		
+		private final String nomeFile;
+		private Opera opera;
+		private String messaggi = "";
+		private int errori;
+		private final List<String> lemmiMancanti = new ArrayList<>();
+		
+		private LetturaOpera(String nomeFile) {
+			this.nomeFile = nomeFile;
+		}
+		
+	}
+
+}
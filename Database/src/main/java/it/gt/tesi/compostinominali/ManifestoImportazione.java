@@ -0,0 +1,138 @@
+package it.gt.tesi.compostinominali;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * La classe che tiene traccia dei file già importati in DB con la loro dimensione e 
+ * l'hash SHA-256 del contenuto, così un'importazione incrementale può elaborare solo
+ * i file che sono cambiati. Il manifesto è un file di proprietà in cui la chiave è il
+ * nome del file e il valore è "dimensione;hash"; contiene anche l'URI e il nome del DB
+ * a cui si riferisce, perché i file importati in un DB non lo sono in un altro.
+ * I metodi si possono chiamare da più thread.
+ */
+public class ManifestoImportazione {
+	
+	private static final String CHIAVE_DB = "#db";
+	
+	private final File fileManifesto;
+	private final String db;
+	private final Properties voci = new Properties();
+	//gli hash calcolati in questa esecuzione, per non leggere due volte lo stesso file
+	private final Map<File, String> hashCalcolati = new HashMap<>();
+	
+	/**
+	 * Carica il manifesto dal file dato. Se il file non esiste, oppure si riferisce a un
+	 * DB diverso, il manifesto è vuoto e tutti i file risultano cambiati.
+	 * 
+	 * @param fileManifesto il file in cui è salvato il manifesto
+	 * @param dbURI l'URI del DB in cui si importano i file
+	 * @param dbName il nome del DB in cui si importano i file
+	 * @throws IOException se il file del manifesto esiste ma non si può leggere
+	 */
+	public ManifestoImportazione(File fileManifesto, String dbURI, String dbName) throws IOException {
+		this.fileManifesto = fileManifesto;
+		this.db = dbURI + ";" + dbName;
+		if (fileManifesto.isFile()) {
+			try (InputStream input = Files.newInputStream(fileManifesto.toPath())) {
+				voci.load(input);
+			}
+			if (!db.equals(voci.getProperty(CHIAVE_DB))) {
+				voci.clear();
+			}
+		}
+		voci.setProperty(CHIAVE_DB, db);
+	}
+	
+	/**
+	 * Restituisce true se il file non è nel manifesto oppure se la sua dimensione o
+	 * il suo hash sono diversi da quelli registrati.
+	 * 
+	 * @param file il file da controllare
+	 * @return true se il file va importato, false se è già stato importato così com'è
+	 * @throws IOException se il file non si può leggere
+	 */
+	public synchronized boolean isCambiato(File file) throws IOException {
+		String voce = voci.getProperty(file.getName());
+		if (voce == null) {
+			return true;
+		}
+		String[] dimensioneHash = voce.split(";", 2);
+		if (dimensioneHash.length != 2 || Long.parseLong(dimensioneHash[0]) != file.length()) {
+			return true;
+		}
+		return !dimensioneHash[1].equals(getHash(file));
+	}
+	
+	/**
+	 * Registra nel manifesto la dimensione e l'hash attuali del file, che è stato 
+	 * importato correttamente.
+	 * 
+	 * @param file il file importato
+	 * @throws IOException se il file non si può leggere
+	 */
+	public synchronized void registra(File file) throws IOException {
+		voci.setProperty(file.getName(), file.length() + ";" + getHash(file));
+	}
+	
+	/**
+	 * Salva il manifesto su file. Il file viene prima scritto in un file temporaneo e poi
+	 * rinominato, così un'interruzione non lascia un manifesto incompleto.
+	 * 
+	 * @throws IOException se il manifesto non si può scrivere
+	 */
+	public synchronized void salva() throws IOException {
+		File temporaneo = new File(fileManifesto.getPath() + ".tmp");
+		try (OutputStream output = Files.newOutputStream(temporaneo.toPath())) {
+			voci.store(output, "File importati nel DB: nome=dimensione;sha256");
+		}
+		Files.move(temporaneo.toPath(), fileManifesto.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	/**
+	 * Restituisce l'hash SHA-256 del contenuto del file in esadecimale.
+	 * 
+	 * @param file il file di cui calcolare l'hash
+	 * @return l'hash del file
+	 * @throws IOException se il file non si può leggere
+	 */
+	private String getHash(File file) throws IOException {
+		String hash = hashCalcolati.get(file);
+		if (hash == null) {
+			hash = calcolaHash(file);
+			hashCalcolati.put(file, hash);
+		}
+		return hash;
+	}
+	
+	/**
+	 * Calcola l'hash SHA-256 del contenuto del file in esadecimale.
+	 * 
+	 * @param file il file di cui calcolare l'hash
+	 * @return l'hash del file
+	 * @throws IOException se il file non si può leggere
+	 */
+	static String calcolaHash(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 non disponibile", e);
+		}
+		StringBuilder esadecimale = new StringBuilder();
+		for (byte b : digest.digest(Files.readAllBytes(file.toPath()))) {
+			esadecimale.append(String.format("%02x", b));
+		}
+		return esadecimale.toString();
+	}
+
+}
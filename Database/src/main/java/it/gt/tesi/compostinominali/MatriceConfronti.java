@@ -0,0 +1,525 @@
+package it.gt.tesi.compostinominali;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Value;
+
+/**
+ * Le query incrociate di Cypher_queries.md per tutte le coppie di opere, autori, sottogeneri
+ * e generi insieme. Per ogni elemento (un valore di un ambito) si costruisce una volta sola
+ * il vettore dei conteggi delle sottotipologie nell'ordine di GrafoCompatto.SOTTOTIPOLOGIE,
+ * dal grafo compatto oppure con un'unica query sui nodi SubtypeDistribution; poi per ogni
+ * coppia di elementi si calcolano la similarità del coseno dei due vettori e il chi quadro
+ * della tabella 2 × sottotipologie, con i gradi di libertà (le sottotipologie presenti in
+ * almeno uno dei due elementi meno uno). Le coppie vengono divise in gruppi di righe della
+ * matrice ed elaborate in parallelo con un ForkJoinPool.
+ * <p>
+ * Il coseno di un elemento senza composti e il chi quadro di una coppia con un elemento
+ * senza composti non sono definiti e valgono NaN. L'oggetto è immutabile e si può usare
+ * da più thread.
+ */
+public final class MatriceConfronti {
+
+	//le righe della matrice elaborate da un compito senza dividerlo ancora
+	private static final int RIGHE_PER_COMPITO = 8;
+
+	private final List<Ambito> ambiti;
+	private final List<String> valori;
+	//i conteggi delle sottotipologie di ogni elemento
+	private final int[][] conteggi;
+	private final int[] totali;
+	//le matrici delle coppie, elemento i ed elemento j in posizione i * n + j
+	private final double[] coseni;
+	private final double[] chiQuadri;
+	private final int[] gradiLiberta;
+
+	private MatriceConfronti(List<Ambito> ambiti, List<String> valori, int[][] conteggi) {
+		this.ambiti = List.copyOf(ambiti);
+		this.valori = List.copyOf(valori);
+		this.conteggi = conteggi;
+		int n = valori.size();
+		this.totali = new int[n];
+		for (int i = 0; i < n; i++) {
+			for (int c : conteggi[i]) {
+				totali[i] += c;
+			}
+		}
+		this.coseni = new double[n * n];
+		this.chiQuadri = new double[n * n];
+		this.gradiLiberta = new int[n * n];
+	}
+
+	/**
+	 * Calcola la matrice di tutte le opere, gli autori, i sottogeneri e i generi del grafo
+	 * con tutti i processori disponibili.
+	 *
+	 * @param grafo il grafo compatto
+	 * @return la matrice dei confronti
+	 */
+	public static MatriceConfronti calcola(GrafoCompatto grafo) {
+		return calcola(grafo, EnumSet.allOf(Ambito.class), Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Calcola la matrice dei valori degli ambiti dati del grafo, in ordine di ambito e poi
+	 * di valore.
+	 *
+	 * @param grafo il grafo compatto
+	 * @param ambiti gli ambiti i cui valori vanno confrontati
+	 * @param parallelismo il numero di thread con cui calcolare le coppie
+	 * @return la matrice dei confronti
+	 *
+	 * @throws IllegalArgumentException se grafo è null, oppure se ambiti è vuoto,
+	 * 			oppure se parallelismo non è positivo
+	 */
+	public static MatriceConfronti calcola(GrafoCompatto grafo, Collection<Ambito> ambiti, int parallelismo) {
+		if (grafo == null)
+			throw new IllegalArgumentException("Il grafo non può essere null");
+		List<Ambito> ambitiElementi = new ArrayList<>();
+		List<String> valoriElementi = new ArrayList<>();
+		List<int[]> conteggiElementi = new ArrayList<>();
+		for (Ambito ambito : getAmbitiOrdinati(ambiti)) {
+			for (String valore : grafo.getValori(ambito)) {
+				ambitiElementi.add(ambito);
+				valoriElementi.add(valore);
+				conteggiElementi.add(grafo.getConteggiSottotipologie(ambito, valore));
+			}
+		}
+		return calcola(ambitiElementi, valoriElementi, conteggiElementi.toArray(new int[0][]), parallelismo);
+	}
+
+	/**
+	 * Legge con un'unica query i nodi SubtypeDistribution di tutte le opere, gli autori,
+	 * i sottogeneri e i generi del DB e ne calcola la matrice con tutti i processori disponibili.
+	 *
+	 * @param dbDriver il driver del DB
+	 * @param dbName il nome del DB
+	 * @return la matrice dei confronti
+	 */
+	public static MatriceConfronti leggi(Driver dbDriver, String dbName) {
+		return leggi(dbDriver, dbName, EnumSet.allOf(Ambito.class), Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Legge con un'unica query i nodi SubtypeDistribution degli ambiti dati e ne calcola
+	 * la matrice, in ordine di ambito e poi di valore. I conteggi sono gli stessi delle query
+	 * incrociate di Cypher_queries.md, cioè numeri di relazioni CONTAINS.
+	 *
+	 * @param dbDriver il driver del DB
+	 * @param dbName il nome del DB
+	 * @param ambiti gli ambiti i cui valori vanno confrontati
+	 * @param parallelismo il numero di thread con cui calcolare le coppie
+	 * @return la matrice dei confronti
+	 *
+	 * @throws IllegalArgumentException se dbDriver è null, oppure se dbName è vuoto,
+	 * 			oppure se ambiti è vuoto, oppure se parallelismo non è positivo
+	 */
+	public static MatriceConfronti leggi(Driver dbDriver, String dbName, Collection<Ambito> ambiti,
+			int parallelismo) {
+		List<Ambito> ambitiOrdinati = getAmbitiOrdinati(ambiti);
+		List<String> scope = new ArrayList<>();
+		for (Ambito ambito : ambitiOrdinati) {
+			scope.add(QueryService.getScope(ambito));
+		}
+		List<Record> result = new EsecutoreQuery(dbDriver, dbName).esegui("MatriceConfronti distribuzioni",
+				"MATCH (d:SubtypeDistribution) WHERE d.scope IN $scope "
+				+ "RETURN d.scope AS scope, d.name AS nome, d.subtypes AS sottotipologie, d.compounds AS composti",
+				Map.of("scope", scope));
+
+		List<Record> records = new ArrayList<>(result);
+		records.sort(Comparator.comparingInt((Record record) -> scope.indexOf(record.get("scope").asString()))
+				.thenComparing(record -> record.get("nome").asString()));
+		List<Ambito> ambitiElementi = new ArrayList<>();
+		List<String> valoriElementi = new ArrayList<>();
+		int[][] conteggiElementi = new int[records.size()][];
+		for (int i = 0; i < records.size(); i++) {
+			Record record = records.get(i);
+			ambitiElementi.add(ambitiOrdinati.get(scope.indexOf(record.get("scope").asString())));
+			valoriElementi.add(record.get("nome").asString());
+			List<String> sottotipologie = record.get("sottotipologie").asList(Value::asString);
+			List<Integer> composti = record.get("composti").asList(Value::asInt);
+			conteggiElementi[i] = new int[GrafoCompatto.SOTTOTIPOLOGIE.size()];
+			for (int k = 0; k < sottotipologie.size(); k++) {
+				int s = GrafoCompatto.SOTTOTIPOLOGIE.indexOf(sottotipologie.get(k));
+				if (s >= 0) {
+					conteggiElementi[i][s] += composti.get(k);
+				}
+			}
+		}
+		return calcola(ambitiElementi, valoriElementi, conteggiElementi, parallelismo);
+	}
+
+	/**
+	 * Calcola la matrice degli elementi dati.
+	 *
+	 * @param ambiti l'ambito di ogni elemento
+	 * @param valori il valore di ogni elemento
+	 * @param conteggi i conteggi delle sottotipologie di ogni elemento nell'ordine di
+	 * GrafoCompatto.SOTTOTIPOLOGIE, che non vengono copiati
+	 * @param parallelismo il numero di thread con cui calcolare le coppie
+	 * @return la matrice dei confronti
+	 *
+	 * @throws IllegalArgumentException se le liste hanno lunghezze diverse, oppure se un
+	 * 			vettore non ha un conteggio per sottotipologia, oppure se parallelismo non è positivo
+	 */
+	public static MatriceConfronti calcola(List<Ambito> ambiti, List<String> valori, int[][] conteggi,
+			int parallelismo) {
+		if (ambiti.size() != valori.size() || valori.size() != conteggi.length)
+			throw new IllegalArgumentException("Ambiti, valori e conteggi devono avere la stessa lunghezza");
+		for (int[] vettore : conteggi) {
+			if (vettore.length != GrafoCompatto.SOTTOTIPOLOGIE.size())
+				throw new IllegalArgumentException("Ogni vettore deve avere un conteggio per sottotipologia");
+		}
+		if (parallelismo <= 0)
+			throw new IllegalArgumentException("Il parallelismo deve essere positivo");
+		MatriceConfronti matrice = new MatriceConfronti(ambiti, valori, conteggi);
+		ForkJoinPool pool = new ForkJoinPool(parallelismo);
+		try {
+			pool.invoke(matrice.new CompitoRighe(matrice.norme(), 0, valori.size()));
+		} finally {
+			pool.shutdown();
+		}
+		return matrice;
+	}
+
+	public int getNumeroElementi() {
+		return valori.size();
+	}
+
+	public Ambito getAmbito(int elemento) {
+		return ambiti.get(elemento);
+	}
+
+	public String getValore(int elemento) {
+		return valori.get(elemento);
+	}
+
+	/**
+	 * Restituisce l'indice dell'elemento con l'ambito e il valore dati.
+	 *
+	 * @param ambito l'ambito
+	 * @param valore il valore dell'ambito
+	 * @return l'indice dell'elemento, -1 se non c'è
+	 */
+	public int indexOf(Ambito ambito, String valore) {
+		for (int i = 0; i < valori.size(); i++) {
+			if (ambiti.get(i) == ambito && valori.get(i).equals(valore)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Restituisce i conteggi delle sottotipologie di un elemento.
+	 *
+	 * @param elemento l'indice dell'elemento
+	 * @return una copia dei conteggi nell'ordine di GrafoCompatto.SOTTOTIPOLOGIE
+	 */
+	public int[] getConteggi(int elemento) {
+		return conteggi[elemento].clone();
+	}
+
+	public int getTotale(int elemento) {
+		return totali[elemento];
+	}
+
+	/**
+	 * Restituisce la percentuale di una sottotipologia sul totale dell'elemento, arrotondata
+	 * a due decimali come nelle query con la percentuale.
+	 *
+	 * @param elemento l'indice dell'elemento
+	 * @param sottotipologia l'indice della sottotipologia in GrafoCompatto.SOTTOTIPOLOGIE
+	 * @return la percentuale, 0 se l'elemento non ha composti
+	 */
+	public double getPercentuale(int elemento, int sottotipologia) {
+		return GrafoCompatto.getPercentuale(conteggi[elemento][sottotipologia], totali[elemento]);
+	}
+
+	public double getCoseno(int elemento1, int elemento2) {
+		return coseni[elemento1 * valori.size() + elemento2];
+	}
+
+	public double getChiQuadro(int elemento1, int elemento2) {
+		return chiQuadri[elemento1 * valori.size() + elemento2];
+	}
+
+	public int getGradiLiberta(int elemento1, int elemento2) {
+		return gradiLiberta[elemento1 * valori.size() + elemento2];
+	}
+
+	/**
+	 * Restituisce la tabella della query incrociata di due elementi, la stessa di
+	 * GrafoCompatto.confronta() e QueryService.confronta().
+	 *
+	 * @param elemento1 l'indice dell'elemento della prima colonna
+	 * @param elemento2 l'indice dell'elemento della seconda colonna
+	 * @return la tabella con una riga per sottotipologia e una colonna per elemento
+	 */
+	public ConfrontoSottotipi getConfronto(int elemento1, int elemento2) {
+		int[][] tabella = new int[GrafoCompatto.SOTTOTIPOLOGIE.size()][2];
+		for (int s = 0; s < tabella.length; s++) {
+			tabella[s][0] = conteggi[elemento1][s];
+			tabella[s][1] = conteggi[elemento2][s];
+		}
+		return new ConfrontoSottotipi(GrafoCompatto.SOTTOTIPOLOGIE,
+				List.of(valori.get(elemento1), valori.get(elemento2)), tabella);
+	}
+
+	/**
+	 * Scrive la matrice nel file dato. Un file CSV ha una riga per ogni coppia di elementi
+	 * diversi, con ambito, valore e totale dei due elementi, coseno, chi quadro e gradi di
+	 * libertà. Un file Excel ha i fogli Counts e Percentages, con una riga per elemento e una
+	 * colonna per sottotipologia (più il totale nel foglio Counts), e i fogli Cosine, ChiSquare e DegreesOfFreedom, con una
+	 * riga e una colonna per elemento. I valori non definiti sono celle o campi vuoti.
+	 *
+	 * @param file il file da scrivere, in formato CSV se il nome finisce con .csv e in
+	 * formato Excel altrimenti
+	 * @throws IOException se il file non si può scrivere
+	 */
+	public void esporta(File file) throws IOException {
+		if (file.getName().toLowerCase().endsWith(".csv")) {
+			esportaCsv(file);
+		} else {
+			esportaExcel(file);
+		}
+	}
+
+	private void esportaCsv(File file) throws IOException {
+		int n = valori.size();
+		try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			writer.write("\"Scope1\",\"Name1\",\"Total1\",\"Scope2\",\"Name2\",\"Total2\","
+					+ "\"Cosine\",\"ChiSquare\",\"DegreesOfFreedom\"\n");
+			for (int i = 0; i < n; i++) {
+				for (int j = i + 1; j < n; j++) {
+					writer.write(getTestoCsv(QueryService.getScope(ambiti.get(i))) + "," + getTestoCsv(valori.get(i))
+							+ "," + totali[i] + ","
+							+ getTestoCsv(QueryService.getScope(ambiti.get(j))) + "," + getTestoCsv(valori.get(j))
+							+ "," + totali[j] + ","
+							+ getNumeroCsv(getCoseno(i, j)) + "," + getNumeroCsv(getChiQuadro(i, j)) + ","
+							+ getGradiLiberta(i, j) + "\n");
+				}
+			}
+		}
+	}
+
+	private void esportaExcel(File file) throws IOException {
+		int n = valori.size();
+		List<String> sottotipologie = GrafoCompatto.SOTTOTIPOLOGIE;
+		SXSSFWorkbook workbook = new SXSSFWorkbook(EsportatoreReport.FINESTRA_RIGHE_PREDEFINITA);
+		workbook.setCompressTempFiles(true);
+		try {
+			SXSSFSheet foglioConteggi = workbook.createSheet("Counts");
+			SXSSFSheet foglioPercentuali = workbook.createSheet("Percentages");
+			for (SXSSFSheet foglio : List.of(foglioConteggi, foglioPercentuali)) {
+				Row intestazione = foglio.createRow(0);
+				intestazione.createCell(0).setCellValue("Scope");
+				intestazione.createCell(1).setCellValue("Name");
+				for (int s = 0; s < sottotipologie.size(); s++) {
+					intestazione.createCell(s + 2).setCellValue(sottotipologie.get(s));
+				}
+			}
+			foglioConteggi.getRow(0).createCell(sottotipologie.size() + 2).setCellValue("Total");
+			for (int i = 0; i < n; i++) {
+				Row rigaConteggi = creaRigaElemento(foglioConteggi, i);
+				Row rigaPercentuali = creaRigaElemento(foglioPercentuali, i);
+				for (int s = 0; s < sottotipologie.size(); s++) {
+					rigaConteggi.createCell(s + 2).setCellValue(conteggi[i][s]);
+					rigaPercentuali.createCell(s + 2).setCellValue(getPercentuale(i, s));
+				}
+				rigaConteggi.createCell(sottotipologie.size() + 2).setCellValue(totali[i]);
+			}
+
+			scriviMatrice(workbook.createSheet("Cosine"), coseni);
+			scriviMatrice(workbook.createSheet("ChiSquare"), chiQuadri);
+			double[] gradi = new double[n * n];
+			for (int k = 0; k < gradi.length; k++) {
+				gradi[k] = gradiLiberta[k];
+			}
+			scriviMatrice(workbook.createSheet("DegreesOfFreedom"), gradi);
+
+			try (OutputStream output = Files.newOutputStream(file.toPath())) {
+				workbook.write(output);
+			}
+		} finally {
+			workbook.dispose();
+			workbook.close();
+		}
+	}
+
+	/**
+	 * Scrive una matrice delle coppie con l'etichetta di ogni elemento nella prima riga e
+	 * nella prima colonna.
+	 *
+	 * @param foglio il foglio
+	 * @param matrice i valori delle coppie
+	 */
+	private void scriviMatrice(SXSSFSheet foglio, double[] matrice) {
+		int n = valori.size();
+		Row intestazione = foglio.createRow(0);
+		for (int j = 0; j < n; j++) {
+			intestazione.createCell(j + 1).setCellValue(getEtichetta(j));
+		}
+		for (int i = 0; i < n; i++) {
+			Row row = foglio.createRow(i + 1);
+			row.createCell(0).setCellValue(getEtichetta(i));
+			for (int j = 0; j < n; j++) {
+				double valore = matrice[i * n + j];
+				if (!Double.isNaN(valore)) {
+					row.createCell(j + 1).setCellValue(valore);
+				}
+			}
+		}
+	}
+
+	private Row creaRigaElemento(SXSSFSheet foglio, int elemento) {
+		Row row = foglio.createRow(elemento + 1);
+		row.createCell(0).setCellValue(QueryService.getScope(ambiti.get(elemento)));
+		row.createCell(1).setCellValue(valori.get(elemento));
+		return row;
+	}
+
+	/**
+	 * Restituisce l'etichetta di un elemento nei fogli delle coppie, per esempio
+	 * "STAT. Theb. (work)".
+	 *
+	 * @param elemento l'indice dell'elemento
+	 * @return il valore seguito dallo scope dell'ambito tra parentesi
+	 */
+	private String getEtichetta(int elemento) {
+		return valori.get(elemento) + " (" + QueryService.getScope(ambiti.get(elemento)) + ")";
+	}
+
+	/**
+	 * Restituisce la norma euclidea del vettore dei conteggi di ogni elemento.
+	 *
+	 * @return le norme
+	 */
+	private double[] norme() {
+		double[] norme = new double[conteggi.length];
+		for (int i = 0; i < conteggi.length; i++) {
+			long somma = 0;
+			for (int c : conteggi[i]) {
+				somma += (long) c * c;
+			}
+			norme[i] = Math.sqrt(somma);
+		}
+		return norme;
+	}
+
+	/**
+	 * Calcola coseno, chi quadro e gradi di libertà della coppia di elementi i e j e li
+	 * scrive in entrambe le posizioni della matrice.
+	 *
+	 * @param i l'indice del primo elemento
+	 * @param j l'indice del secondo elemento
+	 * @param norme le norme dei vettori dei conteggi
+	 */
+	private void confronta(int i, int j, double[] norme) {
+		int[] a = conteggi[i];
+		int[] b = conteggi[j];
+		long prodotto = 0;
+		for (int s = 0; s < a.length; s++) {
+			prodotto += (long) a[s] * b[s];
+		}
+		double coseno = norme[i] == 0 || norme[j] == 0 ? Double.NaN : prodotto / (norme[i] * norme[j]);
+
+		double chiQuadro = Double.NaN;
+		int gradi = 0;
+		if (totali[i] > 0 && totali[j] > 0) {
+			double totale = (double) totali[i] + totali[j];
+			chiQuadro = 0;
+			int colonne = 0;
+			for (int s = 0; s < a.length; s++) {
+				int colonna = a[s] + b[s];
+				if (colonna == 0) {
+					continue;
+				}
+				colonne++;
+				double attesoA = totali[i] * colonna / totale;
+				double attesoB = totali[j] * colonna / totale;
+				chiQuadro += (a[s] - attesoA) * (a[s] - attesoA) / attesoA
+						+ (b[s] - attesoB) * (b[s] - attesoB) / attesoB;
+			}
+			gradi = colonne - 1;
+		}
+
+		int n = valori.size();
+		coseni[i * n + j] = coseni[j * n + i] = coseno;
+		chiQuadri[i * n + j] = chiQuadri[j * n + i] = chiQuadro;
+		gradiLiberta[i * n + j] = gradiLiberta[j * n + i] = gradi;
+	}
+
+	private static List<Ambito> getAmbitiOrdinati(Collection<Ambito> ambiti) {
+		if (ambiti == null || ambiti.isEmpty())
+			throw new IllegalArgumentException("Gli ambiti non possono essere vuoti");
+		Set<Ambito> insieme = EnumSet.copyOf(ambiti);
+		return List.copyOf(insieme);
+	}
+
+	private static String getTestoCsv(String testo) {
+		return "\"" + testo.replace("\"", "\"\"") + "\"";
+	}
+
+	private static String getNumeroCsv(double valore) {
+		return Double.isNaN(valore) ? "" : String.valueOf(valore);
+	}
+
+	/**
+	 * Il compito che confronta gli elementi delle righe da inizio a fine - 1 con gli
+	 * elementi successivi. Le righe sono divise a metà finché non sono al più
+	 * RIGHE_PER_COMPITO: le prime righe hanno più coppie delle ultime, ma i compiti piccoli
+	 * vengono distribuiti tra i thread del pool man mano che si liberano. Ogni coppia viene
+	 * calcolata da un solo compito, quindi i compiti scrivono posizioni diverse della matrice.
+	 */
+	private final class CompitoRighe extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] norme;
+		private final int inizio;
+		private final int fine;
+
+		private CompitoRighe(double[] norme, int inizio, int fine) {
+			this.norme = norme;
+			this.inizio = inizio;
+			this.fine = fine;
+		}
+
+		@Override
+		protected void compute() {
+			if (fine - inizio > RIGHE_PER_COMPITO) {
+				int meta = (inizio + fine) >>> 1;
+				invokeAll(new CompitoRighe(norme, inizio, meta), new CompitoRighe(norme, meta, fine));
+				return;
+			}
+			for (int i = inizio; i < fine; i++) {
+				confronta(i, i, norme);
+				for (int j = i + 1; j < valori.size(); j++) {
+					confronta(i, j, norme);
+				}
+			}
+		}
+
+	}
+
+}
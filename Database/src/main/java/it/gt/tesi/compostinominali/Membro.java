@@ -1,17 +1,19 @@
 package it.gt.tesi.compostinominali;
 
+import java.util.Objects;
+
 import org.apache.commons.lang3.StringUtils;
 
 /**
- * Classe che contiene le proprietà lemma e categoria morfologica per un
- * membro. 
- * Contiene getter/setter per le proprietà elencate.
+ * Classe immutabile che contiene le proprietà lemma e categoria morfologica per un
+ * membro. Due membri con lo stesso lemma e la stessa categoria sono uguali, così lo
+ * stesso membro di più composti può essere condiviso con un {@link DizionarioValori}.
  */
-public class Membro {
-	
-	private String lemma;
-	private String categoriaMorfologica;
-	
+public final class Membro {
+
+	private final String lemma;
+	private final String categoriaMorfologica;
+
 	public Membro(String lemma, String categoriaMorfologica) {
 		this.lemma = lemma;
 		this.categoriaMorfologica = categoriaMorfologica;
@@ -20,28 +22,49 @@ public class Membro {
 	public String getLemma() {
 		return lemma;
 	}
-	
-	public void setLemma(String lemma) {
-		this.lemma = lemma;
-	}
-	
+
 	public String getCategoriaMorfologica() {
 		return categoriaMorfologica;
 	}
-	
-	public void setCategoriaMorfologica(String categoriaMorfologica) {
-		this.categoriaMorfologica = categoriaMorfologica;
-	}
-	
+
 	/**
 	 * Restituisce true se questo Membro è vuoto, ovvero se manca il lemma e
 	 * manca la catergoria morfologica.
-	 * 
+	 *
 	 * @return true se il CompostoMembro è vuoto, false altrimenti
 	 */
 	public boolean isEmpty() {
-		return StringUtils.isEmpty(lemma) && 
+		return StringUtils.isEmpty(lemma) &&
 				StringUtils.isEmpty(categoriaMorfologica);
 	}
 
+	/**
+	 * Restituisce il membro con il lemma e la categoria canonici del dizionario.
+	 *
+	 * @param dizionario il dizionario dei valori
+	 * @return il membro canonico uguale a questo
+	 */
+	public Membro conValoriCanonici(DizionarioValori dizionario) {
+		return dizionario.canonico(new Membro(dizionario.canonico(lemma),
+				dizionario.canonico(categoriaMorfologica)));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Membro)) {
+			return false;
+		}
+		Membro altro = (Membro) obj;
+		return Objects.equals(lemma, altro.lemma)
+				&& Objects.equals(categoriaMorfologica, altro.categoriaMorfologica);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(lemma, categoriaMorfologica);
+	}
+
 }
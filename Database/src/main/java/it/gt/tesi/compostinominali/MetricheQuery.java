@@ -0,0 +1,46 @@
+package it.gt.tesi.compostinominali;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * La classe che raccoglie gli istogrammi delle latenze delle query eseguite da 
+ * EsecutoreQuery, uno per ogni tipo di query. Gli istogrammi sono condivisi da tutti 
+ * gli elaboratori, anche quelli che lavorano in parallelo su thread diversi.
+ */
+public final class MetricheQuery {
+	
+	private static final Map<String, IstogrammaLatenze> ISTOGRAMMI = new ConcurrentHashMap<>();
+	
+	private MetricheQuery() {
+	}
+	
+	/**
+	 * Registra la latenza di una query del tipo dato.
+	 * 
+	 * @param tipo il tipo di query
+	 * @param nanosecondi la latenza in nanosecondi
+	 */
+	public static void registra(String tipo, long nanosecondi) {
+		ISTOGRAMMI.computeIfAbsent(tipo, t -> new IstogrammaLatenze()).registra(nanosecondi);
+	}
+	
+	/**
+	 * Restituisce gli istogrammi registrati finora ordinati per tipo di query.
+	 * 
+	 * @return gli istogrammi per tipo di query
+	 */
+	public static Map<String, IstogrammaLatenze> getIstogrammi() {
+		return new TreeMap<>(ISTOGRAMMI);
+	}
+	
+	/**
+	 * Cancella tutti gli istogrammi, per esempio prima di una nuova importazione 
+	 * nella stessa JVM.
+	 */
+	public static void azzera() {
+		ISTOGRAMMI.clear();
+	}
+
+}
@@ -0,0 +1,62 @@
+package it.gt.tesi.compostinominali;
+
+/**
+ * Una relazione CONTAINS tra un'opera e un composto nominale, con i dati dell'opera,
+ * del suo autore e del composto che restituiscono le query delle occorrenze di 
+ * Cypher_queries.md. È immutabile.
+ */
+public class OccorrenzaComposto {
+	
+	private final String lemma;
+	private final String autore;
+	private final String titolo;
+	private final String acronimo;
+	private final int occorrenze;
+	private final String tipologia;
+	private final String sottotipologia;
+	
+	public OccorrenzaComposto(String lemma, String autore, String titolo, String acronimo,
+			int occorrenze, String tipologia, String sottotipologia) {
+		this.lemma = lemma;
+		this.autore = autore;
+		this.titolo = titolo;
+		this.acronimo = acronimo;
+		this.occorrenze = occorrenze;
+		this.tipologia = tipologia;
+		this.sottotipologia = sottotipologia;
+	}
+
+	public String getLemma() {
+		return lemma;
+	}
+
+	public String getAutore() {
+		return autore;
+	}
+
+	public String getTitolo() {
+		return titolo;
+	}
+
+	public String getAcronimo() {
+		return acronimo;
+	}
+
+	public int getOccorrenze() {
+		return occorrenze;
+	}
+
+	public String getTipologia() {
+		return tipologia;
+	}
+
+	public String getSottotipologia() {
+		return sottotipologia;
+	}
+	
+	@Override
+	public String toString() {
+		return lemma + " | " + acronimo + " | " + occorrenze + " | " + tipologia + " | " + sottotipologia;
+	}
+
+}
@@ -1,47 +1,112 @@
 package it.gt.tesi.compostinominali;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
- * La classe che contiene le informazioni di un'opera, ovvero titolo,
- * genere, sottogenere e abbreviazione. 
- * Contiene getter/setter per le proprità di un'opera.
+ * La classe immutabile che contiene le informazioni di un'opera, ovvero titolo,
+ * genere, sottogenere, abbreviazione e, quando l'opera è letta senza DB,
+ * l'autore e i composti con le loro occorrenze.
  */
-public class Opera {
-	
-	private String titolo;
-	private String genere;
-	private String sottogenere;
-	private String abbreviazione;
-	
-	public String getAbbreviazione() {
-		return abbreviazione;
+public final class Opera {
+
+	private final String titolo;
+	private final String genere;
+	private final String sottogenere;
+	private final String abbreviazione;
+	private final Autore autore;
+	private final List<Composto> composti;
+
+	/**
+	 * Costruisce un'opera senza autore e senza composti.
+	 *
+	 * @param titolo il titolo dell'opera
+	 * @param abbreviazione l'abbreviazione dell'opera
+	 * @param genere il genere dell'opera
+	 * @param sottogenere il sottogenere dell'opera
+	 */
+	public Opera(String titolo, String abbreviazione, String genere, String sottogenere) {
+		this(titolo, abbreviazione, genere, sottogenere, null, List.of());
 	}
 
-	public void setAbbreviazione(String abbreviazione) {
+	/**
+	 * Costruisce un'opera con il suo autore e i suoi composti.
+	 *
+	 * @param titolo il titolo dell'opera
+	 * @param abbreviazione l'abbreviazione dell'opera
+	 * @param genere il genere dell'opera
+	 * @param sottogenere il sottogenere dell'opera
+	 * @param autore l'autore dell'opera, anche null
+	 * @param composti i composti dell'opera con le loro occorrenze
+	 *
+	 * @throws IllegalArgumentException se composti è null
+	 */
+	public Opera(String titolo, String abbreviazione, String genere, String sottogenere,
+			Autore autore, List<Composto> composti) {
+		if (composti == null)
+			throw new IllegalArgumentException("I composti non possono essere null");
+		this.titolo = titolo;
 		this.abbreviazione = abbreviazione;
+		this.genere = genere;
+		this.sottogenere = sottogenere;
+		this.autore = autore;
+		this.composti = List.copyOf(composti);
+	}
+
+	public String getAbbreviazione() {
+		return abbreviazione;
 	}
 
 	public String getTitolo() {
 		return titolo;
 	}
-	
-	public void setTitolo(String titolo) {
-		this.titolo = titolo;
-	}
-	
+
 	public String getGenere() {
 		return genere;
 	}
-	
-	public void setGenere(String genere) {
-		this.genere = genere;
-	}
-	
+
 	public String getSottogenere() {
 		return sottogenere;
 	}
-	
-	public void setSottogenere(String sottogenere) {
-		this.sottogenere = sottogenere;
+
+	public Autore getAutore() {
+		return autore;
+	}
+
+	/**
+	 * Restituisce i composti dell'opera, ognuno con lemma e occorrenze.
+	 *
+	 * @return la lista non modificabile dei composti dell'opera
+	 */
+	public List<Composto> getComposti() {
+		return composti;
+	}
+
+	/**
+	 * Restituisce questa opera con l'autore e i composti dati.
+	 *
+	 * @param autore l'autore dell'opera
+	 * @param composti i composti dell'opera con le loro occorrenze
+	 * @return la nuova opera
+	 */
+	public Opera conAutoreEComposti(Autore autore, List<Composto> composti) {
+		return new Opera(titolo, abbreviazione, genere, sottogenere, autore, composti);
+	}
+
+	/**
+	 * Restituisce l'opera con i valori, l'autore e i composti canonici del dizionario.
+	 *
+	 * @param dizionario il dizionario dei valori
+	 * @return l'opera con i valori canonici
+	 */
+	public Opera conValoriCanonici(DizionarioValori dizionario) {
+		List<Composto> canonici = new ArrayList<>(composti.size());
+		for (Composto composto : composti) {
+			canonici.add(composto.conValoriCanonici(dizionario));
+		}
+		return new Opera(dizionario.canonico(titolo), dizionario.canonico(abbreviazione),
+				dizionario.canonico(genere), dizionario.canonico(sottogenere),
+				autore != null ? autore.conValoriCanonici(dizionario) : null, canonici);
 	}
 
 }
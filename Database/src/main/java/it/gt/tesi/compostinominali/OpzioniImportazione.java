@@ -0,0 +1,146 @@
+package it.gt.tesi.compostinominali;
+
+/**
+ * Le opzioni con cui ElaboratoreCartellaComposti ed ElaboratoreCartellaOpera scrivono in DB.
+ * L'oggetto è immutabile: si parte da PREDEFINITE, che scrivono una riga alla volta nello
+ * stesso thread che legge il foglio, e si cambiano le opzioni con i metodi con...().
+ */
+public class OpzioniImportazione {
+
+	/**
+	 * Le opzioni predefinite: una riga per query, nessuna transazione esplicita, nessuna coda
+	 * di scrittura, scritture sincrone e nessuna sincronizzazione.
+	 */
+	public static final OpzioniImportazione PREDEFINITE = new OpzioniImportazione(1, 0, 0, 0, false);
+
+	private final int dimensioneBatch;
+	private final int righePerTransazione;
+	private final int dimensioneCoda;
+	private final int scrittureInVolo;
+	private final boolean sincronizzazione;
+
+	private OpzioniImportazione(int dimensioneBatch, int righePerTransazione, int dimensioneCoda,
+			int scrittureInVolo, boolean sincronizzazione) {
+		this.dimensioneBatch = dimensioneBatch;
+		this.righePerTransazione = righePerTransazione;
+		this.dimensioneCoda = dimensioneCoda;
+		this.scrittureInVolo = scrittureInVolo;
+		this.sincronizzazione = sincronizzazione;
+	}
+
+	public int getDimensioneBatch() {
+		return dimensioneBatch;
+	}
+
+	public int getRighePerTransazione() {
+		return righePerTransazione;
+	}
+
+	/**
+	 * Restituisce true se le righe vengono scritte in transazioni esplicite: i composti a
+	 * gruppi di getRighePerTransazione() righe, ogni opera in un'unica transazione.
+	 *
+	 * @return true se righePerTransazione è maggiore di 0
+	 */
+	public boolean isTransazionale() {
+		return righePerTransazione > 0;
+	}
+
+	public int getDimensioneCoda() {
+		return dimensioneCoda;
+	}
+
+	public int getScrittureInVolo() {
+		return scrittureInVolo;
+	}
+
+	public boolean isSincronizzazione() {
+		return sincronizzazione;
+	}
+
+	/**
+	 * Restituisce queste opzioni con la dimensione dei blocchi di righe dei composti. Se è
+	 * maggiore di 1 composti, membri e relazioni FORMED_BY di ogni blocco vengono scritti con
+	 * un'unica query UNWIND ciascuno.
+	 *
+	 * @param dimensioneBatch il numero di righe da scrivere in DB con una sola query
+	 * @return le nuove opzioni
+	 *
+	 * @throw IllegaArgumentException se dimensioneBatch è minore di 1
+	 */
+	public OpzioniImportazione conDimensioneBatch(int dimensioneBatch) {
+		if (dimensioneBatch < 1)
+			throw new IllegalArgumentException("La dimensione del batch deve essere almeno 1");
+		return new OpzioniImportazione(dimensioneBatch, righePerTransazione, dimensioneCoda,
+				scrittureInVolo, sincronizzazione);
+	}
+
+	/**
+	 * Restituisce queste opzioni con il numero di righe dei composti da confermare con ogni
+	 * transazione. Se è maggiore di 0 anche ogni opera viene scritta in un'unica transazione:
+	 * l'opera viene importata per intero oppure per niente.
+	 *
+	 * @param righePerTransazione il numero di righe da confermare con ogni transazione,
+	 * 0 per non usare transazioni esplicite
+	 * @return le nuove opzioni
+	 *
+	 * @throw IllegaArgumentException se righePerTransazione è negativo
+	 */
+	public OpzioniImportazione conRighePerTransazione(int righePerTransazione) {
+		if (righePerTransazione < 0)
+			throw new IllegalArgumentException("Il numero di righe per transazione non può essere negativo");
+		return new OpzioniImportazione(dimensioneBatch, righePerTransazione, dimensioneCoda,
+				scrittureInVolo, sincronizzazione);
+	}
+
+	/**
+	 * Restituisce queste opzioni con la dimensione della coda di scrittura. Se è maggiore di 0
+	 * le righe vengono lette nel thread che chiama elabora() e scritte in DB da un thread di
+	 * scrittura, a cui vengono passate attraverso una coda di al massimo dimensioneCoda
+	 * elementi (blocchi di righe per i composti, righe per le opere): quando la coda è piena
+	 * la lettura aspetta la scrittura.
+	 *
+	 * @param dimensioneCoda il numero massimo di elementi in attesa di scrittura,
+	 * 0 per leggere e scrivere nello stesso thread
+	 * @return le nuove opzioni
+	 *
+	 * @throw IllegaArgumentException se dimensioneCoda è negativa
+	 */
+	public OpzioniImportazione conDimensioneCoda(int dimensioneCoda) {
+		if (dimensioneCoda < 0)
+			throw new IllegalArgumentException("La dimensione della coda non può essere negativa");
+		return new OpzioniImportazione(dimensioneBatch, righePerTransazione, dimensioneCoda,
+				scrittureInVolo, sincronizzazione);
+	}
+
+	/**
+	 * Restituisce queste opzioni con il numero di scritture asincrone in volo. Se è maggiore
+	 * di 0 le relazioni CONTAINS delle opere vengono inviate con l'API asincrona del driver,
+	 * tenendone in corso al massimo scrittureInVolo (vedi ScrittoreAsincrono).
+	 *
+	 * @param scrittureInVolo il numero massimo di relazioni CONTAINS inviate in attesa di
+	 * risposta, 0 per scriverle in modo sincrono
+	 * @return le nuove opzioni
+	 *
+	 * @throw IllegaArgumentException se scrittureInVolo è negativo
+	 */
+	public OpzioniImportazione conScrittureInVolo(int scrittureInVolo) {
+		if (scrittureInVolo < 0)
+			throw new IllegalArgumentException("Le scritture in volo non possono essere negative");
+		return new OpzioniImportazione(dimensioneBatch, righePerTransazione, dimensioneCoda,
+				scrittureInVolo, sincronizzazione);
+	}
+
+	/**
+	 * Restituisce queste opzioni con la modalità di sincronizzazione. Se è true la relazione
+	 * CONTAINS tra un'opera e un composto è una sola e le sue occorrenze vengono aggiornate
+	 * con quelle del foglio.
+	 *
+	 * @param sincronizzazione true per aggiornare le occorrenze delle relazioni CONTAINS esistenti
+	 * @return le nuove opzioni
+	 */
+	public OpzioniImportazione conSincronizzazione(boolean sincronizzazione) {
+		return new OpzioniImportazione(dimensioneBatch, righePerTransazione, dimensioneCoda,
+				scrittureInVolo, sincronizzazione);
+	}
+}
@@ -0,0 +1,348 @@
+package it.gt.tesi.compostinominali;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+
+/**
+ * La classe che elimina dal DB i dati che non sono più nei fogli di calcolo, così dopo
+ * un'importazione con la sincronizzazione il grafo corrisponde al corpus: le relazioni
+ * CONTAINS, FORMED_BY, DUPLICATE_OF e WRITTEN_BY che non sono più nei file o che sono doppie,
+ * i composti e le opere che non ci sono più, i membri e gli autori rimasti senza relazioni.
+ * Le chiavi presenti in DB vengono lette con una query per tipo di dato e confrontate in
+ * memoria con quelle del corpus; i nodi e le relazioni da eliminare vengono cancellati a
+ * blocchi di elementId.
+ * Le relazioni CONTAINS con le occorrenze diverse da quelle del foglio vengono aggiornate.
+ * Le distribuzioni dei sottotipi delle opere di cui cambiano le relazioni CONTAINS vengono
+ * cancellate, perché AggregatoreSottotipi.aggiorna() le ricalcoli dalle relazioni.
+ * Chiamare il metodo pota().
+ */
+public class PotaturaGrafo {
+
+	/**
+	 * Il numero di elementId eliminati o aggiornati con una sola query.
+	 */
+	public static final int DIMENSIONE_BLOCCO = 1000;
+
+	private final EsecutoreQuery esecutore;
+	private final int dimensioneBlocco;
+
+	private int relazioniContainsEliminate;
+	private int relazioniContainsAggiornate;
+	private int compostiEliminati;
+	private int relazioniFormedByEliminate;
+	private int relazioniDuplicateOfEliminate;
+	private int membriEliminati;
+	private int relazioniWrittenByEliminate;
+	private int opereEliminate;
+	private int autoriEliminati;
+	private int distribuzioniEliminate;
+
+	/**
+	 * Costruisce un oggetto PotaturaGrafo a partire dal driver del DB e dal nome del
+	 * database, con blocchi di DIMENSIONE_BLOCCO elementId.
+	 *
+	 * @param dbDriver il driver del DB
+	 * @param dbName il nome del DB
+	 *
+	 * @throws IllegalArgumentException se dbDriver è null oppure se dbName è vuoto
+	 */
+	public PotaturaGrafo(Driver dbDriver, String dbName) {
+		this(dbDriver, dbName, DIMENSIONE_BLOCCO);
+	}
+
+	/**
+	 * Costruisce un oggetto PotaturaGrafo a partire dal driver del DB, dal nome del
+	 * database e dal numero di elementId da eliminare con una sola query.
+	 *
+	 * @param dbDriver il driver del DB
+	 * @param dbName il nome del DB
+	 * @param dimensioneBlocco il numero di elementId eliminati o aggiornati con una sola query
+	 *
+	 * @throws IllegalArgumentException se dbDriver è null, oppure se dbName è vuoto,
+	 * 			oppure se dimensioneBlocco non è positiva
+	 */
+	public PotaturaGrafo(Driver dbDriver, String dbName, int dimensioneBlocco) {
+		if (dbDriver == null)
+			throw new IllegalArgumentException("Il driver DB non può essere null");
+		if (StringUtils.isEmpty(dbName))
+			throw new IllegalArgumentException("Il nome del database non può essere vuoto");
+		if (dimensioneBlocco <= 0)
+			throw new IllegalArgumentException("La dimensione del blocco deve essere positiva");
+		this.esecutore = new EsecutoreQuery(dbDriver, dbName);
+		this.dimensioneBlocco = dimensioneBlocco;
+	}
+
+	public int getRelazioniContainsEliminate() {
+		return relazioniContainsEliminate;
+	}
+
+	public int getRelazioniContainsAggiornate() {
+		return relazioniContainsAggiornate;
+	}
+
+	public int getCompostiEliminati() {
+		return compostiEliminati;
+	}
+
+	public int getRelazioniFormedByEliminate() {
+		return relazioniFormedByEliminate;
+	}
+
+	public int getRelazioniDuplicateOfEliminate() {
+		return relazioniDuplicateOfEliminate;
+	}
+
+	public int getMembriEliminati() {
+		return membriEliminati;
+	}
+
+	public int getRelazioniWrittenByEliminate() {
+		return relazioniWrittenByEliminate;
+	}
+
+	public int getOpereEliminate() {
+		return opereEliminate;
+	}
+
+	public int getAutoriEliminati() {
+		return autoriEliminati;
+	}
+
+	public int getDistribuzioniEliminate() {
+		return distribuzioniEliminate;
+	}
+
+	/**
+	 * Restituisce il numero totale di nodi e relazioni eliminati dall'ultima chiamata a pota(),
+	 * senza le distribuzioni dei sottotipi.
+	 *
+	 * @return il numero di nodi e relazioni eliminati
+	 */
+	public int getTotaleEliminati() {
+		return relazioniContainsEliminate + compostiEliminati + relazioniFormedByEliminate
+				+ relazioniDuplicateOfEliminate + membriEliminati + relazioniWrittenByEliminate
+				+ opereEliminate + autoriEliminati;
+	}
+
+	/**
+	 * Elimina dal DB i dati che non sono nel corpus. Le relazioni CONTAINS vengono confrontate
+	 * per prime, così quelle verso i composti da eliminare aggiornano le distribuzioni delle
+	 * opere; i membri e gli autori vengono eliminati se dopo la potatura non hanno più relazioni.
+	 * Il corpus deve contenere tutti i file: i dati di un file che non si è potuto leggere
+	 * verrebbero eliminati.
+	 *
+	 * @param corpus il corpus letto da tutti i file
+	 */
+	public void pota(Corpus corpus) {
+		Map<String, List<List<Object>>> chiaviPerLemma = new HashMap<>();
+		Set<List<Object>> composti = new HashSet<>();
+		Set<List<Object>> relazioniFormedBy = new HashSet<>();
+		for (Composto composto : corpus.getComposti()) {
+			List<Object> chiave = getChiave(composto);
+			composti.add(chiave);
+			chiaviPerLemma.computeIfAbsent(composto.getLemma(), l -> new ArrayList<>(1)).add(chiave);
+			Membro[] membri = composto.getMembri();
+			for (int i = 1; membri != null && i <= membri.length; i++) {
+				if (membri[i - 1] == null || membri[i - 1].isEmpty()) continue;
+				//la relazione FORMED_BY collega il membro a tutti i composti con lo stesso lemma,
+				//categoria morfologica, tipologia e sottotipologia
+				relazioniFormedBy.add(Arrays.asList(composto.getLemma(), composto.getCategoriaMorfologica(),
+						composto.getTipologia(), composto.getSottotipologia(), (long) i,
+						membri[i - 1].getLemma(), membri[i - 1].getCategoriaMorfologica()));
+			}
+		}
+
+		Set<List<Object>> relazioniDuplicateOf = new HashSet<>();
+		for (List<String> riga : corpus.getDoppioni()) {
+			for (int i = 0; i < riga.size() - 1; i++) {
+				for (int j = i + 1; j < riga.size(); j++) {
+					relazioniDuplicateOf.add(Arrays.asList(riga.get(j), riga.get(i)));
+				}
+			}
+		}
+
+		Set<List<Object>> opere = new HashSet<>();
+		Set<List<Object>> relazioniWrittenBy = new HashSet<>();
+		Map<List<Object>, Integer> relazioniContains = new HashMap<>();
+		for (Opera opera : corpus.getOpere()) {
+			List<Object> chiaveOpera = Arrays.asList(opera.getTitolo(), opera.getGenere(),
+					opera.getSottogenere(), opera.getAbbreviazione());
+			opere.add(chiaveOpera);
+			Autore autore = opera.getAutore();
+			relazioniWrittenBy.add(concatena(chiaveOpera, Arrays.asList(autore.getNome(),
+					(long) autore.getSecoloNascita(), (long) autore.getSecoloMorte())));
+			//come nell'importazione con la sincronizzazione, se il composto compare più volte 
+			//le occorrenze delle sue righe vengono sommate
+			for (Composto composto : opera.getComposti()) {
+				for (List<Object> chiaveComposto : chiaviPerLemma.getOrDefault(composto.getLemma(), List.of())) {
+					relazioniContains.merge(concatena(chiaveOpera, chiaveComposto), composto.getOccorrenze(), 
+							Integer::sum);
+				}
+			}
+		}
+
+		potaRelazioniContains(relazioniContains);
+		compostiEliminati = eliminaNodi("NominalCompound", trovaDaEliminare(
+				esecutore.esegui("MATCH NominalCompound potatura",
+						"MATCH (c:NominalCompound) RETURN elementId(c) AS id, "
+						+ "[c.lemma, c.lexicalCatergory, c.type, c.subtype, c.greekForm] AS chiave", Map.of()),
+				composti));
+		relazioniFormedByEliminate = eliminaRelazioni("FORMED_BY", trovaDaEliminare(
+				esecutore.esegui("MATCH FORMED_BY potatura",
+						"MATCH (c:NominalCompound)-[r:FORMED_BY]->(m:Member) RETURN elementId(r) AS id, "
+						+ "[elementId(c), elementId(m), r.position] AS estremi, "
+						+ "[c.lemma, c.lexicalCatergory, c.type, c.subtype, r.position, "
+						+ "m.lemma, m.lexicalCatergory] AS chiave", Map.of()),
+				relazioniFormedBy));
+		relazioniDuplicateOfEliminate = eliminaRelazioni("DUPLICATE_OF", trovaDaEliminare(
+				esecutore.esegui("MATCH DUPLICATE_OF potatura",
+						"MATCH (d:NominalCompound)-[r:DUPLICATE_OF]->(c:NominalCompound) RETURN elementId(r) AS id, "
+						+ "[elementId(d), elementId(c)] AS estremi, [d.lemma, c.lemma] AS chiave", Map.of()),
+				relazioniDuplicateOf));
+		membriEliminati = eliminaNodi("Member", getId(esecutore.esegui("MATCH Member potatura",
+				"MATCH (m:Member) WHERE NOT (m)<-[:FORMED_BY]-() RETURN elementId(m) AS id", Map.of())));
+
+		relazioniWrittenByEliminate = eliminaRelazioni("WRITTEN_BY", trovaDaEliminare(
+				esecutore.esegui("MATCH WRITTEN_BY potatura",
+						"MATCH (w:Work)-[r:WRITTEN_BY]->(a:Author) RETURN elementId(r) AS id, "
+						+ "[elementId(w), elementId(a)] AS estremi, [w.title, w.genre, w.subgenre, w.acronym, "
+						+ "a.name, a.centuryOfBirth, a.centuryOfDeath] AS chiave", Map.of()),
+				relazioniWrittenBy));
+		opereEliminate = eliminaNodi("Work", trovaDaEliminare(
+				esecutore.esegui("MATCH Work potatura",
+						"MATCH (w:Work) RETURN elementId(w) AS id, "
+						+ "[w.title, w.genre, w.subgenre, w.acronym] AS chiave", Map.of()),
+				opere));
+		autoriEliminati = eliminaNodi("Author", getId(esecutore.esegui("MATCH Author potatura",
+				"MATCH (a:Author) WHERE NOT (a)<-[:WRITTEN_BY]-() RETURN elementId(a) AS id", Map.of())));
+	}
+
+	/**
+	 * Elimina le relazioni CONTAINS che non sono nel corpus o che sono doppie, aggiorna
+	 * le occorrenze di quelle che sono cambiate e cancella le distribuzioni delle opere toccate.
+	 *
+	 * @param attese le occorrenze delle relazioni del corpus, per chiave dell'opera e del composto
+	 */
+	private void potaRelazioniContains(Map<List<Object>, Integer> attese) {
+		var result = esecutore.esegui("MATCH CONTAINS potatura",
+				"MATCH (w:Work)-[r:CONTAINS]->(c:NominalCompound) RETURN elementId(r) AS id, "
+				+ "[elementId(w), elementId(c)] AS estremi, r.occurrences AS occorrenze, "
+				+ "[w.title, w.genre, w.subgenre, w.acronym, c.lemma, c.lexicalCatergory, c.type, "
+				+ "c.subtype, c.greekForm] AS chiave", Map.of());
+		List<String> daEliminare = new ArrayList<>();
+		List<Map<String, Object>> daAggiornare = new ArrayList<>();
+		Set<String> acronimi = new HashSet<>();
+		Set<List<Object>> estremi = new HashSet<>();
+		for (Record record : result) {
+			List<Object> chiave = record.get("chiave").asList();
+			Integer occorrenze = attese.get(chiave);
+			if (occorrenze == null || !estremi.add(record.get("estremi").asList())) {
+				daEliminare.add(record.get("id").asString());
+			} else if (record.get("occorrenze").isNull() || record.get("occorrenze").asInt() != occorrenze) {
+				daAggiornare.add(Map.of("id", record.get("id").asString(), "occorrenze", occorrenze));
+			} else {
+				continue;
+			}
+			acronimi.add((String) chiave.get(3));
+		}
+		relazioniContainsEliminate = eliminaRelazioni("CONTAINS", daEliminare);
+		relazioniContainsAggiornate = daAggiornare.size();
+		for (int da = 0; da < daAggiornare.size(); da += dimensioneBlocco) {
+			esecutore.esegui("UNWIND SET CONTAINS potatura",
+					"UNWIND $righe AS riga MATCH ()-[r]->() WHERE elementId(r) = riga.id "
+					+ "SET r.occurrences = riga.occorrenze",
+					Map.of("righe", daAggiornare.subList(da, Math.min(da + dimensioneBlocco, daAggiornare.size()))));
+		}
+		distribuzioniEliminate = 0;
+		if (!acronimi.isEmpty()) {
+			distribuzioniEliminate = esecutore.esegui("DELETE SubtypeDistribution potatura",
+					"UNWIND $acronimi AS acronimo "
+					+ "MATCH (d:SubtypeDistribution {scope: $scope, name: acronimo}) "
+					+ "DETACH DELETE d RETURN count(d) AS distribuzioni",
+					Map.of("acronimi", new ArrayList<>(acronimi), "scope", AggregatoreSottotipi.OPERA))
+				.get(0).get("distribuzioni").asInt();
+		}
+	}
+
+	/**
+	 * Restituisce l'elementId dei nodi o delle relazioni la cui chiave non è tra quelle
+	 * attese. Se i record hanno gli estremi, cioè gli elementId dei nodi collegati dalla
+	 * relazione, vengono restituite anche le relazioni doppie tra gli stessi nodi.
+	 *
+	 * @param result i record con l'elementId, la chiave ed eventualmente gli estremi
+	 * @param attese le chiavi presenti nel corpus
+	 * @return gli elementId da eliminare
+	 */
+	private static List<String> trovaDaEliminare(List<Record> result, Set<List<Object>> attese) {
+		List<String> daEliminare = new ArrayList<>();
+		Set<List<Object>> estremi = new HashSet<>();
+		for (Record record : result) {
+			if (!attese.contains(record.get("chiave").asList())
+					|| (record.containsKey("estremi") && !estremi.add(record.get("estremi").asList()))) {
+				daEliminare.add(record.get("id").asString());
+			}
+		}
+		return daEliminare;
+	}
+
+	private static List<String> getId(List<Record> result) {
+		List<String> id = new ArrayList<>();
+		for (Record record : result) {
+			id.add(record.get("id").asString());
+		}
+		return id;
+	}
+
+	private static List<Object> concatena(List<Object> prima, List<Object> seconda) {
+		List<Object> chiave = new ArrayList<>(prima);
+		chiave.addAll(seconda);
+		return chiave;
+	}
+
+	private static List<Object> getChiave(Composto composto) {
+		return Arrays.asList(composto.getLemma(), composto.getCategoriaMorfologica(),
+				composto.getTipologia(), composto.getSottotipologia(), composto.getOriginaleGreco());
+	}
+
+	/**
+	 * Elimina a blocchi i nodi con gli elementId dati e le loro relazioni.
+	 *
+	 * @param etichetta l'etichetta dei nodi, usata per le metriche delle query
+	 * @param id gli elementId dei nodi
+	 * @return il numero di nodi eliminati
+	 */
+	private int eliminaNodi(String etichetta, List<String> id) {
+		for (int da = 0; da < id.size(); da += dimensioneBlocco) {
+			esecutore.esegui("UNWIND DELETE " + etichetta,
+					"UNWIND $id AS id MATCH (n) WHERE elementId(n) = id DETACH DELETE n",
+					Map.of("id", id.subList(da, Math.min(da + dimensioneBlocco, id.size()))));
+		}
+		return id.size();
+	}
+
+	/**
+	 * Elimina a blocchi le relazioni con gli elementId dati.
+	 *
+	 * @param tipo il tipo delle relazioni, usato per le metriche delle query
+	 * @param id gli elementId delle relazioni
+	 * @return il numero di relazioni eliminate
+	 */
+	private int eliminaRelazioni(String tipo, List<String> id) {
+		for (int da = 0; da < id.size(); da += dimensioneBlocco) {
+			esecutore.esegui("UNWIND DELETE " + tipo,
+					"UNWIND $id AS id MATCH ()-[r]->() WHERE elementId(r) = id DELETE r",
+					Map.of("id", id.subList(da, Math.min(da + dimensioneBlocco, id.size()))));
+		}
+		return id.size();
+	}
+
+}
@@ -0,0 +1,710 @@
+package it.gt.tesi.compostinominali;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.StringUtils;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Value;
+
+/**
+ * Le query di Cypher_queries.md come metodi Java con parametri tipizzati, con gli stessi
+ * nomi e gli stessi risultati dei metodi di GrafoCompatto. Le query usano parametri Cypher
+ * invece di valori scritti nel testo, quindi il DB riusa lo stesso piano per tutti i valori.
+ * I risultati vengono tenuti in una cache LRU di dimensione limitata, così le richieste
+ * ripetute non arrivano al DB. La cache viene svuotata quando cambia la generazione
+ * dell'importazione, un contatore nel nodo (:ImportGeneration {value}) che ElaboraFileExcelComposti
+ * incrementa alla fine di ogni importazione con incrementaGenerazione(). La generazione viene
+ * letta dal DB al più una volta ogni intervalloControlloMs millisecondi.
+ * Le distribuzioni dei sottotipi vengono lette dai nodi SubtypeDistribution scritti da
+ * AggregatoreSottotipi.
+ * I risultati restituiti sono immutabili e condivisi tra le chiamate; un oggetto QueryService
+ * può essere usato da più thread.
+ */
+public class QueryService implements AutoCloseable {
+
+	public static final int DIMENSIONE_CACHE_PREDEFINITA = 1000;
+	public static final long INTERVALLO_CONTROLLO_PREDEFINITO_MS = 5000;
+
+	private static final String RITORNO_OCCORRENZE = "RETURN c.lemma AS lemma, a.name AS autore, "
+			+ "w.title AS titolo, w.acronym AS acronimo, r.occurrences AS occorrenze, "
+			+ "c.type AS tipologia, c.subtype AS sottotipologia ";
+	private static final String RITORNO_MEMBRI = "RETURN c.lemma AS lemma, m1.lemma AS primoMembro, "
+			+ "m2.lemma AS secondoMembro, c.type AS tipologia, c.subtype AS sottotipologia "
+			+ "ORDER BY toLower(c.lemma), c.lemma, primoMembro, secondoMembro";
+
+	private final Driver dbDriver;
+	private final boolean chiudiDriver;
+	//esegui() fuori da inTransazione() non modifica l'esecutore, che quindi è condivisibile
+	private final EsecutoreQuery esecutore;
+	private final Map<List<Object>, Object> cache;
+	private final int dimensioneCache;
+	private final long intervalloControlloNs;
+
+	private long generazione = -1;
+	private long ultimoControllo;
+	private long ultimaLetturaApplicata;
+	private long risultatiDallaCache;
+	private long queryEseguite;
+
+	/**
+	 * Costruisce un oggetto QueryService sul DB dato, con la cache di dimensione e
+	 * l'intervallo di controllo della generazione predefiniti.
+	 *
+	 * @param dbDriver il driver del DB, che non viene chiuso da close()
+	 * @param dbName il nome del DB
+	 *
+	 * @throws IllegalArgumentException se dbDriver è null oppure se dbName è vuoto
+	 */
+	public QueryService(Driver dbDriver, String dbName) {
+		this(dbDriver, dbName, DIMENSIONE_CACHE_PREDEFINITA, INTERVALLO_CONTROLLO_PREDEFINITO_MS);
+	}
+
+	/**
+	 * Costruisce un oggetto QueryService sul DB dato.
+	 *
+	 * @param dbDriver il driver del DB, che non viene chiuso da close()
+	 * @param dbName il nome del DB
+	 * @param dimensioneCache il numero massimo di risultati nella cache, 0 per non usare la cache
+	 * @param intervalloControlloMs ogni quanti millisecondi leggere dal DB la generazione
+	 * dell'importazione, 0 per leggerla prima di ogni richiesta
+	 *
+	 * @throws IllegalArgumentException se dbDriver è null, oppure se dbName è vuoto,
+	 * 			oppure se dimensioneCache o intervalloControlloMs sono negativi
+	 */
+	public QueryService(Driver dbDriver, String dbName, int dimensioneCache, long intervalloControlloMs) {
+		this(dbDriver, dbName, dimensioneCache, intervalloControlloMs, false);
+	}
+
+	private QueryService(Driver dbDriver, String dbName, int dimensioneCache, long intervalloControlloMs,
+			boolean chiudiDriver) {
+		if (dbDriver == null)
+			throw new IllegalArgumentException("Il driver DB non può essere null");
+		if (StringUtils.isEmpty(dbName))
+			throw new IllegalArgumentException("Il nome del database non può essere vuoto");
+		if (dimensioneCache < 0)
+			throw new IllegalArgumentException("La dimensione della cache non può essere negativa");
+		if (intervalloControlloMs < 0)
+			throw new IllegalArgumentException("L'intervallo di controllo non può essere negativo");
+		this.dbDriver = dbDriver;
+		this.chiudiDriver = chiudiDriver;
+		this.esecutore = new EsecutoreQuery(dbDriver, dbName);
+		this.dimensioneCache = dimensioneCache;
+		this.intervalloControlloNs = intervalloControlloMs * 1_000_000;
+		this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+				return size() > QueryService.this.dimensioneCache;
+			}
+		};
+	}
+
+	/**
+	 * Crea un oggetto QueryService con le stesse proprietà di connessione dell'importazione
+	 * (dbURI, dbUser, dbPassword e dbName) e con le proprietà opzionali dimensione.cache.query
+	 * e intervallo.generazione.ms. Il driver viene creato qui e chiuso da close().
+	 *
+	 * @param prop le proprietà dell'applicazione
+	 * @return il QueryService collegato al DB
+	 *
+	 * @throws IllegalArgumentException se manca una delle proprietà di connessione
+	 * 			oppure se una proprietà opzionale non è un numero non negativo
+	 */
+	public static QueryService apri(Properties prop) {
+		for (String nome : List.of("dbURI", "dbUser", "dbPassword", "dbName")) {
+			if (StringUtils.isEmpty(prop.getProperty(nome)))
+				throw new IllegalArgumentException("Manca la proprietà " + nome);
+		}
+		int dimensioneCache = (int) getNumero(prop, "dimensione.cache.query", DIMENSIONE_CACHE_PREDEFINITA);
+		long intervallo = getNumero(prop, "intervallo.generazione.ms", INTERVALLO_CONTROLLO_PREDEFINITO_MS);
+		Driver dbDriver = ElaboraFileExcelComposti.getDatabaseDriver(prop.getProperty("dbURI"),
+				prop.getProperty("dbUser"), prop.getProperty("dbPassword"));
+		return new QueryService(dbDriver, prop.getProperty("dbName"), dimensioneCache, intervallo, true);
+	}
+
+	/**
+	 * Incrementa la generazione dell'importazione, così i QueryService collegati al DB
+	 * svuotano la cache al prossimo controllo.
+	 *
+	 * @param dbDriver il driver del DB
+	 * @param dbName il nome del DB
+	 * @return la nuova generazione
+	 */
+	public static long incrementaGenerazione(Driver dbDriver, String dbName) {
+		var result = new EsecutoreQuery(dbDriver, dbName).esegui("MERGE ImportGeneration",
+				"MERGE (g:ImportGeneration) SET g.value = coalesce(g.value, 0) + 1 RETURN g.value AS generazione",
+				Map.of());
+		return result.get(0).get("generazione").asLong();
+	}
+
+	public synchronized long getRisultatiDallaCache() {
+		return risultatiDallaCache;
+	}
+
+	public synchronized long getQueryEseguite() {
+		return queryEseguite;
+	}
+
+	/**
+	 * Svuota la cache senza aspettare che cambi la generazione dell'importazione.
+	 */
+	public synchronized void svuotaCache() {
+		cache.clear();
+	}
+
+	/**
+	 * Chiude il driver se è stato creato da apri().
+	 */
+	@Override
+	public void close() {
+		if (chiudiDriver) {
+			dbDriver.close();
+		}
+	}
+
+	/**
+	 * I valori di un ambito che hanno una distribuzione dei sottotipi in DB, per esempio
+	 * tutti gli acronimi delle opere o tutti i generi, in ordine alfabetico.
+	 *
+	 * @param ambito l'ambito
+	 * @return i valori dell'ambito
+	 */
+	public List<String> getValori(Ambito ambito) {
+		String scope = getScope(ambito);
+		return inCache(List.of("valori", scope), () -> {
+			List<String> valori = new ArrayList<>();
+			for (Record record : esegui("QueryService valori",
+					"MATCH (d:SubtypeDistribution {scope: $scope}) RETURN d.name AS valore ORDER BY valore",
+					Map.of("scope", scope))) {
+				valori.add(record.get("valore").asString());
+			}
+			return List.copyOf(valori);
+		});
+	}
+
+	/**
+	 * Le occorrenze di un composto in tutte le opere: "Occurences of a specific compound",
+	 * "All authors and works", ordinate per acronimo senza distinguere maiuscole e minuscole.
+	 *
+	 * @param lemma il lemma del composto
+	 * @return le relazioni CONTAINS del composto
+	 *
+	 * @throws IllegalArgumentException se lemma è null
+	 */
+	public List<OccorrenzaComposto> getOccorrenze(String lemma) {
+		if (lemma == null)
+			throw new IllegalArgumentException("Il lemma non può essere null");
+		return inCache(List.of("occorrenze", lemma), () -> creaOccorrenze(esegui("QueryService occorrenze",
+				"MATCH (c:NominalCompound {lemma: $lemma})<-[r:CONTAINS]-(w:Work), "
+				+ "(w)-[:WRITTEN_BY]->(a:Author) "
+				+ RITORNO_OCCORRENZE
+				+ "ORDER BY toLower(w.acronym), w.acronym",
+				Map.of("lemma", lemma))));
+	}
+
+	/**
+	 * Le occorrenze di un composto nelle opere di un ambito: "Specific author" con
+	 * Ambito.AUTORE e "Specific work" con Ambito.OPERA, ordinate per acronimo senza
+	 * distinguere maiuscole e minuscole.
+	 *
+	 * @param lemma il lemma del composto
+	 * @param ambito l'ambito delle opere, null per tutte le opere
+	 * @param valore il valore dell'ambito, per esempio il nome dell'autore
+	 * @return le relazioni CONTAINS del composto nelle opere dell'ambito
+	 *
+	 * @throws IllegalArgumentException se lemma è null, oppure se ambito non è null e valore è null
+	 */
+	public List<OccorrenzaComposto> getOccorrenze(String lemma, Ambito ambito, String valore) {
+		if (ambito == null) {
+			return getOccorrenze(lemma);
+		}
+		if (lemma == null)
+			throw new IllegalArgumentException("Il lemma non può essere null");
+		if (valore == null)
+			throw new IllegalArgumentException("Il valore dell'ambito non può essere null");
+		return inCache(List.of("occorrenze", lemma, ambito, valore), () -> creaOccorrenze(esegui(
+				"QueryService occorrenze " + getScope(ambito),
+				"MATCH (c:NominalCompound {lemma: $lemma})<-[r:CONTAINS]-(w:Work), "
+				+ "(w)-[:WRITTEN_BY]->(a:Author) "
+				+ "WHERE " + getProprieta(ambito) + " = $valore "
+				+ RITORNO_OCCORRENZE
+				+ "ORDER BY toLower(w.acronym), w.acronym",
+				Map.of("lemma", lemma, "valore", valore))));
+	}
+
+	/**
+	 * Tutti i composti delle opere di un ambito: "All nominal compounds in a specific work"
+	 * con Ambito.OPERA e "All nominal compounds in a specific author" con Ambito.AUTORE,
+	 * ordinati per lemma e poi per acronimo senza distinguere maiuscole e minuscole.
+	 *
+	 * @param ambito l'ambito delle opere
+	 * @param valore il valore dell'ambito, per esempio l'acronimo dell'opera
+	 * @return le relazioni CONTAINS delle opere dell'ambito
+	 *
+	 * @throws IllegalArgumentException se ambito o valore sono null
+	 */
+	public List<OccorrenzaComposto> getComposti(Ambito ambito, String valore) {
+		if (valore == null)
+			throw new IllegalArgumentException("Il valore dell'ambito non può essere null");
+		return inCache(List.of("composti", getScope(ambito), valore), () -> creaOccorrenze(esegui(
+				"QueryService composti " + getScope(ambito),
+				"MATCH (c:NominalCompound)<-[r:CONTAINS]-(w:Work), "
+				+ "(w)-[:WRITTEN_BY]->(a:Author) "
+				+ "WHERE " + getProprieta(ambito) + " = $valore "
+				+ RITORNO_OCCORRENZE
+				+ "ORDER BY toLower(c.lemma), toLower(w.acronym), c.lemma, w.acronym",
+				Map.of("valore", valore))));
+	}
+
+	/**
+	 * I composti che hanno il membro dato nella posizione data, con il primo e il secondo
+	 * membro: "All compounds sharing the first member" con posizione 1 e "All compounds
+	 * sharing the second member" con posizione 2, ordinati per lemma senza distinguere
+	 * maiuscole e minuscole.
+	 *
+	 * @param posizione la posizione del membro, 1 o 2
+	 * @param lemmaMembro il lemma del membro
+	 * @return i composti con il membro dato
+	 *
+	 * @throws IllegalArgumentException se posizione non è 1 o 2, oppure se lemmaMembro è null
+	 */
+	public List<CompostoConMembri> getCompostiConMembro(int posizione, String lemmaMembro) {
+		if (posizione != 1 && posizione != 2)
+			throw new IllegalArgumentException("La posizione del membro deve essere 1 o 2");
+		if (lemmaMembro == null)
+			throw new IllegalArgumentException("Il lemma del membro non può essere null");
+		return inCache(List.of("membro", posizione, lemmaMembro), () -> creaCompostiConMembri(esegui(
+				"QueryService membro " + posizione,
+				"MATCH (c:NominalCompound)-[r1:FORMED_BY]->(m1:Member), "
+				+ "(c)-[r2:FORMED_BY]->(m2:Member) "
+				+ "WHERE r1.position = 1 AND r2.position = 2 AND m" + posizione + ".lemma = $lemma "
+				+ RITORNO_MEMBRI,
+				Map.of("lemma", lemmaMembro))));
+	}
+
+	/**
+	 * I composti il cui lemma inizia con il prefisso dato, distinguendo maiuscole e
+	 * minuscole: "All compounds beginning in the same way". Per la variante "case-insensitive"
+	 * passare il prefisso in minuscolo. Ordinati per lemma senza distinguere maiuscole e minuscole.
+	 *
+	 * @param prefisso l'inizio del lemma
+	 * @return i composti che iniziano con prefisso, con il primo e il secondo membro
+	 *
+	 * @throws IllegalArgumentException se prefisso è null
+	 */
+	public List<CompostoConMembri> getCompostiCheIniziano(String prefisso) {
+		if (prefisso == null)
+			throw new IllegalArgumentException("Il prefisso non può essere null");
+		//la chiave normalizzata restringe i composti con l'indice, il lemma li filtra
+		return inCache(List.of("inizio", prefisso), () -> creaCompostiConMembri(esegui(
+				"QueryService inizio",
+				"MATCH (c:NominalCompound)-[r1:FORMED_BY]->(m1:Member), "
+				+ "(c)-[r2:FORMED_BY]->(m2:Member) "
+				+ "WHERE c.lemmaNormalized STARTS WITH $chiave AND c.lemma STARTS WITH $prefisso "
+				+ "AND r1.position = 1 AND r2.position = 2 "
+				+ RITORNO_MEMBRI,
+				Map.of("chiave", ChiaviLemma.normalizza(prefisso), "prefisso", prefisso))));
+	}
+
+	/**
+	 * I composti il cui lemma inizia con il prefisso dato senza distinguere maiuscole,
+	 * minuscole e segni diacritici, cercati con la chiave lemmaNormalized.
+	 * Ordinati per lemma senza distinguere maiuscole e minuscole.
+	 *
+	 * @param prefisso l'inizio del lemma
+	 * @return i composti che iniziano con prefisso, con il primo e il secondo membro
+	 *
+	 * @throws IllegalArgumentException se prefisso è null
+	 */
+	public List<CompostoConMembri> getCompostiCheInizianoNormalizzati(String prefisso) {
+		if (prefisso == null)
+			throw new IllegalArgumentException("Il prefisso non può essere null");
+		String chiave = ChiaviLemma.normalizza(prefisso);
+		return inCache(List.of("inizioNormalizzato", chiave), () -> creaCompostiConMembri(esegui(
+				"QueryService inizio normalizzato",
+				"MATCH (c:NominalCompound)-[r1:FORMED_BY]->(m1:Member), "
+				+ "(c)-[r2:FORMED_BY]->(m2:Member) "
+				+ "WHERE c.lemmaNormalized STARTS WITH $chiave AND r1.position = 1 AND r2.position = 2 "
+				+ RITORNO_MEMBRI,
+				Map.of("chiave", chiave))));
+	}
+
+	/**
+	 * I composti il cui lemma finisce con il suffisso dato, distinguendo maiuscole e
+	 * minuscole: "All compounds ending in the same way". Per la variante "case-insensitive"
+	 * passare il suffisso in minuscolo. Ordinati per lemma senza distinguere maiuscole e minuscole.
+	 *
+	 * @param suffisso la fine del lemma
+	 * @return i composti che finiscono con suffisso, con il primo e il secondo membro
+	 *
+	 * @throws IllegalArgumentException se suffisso è null
+	 */
+	public List<CompostoConMembri> getCompostiCheFiniscono(String suffisso) {
+		if (suffisso == null)
+			throw new IllegalArgumentException("Il suffisso non può essere null");
+		//ENDS WITH non usa gli indici range: la fine si cerca come inizio del lemma rovesciato
+		return inCache(List.of("fine", suffisso), () -> creaCompostiConMembri(esegui(
+				"QueryService fine",
+				"MATCH (c:NominalCompound)-[r1:FORMED_BY]->(m1:Member), "
+				+ "(c)-[r2:FORMED_BY]->(m2:Member) "
+				+ "WHERE c.lemmaReversed STARTS WITH $chiave AND c.lemma ENDS WITH $suffisso "
+				+ "AND r1.position = 1 AND r2.position = 2 "
+				+ RITORNO_MEMBRI,
+				Map.of("chiave", ChiaviLemma.rovescia(suffisso), "suffisso", suffisso))));
+	}
+
+	/**
+	 * I composti il cui lemma finisce con il suffisso dato senza distinguere maiuscole,
+	 * minuscole e segni diacritici, cercati con la chiave lemmaReversed.
+	 * Ordinati per lemma senza distinguere maiuscole e minuscole.
+	 *
+	 * @param suffisso la fine del lemma
+	 * @return i composti che finiscono con suffisso, con il primo e il secondo membro
+	 *
+	 * @throws IllegalArgumentException se suffisso è null
+	 */
+	public List<CompostoConMembri> getCompostiCheFinisconoNormalizzati(String suffisso) {
+		if (suffisso == null)
+			throw new IllegalArgumentException("Il suffisso non può essere null");
+		String chiave = ChiaviLemma.rovescia(suffisso);
+		return inCache(List.of("fineNormalizzata", chiave), () -> creaCompostiConMembri(esegui(
+				"QueryService fine normalizzata",
+				"MATCH (c:NominalCompound)-[r1:FORMED_BY]->(m1:Member), "
+				+ "(c)-[r2:FORMED_BY]->(m2:Member) "
+				+ "WHERE c.lemmaReversed STARTS WITH $chiave AND r1.position = 1 AND r2.position = 2 "
+				+ RITORNO_MEMBRI,
+				Map.of("chiave", chiave))));
+	}
+
+	/**
+	 * I tipi di composti di un ambito con il numero di relazioni CONTAINS e la percentuale
+	 * sul totale: "Types of compounds recurring in a specific work/author/subgenre/genre",
+	 * con e senza percentuale. Sono ordinati dalla sottotipologia più frequente alla meno
+	 * frequente e, a parità, per sottotipologia; le sottotipologie assenti non ci sono.
+	 *
+	 * @param ambito l'ambito delle opere
+	 * @param valore il valore dell'ambito
+	 * @return i conteggi delle sottotipologie presenti nell'ambito
+	 *
+	 * @throws IllegalArgumentException se ambito o valore sono null
+	 */
+	public List<ConteggioSottotipo> getDistribuzioneSottotipi(Ambito ambito, String valore) {
+		Distribuzione distribuzione = getDistribuzione(ambito, valore);
+		List<ConteggioSottotipo> righe = new ArrayList<>();
+		for (int i = 0; i < distribuzione.sottotipologie.size(); i++) {
+			int composti = distribuzione.composti.get(i);
+			if (composti > 0) {
+				righe.add(new ConteggioSottotipo(distribuzione.tipologie.get(i), distribuzione.sottotipologie.get(i),
+						composti, GrafoCompatto.getPercentuale(composti, distribuzione.totale)));
+			}
+		}
+		righe.sort(Comparator.comparingInt(ConteggioSottotipo::getOccorrenze).reversed()
+				.thenComparing(ConteggioSottotipo::getSottotipologia));
+		return List.copyOf(righe);
+	}
+
+	/**
+	 * I tipi di composti di un ambito con i valori zero: "All types of compounds with zero
+	 * values", nell'ordine fisso di GrafoCompatto.SOTTOTIPOLOGIE. La percentuale è sul
+	 * totale dell'ambito; la tipologia è quella dei composti della sottotipologia, null
+	 * se nessun composto ha la sottotipologia.
+	 *
+	 * @param ambito l'ambito delle opere
+	 * @param valore il valore dell'ambito
+	 * @return i conteggi di tutte le sottotipologie di GrafoCompatto.SOTTOTIPOLOGIE
+	 *
+	 * @throws IllegalArgumentException se ambito o valore sono null
+	 */
+	public List<ConteggioSottotipo> getDistribuzioneSottotipiConZeri(Ambito ambito, String valore) {
+		Distribuzione distribuzione = getDistribuzione(ambito, valore);
+		int[] conteggi = distribuzione.getConteggiSottotipologie();
+		Map<String, String> tipologie = getTipologie();
+		List<ConteggioSottotipo> righe = new ArrayList<>();
+		for (int s = 0; s < GrafoCompatto.SOTTOTIPOLOGIE.size(); s++) {
+			String sottotipologia = GrafoCompatto.SOTTOTIPOLOGIE.get(s);
+			righe.add(new ConteggioSottotipo(tipologie.get(sottotipologia), sottotipologia,
+					conteggi[s], GrafoCompatto.getPercentuale(conteggi[s], distribuzione.totale)));
+		}
+		return List.copyOf(righe);
+	}
+
+	/**
+	 * Confronta le sottotipologie di due ambiti: le query incrociate "Cross queries",
+	 * per esempio Work/Author (A/B) con Ambito.OPERA e Ambito.AUTORE.
+	 *
+	 * @param ambito1 l'ambito della prima colonna
+	 * @param valore1 il valore del primo ambito
+	 * @param ambito2 l'ambito della seconda colonna
+	 * @param valore2 il valore del secondo ambito
+	 * @return la tabella con una riga per sottotipologia e una colonna per ambito
+	 *
+	 * @throws IllegalArgumentException se uno degli ambiti o dei valori è null
+	 */
+	public ConfrontoSottotipi confronta(Ambito ambito1, String valore1, Ambito ambito2, String valore2) {
+		return confronta(List.of(getDistribuzione(ambito1, valore1), getDistribuzione(ambito2, valore2)),
+				List.of(valore1, valore2));
+	}
+
+	/**
+	 * Confronta le sottotipologie di più valori dello stesso ambito: "Multiple cross queries",
+	 * già nella forma della tabella pivot.
+	 *
+	 * @param ambito l'ambito di tutte le colonne
+	 * @param valori i valori da confrontare, uno per colonna
+	 * @return la tabella con una riga per sottotipologia e una colonna per valore
+	 *
+	 * @throws IllegalArgumentException se ambito o valori sono null, oppure se uno dei valori è null
+	 */
+	public ConfrontoSottotipi confronta(Ambito ambito, List<String> valori) {
+		if (valori == null)
+			throw new IllegalArgumentException("La lista dei valori non può essere null");
+		List<Distribuzione> distribuzioni = new ArrayList<>();
+		for (String valore : valori) {
+			distribuzioni.add(getDistribuzione(ambito, valore));
+		}
+		return confronta(distribuzioni, valori);
+	}
+
+	private static ConfrontoSottotipi confronta(List<Distribuzione> distribuzioni, List<String> valori) {
+		int[][] conteggi = new int[GrafoCompatto.SOTTOTIPOLOGIE.size()][valori.size()];
+		for (int colonna = 0; colonna < valori.size(); colonna++) {
+			int[] conteggiColonna = distribuzioni.get(colonna).getConteggiSottotipologie();
+			for (int s = 0; s < conteggiColonna.length; s++) {
+				conteggi[s][colonna] = conteggiColonna[s];
+			}
+		}
+		return new ConfrontoSottotipi(GrafoCompatto.SOTTOTIPOLOGIE, valori, conteggi);
+	}
+
+	/**
+	 * Restituisce la tipologia dei composti di ogni sottotipologia, o la prende dalla cache.
+	 *
+	 * @return la tipologia per sottotipologia
+	 */
+	private Map<String, String> getTipologie() {
+		return inCache(List.of("tipologie"), () -> {
+			Map<String, String> tipologie = new HashMap<>();
+			for (Record record : esegui("QueryService tipologie",
+					"MATCH (c:NominalCompound) "
+					+ "RETURN c.subtype AS sottotipologia, min(c.type) AS tipologia",
+					Map.of())) {
+				tipologie.put(record.get("sottotipologia").asString(), record.get("tipologia").asString());
+			}
+			return Map.copyOf(tipologie);
+		});
+	}
+
+	/**
+	 * Legge il nodo SubtypeDistribution dell'ambito, o lo prende dalla cache.
+	 *
+	 * @param ambito l'ambito
+	 * @param valore il valore dell'ambito
+	 * @return la distribuzione, vuota se il nodo non esiste
+	 *
+	 * @throws IllegalArgumentException se ambito o valore sono null
+	 */
+	private Distribuzione getDistribuzione(Ambito ambito, String valore) {
+		String scope = getScope(ambito);
+		if (valore == null)
+			throw new IllegalArgumentException("Il valore dell'ambito non può essere null");
+		return inCache(List.of("distribuzione", scope, valore), () -> {
+			var result = esegui("QueryService distribuzione",
+					"MATCH (d:SubtypeDistribution {scope: $scope, name: $name}) "
+					+ "RETURN d.types AS tipologie, d.subtypes AS sottotipologie, d.compounds AS composti",
+					Map.of("scope", scope, "name", valore));
+			if (result.isEmpty()) {
+				return new Distribuzione(List.of(), List.of(), List.of());
+			}
+			Record record = result.get(0);
+			return new Distribuzione(record.get("tipologie").asList(Value::asString),
+					record.get("sottotipologie").asList(Value::asString),
+					record.get("composti").asList(Value::asInt));
+		});
+	}
+
+	/**
+	 * Restituisce il risultato con la chiave data dalla cache, se c'è, altrimenti esegue la
+	 * query e ve lo aggiunge. Prima controlla se è cambiata la generazione dell'importazione.
+	 * Il risultato viene aggiunto solo se nel frattempo la generazione non è cambiata,
+	 * così un risultato letto prima di una nuova importazione non resta nella cache.
+	 *
+	 * @param <T> il tipo del risultato, che deve essere immutabile
+	 * @param chiave il nome della query e i suoi parametri
+	 * @param query la query da eseguire se il risultato non è nella cache
+	 * @return il risultato
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T inCache(List<Object> chiave, Supplier<T> query) {
+		controllaGenerazione();
+		long generazioneQuery;
+		synchronized (this) {
+			Object risultato = cache.get(chiave);
+			if (risultato != null) {
+				risultatiDallaCache++;
+				return (T) risultato;
+			}
+			queryEseguite++;
+			generazioneQuery = generazione;
+		}
+		T risultato = query.get();
+		synchronized (this) {
+			if (generazione == generazioneQuery && dimensioneCache > 0) {
+				cache.put(chiave, risultato);
+			}
+		}
+		return risultato;
+	}
+
+	/**
+	 * Legge dal DB la generazione dell'importazione se è passato l'intervallo di controllo
+	 * dall'ultima lettura e svuota la cache se è cambiata. La lettura avviene fuori dal lock,
+	 * così le richieste servite dalla cache non aspettano il DB; il lock serve solo a decidere
+	 * chi legge e ad applicare il risultato. Una lettura più vecchia di quella già applicata
+	 * viene scartata.
+	 */
+	private void controllaGenerazione() {
+		long adesso = System.nanoTime();
+		synchronized (this) {
+			if (generazione >= 0 && adesso - ultimoControllo < intervalloControlloNs) {
+				return;
+			}
+			//gli altri thread usano la cache fino al prossimo intervallo invece di rileggere
+			ultimoControllo = adesso;
+		}
+		var result = esegui("QueryService generazione",
+				"OPTIONAL MATCH (g:ImportGeneration) RETURN coalesce(max(g.value), 0) AS generazione",
+				Map.of());
+		long letta = result.get(0).get("generazione").asLong();
+		synchronized (this) {
+			if (generazione >= 0 && adesso - ultimaLetturaApplicata < 0) {
+				return;
+			}
+			ultimaLetturaApplicata = adesso;
+			if (letta != generazione) {
+				cache.clear();
+				generazione = letta;
+			}
+		}
+	}
+
+	private List<Record> esegui(String tipo, String query, Map<String, Object> parametri) {
+		return esecutore.esegui(tipo, query, parametri);
+	}
+
+	private static List<OccorrenzaComposto> creaOccorrenze(List<Record> result) {
+		List<OccorrenzaComposto> righe = new ArrayList<>(result.size());
+		for (Record record : result) {
+			righe.add(new OccorrenzaComposto(record.get("lemma").asString(), record.get("autore").asString(),
+					record.get("titolo").asString(), record.get("acronimo").asString(),
+					record.get("occorrenze").asInt(), record.get("tipologia").asString(),
+					record.get("sottotipologia").asString()));
+		}
+		return List.copyOf(righe);
+	}
+
+	private static List<CompostoConMembri> creaCompostiConMembri(List<Record> result) {
+		List<CompostoConMembri> righe = new ArrayList<>(result.size());
+		for (Record record : result) {
+			righe.add(new CompostoConMembri(record.get("lemma").asString(),
+					record.get("primoMembro").asString(), record.get("secondoMembro").asString(),
+					record.get("tipologia").asString(), record.get("sottotipologia").asString()));
+		}
+		return List.copyOf(righe);
+	}
+
+	/**
+	 * Restituisce il valore di scope dei nodi SubtypeDistribution dell'ambito.
+	 *
+	 * @param ambito l'ambito
+	 * @return work, author, subgenre oppure genre
+	 *
+	 * @throws IllegalArgumentException se ambito è null
+	 */
+	static String getScope(Ambito ambito) {
+		if (ambito == null)
+			throw new IllegalArgumentException("L'ambito non può essere null");
+		switch (ambito) {
+		case OPERA:
+			return AggregatoreSottotipi.OPERA;
+		case AUTORE:
+			return AggregatoreSottotipi.AUTORE;
+		case SOTTOGENERE:
+			return AggregatoreSottotipi.SOTTOGENERE;
+		default:
+			return AggregatoreSottotipi.GENERE;
+		}
+	}
+
+	/**
+	 * Restituisce la proprietà con cui le query del catalogo selezionano le opere dell'ambito.
+	 *
+	 * @param ambito l'ambito
+	 * @return la proprietà di w (Work) o di a (Author)
+	 */
+	private static String getProprieta(Ambito ambito) {
+		switch (ambito) {
+		case OPERA:
+			return "w.acronym";
+		case AUTORE:
+			return "a.name";
+		case SOTTOGENERE:
+			return "w.subgenre";
+		default:
+			return "w.genre";
+		}
+	}
+
+	private static long getNumero(Properties prop, String nome, long predefinito) {
+		String valore = prop.getProperty(nome);
+		if (StringUtils.isEmpty(valore)) {
+			return predefinito;
+		}
+		if (!StringUtils.isNumeric(valore))
+			throw new IllegalArgumentException("La proprietà " + nome + " deve essere un numero non negativo");
+		return Long.parseLong(valore);
+	}
+
+	/**
+	 * Le liste parallele di un nodo SubtypeDistribution. È immutabile.
+	 */
+	private static class Distribuzione {
+
+		private final List<String> tipologie;
+		private final List<String> sottotipologie;
+		private final List<Integer> composti;
+		private final int totale;
+
+		private Distribuzione(List<String> tipologie, List<String> sottotipologie, List<Integer> composti) {
+			this.tipologie = List.copyOf(tipologie);
+			this.sottotipologie = List.copyOf(sottotipologie);
+			this.composti = List.copyOf(composti);
+			int somma = 0;
+			for (int n : composti) {
+				somma += n;
+			}
+			this.totale = somma;
+		}
+
+		private int[] getConteggiSottotipologie() {
+			int[] conteggi = new int[GrafoCompatto.SOTTOTIPOLOGIE.size()];
+			for (int i = 0; i < sottotipologie.size(); i++) {
+				int s = GrafoCompatto.SOTTOTIPOLOGIE.indexOf(sottotipologie.get(i));
+				if (s >= 0) {
+					conteggi[s] += composti.get(i);
+				}
+			}
+			return conteggi;
+		}
+
+	}
+
+}
@@ -0,0 +1,265 @@
+package it.gt.tesi.compostinominali;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Il report di un'importazione: la durata e le righe al secondo di ogni fase (indici, 
+ * composti, doppioni, cache e ogni file opera) con i contatori stampati dagli elaboratori,
+ * e gli istogrammi delle latenze delle query raccolti da MetricheQuery. Alla fine
+ * dell'importazione il report viene scritto in un file JSON, da confrontare tra 
+ * un'importazione e l'altra per accorgersi dei peggioramenti.
+ * Le fasi possono essere registrate da più thread contemporaneamente.
+ */
+public class ReportImportazione {
+	
+	//le proprietà da non scrivere nel report
+	private static final List<String> PROPRIETA_RISERVATE = List.of("dbPassword");
+	
+	private final Instant inizio = Instant.now();
+	private final long inizioNanosecondi = System.nanoTime();
+	private final Map<String, String> opzioni = new TreeMap<>();
+	private final List<Fase> fasi = new ArrayList<>();
+	
+	/**
+	 * Costruisce il report di un'importazione che inizia adesso con le proprietà date. 
+	 * Gli istogrammi delle latenze di eventuali importazioni precedenti vengono azzerati.
+	 * 
+	 * @param prop le proprietà dell'applicazione, la password del DB non viene riportata
+	 */
+	public ReportImportazione(Properties prop) {
+		for (String nome : prop.stringPropertyNames()) {
+			if (!PROPRIETA_RISERVATE.contains(nome)) {
+				opzioni.put(nome, prop.getProperty(nome));
+			}
+		}
+		MetricheQuery.azzera();
+	}
+	
+	/**
+	 * Inizia una fase dell'importazione. La fase viene aggiunta al report quando 
+	 * viene chiamato il suo metodo termina().
+	 * 
+	 * @param tipo il tipo di fase: schema, composti, doppioni, cache, opere (tutti i file
+	 * opera) oppure opera (un file opera)
+	 * @param nome il nome della fase, per le opere il nome del file
+	 * @return la fase iniziata
+	 */
+	public Fase iniziaFase(String tipo, String nome) {
+		return new Fase(tipo, nome);
+	}
+	
+	/**
+	 * Scrive il report in formato JSON nel file dato, sostituendolo se esiste.
+	 * 
+	 * @param file il file in cui scrivere il report
+	 * @throws IOException se il file non si può scrivere
+	 */
+	public void scrivi(File file) throws IOException {
+		long durataTotale = (System.nanoTime() - inizioNanosecondi) / 1_000_000;
+		File temporaneo = new File(file.getPath() + ".tmp");
+		try (Writer writer = Files.newBufferedWriter(temporaneo.toPath(), StandardCharsets.UTF_8)) {
+			writer.write("{\n");
+			writer.write("  \"inizio\": " + getStringaJson(inizio.toString()) + ",\n");
+			writer.write("  \"durataMs\": " + durataTotale + ",\n");
+			writer.write("  \"opzioni\": {");
+			String separatore = "\n";
+			for (Map.Entry<String, String> opzione : opzioni.entrySet()) {
+				writer.write(separatore + "    " + getStringaJson(opzione.getKey()) 
+						+ ": " + getStringaJson(opzione.getValue()));
+				separatore = ",\n";
+			}
+			writer.write("\n  },\n");
+			
+			writer.write("  \"fasi\": [");
+			separatore = "\n";
+			for (Fase fase : getFasi()) {
+				writer.write(separatore + "    {\"tipo\": " + getStringaJson(fase.tipo) 
+						+ ", \"nome\": " + getStringaJson(fase.nome) 
+						+ ", \"durataMs\": " + fase.durataMs
+						+ ", \"righe\": " + fase.righe
+						+ ", \"righePerSecondo\": " + fase.getRighePerSecondo()
+						+ ", \"contatori\": {");
+				String separatoreContatori = "";
+				for (Map.Entry<String, Integer> contatore : fase.contatori.entrySet()) {
+					writer.write(separatoreContatori + getStringaJson(contatore.getKey()) 
+							+ ": " + contatore.getValue());
+					separatoreContatori = ", ";
+				}
+				writer.write("}}");
+				separatore = ",\n";
+			}
+			writer.write("\n  ],\n");
+			
+			writer.write("  \"query\": [");
+			separatore = "\n";
+			for (Map.Entry<String, IstogrammaLatenze> voce : MetricheQuery.getIstogrammi().entrySet()) {
+				IstogrammaLatenze istogramma = voce.getValue();
+				writer.write(separatore + "    {\"tipo\": " + getStringaJson(voce.getKey()) 
+						+ ", \"conteggio\": " + istogramma.getConteggio()
+						+ ", \"totaleUs\": " + istogramma.getTotaleMicrosecondi()
+						+ ", \"mediaUs\": " + istogramma.getMediaMicrosecondi()
+						+ ", \"p50Us\": " + istogramma.getPercentileMicrosecondi(50)
+						+ ", \"p95Us\": " + istogramma.getPercentileMicrosecondi(95)
+						+ ", \"p99Us\": " + istogramma.getPercentileMicrosecondi(99)
+						+ ", \"massimoUs\": " + istogramma.getMassimoMicrosecondi()
+						+ ", \"istogramma\": {");
+				//si scrivono solo le classi non vuote, con il loro limite superiore in microsecondi
+				String separatoreClassi = "";
+				for (int i = 0; i < istogramma.getNumeroClassi(); i++) {
+					long conteggio = istogramma.getConteggioClasse(i);
+					if (conteggio == 0) continue;
+					writer.write(separatoreClassi + "\"" + IstogrammaLatenze.getLimiteClasse(i) 
+							+ "\": " + conteggio);
+					separatoreClassi = ", ";
+				}
+				writer.write("}}");
+				separatore = ",\n";
+			}
+			writer.write("\n  ]\n");
+			writer.write("}\n");
+		}
+		Files.move(temporaneo.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	/**
+	 * Stampa su System.out la durata e le righe al secondo delle fasi, tranne quelle dei 
+	 * singoli file opera, e le query con la latenza media e il 95° percentile.
+	 */
+	public void stampaRiepilogo() {
+		System.out.println("\nDurata delle fasi (ms / righe / righe al secondo)");
+		for (Fase fase : getFasi()) {
+			if (!fase.tipo.equals("opera")) {
+				System.out.println(fase.nome + ": " + fase.durataMs + " / " + fase.righe 
+						+ " / " + fase.getRighePerSecondo());
+			}
+		}
+		
+		System.out.println("\nLatenze delle query in microsecondi (esecuzioni / media / 95° percentile)");
+		for (Map.Entry<String, IstogrammaLatenze> voce : MetricheQuery.getIstogrammi().entrySet()) {
+			IstogrammaLatenze istogramma = voce.getValue();
+			System.out.println(voce.getKey() + ": " + istogramma.getConteggio() + " / " 
+					+ istogramma.getMediaMicrosecondi() + " / " + istogramma.getPercentileMicrosecondi(95));
+		}
+	}
+	
+	/**
+	 * Restituisce una copia delle fasi terminate, nell'ordine in cui sono terminate.
+	 * 
+	 * @return le fasi terminate
+	 */
+	private List<Fase> getFasi() {
+		synchronized (fasi) {
+			return new ArrayList<>(fasi);
+		}
+	}
+	
+	/**
+	 * Restituisce le righe elaborate al secondo, 0 se la durata è 0.
+	 * 
+	 * @param righe le righe elaborate
+	 * @param durataMs la durata in millisecondi
+	 * @return le righe al secondo arrotondate all'intero
+	 */
+	private static long getRighePerSecondo(long righe, long durataMs) {
+		return durataMs == 0 ? 0 : Math.round(righe * 1000.0 / durataMs);
+	}
+	
+	/**
+	 * Restituisce la stringa data tra virgolette con i caratteri speciali JSON sostituiti
+	 * dalle loro sequenze di escape.
+	 * 
+	 * @param valore la stringa da scrivere, può essere null
+	 * @return la stringa JSON
+	 */
+	private static String getStringaJson(String valore) {
+		if (valore == null) return "null";
+		StringBuilder sb = new StringBuilder("\"");
+		for (char c : valore.toCharArray()) {
+			switch (c) {
+				case '"': sb.append("\\\""); break;
+				case '\\': sb.append("\\\\"); break;
+				case '\n': sb.append("\\n"); break;
+				case '\r': sb.append("\\r"); break;
+				case '\t': sb.append("\\t"); break;
+				default:
+					if (c < 0x20) {
+						sb.append(String.format("\\u%04x", (int) c));
+					} else {
+						sb.append(c);
+					}
+			}
+		}
+		return sb.append('"').toString();
+	}
+	
+	/**
+	 * Una fase dell'importazione. Mentre è in corso viene registrata anche come 
+	 * evento JFR EventoFase.
+	 */
+	public class Fase {
+		
+		private final String tipo;
+		private final String nome;
+		private final long inizioNanosecondi = System.nanoTime();
+		private final EventoFase evento = new EventoFase();
+		private final Map<String, Integer> contatori = new LinkedHashMap<>();
+		private long durataMs;
+		private long righe;
+		
+		private Fase(String tipo, String nome) {
+			this.tipo = tipo;
+			this.nome = nome;
+			evento.begin();
+		}
+		
+		/**
+		 * Aggiunge alla fase un contatore da riportare nel report.
+		 * 
+		 * @param nome il nome del contatore
+		 * @param valore il valore del contatore
+		 * @return questa fase
+		 */
+		public Fase conContatore(String nome, int valore) {
+			contatori.put(nome, valore);
+			return this;
+		}
+		
+		/**
+		 * Termina la fase e la aggiunge al report.
+		 * 
+		 * @param righe il numero di righe elaborate nella fase
+		 */
+		public void termina(long righe) {
+			this.durataMs = (System.nanoTime() - inizioNanosecondi) / 1_000_000;
+			this.righe = righe;
+			evento.end();
+			if (evento.shouldCommit()) {
+				evento.tipo = tipo;
+				evento.nome = nome;
+				evento.righe = righe;
+				evento.commit();
+			}
+			synchronized (fasi) {
+				fasi.add(this);
+			}
+		}
+		
+		private long getRighePerSecondo() {
+			return ReportImportazione.getRighePerSecondo(righe, durataMs);
+		}
+		
+	}
+
+}
@@ -0,0 +1,64 @@
+package it.gt.tesi.compostinominali;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+
+/**
+ * La classe che contiene le celle di una riga di un foglio di calcolo. Come in {@link Row}
+ * le celle che non sono presenti nel file valgono null.
+ */
+public class RigaFoglio {
+	
+	private final int rowNum;
+	private final CellaFoglio[] celle;
+	
+	/**
+	 * Costruisce la riga con il dato numero (su base zero) e le date celle.
+	 * 
+	 * @param rowNum il numero della riga su base zero
+	 * @param celle le celle della riga, null per le celle non presenti
+	 */
+	RigaFoglio(int rowNum, CellaFoglio[] celle) {
+		this.rowNum = rowNum;
+		this.celle = celle;
+	}
+	
+	/**
+	 * Crea la riga a partire da una riga caricata con POI.
+	 * 
+	 * @param row la riga di POI
+	 * @return la riga con le stesse celle di row
+	 */
+	static RigaFoglio da(Row row) {
+		CellaFoglio[] celle = new CellaFoglio[Math.max(row.getLastCellNum(), 0)];
+		for (Cell cell : row) {
+			celle[cell.getColumnIndex()] = CellaFoglio.da(cell);
+		}
+		return new RigaFoglio(row.getRowNum(), celle);
+	}
+	
+	public int getRowNum() {
+		return rowNum;
+	}
+	
+	/**
+	 * Restituisce la cella alla colonna data o null se la cella non è presente.
+	 * 
+	 * @param indice l'indice su base zero della colonna
+	 * @return la cella alla colonna indice o null
+	 */
+	public CellaFoglio getCell(int indice) {
+		return indice >= 0 && indice < celle.length ? celle[indice] : null;
+	}
+	
+	/**
+	 * Restituisce l'indice dell'ultima cella presente aumentato di uno, 
+	 * oppure -1 se la riga non ha celle.
+	 * 
+	 * @return l'indice dell'ultima cella più uno o -1
+	 */
+	public int getLastCellNum() {
+		return celle.length > 0 ? celle.length : -1;
+	}
+
+}
@@ -0,0 +1,131 @@
+package it.gt.tesi.compostinominali;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+
+import org.neo4j.driver.Record;
+
+/**
+ * Invia le scritture con EsecutoreQuery.eseguiAsincrona() tenendone in corso al massimo
+ * un numero dato, così un solo thread tiene occupata la connessione Bolt senza aspettare
+ * la risposta di ogni scrittura prima di inviare la successiva. Quando le scritture in
+ * corso sono già quelle massime invia() blocca il thread chiamante finché il DB non ne
+ * conferma una: se il server rallenta, rallenta anche la lettura del foglio e in memoria
+ * non restano mai più di scrittureInVolo scritture in attesa.
+ * Le scritture con la stessa chiave vengono eseguite una dopo l'altra nell'ordine di invio,
+ * perché due MERGE dello stesso pattern in transazioni concorrenti potrebbero creare due
+ * volte lo stesso nodo o la stessa relazione; quelle con chiavi diverse non hanno un ordine.
+ */
+public class ScrittoreAsincrono {
+
+	private final EsecutoreQuery esecutore;
+	private final int scrittureInVolo;
+	private final Semaphore permessi;
+	//l'ultima scrittura inviata per ogni chiave, finché non è terminata
+	private final Map<Object, CompletableFuture<Void>> ultimaPerChiave = new ConcurrentHashMap<>();
+
+	//la prima eccezione lanciata dalla gestione di un esito, rilanciata da chiudi()
+	private volatile RuntimeException errore;
+	private int volteInAttesa;
+
+	/**
+	 * Costruisce uno ScrittoreAsincrono che invia le scritture con l'esecutore dato.
+	 *
+	 * @param esecutore l'esecutore con cui inviare le scritture
+	 * @param scrittureInVolo il numero massimo di scritture in corso
+	 *
+	 * @throws IllegalArgumentException se esecutore è null oppure se scrittureInVolo è minore di 1
+	 */
+	public ScrittoreAsincrono(EsecutoreQuery esecutore, int scrittureInVolo) {
+		if (esecutore == null)
+			throw new IllegalArgumentException("L'esecutore non può essere null");
+		if (scrittureInVolo < 1)
+			throw new IllegalArgumentException("Le scritture in volo devono essere almeno 1");
+		this.esecutore = esecutore;
+		this.scrittureInVolo = scrittureInVolo;
+		this.permessi = new Semaphore(scrittureInVolo);
+	}
+
+	/**
+	 * Restituisce quante volte invia() ha trovato già in corso tutte le scritture
+	 * possibili e ha dovuto aspettare il DB. Va letto dopo chiudi().
+	 *
+	 * @return il numero di attese del thread chiamante
+	 */
+	public int getVolteInAttesa() {
+		return volteInAttesa;
+	}
+
+	/**
+	 * Invia la scrittura, aspettando se sono già in corso tutte le scritture possibili.
+	 * L'esito viene passato a esito in un thread del driver: i record restituiti dalla
+	 * query e null se è riuscita, null e l'eccezione se è fallita. esito deve gestire
+	 * da sé gli errori della scrittura, non bloccare il thread e, se modifica campi
+	 * condivisi, sincronizzarsi.
+	 *
+	 * @param chiave la chiave delle scritture da eseguire nell'ordine di invio
+	 * @param tipo il tipo di query per le statistiche delle latenze
+	 * @param query la query da eseguire
+	 * @param parametri i parametri della query
+	 * @param esito la gestione dell'esito della scrittura
+	 *
+	 * @throws IllegalStateException se il thread viene interrotto durante l'attesa
+	 */
+	public void invia(Object chiave, String tipo, String query, Map<String, Object> parametri,
+			BiConsumer<List<Record>, Throwable> esito) {
+		try {
+			if (!permessi.tryAcquire()) {
+				volteInAttesa++;
+				permessi.acquire();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrotta l'attesa delle scritture in corso", e);
+		}
+		CompletableFuture<Void> precedente = ultimaPerChiave.getOrDefault(chiave, 
+				CompletableFuture.completedFuture(null));
+		CompletableFuture<Void> scrittura = precedente
+				.thenCompose(fatto -> esecutore.eseguiAsincrona(tipo, query, parametri))
+				.handle((records, eccezione) -> {
+					try {
+						esito.accept(records, eccezione instanceof CompletionException ? eccezione.getCause() : eccezione);
+					} catch (RuntimeException e) {
+						if (errore == null) {
+							errore = e;
+						}
+					}
+					return null;
+				});
+		ultimaPerChiave.put(chiave, scrittura);
+		scrittura.whenComplete((fatto, eccezione) -> {
+			ultimaPerChiave.remove(chiave, scrittura);
+			permessi.release();
+		});
+	}
+
+	/**
+	 * Aspetta che tutte le scritture inviate siano terminate. Dopo chiudi() i campi
+	 * modificati dalla gestione degli esiti sono visibili al thread che l'ha chiamato.
+	 *
+	 * @throws IllegalStateException se il thread viene interrotto durante l'attesa
+	 * @throws RuntimeException la prima eccezione lanciata dalla gestione di un esito
+	 */
+	public void chiudi() {
+		try {
+			permessi.acquire(scrittureInVolo);
+			permessi.release(scrittureInVolo);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrotta l'attesa delle scritture in corso", e);
+		}
+		if (errore != null) {
+			throw errore;
+		}
+	}
+
+}
@@ -0,0 +1,303 @@
+package it.gt.tesi.compostinominali.harness;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import org.neo4j.configuration.GraphDatabaseSettings;
+import org.neo4j.configuration.connectors.BoltConnector;
+import org.neo4j.configuration.helpers.SocketAddress;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.dbms.api.DatabaseManagementServiceBuilder;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import it.gt.tesi.compostinominali.ElaboraFileExcelComposti;
+
+/**
+ * Il collaudo dell'importazione da un capo all'altro: avvia nella stessa JVM un DBMS 
+ * neo4j embedded usa e getta con il connettore Bolt, vi importa i file di Dataset con
+ * ElaboraFileExcelComposti e verifica il numero di nodi e di relazioni creati rispetto 
+ * a quelli attesi in conteggi-attesi.properties. La durata dell'importazione viene 
+ * scritta nel file metriche-collaudo.properties della directory di output e, se supera
+ * la durata massima, il collaudo fallisce. Termina con codice 0 se il collaudo è 
+ * riuscito e con codice 1 altrimenti.
+ */
+public class CollaudoImportazione {
+	
+	//le proprietà del collaudo, le altre vengono passate all'importazione
+	private static final List<String> PROPRIETA_COLLAUDO = 
+			List.of("dir.dataset", "dir.output", "durata.massima.secondi");
+	
+	//le opzioni dell'importazione di config.properties, sovrascrivibili dagli argomenti
+	private static final Map<String, String> OPZIONI_IMPORTAZIONE = new LinkedHashMap<>();
+	static {
+		OPZIONI_IMPORTAZIONE.put("dimensione.batch", "500");
+		OPZIONI_IMPORTAZIONE.put("lettura.streaming", "true");
+		OPZIONI_IMPORTAZIONE.put("numero.thread", "4");
+		OPZIONI_IMPORTAZIONE.put("cache.composti", "true");
+		OPZIONI_IMPORTAZIONE.put("righe.per.transazione", "1000");
+		OPZIONI_IMPORTAZIONE.put("dimensione.coda", "4");
+	}
+	
+	private static final String DB_NAME = GraphDatabaseSettings.DEFAULT_DATABASE_NAME;
+
+	/**
+	 * Esegue il collaudo.
+	 * 
+	 * @param args gli argomenti nella forma chiave=valore: dir.dataset (la directory 
+	 * Dataset, per default ../Dataset), dir.output (per default target/collaudo), 
+	 * durata.massima.secondi (per default 180) e le opzioni dell'importazione da 
+	 * cambiare, per esempio numero.thread=8
+	 */
+	public static void main(String[] args) {
+		Properties prop = creaPropertiesDaArgument(args);
+		File dirDataset = new File(prop.getProperty("dir.dataset", "../Dataset"));
+		File dirOutput = new File(prop.getProperty("dir.output", "target/collaudo"));
+		long durataMassimaMs = Long.parseLong(prop.getProperty("durata.massima.secondi", "180")) * 1000;
+		
+		Path dirDB = null;
+		DatabaseManagementService dbms = null;
+		boolean riuscito = false;
+		try {
+			Files.createDirectories(dirOutput.toPath());
+			dirDB = Files.createTempDirectory("collaudo-neo4j");
+			int porta = getPortaLibera();
+			System.out.println("Avvio il DBMS neo4j embedded in " + dirDB + " sulla porta " + porta);
+			dbms = new DatabaseManagementServiceBuilder(dirDB)
+					.setConfig(BoltConnector.enabled, true)
+					.setConfig(BoltConnector.listen_address, new SocketAddress("localhost", porta))
+					.setConfig(GraphDatabaseSettings.auth_enabled, false)
+					.build();
+			GraphDatabaseService db = dbms.database(DB_NAME);
+			
+			List<String> argomenti = new ArrayList<>();
+			argomenti.add("file.composti.nominali=" + new File(dirDataset, "Compounds.xlsx").getPath());
+			argomenti.add("dir.input=" + new File(dirDataset, "Authors").getPath());
+			argomenti.add("dbURI=bolt://localhost:" + porta);
+			argomenti.add("dbUser=neo4j");
+			argomenti.add("dbPassword=neo4j");
+			argomenti.add("dbName=" + DB_NAME);
+			argomenti.add("file.report=" + new File(dirOutput, "report-importazione.json").getPath());
+			argomenti.add("file.giornale=" + new File(dirOutput, "giornale-importazione.log").getPath());
+			Map<String, String> opzioni = new LinkedHashMap<>(OPZIONI_IMPORTAZIONE);
+			for (String nome : prop.stringPropertyNames()) {
+				if (!PROPRIETA_COLLAUDO.contains(nome)) {
+					opzioni.put(nome, prop.getProperty(nome));
+				}
+			}
+			opzioni.forEach((nome, valore) -> argomenti.add(nome + "=" + valore));
+			
+			System.out.println("Importo " + dirDataset.getPath() + " con " + opzioni);
+			long inizio = System.nanoTime();
+			ElaboraFileExcelComposti.main(argomenti.toArray(new String[0]));
+			long durataMs = (System.nanoTime() - inizio) / 1_000_000;
+			
+			Map<String, Long> conteggi = contaNodiERelazioni(db);
+			riuscito = verifica(conteggi, durataMs, durataMassimaMs);
+			scriviMetriche(new File(dirOutput, "metriche-collaudo.properties"), 
+					durataMs, durataMassimaMs, conteggi, opzioni);
+		} catch (Exception e) {
+			System.err.println("Qualcosa è andato storto nel collaudo dell'importazione");
+			e.printStackTrace();
+		} finally {
+			if (dbms != null) {
+				dbms.shutdown();
+			}
+			cancellaDirectory(dirDB);
+		}
+		
+		System.out.println(riuscito ? "\nCOLLAUDO RIUSCITO" : "\nCOLLAUDO FALLITO");
+		System.exit(riuscito ? 0 : 1);
+	}
+	
+	/**
+	 * Conta nel DB i nodi di ogni label e le relazioni di ogni tipo di conteggi-attesi.properties,
+	 * tutti i nodi e tutte le relazioni, la somma delle occorrenze e i grecismi.
+	 * 
+	 * @param db il DB in cui contare
+	 * @return i conteggi per nome, con gli stessi nomi di conteggi-attesi.properties
+	 * più nodi e relazioni per i totali
+	 * @throws IOException se non si possono leggere i conteggi attesi
+	 */
+	private static Map<String, Long> contaNodiERelazioni(GraphDatabaseService db) throws IOException {
+		Map<String, Long> conteggi = new LinkedHashMap<>();
+		for (String nome : getConteggiAttesi().stringPropertyNames()) {
+			if (nome.equals("occorrenze") || nome.equals("grecismi")) continue;
+			String query = nome.equals(nome.toUpperCase())
+					? "MATCH ()-[r:`" + nome + "`]->() RETURN count(r) AS n"
+					: "MATCH (n:`" + nome + "`) RETURN count(n) AS n";
+			conteggi.put(nome, conta(db, query));
+		}
+		conteggi.put("occorrenze", conta(db, "MATCH ()-[r:CONTAINS]->() RETURN coalesce(sum(r.occurrences), 0) AS n"));
+		conteggi.put("grecismi", conta(db, "MATCH (c:NominalCompound) WHERE c.greekForm IS NOT NULL RETURN count(c) AS n"));
+		conteggi.put("nodi", conta(db, "MATCH (n) RETURN count(n) AS n"));
+		conteggi.put("relazioni", conta(db, "MATCH ()-[r]->() RETURN count(r) AS n"));
+		return conteggi;
+	}
+	
+	/**
+	 * Esegue la query di conteggio, che deve restituire la colonna n.
+	 * 
+	 * @param db il DB su cui eseguire la query
+	 * @param query la query di conteggio
+	 * @return il valore della colonna n
+	 */
+	private static long conta(GraphDatabaseService db, String query) {
+		return db.executeTransactionally(query, Map.of(), 
+				result -> ((Number) result.next().get("n")).longValue());
+	}
+	
+	/**
+	 * Confronta i conteggi con quelli attesi e la durata con la durata massima, 
+	 * stampando ogni differenza.
+	 * 
+	 * @param conteggi i conteggi del DB
+	 * @param durataMs la durata dell'importazione in millisecondi
+	 * @param durataMassimaMs la durata massima in millisecondi
+	 * @return true se tutti i conteggi sono quelli attesi e la durata non supera il massimo
+	 * @throws IOException se non si possono leggere i conteggi attesi
+	 */
+	private static boolean verifica(Map<String, Long> conteggi, long durataMs, long durataMassimaMs) 
+			throws IOException {
+		boolean riuscito = true;
+		Properties attesi = getConteggiAttesi();
+		long nodiAttesi = 0;
+		long relazioniAttese = 0;
+		System.out.println("\nConteggi (trovati / attesi)");
+		for (String nome : attesi.stringPropertyNames()) {
+			long atteso = Long.parseLong(attesi.getProperty(nome));
+			long trovato = conteggi.get(nome);
+			if (!nome.equals("occorrenze") && !nome.equals("grecismi")) {
+				if (nome.equals(nome.toUpperCase())) {
+					relazioniAttese += atteso;
+				} else {
+					nodiAttesi += atteso;
+				}
+			}
+			riuscito &= stampaConfronto(nome, trovato, atteso);
+		}
+		//nessun nodo o relazione oltre a quelli attesi
+		riuscito &= stampaConfronto("nodi", conteggi.get("nodi"), nodiAttesi);
+		riuscito &= stampaConfronto("relazioni", conteggi.get("relazioni"), relazioniAttese);
+		
+		System.out.println("\nDurata dell'importazione in ms: " + durataMs + " (massimo " + durataMassimaMs + ")");
+		if (durataMs > durataMassimaMs) {
+			System.err.println("L'importazione è durata più della durata massima");
+			riuscito = false;
+		}
+		return riuscito;
+	}
+	
+	/**
+	 * Stampa il confronto tra il conteggio trovato e quello atteso.
+	 * 
+	 * @param nome il nome del conteggio
+	 * @param trovato il conteggio trovato in DB
+	 * @param atteso il conteggio atteso
+	 * @return true se i due conteggi sono uguali
+	 */
+	private static boolean stampaConfronto(String nome, long trovato, long atteso) {
+		if (trovato == atteso) {
+			System.out.println(nome + ": " + trovato + " / " + atteso);
+			return true;
+		}
+		System.err.println(nome + ": " + trovato + " / " + atteso + " ERRATO");
+		return false;
+	}
+	
+	/**
+	 * Scrive la durata dell'importazione, la durata massima, i conteggi e le opzioni 
+	 * usate nel file dato, da conservare tra una build e l'altra.
+	 * 
+	 * @param file il file delle metriche
+	 * @param durataMs la durata dell'importazione in millisecondi
+	 * @param durataMassimaMs la durata massima in millisecondi
+	 * @param conteggi i conteggi del DB
+	 * @param opzioni le opzioni dell'importazione
+	 * @throws IOException se il file non si può scrivere
+	 */
+	private static void scriviMetriche(File file, long durataMs, long durataMassimaMs, 
+			Map<String, Long> conteggi, Map<String, String> opzioni) throws IOException {
+		Properties metriche = new Properties();
+		metriche.setProperty("durata.importazione.ms", String.valueOf(durataMs));
+		metriche.setProperty("durata.massima.ms", String.valueOf(durataMassimaMs));
+		conteggi.forEach((nome, valore) -> metriche.setProperty("conteggio." + nome, String.valueOf(valore)));
+		opzioni.forEach((nome, valore) -> metriche.setProperty("opzione." + nome, valore));
+		try (OutputStream output = Files.newOutputStream(file.toPath())) {
+			metriche.store(output, "Metriche del collaudo dell'importazione");
+		}
+		System.out.println("Metriche scritte in " + file.getPath());
+	}
+	
+	/**
+	 * Restituisce i conteggi attesi letti da conteggi-attesi.properties.
+	 * 
+	 * @return i conteggi attesi
+	 * @throws IOException se il file non si può leggere
+	 */
+	private static Properties getConteggiAttesi() throws IOException {
+		Properties attesi = new Properties();
+		try (InputStream input = CollaudoImportazione.class.getClassLoader()
+				.getResourceAsStream("conteggi-attesi.properties")) {
+			if (input == null) {
+				throw new IOException("Non riesco a trovare conteggi-attesi.properties");
+			}
+			attesi.load(input);
+		}
+		return attesi;
+	}
+	
+	/**
+	 * Restituisce una porta TCP libera su cui avviare il connettore Bolt.
+	 * 
+	 * @return il numero della porta
+	 * @throws IOException se non si trova una porta libera
+	 */
+	private static int getPortaLibera() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+	
+	/**
+	 * Cancella la directory data con tutto il suo contenuto, se non è null.
+	 * 
+	 * @param dir la directory da cancellare
+	 */
+	private static void cancellaDirectory(Path dir) {
+		if (dir == null) return;
+		try (Stream<Path> files = Files.walk(dir)) {
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		} catch (IOException e) {
+			System.err.println("Non riesco a cancellare la directory " + dir);
+		}
+	}
+	
+	/**
+	 * Crea l'oggetto Properties a partire dagli argomenti chiave=valore.
+	 * 
+	 * @param args gli argomenti a riga di comando
+	 * @return l'oggetto Properties con le proprietà degli argomenti
+	 */
+	private static Properties creaPropertiesDaArgument(String[] args) {
+		Properties prop = new Properties();
+		try {
+			prop.load(new StringReader(String.join("\n", args)));
+		} catch (IOException e) {
+		}
+		return prop;
+	}
+
+}